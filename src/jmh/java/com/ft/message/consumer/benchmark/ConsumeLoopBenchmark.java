@@ -0,0 +1,77 @@
+package com.ft.message.consumer.benchmark;
+
+import com.ft.message.consumer.MessageListenerAdapter;
+import com.ft.message.consumer.MessagePayloadListenerAdapter;
+import com.ft.message.consumer.MessageQueueConsumer;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** One poll through {@link MessageQueueConsumer#consume()}: parsing, batching, delivery to a no-op listener
+ *  (with the transaction id set in the MDC for every message) and the offset commit, against an in-memory proxy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsumeLoopBenchmark {
+
+    @Param({"10", "100"})
+    private int records;
+
+    @Param({"1024", "16384"})
+    private int valueSize;
+
+    @Param({"false", "true"})
+    private boolean streamingDecode;
+
+    private MessageQueueConsumer messageConsumer;
+    private MessageQueueConsumer payloadConsumer;
+
+    @Setup
+    public void setUp() {
+        List<MessageRecord> messageRecords = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            messageRecords.add(new MessageRecord("CmsPublicationEvent", ("key-" + i).getBytes(), Payloads.message(valueSize), i % 4, i));
+        }
+        InMemoryMessageQueueProxyService proxyService = new InMemoryMessageQueueProxyService(messageRecords);
+        messageConsumer = new MessageQueueConsumer.Builder(proxyService, new MessageListenerAdapter((message, transactionId) -> true))
+                .withBackoffPeriod(1).withStreamingDecode(streamingDecode).build();
+        payloadConsumer = new MessageQueueConsumer.Builder(proxyService, new MessagePayloadListenerAdapter((payload, transactionId) -> true))
+                .withBackoffPeriod(1).withStreamingDecode(streamingDecode).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        messageConsumer.shutdown();
+        payloadConsumer.shutdown();
+    }
+
+    /** Every message is parsed into a {@link com.ft.messaging.standards.message.v1.Message}. */
+    @Benchmark
+    public void consumeMessages() {
+        messageConsumer.consume();
+    }
+
+    /** Messages are handed over as unparsed payloads. */
+    @Benchmark
+    public void consumePayloads() {
+        payloadConsumer.consume();
+    }
+}
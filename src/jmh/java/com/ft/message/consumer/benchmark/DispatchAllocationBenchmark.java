@@ -0,0 +1,113 @@
+package com.ft.message.consumer.benchmark;
+
+import com.ft.message.consumer.MessagePayloadListenerAdapter;
+import com.ft.message.consumer.MessageQueueConsumer;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** The steady-state dispatch path of {@link MessageQueueConsumer#consume()}: records polled from an in-memory proxy,
+ *  parsed into payloads, their transaction ids read and set in the MDC, and handed to a no-op payload listener. As in
+ *  production, every poll brings messages with ids not seen before: the records are given fresh ids in place before
+ *  they are handed out, so that no cache of header values or MDC values can hit.
+ *  <p>
+ *  Besides <code>-prof gc</code>, the bytes the benchmark thread allocates are counted over every measured iteration,
+ *  and the iteration fails if they exceed <code>budget</code> bytes per message, so that a change which brings
+ *  allocation back into the path fails the run (use <code>-foe true</code> to stop at the first failure).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchAllocationBenchmark {
+
+    @Param({"100"})
+    private int records;
+
+    @Param({"1024"})
+    private int valueSize;
+
+    /** The most bytes a message may allocate on average. About 310 once compiled: its
+     *  {@link com.ft.message.consumer.MessagePayload} and the read-only view of the record value behind it, its
+     *  transaction id and the MDC value built from it; the rest is headroom for an iteration that is not.
+     */
+    @Param({"448"})
+    private long budget;
+
+    private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private MessageQueueConsumer consumer;
+    private long allocatedAtStart;
+    private long polls;
+
+    @Setup
+    public void setUp() {
+        List<MessageRecord> messageRecords = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            messageRecords.add(new MessageRecord("CmsPublicationEvent", ("key-" + i).getBytes(), Payloads.message(valueSize), i % 4, i));
+        }
+        InMemoryMessageQueueProxyService proxyService = new InMemoryMessageQueueProxyService(messageRecords) {
+            private long sequence;
+
+            @Override
+            public List<MessageRecord> consumeMessages(URI consumerInstance) {
+                List<MessageRecord> polled = super.consumeMessages(consumerInstance);
+                for (MessageRecord record : polled) {
+                    Payloads.renumber(record.getValue(), sequence++);
+                }
+                return polled;
+            }
+        };
+        consumer = new MessageQueueConsumer.Builder(proxyService,
+                new MessagePayloadListenerAdapter((payload, transactionId) -> true))
+                .withBackoffPeriod(1).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        consumer.shutdown();
+    }
+
+    @Setup(Level.Iteration)
+    public void startCounting() {
+        polls = 0;
+        allocatedAtStart = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkBudget() {
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedAtStart;
+        if (polls == 0) {
+            return;
+        }
+        long perMessage = allocated / (polls * records);
+        if (perMessage > budget) {
+            throw new IllegalStateException(String.format("Dispatch allocated %d bytes per message, over the budget of %d", perMessage, budget));
+        }
+    }
+
+    @Benchmark
+    public void dispatchPayloads() {
+        consumer.consume();
+        polls++;
+    }
+}
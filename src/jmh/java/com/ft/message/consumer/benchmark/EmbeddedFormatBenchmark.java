@@ -0,0 +1,62 @@
+package com.ft.message.consumer.benchmark;
+
+import com.ft.message.consumer.proxy.EmbeddedFormat;
+import com.ft.message.consumer.proxy.MessageRecordReader;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** Compares the embedded formats of the proxy: how many bytes a <code>/records</code> response takes on the wire,
+ *  printed when each trial sets up, and how long it takes to decode it record by record into the values handed to listeners.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbeddedFormatBenchmark {
+
+    @Param({"binary", "json", "avro", "protobuf"})
+    private String format;
+
+    @Param({"100"})
+    private int records;
+
+    @Param({"1024", "16384"})
+    private int valueSize;
+
+    private byte[] response;
+    private EmbeddedFormat embeddedFormat;
+
+    @Setup
+    public void setUp() throws IOException {
+        response = Payloads.recordsResponse(records, valueSize, format);
+        embeddedFormat = EmbeddedFormat.forName(format);
+        System.out.printf("%n%s: %d bytes on the wire for %d values of %d bytes%n", format, response.length, records, valueSize);
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) throws IOException {
+        try (MessageRecordReader reader = new MessageRecordReader(new ByteArrayInputStream(response), null, embeddedFormat)) {
+            while (reader.hasNext()) {
+                MessageRecord messageRecord = reader.next();
+                blackhole.consume(messageRecord.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.ft.message.consumer.benchmark;
+
+import com.ft.message.consumer.proxy.MessageQueueProxyService;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.message.consumer.proxy.model.PartitionOffset;
+
+import java.net.URI;
+import java.util.List;
+
+/** Serves the same records on every poll, without any HTTP, so that benchmarks measure only the consumer. */
+class InMemoryMessageQueueProxyService implements MessageQueueProxyService {
+
+    private static final URI CONSUMER_INSTANCE = URI.create("http://localhost:8082/consumers/benchmark/instances/rest-consumer-1-1");
+
+    private final List<MessageRecord> records;
+
+    InMemoryMessageQueueProxyService(List<MessageRecord> records) {
+        this.records = records;
+    }
+
+    @Override
+    public URI createConsumerInstance() {
+        return CONSUMER_INSTANCE;
+    }
+
+    @Override
+    public void destroyConsumerInstance(URI consumerInstance) {
+    }
+
+    @Override
+    public void subscribeConsumerInstanceToTopic(URI consumerInstance) {
+    }
+
+    @Override
+    public void destroyConsumerInstanceSubscription(URI consumerInstance) {
+    }
+
+    @Override
+    public List<MessageRecord> consumeMessages(URI consumerInstance) {
+        return records;
+    }
+
+    @Override
+    public void commitOffsets(URI consumerInstance) {
+    }
+
+    @Override
+    public void commitOffsets(URI consumerInstance, List<PartitionOffset> offsets) {
+    }
+
+    @Override
+    public int getPartitionCount() {
+        return 1;
+    }
+
+    @Override
+    public String getStatus() {
+        return String.format(MESSAGES_CONSUMED, records.size());
+    }
+}
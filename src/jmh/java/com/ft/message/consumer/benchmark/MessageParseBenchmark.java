@@ -0,0 +1,50 @@
+package com.ft.message.consumer.benchmark;
+
+import com.ft.message.consumer.MessagePayload;
+import com.ft.messaging.standards.message.v1.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/** The cost of getting at an FT message: parsing it fully with {@link Message#parse(byte[])}, as the consumer does
+ *  for message listeners, against reading the transaction id header from a {@link MessagePayload} view.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageParseBenchmark {
+
+    @Param({"1024", "16384"})
+    private int valueSize;
+
+    private byte[] value;
+
+    @Setup
+    public void setUp() {
+        value = Payloads.message(valueSize);
+    }
+
+    @Benchmark
+    public Message parseMessage() {
+        return Message.parse(value);
+    }
+
+    @Benchmark
+    public String payloadHeader() {
+        return MessagePayload.parse(ByteBuffer.wrap(value)).getHeader("X-Request-Id");
+    }
+}
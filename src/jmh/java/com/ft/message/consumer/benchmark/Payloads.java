@@ -0,0 +1,123 @@
+package com.ft.message.consumer.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/** Builds realistic payloads for the benchmarks: FT messages wrapped in REST proxy v2 binary records. */
+final class Payloads {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final byte[] MESSAGE_ID = "Message-Id: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] REQUEST_ID = "X-Request-Id: tid_".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private Payloads() {
+    }
+
+    /** An FT message whose body pads the whole message out to roughly <code>size</code> bytes. */
+    static byte[] message(int size) {
+        String headers = "FTMSG/1.0\r\n" +
+                "Message-Id: " + UUID.randomUUID() + "\r\n" +
+                "Message-Timestamp: 2015-11-20T13:44:45.305Z\r\n" +
+                "Message-Type: cms-content-published\r\n" +
+                "Origin-System-Id: http://cmdb.ft.com/systems/methode-web-pub\r\n" +
+                "Content-Type: application/json\r\n" +
+                "X-Request-Id: tid_" + UUID.randomUUID() + "\r\n\r\n";
+        int padding = Math.max(0, size - headers.length() - 20);
+        char[] body = new char[padding];
+        Arrays.fill(body, 'x');
+        return (headers + "{\"body\":\"" + new String(body) + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Gives a {@link #message(int)} fresh ids in place, without allocating: the last group of its Message-Id and
+     *  X-Request-Id UUIDs is overwritten with <code>sequence</code>, in hex.
+     */
+    static void renumber(byte[] message, long sequence) {
+        renumber(message, MESSAGE_ID, sequence);
+        renumber(message, REQUEST_ID, sequence);
+    }
+
+    private static void renumber(byte[] message, byte[] header, long sequence) {
+        int lastGroup = indexOf(message, header) + header.length + 24;
+        for (int i = 11; i >= 0; i--) {
+            message[lastGroup + i] = HEX[(int) (sequence & 0xf)];
+            sequence >>>= 4;
+        }
+    }
+
+    private static int indexOf(byte[] message, byte[] header) {
+        outer:
+        for (int i = 0; i + header.length <= message.length; i++) {
+            for (int j = 0; j < header.length; j++) {
+                if (message[i + j] != header[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new IllegalArgumentException("Message has no " + new String(header, StandardCharsets.US_ASCII));
+    }
+
+    /** The JSON body of a <code>/records</code> response holding <code>records</code> messages of <code>valueSize</code> bytes. */
+    static byte[] recordsResponse(int records, int valueSize) throws IOException {
+        return recordsResponse(records, valueSize, "binary");
+    }
+
+    /** As {@link #recordsResponse(int, int)}, with keys and values embedded as the proxy does for <code>format</code>:
+     *  base64 for <code>binary</code>, the message as a JSON string for <code>json</code>, and the message's fields
+     *  as a JSON object for <code>avro</code> (with the JSON encoding of nullable unions) and <code>protobuf</code>.
+     */
+    static byte[] recordsResponse(int records, int valueSize, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = JSON.createGenerator(out)) {
+            generator.writeStartArray();
+            for (int i = 0; i < records; i++) {
+                generator.writeStartObject();
+                generator.writeStringField("topic", "CmsPublicationEvent");
+                if ("binary".equals(format)) {
+                    generator.writeBinaryField("key", ("key-" + i).getBytes(StandardCharsets.UTF_8));
+                    generator.writeBinaryField("value", message(valueSize));
+                } else {
+                    generator.writeStringField("key", "key-" + i);
+                    generator.writeFieldName("value");
+                    writeValue(generator, format, valueSize);
+                }
+                generator.writeNumberField("partition", i % 4);
+                generator.writeNumberField("offset", i);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeValue(JsonGenerator generator, String format, int valueSize) throws IOException {
+        if ("json".equals(format)) {
+            generator.writeString(new String(message(valueSize), StandardCharsets.UTF_8));
+            return;
+        }
+        char[] body = new char[Math.max(0, valueSize - 300)];
+        Arrays.fill(body, 'x');
+        generator.writeStartObject();
+        generator.writeStringField("messageId", UUID.randomUUID().toString());
+        generator.writeStringField("messageTimestamp", "2015-11-20T13:44:45.305Z");
+        generator.writeStringField("messageType", "cms-content-published");
+        generator.writeStringField("originSystemId", "http://cmdb.ft.com/systems/methode-web-pub");
+        generator.writeStringField("contentType", "application/json");
+        if ("avro".equals(format)) {
+            generator.writeObjectFieldStart("requestId");
+            generator.writeStringField("string", "tid_" + UUID.randomUUID());
+            generator.writeEndObject();
+        } else {
+            generator.writeStringField("requestId", "tid_" + UUID.randomUUID());
+        }
+        generator.writeStringField("body", "{\"body\":\"" + new String(body) + "\"}");
+        generator.writeEndObject();
+    }
+}
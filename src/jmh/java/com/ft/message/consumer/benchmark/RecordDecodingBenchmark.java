@@ -0,0 +1,97 @@
+package com.ft.message.consumer.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ft.message.consumer.proxy.MessageRecordReader;
+import com.ft.message.consumer.proxy.PayloadBufferPool;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Compares binding a whole <code>/records</code> response into a list, as the proxy client's entity provider does,
+ *  with decoding it record by record through {@link MessageRecordReader}.
+ *  The <code>first*</code> benchmarks measure how long it takes before the first record can be handed over.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordDecodingBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<List<MessageRecord>> RECORD_LIST = new TypeReference<List<MessageRecord>>() {};
+
+    @Param({"10", "100", "1000"})
+    private int records;
+
+    @Param({"1024", "16384"})
+    private int valueSize;
+
+    private byte[] response;
+    private PayloadBufferPool pool;
+
+    @Setup
+    public void setUp() throws IOException {
+        response = Payloads.recordsResponse(records, valueSize);
+        pool = new PayloadBufferPool(16, 64 * 1024);
+    }
+
+    @Benchmark
+    public void bindList(Blackhole blackhole) throws IOException {
+        List<MessageRecord> messageRecords = MAPPER.readValue(new ByteArrayInputStream(response), RECORD_LIST);
+        for (MessageRecord messageRecord : messageRecords) {
+            blackhole.consume(messageRecord);
+        }
+    }
+
+    @Benchmark
+    public void stream(Blackhole blackhole) throws IOException {
+        try (MessageRecordReader reader = new MessageRecordReader(new ByteArrayInputStream(response))) {
+            while (reader.hasNext()) {
+                blackhole.consume(reader.next());
+            }
+        }
+    }
+
+    /** Values stay in pooled buffers and are decoded in place; each record is released once consumed. */
+    @Benchmark
+    public void streamPooled(Blackhole blackhole) throws IOException {
+        try (MessageRecordReader reader = new MessageRecordReader(new ByteArrayInputStream(response), pool)) {
+            while (reader.hasNext()) {
+                MessageRecord messageRecord = reader.next();
+                blackhole.consume(messageRecord.getPayload());
+                messageRecord.release();
+            }
+        }
+    }
+
+    @Benchmark
+    public MessageRecord firstRecordBound() throws IOException {
+        List<MessageRecord> messageRecords = MAPPER.readValue(new ByteArrayInputStream(response), RECORD_LIST);
+        return messageRecords.get(0);
+    }
+
+    @Benchmark
+    public MessageRecord firstRecordStreamed() throws IOException {
+        try (MessageRecordReader reader = new MessageRecordReader(new ByteArrayInputStream(response))) {
+            return reader.next();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.ft.message.consumer.proxy;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.WebResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.core.UriBuilder;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/** The work done before each <code>/records</code> request is sent through a named queue: building the URI and
+ *  resource and setting the headers on every request, against reusing the {@link ConsumerInstanceEndpoints}
+ *  resolved when the instance was created. No request is sent. Lives in the proxy package to reach the endpoints.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestSetupBenchmark {
+
+    private static final String KAFKA_MESSAGE_CONTENT_TYPE = "application/vnd.kafka.v2+json";
+    private static final String QUEUE = "kafka";
+    private static final String[] ACCEPT_HEADERS = {"Accept", KAFKA_MESSAGE_CONTENT_TYPE, "Host", QUEUE};
+
+    private final URI consumerInstance = URI.create("http://kafka/consumers/benchmark/instances/rest-consumer-1-1");
+    private final String queueProxyHost = "http://localhost:8082";
+
+    private Client client;
+    private ConsumerInstanceEndpoints endpoints;
+
+    @Setup
+    public void setUp() {
+        client = Client.create();
+        endpoints = new ConsumerInstanceEndpoints(client, consumerInstance, URI.create(queueProxyHost));
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.destroy();
+    }
+
+    @Benchmark
+    public WebResource.Builder perRequest() {
+        URI proxyUri = UriBuilder.fromUri(queueProxyHost).build();
+        URI uri = UriBuilder.fromUri(consumerInstance).path("records").host(proxyUri.getHost()).port(proxyUri.getPort()).build();
+        WebResource.Builder builder = client.resource(uri).getRequestBuilder();
+        builder.header("Accept", KAFKA_MESSAGE_CONTENT_TYPE);
+        builder.header("Host", QUEUE);
+        return builder;
+    }
+
+    @Benchmark
+    public WebResource.Builder resolvedOnce() {
+        WebResource.Builder builder = endpoints.records().getRequestBuilder();
+        for (int i = 0; i < ACCEPT_HEADERS.length; i += 2) {
+            builder.header(ACCEPT_HEADERS[i], ACCEPT_HEADERS[i + 1]);
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,417 @@
+package com.ft.message.consumer;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.ft.api.util.transactionid.TransactionIdUtils;
+import com.ft.message.consumer.proxy.AsyncMessageQueueProxyService;
+import com.ft.message.consumer.proxy.QueueProxyServiceException;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/** Consumes a stream as a sequence of steps rather than a loop: each proxy call is made through an
+ *  {@link AsyncMessageQueueProxyService}, and the consumer moves on to its next state when the call completes. Backoff delays
+ *  run on a shared <code>executor</code>, and listener calls on a shared listener executor of their own, so that a slow
+ *  listener does not hold up the steps of the other streams. Any thread a call in flight takes is the proxy service's.
+ *  <p>The consumer goes through <code>CREATING</code>, <code>SUBSCRIBING</code>, then <code>POLLING</code>,
+ *  <code>DELIVERING</code> and <code>COMMITTING</code> (without auto commit) for as long as it runs, backing off after
+ *  empty polls. After a retryable error the failed call is made again after the error backoff, up to <code>maxRetries</code>
+ *  times in a row; after any other error the consumer instance is destroyed (<code>RESETTING</code>) and, after the error
+ *  backoff, created again. {@link #stop()} lets the step in progress complete, destroys the consumer instance and ends in
+ *  <code>STOPPED</code>.
+ */
+public class AsyncMessageQueueConsumer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncMessageQueueConsumer.class);
+
+    public enum State { CREATING, SUBSCRIBING, POLLING, DELIVERING, COMMITTING, BACKING_OFF, RESETTING, STOPPED }
+
+    private final AsyncMessageQueueProxyService messageQueueProxyService;
+    private final BatchPayloadListener listener;
+    private final boolean parseMessages;
+    private final boolean autoCommit;
+    private final int maxRetries;
+    private final BackoffStrategy emptyPollBackoff;
+    private final BackoffStrategy errorBackoff;
+    private final ScheduledExecutorService executor;
+    private final Executor listenerExecutor;
+    private final MessageBatch batch = new MessageBatch();
+    private final DuplicateFilter duplicateFilter;
+    private final CompletableFuture<Void> stopped = new CompletableFuture<>();
+    private final Meter messagesMeter;
+    private final Meter listenerFailuresMeter;
+    private final Meter resetsMeter;
+    private final Meter retriesMeter;
+    private final Timer listenerTimer;
+    private final StreamStatus status;
+
+    private volatile boolean running;
+    private volatile State state = State.STOPPED;
+    private volatile URI consumerInstance;
+    private int retries;
+    private ScheduledFuture<?> pendingStep;
+    private Runnable pendingAction;
+
+    private AsyncMessageQueueConsumer(Builder builder) {
+        this.messageQueueProxyService = builder.messageQueueProxyService;
+        this.duplicateFilter = builder.duplicateFilter;
+        this.listener = builder.listener;
+        this.parseMessages = builder.listener instanceof BatchMessageListener;
+        this.autoCommit = builder.autoCommit;
+        this.maxRetries = builder.maxRetries;
+        if (builder.longPolling) {
+            this.emptyPollBackoff = ExponentialBackoff.fixed(0);
+        } else {
+            this.emptyPollBackoff = builder.emptyPollBackoff != null ? builder.emptyPollBackoff : ExponentialBackoff.fixed(builder.backoffPeriod);
+        }
+        this.errorBackoff = builder.errorBackoff != null ? builder.errorBackoff : ExponentialBackoff.fixed(builder.backoffPeriod);
+        this.executor = builder.executor;
+        this.listenerExecutor = builder.listenerExecutor != null ? builder.listenerExecutor : builder.executor;
+        MetricRegistry metrics = builder.metrics != null ? builder.metrics : new MetricRegistry();
+        String stream = builder.metricsName != null ? builder.metricsName : "stream";
+        this.status = new StreamStatus(stream);
+        String prefix = MetricRegistry.name(builder.metricsPrefix, MessageQueueConsumer.class.getName());
+        this.messagesMeter = metrics.meter(MetricRegistry.name(prefix, stream, "messages"));
+        this.listenerFailuresMeter = metrics.meter(MetricRegistry.name(prefix, stream, "listener-failures"));
+        this.resetsMeter = metrics.meter(MetricRegistry.name(prefix, stream, "resets"));
+        this.retriesMeter = metrics.meter(MetricRegistry.name(prefix, stream, "retries"));
+        this.listenerTimer = metrics.timer(MetricRegistry.name(prefix, stream, "listener"));
+    }
+
+    public void start() {
+        running = true;
+        executor.execute(this::createInstance);
+    }
+
+    /** @return a future completing once the step in progress is over and the consumer instance has been destroyed */
+    public CompletableFuture<Void> stop() {
+        running = false;
+        status.draining();
+        Runnable action;
+        synchronized (this) {
+            action = pendingStep != null && pendingStep.cancel(false) ? pendingAction : null;
+            pendingStep = null;
+        }
+        if (action != null) {
+            executor.execute(action);
+        } else if (state == State.STOPPED) {
+            stopped.complete(null);
+        }
+        return stopped;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public StreamStatus getStreamStatus() {
+        return status;
+    }
+
+    private void createInstance() {
+        if (!running) {
+            finish();
+            return;
+        }
+        state = State.CREATING;
+        messageQueueProxyService.createConsumerInstance().whenComplete((instance, e) -> {
+            if (e != null) {
+                reset("Error while communicating with queue proxy.", e);
+            } else {
+                consumerInstance = instance;
+                subscribe();
+            }
+        });
+    }
+
+    private void subscribe() {
+        if (!running) {
+            reset(null, null);
+            return;
+        }
+        state = State.SUBSCRIBING;
+        messageQueueProxyService.subscribeConsumerInstanceToTopic(consumerInstance).whenComplete((ignored, e) -> {
+            if (e != null) {
+                retryOrReset(e, this::subscribe);
+            } else {
+                poll();
+            }
+        });
+    }
+
+    private void poll() {
+        if (!running) {
+            reset(null, null);
+            return;
+        }
+        state = State.POLLING;
+        status.polling();
+        messageQueueProxyService.consumeMessages(consumerInstance).whenComplete((messageRecords, e) -> {
+            if (e != null) {
+                retryOrReset(e, this::poll);
+                return;
+            }
+            retries = 0;
+            status.polled(messageRecords != null ? messageRecords.size() : 0);
+            if (messageRecords == null || messageRecords.isEmpty()) {
+                schedule(this::poll, emptyPollBackoff.nextDelay());
+            } else {
+                emptyPollBackoff.reset();
+                errorBackoff.reset();
+                state = State.DELIVERING;
+                listenerExecutor.execute(() -> deliver(messageRecords));
+            }
+        });
+    }
+
+    private void deliver(List<MessageRecord> messageRecords) {
+        try {
+            for (MessageRecord messageRecord : messageRecords) {
+                MessagePayload payload = parse(messageRecord);
+                if (payload != null && duplicateFilter != null
+                        && duplicateFilter.isDuplicate(duplicateFilter.keyOf(messageRecord, payload))) {
+                    messageRecord.release();
+                } else if (payload != null) {
+                    batch.add(messageRecord, payload, payload.getHeader(TransactionIdUtils.TRANSACTION_ID_HEADER));
+                }
+            }
+            flush();
+        } catch (Throwable t) {
+            batch.clear();
+            reset(t.getMessage(), t);
+            return;
+        }
+        commit();
+    }
+
+    private void commit() {
+        if (autoCommit) {
+            poll();
+            return;
+        }
+        state = State.COMMITTING;
+        messageQueueProxyService.commitOffsets(consumerInstance).whenComplete((ignored, e) -> {
+            if (e != null) {
+                retryOrReset(e, this::commit);
+            } else {
+                poll();
+            }
+        });
+    }
+
+    /** As {@link MessageQueueConsumer}, makes a call that failed with a retryable error again with the same consumer
+     *  instance after the error backoff, unless <code>maxRetries</code> calls in a row have failed.
+     */
+    private void retryOrReset(Throwable e, Runnable call) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (!running || retries >= maxRetries
+                || !(cause instanceof QueueProxyServiceException) || !((QueueProxyServiceException) cause).isRetryable()) {
+            reset("Error while communicating with queue proxy.", e);
+            return;
+        }
+        retries++;
+        retriesMeter.mark();
+        status.failed(cause);
+        LOGGER.warn(String.format("outcome=Exception message=\"Error while communicating with queue proxy; retry %d of %d with the same consumer instance.\"",
+                retries, maxRetries), cause);
+        schedule(call, errorBackoff.nextDelay());
+    }
+
+    /** Destroys the consumer instance and, unless the consumer has been stopped, creates another after the error backoff.
+     *  @param t the error that caused the reset, or <code>null</code> if the consumer is stopping
+     */
+    private void reset(String reason, Throwable t) {
+        if (t != null) {
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            LOGGER.error(String.format("outcome=Exception message=\"%s\"", reason), cause);
+            resetsMeter.mark();
+            status.failed(cause);
+        }
+        state = State.RESETTING;
+        retries = 0;
+        URI instance = consumerInstance;
+        consumerInstance = null;
+        CompletableFuture<Void> destroyed = instance == null ? CompletableFuture.completedFuture(null)
+                : messageQueueProxyService.destroyConsumerInstanceSubscription(instance)
+                        .handle((ignored, e) -> {
+                            // the instance is destroyed regardless, so that the proxy service forgets its endpoints
+                            if (e != null) {
+                                LOGGER.warn("outcome=Exception message=\"Error while destroying consumer instance subscription.\"", e);
+                            }
+                            return null;
+                        })
+                        .thenCompose(ignored -> messageQueueProxyService.destroyConsumerInstance(instance));
+        destroyed.whenComplete((ignored, e) -> {
+            if (e != null) {
+                LOGGER.warn("outcome=Exception message=\"Error while destroying consumer instance.\"", e);
+            }
+            if (running) {
+                schedule(this::createInstance, errorBackoff.nextDelay());
+            } else {
+                finish();
+            }
+        });
+    }
+
+    /** Runs <code>action</code> after <code>delay</code> milliseconds, or at once if the consumer is stopped meanwhile. */
+    private void schedule(Runnable action, long delay) {
+        synchronized (this) {
+            if (running) {
+                state = State.BACKING_OFF;
+                pendingAction = action;
+                pendingStep = executor.schedule(() -> {
+                    synchronized (this) {
+                        pendingStep = null;
+                    }
+                    action.run();
+                }, delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+        executor.execute(action);
+    }
+
+    private void finish() {
+        state = State.STOPPED;
+        status.stopped();
+        stopped.complete(null);
+        LOGGER.info("Exited gracefully;");
+    }
+
+    private MessagePayload parse(MessageRecord messageRecord) {
+        try {
+            MessagePayload payload = MessagePayload.parse(messageRecord);
+            if (parseMessages) {
+                payload.toMessage();
+            }
+            return payload;
+        } catch (Throwable t) {
+            LOGGER.error("outcome=Exception message=\"Error while parsing message.\"", t);
+            messageRecord.release();
+            return null;
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            BatchResult result = batch.deliverTo(listener).withoutRejections();
+            listenerTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            messagesMeter.mark(batch.size());
+            listenerFailuresMeter.mark(result.getFailedIndexes().size());
+            for (int index : result.getFailedIndexes()) {
+                LOGGER.error("outcome=Exception message=\"Error while processing message [{}].\"", batch.getPayload(index),
+                        result.getFailureCause(index));
+            }
+            if (duplicateFilter != null) {
+                for (int i = 0; i < batch.size(); i++) {
+                    if (!result.isFailed(i)) {
+                        duplicateFilter.handled(duplicateFilter.keyOf(batch.getRecord(i), batch.getPayload(i)));
+                    }
+                }
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    public static class Builder {
+
+        private final AsyncMessageQueueProxyService messageQueueProxyService;
+        private final BatchPayloadListener listener;
+        private final ScheduledExecutorService executor;
+        private Executor listenerExecutor;
+        private int backoffPeriod;
+        private BackoffStrategy emptyPollBackoff;
+        private BackoffStrategy errorBackoff;
+        private boolean longPolling;
+        private int maxRetries;
+        private boolean autoCommit;
+        private DuplicateFilter duplicateFilter;
+        private MetricRegistry metrics;
+        private String metricsPrefix;
+        private String metricsName;
+
+        /** @param executor runs backoff delays, and listener calls unless a listener executor is given; it can be shared by any number of consumers */
+        public Builder(AsyncMessageQueueProxyService messageQueueProxyService, MessageListener listener, ScheduledExecutorService executor) {
+            this(messageQueueProxyService, new MessageListenerAdapter(listener), executor);
+        }
+
+        public Builder(AsyncMessageQueueProxyService messageQueueProxyService, BatchPayloadListener listener, ScheduledExecutorService executor) {
+            this.messageQueueProxyService = messageQueueProxyService;
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        /** @param listenerExecutor runs listener calls, instead of the executor running backoff delays; it can be shared by any number of consumers */
+        public Builder withListenerExecutor(Executor listenerExecutor) {
+            this.listenerExecutor = listenerExecutor;
+            return this;
+        }
+
+        public Builder withBackoffPeriod(int backoffPeriod) {
+            this.backoffPeriod = backoffPeriod;
+            return this;
+        }
+
+        /** As {@link MessageQueueConsumer.Builder#withBackoff(BackoffStrategy, BackoffStrategy)}. */
+        public Builder withBackoff(BackoffStrategy emptyPollBackoff, BackoffStrategy errorBackoff) {
+            this.emptyPollBackoff = emptyPollBackoff;
+            this.errorBackoff = errorBackoff;
+            return this;
+        }
+
+        /** As {@link MessageQueueConsumer.Builder#withLongPolling(boolean)}. */
+        public Builder withLongPolling(boolean longPolling) {
+            this.longPolling = longPolling;
+            return this;
+        }
+
+        /** As {@link MessageQueueConsumer.Builder#withRetries(int)}. */
+        public Builder withRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public Builder withAutoCommit(boolean autoCommit) {
+            this.autoCommit = autoCommit;
+            return this;
+        }
+
+        /** As {@link MessageQueueConsumer.Builder#withDuplicateFilter(DuplicateFilter)}. */
+        public Builder withDuplicateFilter(DuplicateFilter duplicateFilter) {
+            this.duplicateFilter = duplicateFilter;
+            return this;
+        }
+
+        /** As {@link MessageQueueConsumer.Builder#withMetrics(MetricRegistry, String)}, under the same names. */
+        public Builder withMetrics(MetricRegistry metrics, String name) {
+            return withMetrics(metrics, null, name);
+        }
+
+        /** As {@link MessageQueueConsumer.Builder#withMetrics(MetricRegistry, String, String)}. */
+        public Builder withMetrics(MetricRegistry metrics, String prefix, String name) {
+            this.metrics = metrics;
+            this.metricsPrefix = prefix;
+            this.metricsName = name;
+            return this;
+        }
+
+        public AsyncMessageQueueConsumer build() {
+            return new AsyncMessageQueueConsumer(this);
+        }
+    }
+}
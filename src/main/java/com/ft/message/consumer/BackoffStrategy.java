@@ -0,0 +1,12 @@
+package com.ft.message.consumer;
+
+/** Decides how long a consumer waits before polling again, given how many times in a row it has had to wait. */
+public interface BackoffStrategy {
+
+    /** @return the delay, in milliseconds, before the next attempt; each call counts as one more consecutive backoff */
+    long nextDelay();
+
+    /** Starts again from the first delay, once the consumer has received messages. */
+    void reset();
+
+}
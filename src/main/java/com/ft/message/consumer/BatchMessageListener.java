@@ -0,0 +1,26 @@
+package com.ft.message.consumer;
+
+import com.ft.messaging.standards.message.v1.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Receives the parsed messages of a poll (or of several polls, when micro-batching is configured) in a single call.
+ *  <code>transactionIds</code> holds the transaction id of the message at the same position in <code>messages</code>.
+ */
+public interface BatchMessageListener extends BatchPayloadListener {
+
+    /** @return the outcome of each message; messages not reported as failed are treated as processed.
+     *          A <code>null</code> result means the whole batch was processed; an exception fails the whole batch.
+     */
+    BatchResult onMessages(List<Message> messages, List<String> transactionIds);
+
+    @Override
+    default BatchResult onPayloads(List<MessagePayload> payloads, List<String> transactionIds) {
+        List<Message> messages = new ArrayList<>(payloads.size());
+        for (MessagePayload payload : payloads) {
+            messages.add(payload.toMessage());
+        }
+        return onMessages(messages, transactionIds);
+    }
+}
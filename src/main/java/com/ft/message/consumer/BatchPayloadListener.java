@@ -0,0 +1,16 @@
+package com.ft.message.consumer;
+
+import java.util.List;
+
+/** Receives the unparsed messages of a poll (or of several polls, when micro-batching is configured) in a single call.
+ *  <code>transactionIds</code> holds the transaction id of the message at the same position in <code>payloads</code>.
+ *  The payloads are only valid until this call returns.
+ */
+public interface BatchPayloadListener {
+
+    /** @return the outcome of each message; messages not reported as failed are treated as processed.
+     *          A <code>null</code> result means the whole batch was processed; an exception fails the whole batch.
+     */
+    BatchResult onPayloads(List<MessagePayload> payloads, List<String> transactionIds);
+
+}
@@ -0,0 +1,68 @@
+package com.ft.message.consumer;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Per-message outcome of a {@link BatchMessageListener} call, identifying failed messages by their position in the batch. */
+public class BatchResult {
+
+    /** The cause of the failure of a message the listener returned <code>false</code> for. */
+    static final Throwable REJECTED = new RuntimeException("The listener returned false", null, false, false) {};
+
+    private final Map<Integer, Throwable> failures = new TreeMap<>();
+
+    public static BatchResult success() {
+        return new BatchResult();
+    }
+
+    /** Marks the message at <code>index</code> as failed.
+     *  @param cause the reason for the failure, may be <code>null</code>
+     */
+    public BatchResult fail(int index, Throwable cause) {
+        failures.put(index, cause);
+        return this;
+    }
+
+    /** Marks the message at <code>index</code> as failed because the listener returned <code>false</code> for it,
+     *  which only counts as a failure when failed messages are retried.
+     */
+    BatchResult rejected(int index) {
+        failures.put(index, REJECTED);
+        return this;
+    }
+
+    /** Takes the messages the listener returned <code>false</code> for as handled, as they were before listener retries. */
+    BatchResult withoutRejections() {
+        failures.values().removeIf(cause -> cause == REJECTED);
+        return this;
+    }
+
+    /** Fails the messages from <code>from</code> on, which were not handed to the listener because the thread was interrupted,
+     *  so that their offsets are not committed.
+     */
+    BatchResult interrupted(int from, int size) {
+        InterruptedException cause = new InterruptedException("Interrupted before the message was handed to the listener");
+        for (int i = from; i < size; i++) {
+            failures.put(i, cause);
+        }
+        return this;
+    }
+
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    public boolean isFailed(int index) {
+        return failures.containsKey(index);
+    }
+
+    public Set<Integer> getFailedIndexes() {
+        return Collections.unmodifiableSet(failures.keySet());
+    }
+
+    public Throwable getFailureCause(int index) {
+        return failures.get(index);
+    }
+}
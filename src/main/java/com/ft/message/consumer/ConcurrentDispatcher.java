@@ -0,0 +1,93 @@
+package com.ft.message.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+/** Delivers each message of a batch in a listener call of its own, submitted to an executor, with at most
+ *  <code>maxConcurrency</code> calls in progress at once; the consuming thread waits for a permit before submitting
+ *  the next message. Meant for executors starting a thread per task, such as one of virtual threads.
+ *  Messages are not delivered in order. The MDC of the consuming thread is copied to each call.
+ */
+class ConcurrentDispatcher implements MessageDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrentDispatcher.class);
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    ConcurrentDispatcher(ExecutorService executor, int maxConcurrency) {
+        this.executor = executor;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /** If the calling thread is interrupted, calls that have not started yet are cancelled. */
+    @Override
+    public BatchResult dispatch(MessageBatch batch, BatchPayloadListener listener) throws InterruptedException {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        List<Future<BatchResult>> pending = new ArrayList<>(batch.size());
+        BatchResult result = BatchResult.success();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                MessageBatch single = new MessageBatch();
+                single.add(batch.getRecord(i), batch.getPayload(i), batch.getTransactionId(i));
+                FutureTask<BatchResult> call = new FutureTask<BatchResult>(() -> deliver(single, listener, context)) {
+                    @Override
+                    protected void done() {
+                        permits.release();
+                    }
+                };
+                permits.acquire();
+                try {
+                    executor.execute(call);
+                } catch (RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+                pending.add(call);
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                try {
+                    BatchResult callResult = pending.get(i).get();
+                    if (!callResult.isSuccess()) {
+                        result.fail(i, callResult.getFailureCause(0));
+                    }
+                } catch (ExecutionException e) {
+                    LOGGER.error("outcome=Exception message=\"Error while dispatching messages.\"", e.getCause());
+                    result.fail(i, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<BatchResult> future : pending) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+        return result;
+    }
+
+    private BatchResult deliver(MessageBatch single, BatchPayloadListener listener, Map<String, String> context) {
+        try {
+            if (context != null) {
+                MDC.setContextMap(context);
+            }
+            return single.deliverTo(listener);
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    /** The executor is left running: it is owned by whoever supplied it, and may be shared by several streams. */
+    @Override
+    public void shutdown() {
+    }
+}
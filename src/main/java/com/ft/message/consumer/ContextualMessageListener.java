@@ -0,0 +1,10 @@
+package com.ft.message.consumer;
+
+import com.ft.messaging.standards.message.v1.Message;
+
+/** Receives each message together with the topic, partition, offset, key and timestamp of its record. */
+public interface ContextualMessageListener {
+
+    boolean onMessage(Message message, String transactionId, MessageContext context);
+
+}
@@ -0,0 +1,17 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+
+/** Receives the records the listener kept failing, once their listener retries are exhausted or no more retries can
+ *  be held. Called on the consuming thread, and from every stream of a consumer, so implementations must be thread safe
+ *  and should not block for long.
+ */
+public interface DeadLetterSink {
+
+    /** @param attempts the number of times the record was handed to the listener
+     *  @param cause    the reason for the last failure; <code>null</code> if the listener returned <code>false</code>
+     *  @throws Exception if the record could not be stored; it is then logged, its offset held back from commits,
+     *                   and sent again after the listener retry delays
+     */
+    void send(MessageRecord record, int attempts, Throwable cause) throws Exception;
+}
@@ -0,0 +1,241 @@
+package com.ft.message.consumer;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Remembers the messages already handled, by a 64-bit hash of their FT message id or of their topic, partition and offset,
+ *  so that the ones consumed again, after a consumer instance is reset, a rebalance or a restart without a commit, are
+ *  skipped rather than handed to the listener twice. One filter is shared by every stream.
+ *  <p>
+ *  Hashes are kept in a preallocated set-associative table: each hash maps to a bucket of {@value #WAYS} slots, and a
+ *  full bucket evicts its least recently seen slot, so about the last <code>capacity</code> messages are remembered, and
+ *  only for <code>ttl</code> milliseconds if that is set. The table takes 16 bytes per entry whatever the traffic, and
+ *  the optional Bloom filter in front of it, which answers for most new messages without taking a bucket's lock, another
+ *  2.5 to 5.
+ *  <p>
+ *  A message is only remembered once the listener has handled it successfully. Two different messages with the same hash
+ *  would be taken for one; at 64 bits that takes billions of messages in the table.
+ */
+public class DuplicateFilter {
+
+    public enum Key {
+        /** The <code>Message-Id</code> header, or the record's position if the message has none. */
+        MESSAGE_ID,
+        /** The topic, partition and offset of the record. */
+        POSITION
+    }
+
+    /** Returned for a message that has neither a message id nor a position, which is never taken for a duplicate. */
+    static final long NO_KEY = 0;
+    static final int WAYS = 8;
+    private static final int STRIPES = 64;
+
+    private final Key key;
+    private final long ttl;
+    private final int bucketMask;
+    private final long[] hashes;
+    private final long[] seenAt;
+    private final Object[] locks = new Object[STRIPES];
+    private final BloomFilter bloomFilter;
+    private final Meter hitsMeter;
+    private final Meter missesMeter;
+
+    /** @param capacity the number of messages remembered, rounded up to a power of two
+     *  @param ttl      the time in milliseconds a message is remembered for, or 0 to remember it until it is evicted
+     *  @param metrics  registry to which the hits and misses are reported; may be <code>null</code>
+     */
+    public DuplicateFilter(Key key, int capacity, long ttl, boolean bloomFilter, MetricRegistry metrics) {
+        this(key, capacity, ttl, bloomFilter, metrics, null);
+    }
+
+    /** @param prefix what the names of the metrics start with, such as the topic and the group; may be <code>null</code> */
+    public DuplicateFilter(Key key, int capacity, long ttl, boolean bloomFilter, MetricRegistry metrics, String prefix) {
+        int buckets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS - 1)) << 1;
+        this.key = key;
+        this.ttl = ttl;
+        this.bucketMask = buckets - 1;
+        this.hashes = new long[buckets * WAYS];
+        this.seenAt = new long[buckets * WAYS];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.bloomFilter = bloomFilter ? new BloomFilter(buckets * WAYS) : null;
+        MetricRegistry registry = metrics != null ? metrics : new MetricRegistry();
+        this.hitsMeter = registry.meter(MetricRegistry.name(prefix, DuplicateFilter.class.getName(), "hits"));
+        this.missesMeter = registry.meter(MetricRegistry.name(prefix, DuplicateFilter.class.getName(), "misses"));
+    }
+
+    /** @return the hash the message is remembered by, or {@link #NO_KEY} */
+    long keyOf(MessageRecord record, MessagePayload payload) {
+        if (key == Key.MESSAGE_ID) {
+            String messageId = payload.getMessageId();
+            if (messageId != null) {
+                return nonZero(mix(hash(messageId, 0xcbf29ce484222325L)));
+            }
+        }
+        if (!record.hasPosition()) {
+            return NO_KEY;
+        }
+        long hash = hash(record.getTopic(), 0x84222325cbf29ce4L);
+        hash = (hash ^ record.getPartition()) * 0x100000001b3L;
+        return nonZero(mix(hash ^ mix(record.getOffset())));
+    }
+
+    /** @return whether the message with hash <code>key</code> has been handled already, which is reported as a hit. A hit
+     *          is put in the Bloom filter again, so that it stays visible for as long as the table remembers it.
+     */
+    boolean isDuplicate(long key) {
+        if (key == NO_KEY || (bloomFilter != null && !bloomFilter.mightContain(key))) {
+            missesMeter.mark();
+            return false;
+        }
+        int bucket = (int) key & bucketMask;
+        int first = bucket * WAYS;
+        long now = System.currentTimeMillis();
+        boolean hit = false;
+        synchronized (locks[bucket & (STRIPES - 1)]) {
+            for (int slot = first; slot < first + WAYS; slot++) {
+                if (hashes[slot] == key && !expired(seenAt[slot], now)) {
+                    seenAt[slot] = now;
+                    hit = true;
+                    break;
+                }
+            }
+        }
+        if (!hit) {
+            missesMeter.mark();
+            return false;
+        }
+        if (bloomFilter != null) {
+            bloomFilter.put(key);
+        }
+        hitsMeter.mark();
+        return true;
+    }
+
+    /** Remembers that the message with hash <code>key</code> has been handled. */
+    void handled(long key) {
+        if (key == NO_KEY) {
+            return;
+        }
+        int bucket = (int) key & bucketMask;
+        int first = bucket * WAYS;
+        long now = System.currentTimeMillis();
+        synchronized (locks[bucket & (STRIPES - 1)]) {
+            int victim = first;
+            for (int slot = first; slot < first + WAYS; slot++) {
+                long hash = hashes[slot];
+                if (hash == key || hash == NO_KEY) {
+                    victim = slot;
+                    break;
+                }
+                if (seenAt[slot] < seenAt[victim]) {
+                    victim = slot;
+                }
+            }
+            hashes[victim] = key;
+            seenAt[victim] = now;
+        }
+        if (bloomFilter != null) {
+            bloomFilter.put(key);
+        }
+    }
+
+    private boolean expired(long seenAt, long now) {
+        return ttl > 0 && now - seenAt > ttl;
+    }
+
+    /** FNV-1a over the characters, without encoding the string. */
+    private static long hash(String value, long seed) {
+        long hash = seed;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** The finaliser of MurmurHash3, spreading every bit of <code>hash</code> over the bucket and Bloom filter bits. */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long nonZero(long hash) {
+        return hash == NO_KEY ? 1 : hash;
+    }
+
+    /** Two generations of {@value #HASHES} hash Bloom filter, with 10 bits per entry, about 1% false positives each. The
+     *  current generation is retired once it holds <code>capacity</code> entries, so the filter covers at least the last
+     *  <code>capacity</code> messages handled, as the table does.
+     */
+    private static class BloomFilter {
+
+        private static final int HASHES = 4;
+        private static final int BITS_PER_ENTRY = 10;
+
+        private final int capacity;
+        private final int words;
+        private final AtomicInteger entries = new AtomicInteger();
+        private volatile AtomicLongArray current;
+        private volatile AtomicLongArray previous;
+
+        BloomFilter(int capacity) {
+            this.capacity = capacity;
+            this.words = Math.max(1, Integer.highestOneBit(Math.max(1, (int) ((long) capacity * BITS_PER_ENTRY / 64) - 1)) << 1);
+            this.current = new AtomicLongArray(words);
+            this.previous = new AtomicLongArray(words);
+        }
+
+        boolean mightContain(long key) {
+            return contains(current, key) || contains(previous, key);
+        }
+
+        void put(long key) {
+            AtomicLongArray bits = current;
+            int high = (int) (key >>> 32);
+            int low = (int) key;
+            long mask = (long) words * 64 - 1;
+            for (int i = 1; i <= HASHES; i++) {
+                long bit = (low + (long) i * high) & mask;
+                int word = (int) (bit >>> 6);
+                long flag = 1L << bit;
+                long value;
+                while (((value = bits.get(word)) & flag) == 0 && !bits.compareAndSet(word, value, value | flag)) {
+                    // another thread set a bit of the same word meanwhile
+                }
+            }
+            if (entries.incrementAndGet() >= capacity) {
+                rotate(bits);
+            }
+        }
+
+        private synchronized void rotate(AtomicLongArray full) {
+            if (current == full) {
+                previous = full;
+                current = new AtomicLongArray(words);
+                entries.set(0);
+            }
+        }
+
+        private boolean contains(AtomicLongArray bits, long key) {
+            int high = (int) (key >>> 32);
+            int low = (int) key;
+            long mask = (long) words * 64 - 1;
+            for (int i = 1; i <= HASHES; i++) {
+                long bit = (low + (long) i * high) & mask;
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
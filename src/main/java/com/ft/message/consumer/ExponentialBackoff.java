@@ -0,0 +1,36 @@
+package com.ft.message.consumer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Doubles the delay with every consecutive backoff, from <code>initialDelay</code> up to <code>maxDelay</code>.
+ *  With full jitter, each delay is drawn uniformly between 0 and that bound, so that consumers which failed
+ *  together do not retry in lockstep. An <code>initialDelay</code> equal to <code>maxDelay</code> gives a fixed delay.
+ */
+public class ExponentialBackoff implements BackoffStrategy {
+
+    private final long initialDelay;
+    private final long maxDelay;
+    private final boolean fullJitter;
+    private long bound;
+
+    public ExponentialBackoff(long initialDelay, long maxDelay, boolean fullJitter) {
+        this.initialDelay = Math.min(initialDelay, maxDelay);
+        this.maxDelay = maxDelay;
+        this.fullJitter = fullJitter;
+    }
+
+    public static ExponentialBackoff fixed(long delay) {
+        return new ExponentialBackoff(delay, delay, false);
+    }
+
+    @Override
+    public long nextDelay() {
+        bound = bound == 0 ? initialDelay : Math.min(maxDelay, bound * 2);
+        return fullJitter && bound > 0 ? ThreadLocalRandom.current().nextLong(bound + 1) : bound;
+    }
+
+    @Override
+    public void reset() {
+        bound = 0;
+    }
+}
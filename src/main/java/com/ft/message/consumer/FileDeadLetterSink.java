@@ -0,0 +1,45 @@
+package com.ft.message.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Appends each dead letter to a local file as a line of JSON: its topic, partition, offset and timestamp, its key and
+ *  value base64 encoded, the number of attempts and the last error, if any.
+ */
+public class FileDeadLetterSink implements DeadLetterSink {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final Path file;
+
+    public FileDeadLetterSink(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized void send(MessageRecord record, int attempts, Throwable cause) throws IOException {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("topic", record.getTopic());
+        line.put("partition", record.getPartition());
+        line.put("offset", record.getOffset());
+        line.put("timestamp", record.getTimestamp());
+        line.put("key", record.getKey());
+        line.put("value", record.getValue());
+        line.put("attempts", attempts);
+        line.put("error", cause != null ? cause.toString() : null);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE)) {
+            writer.write(JSON.writeValueAsString(line));
+            writer.write('\n');
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+
+/** Supplies the ordering key of a record for key-ordered parallel dispatch.
+ *  Records with equal keys are always handed to the listener on the same worker, in the order
+ *  they were consumed. A <code>null</code> key means the record has no ordering constraint.
+ */
+public interface KeyExtractor {
+
+    String extractKey(MessageRecord record, MessagePayload payload);
+
+}
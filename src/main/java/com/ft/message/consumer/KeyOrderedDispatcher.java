@@ -0,0 +1,109 @@
+package com.ft.message.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Splits a batch over a fixed number of single-threaded lanes and delivers the lanes' sub-batches concurrently.
+ *  The lane is chosen from the key supplied by the {@link KeyExtractor}, so messages with the same key
+ *  are delivered in order on the same thread. Keyless messages are spread over the lanes in turn.
+ */
+class KeyOrderedDispatcher implements MessageDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeyOrderedDispatcher.class);
+    private static final AtomicInteger DISPATCHER_COUNT = new AtomicInteger();
+
+    private final ExecutorService[] lanes;
+    private final KeyExtractor keyExtractor;
+    private int nextLane;
+
+    KeyOrderedDispatcher(int workers, KeyExtractor keyExtractor) {
+        this.keyExtractor = keyExtractor;
+        this.lanes = new ExecutorService[workers];
+
+        int dispatcher = DISPATCHER_COUNT.incrementAndGet();
+        for (int i = 0; i < workers; i++) {
+            final String name = String.format("message-queue-dispatcher-%d-lane-%d", dispatcher, i);
+            lanes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Delivers <code>batch</code> to <code>listener</code> and waits until every lane has drained.
+     *  If the calling thread is interrupted, sub-batches that have not started yet are cancelled.
+     *  @return the outcome of each message, indexed by its position in <code>batch</code>
+     */
+    @Override
+    public BatchResult dispatch(MessageBatch batch, final BatchPayloadListener listener) throws InterruptedException {
+        MessageBatch[] subBatches = new MessageBatch[lanes.length];
+        List<List<Integer>> positions = new ArrayList<>(lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            subBatches[i] = new MessageBatch();
+            positions.add(new ArrayList<>());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            int lane = laneFor(keyExtractor.extractKey(batch.getRecord(i), batch.getPayload(i)));
+            subBatches[lane].add(batch.getRecord(i), batch.getPayload(i), batch.getTransactionId(i));
+            positions.get(lane).add(i);
+        }
+
+        List<Future<BatchResult>> pending = new ArrayList<>(lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            final MessageBatch subBatch = subBatches[i];
+            pending.add(subBatch.isEmpty() ? null : lanes[i].submit(() -> subBatch.deliverTo(listener)));
+        }
+
+        BatchResult result = BatchResult.success();
+        try {
+            for (int i = 0; i < lanes.length; i++) {
+                if (pending.get(i) == null) {
+                    continue;
+                }
+                try {
+                    BatchResult laneResult = pending.get(i).get();
+                    for (int failed : laneResult.getFailedIndexes()) {
+                        result.fail(positions.get(i).get(failed), laneResult.getFailureCause(failed));
+                    }
+                } catch (ExecutionException e) {
+                    LOGGER.error("outcome=Exception message=\"Error while dispatching messages.\"", e.getCause());
+                    for (int position : positions.get(i)) {
+                        result.fail(position, e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<BatchResult> future : pending) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+            throw e;
+        }
+        return result;
+    }
+
+    @Override
+    public void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdownNow();
+        }
+    }
+
+    private int laneFor(String key) {
+        if (key == null) {
+            nextLane = (nextLane + 1) % lanes.length;
+            return nextLane;
+        }
+        return (key.hashCode() & Integer.MAX_VALUE) % lanes.length;
+    }
+}
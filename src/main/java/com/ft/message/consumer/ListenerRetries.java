@@ -0,0 +1,202 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/** The messages of one stream the listener failed, by throwing or returning <code>false</code>, waiting to be handed to
+ *  it again. The <code>n</code>th retry of a message is due <code>initialDelay * 2^(n-1)</code> milliseconds, at most
+ *  <code>maxDelay</code>, after the failure; the stream hands over due retries between polls, so nothing here blocks it.
+ *  <p>
+ *  A message goes to the {@link DeadLetterSink} once it has failed <code>maxRetries</code> retries, or at once if
+ *  <code>capacity</code> messages are already waiting. A message the sink fails to take, e.g. while the proxy is unavailable,
+ *  keeps waiting, and holding back commits, and is sent to the sink again as its next retry would have been handed over,
+ *  until the sink takes it. Waiting messages hold a copy of their record, not a pooled buffer. Only used from the stream's thread.
+ */
+class ListenerRetries {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ListenerRetries.class);
+
+    private final int maxRetries;
+    private final int capacity;
+    private final long initialDelay;
+    private final long maxDelay;
+    private final DeadLetterSink deadLetterSink;
+    private final PriorityQueue<Retry> waiting = new PriorityQueue<>(11,
+            Comparator.comparingLong((Retry retry) -> retry.dueAt).thenComparingLong(retry -> retry.sequence));
+    private long sequence;
+    private long doneWith;
+
+    ListenerRetries(int maxRetries, int capacity, long initialDelay, long maxDelay, DeadLetterSink deadLetterSink) {
+        this.maxRetries = maxRetries;
+        this.capacity = capacity;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.deadLetterSink = deadLetterSink;
+    }
+
+    /** @param attempts the number of times the record has been handed to the listener, including the one that failed
+     *  @return <code>true</code> if the record will be retried, <code>false</code> if it is dead lettered instead
+     */
+    boolean failed(MessageRecord record, int attempts, Throwable cause) {
+        if (attempts > maxRetries) {
+            deadLetter(record, attempts, cause, 1);
+            return false;
+        }
+        if (waiting.size() >= capacity) {
+            LOGGER.warn(String.format("outcome=Exception message=\"%d message(s) already waiting for a retry; not retrying message at topic=%s partition=%d offset=%d.\"",
+                    waiting.size(), record.getTopic(), record.getPartition(), record.getOffset()));
+            deadLetter(record, attempts, cause, 1);
+            return false;
+        }
+        waiting.add(new Retry(copy(record), attempts, null, 0, System.currentTimeMillis() + delay(attempts), sequence++));
+        return true;
+    }
+
+    /** Sends the messages the dead letter sink failed to take, and due again, to the sink once more.
+     *  @return the retries due at <code>now</code>, in the order they fell due, removed from those waiting
+     */
+    List<Retry> takeDue(long now) {
+        if (waiting.isEmpty() || waiting.peek().dueAt > now) {
+            return Collections.emptyList();
+        }
+        List<Retry> due = new ArrayList<>();
+        List<Retry> deadLetters = new ArrayList<>();
+        while (!waiting.isEmpty() && waiting.peek().dueAt <= now) {
+            Retry retry = waiting.poll();
+            (retry.sends > 0 ? deadLetters : due).add(retry);
+        }
+        doneWith += due.size();
+        for (Retry retry : deadLetters) {
+            if (deadLetter(retry.record, retry.attempts, retry.cause, retry.sends + 1)) {
+                doneWith++;
+            }
+        }
+        return due;
+    }
+
+    /** @return the time in milliseconds until the next retry is due, or {@link Long#MAX_VALUE} if none is waiting */
+    long nextDueIn(long now) {
+        return waiting.isEmpty() ? Long.MAX_VALUE : Math.max(0, waiting.peek().dueAt - now);
+    }
+
+    /** @return the number of retries taken or dropped so far, which changes whenever the offsets waiting may have */
+    long getDoneWith() {
+        return doneWith;
+    }
+
+    boolean isEmpty() {
+        return waiting.isEmpty();
+    }
+
+    int size() {
+        return waiting.size();
+    }
+
+    /** @return the lowest offset waiting for a retry in each partition, by topic; commits must stay below it */
+    Map<String, Map<Integer, Long>> lowestWaitingOffsets() {
+        Map<String, Map<Integer, Long>> lowest = new HashMap<>();
+        for (Retry retry : waiting) {
+            MessageRecord record = retry.record;
+            if (!record.hasPosition()) {
+                continue;
+            }
+            Map<Integer, Long> partitions = lowest.get(record.getTopic());
+            if (partitions == null) {
+                partitions = new HashMap<>();
+                lowest.put(record.getTopic(), partitions);
+            }
+            Long offset = partitions.get(record.getPartition());
+            if (offset == null || record.getOffset() < offset) {
+                partitions.put(record.getPartition(), record.getOffset());
+            }
+        }
+        return lowest;
+    }
+
+    /** @return whether a record the proxy gave no position for is waiting, which no commit can stay below */
+    boolean isWaitingWithoutPosition() {
+        for (Retry retry : waiting) {
+            if (!retry.record.hasPosition()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Drops every waiting retry, neither retrying nor dead lettering it.
+     *  @return the number of retries dropped
+     */
+    int clear() {
+        int dropped = waiting.size();
+        waiting.clear();
+        doneWith += dropped;
+        return dropped;
+    }
+
+    long delay(int attempts) {
+        long delay = initialDelay;
+        for (int i = 1; i < attempts && delay < maxDelay; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, maxDelay);
+    }
+
+    /** A message the sink fails to take is kept waiting, so that its offset is not committed before the sink has it.
+     *  @param sends the number of times the message is sent to the sink, this one included
+     *  @return whether the sink took the message
+     */
+    private boolean deadLetter(MessageRecord record, int attempts, Throwable cause, int sends) {
+        try {
+            deadLetterSink.send(record, attempts, cause);
+            return true;
+        } catch (Throwable t) {
+            long delay = delay(sends);
+            LOGGER.error(String.format("outcome=Exception message=\"Error while sending message at topic=%s partition=%d offset=%d to the dead letter sink; sending it again in %d ms.\"",
+                    record.getTopic(), record.getPartition(), record.getOffset(), delay), t);
+            waiting.add(new Retry(sends > 1 ? record : copy(record), attempts, cause, sends, System.currentTimeMillis() + delay, sequence++));
+            return false;
+        }
+    }
+
+    private static MessageRecord copy(MessageRecord record) {
+        return new MessageRecord(record.getTopic(), record.getKey(), record.getValue(),
+                record.getPartition(), record.getOffset(), record.getTimestamp());
+    }
+
+    static class Retry {
+
+        private final MessageRecord record;
+        private final int attempts;
+        private final Throwable cause;
+        // the number of times the message was sent to the dead letter sink, which failed to take it; 0 for a listener retry
+        private final int sends;
+        private final long dueAt;
+        private final long sequence;
+
+        Retry(MessageRecord record, int attempts, Throwable cause, int sends, long dueAt, long sequence) {
+            this.record = record;
+            this.attempts = attempts;
+            this.cause = cause;
+            this.sends = sends;
+            this.dueAt = dueAt;
+            this.sequence = sequence;
+        }
+
+        MessageRecord getRecord() {
+            return record;
+        }
+
+        int getAttempts() {
+            return attempts;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Logs each dead letter with its position, the default when neither a dead letter topic nor file is configured. */
+public class LoggingDeadLetterSink implements DeadLetterSink {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoggingDeadLetterSink.class);
+
+    @Override
+    public void send(MessageRecord record, int attempts, Throwable cause) {
+        LOGGER.error(String.format("outcome=Exception message=\"Giving up on message at topic=%s partition=%d offset=%d after %d attempt(s).\"",
+                record.getTopic(), record.getPartition(), record.getOffset(), attempts), cause);
+    }
+}
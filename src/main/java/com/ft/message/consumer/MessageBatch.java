@@ -0,0 +1,91 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.messaging.standards.message.v1.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Messages waiting to be handed to a listener, together with the records they were read from. */
+class MessageBatch {
+
+    private List<MessageRecord> records = new ArrayList<>();
+    private List<MessagePayload> payloads = new ArrayList<>();
+    private List<String> transactionIds = new ArrayList<>();
+    private long firstAddedAt;
+
+    void add(MessageRecord record, MessagePayload payload, String transactionId) {
+        if (payloads.isEmpty()) {
+            firstAddedAt = System.currentTimeMillis();
+        }
+        records.add(record);
+        payloads.add(payload);
+        transactionIds.add(transactionId);
+    }
+
+    int size() {
+        return payloads.size();
+    }
+
+    boolean isEmpty() {
+        return payloads.isEmpty();
+    }
+
+    /** @return how long, in milliseconds, the oldest message has been waiting */
+    long age() {
+        return payloads.isEmpty() ? 0 : System.currentTimeMillis() - firstAddedAt;
+    }
+
+    MessageRecord getRecord(int index) {
+        return records.get(index);
+    }
+
+    MessagePayload getPayload(int index) {
+        return payloads.get(index);
+    }
+
+    String getTransactionId(int index) {
+        return transactionIds.get(index);
+    }
+
+    /** Starts a new batch, returning the records' pooled buffers. The lists handed to a listener are left
+     *  untouched in case it keeps them; parsed messages stay valid, payloads do not. The new lists are sized
+     *  for a batch like the last one, so that they do not grow as it fills.
+     */
+    void clear() {
+        if (!payloads.isEmpty()) {
+            int size = payloads.size();
+            for (int i = 0; i < size; i++) {
+                records.get(i).release();
+            }
+            records = new ArrayList<>(size);
+            payloads = new ArrayList<>(size);
+            transactionIds = new ArrayList<>(size);
+        }
+    }
+
+    /** Hands the batch to <code>listener</code>; if the listener throws, every message is reported as failed. */
+    BatchResult deliverTo(BatchPayloadListener listener) {
+        try {
+            BatchResult result = listener instanceof BatchMessageListener
+                    ? ((BatchMessageListener) listener).onMessages(Collections.unmodifiableList(messages()), Collections.unmodifiableList(transactionIds))
+                    : listener.onPayloads(Collections.unmodifiableList(payloads), Collections.unmodifiableList(transactionIds));
+            return result != null ? result : BatchResult.success();
+        } catch (Throwable t) {
+            BatchResult result = BatchResult.success();
+            for (int i = 0; i < payloads.size(); i++) {
+                result.fail(i, t);
+            }
+            return result;
+        }
+    }
+
+    private List<Message> messages() {
+        List<Message> messages = new ArrayList<>(payloads.size());
+        for (MessagePayload payload : payloads) {
+            messages.add(payload.toMessage());
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,22 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+
+/** Where a message was read from, as reported by the proxy. Values the proxy did not return are
+ *  <code>null</code> or one of the <code>UNKNOWN_</code> constants of {@link MessageRecord}.
+ */
+public interface MessageContext {
+
+    String getTopic();
+
+    int getPartition();
+
+    long getOffset();
+
+    /** @return the decoded Kafka record key, or <code>null</code> if the record has none */
+    byte[] getKey();
+
+    /** @return the Kafka timestamp of the record in epoch milliseconds, which only some proxy versions return */
+    long getTimestamp();
+
+}
@@ -0,0 +1,12 @@
+package com.ft.message.consumer;
+
+/** Hands a batch to a listener on threads other than the consuming one. */
+interface MessageDispatcher {
+
+    /** Delivers <code>batch</code> to <code>listener</code> and waits until every message has been handled.
+     *  @return the outcome of each message, indexed by its position in <code>batch</code>
+     */
+    BatchResult dispatch(MessageBatch batch, BatchPayloadListener listener) throws InterruptedException;
+
+    void shutdown();
+}
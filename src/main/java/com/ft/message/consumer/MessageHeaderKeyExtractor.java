@@ -0,0 +1,18 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+
+/** Uses the value of a custom FT message header as the ordering key. */
+public class MessageHeaderKeyExtractor implements KeyExtractor {
+
+    private final String headerName;
+
+    public MessageHeaderKeyExtractor(String headerName) {
+        this.headerName = headerName;
+    }
+
+    @Override
+    public String extractKey(MessageRecord record, MessagePayload payload) {
+        return payload.getHeader(headerName);
+    }
+}
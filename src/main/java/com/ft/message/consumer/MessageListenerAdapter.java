@@ -0,0 +1,42 @@
+package com.ft.message.consumer;
+
+import com.ft.messaging.standards.message.v1.Message;
+
+import java.util.List;
+
+/** Delivers a batch to a single-message {@link MessageListener}, one message at a time and in order,
+ *  with the transaction id of each message set in the MDC. A message whose listener call throws is reported as failed,
+ *  as is every message left once the thread is interrupted. One the listener returns <code>false</code> for is reported
+ *  as rejected, which the consumer only counts as a failure when listener retries are configured.
+ */
+public class MessageListenerAdapter implements BatchMessageListener {
+
+    private final MessageListener listener;
+
+    public MessageListenerAdapter(MessageListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public BatchResult onMessages(List<Message> messages, List<String> transactionIds) {
+        BatchResult result = BatchResult.success();
+        for (int i = 0; i < messages.size(); i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                result.interrupted(i, messages.size());
+                break;
+            }
+            String transactionId = transactionIds.get(i);
+            try {
+                TransactionIdMdc.put(transactionId);
+                if (!listener.onMessage(messages.get(i), transactionId)) {
+                    result.rejected(i);
+                }
+            } catch (Throwable t) {
+                result.fail(i, t);
+            } finally {
+                TransactionIdMdc.remove();
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,222 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.messaging.standards.message.v1.Message;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** A view over an FT message (<code>FTMSG/1.0</code>) held in a record value, without copying it.
+ *  Headers are looked up by scanning the header section, and the body is exposed as a buffer or a stream,
+ *  so that listeners which only need a header or the raw body never build the full {@link Message}.
+ *  It is also the {@link MessageContext} of the message, backed by the record it was read from.
+ *  <p>
+ *  A payload is only valid until the listener it was handed to returns: its buffer may then be reused.
+ */
+public class MessagePayload implements MessageContext {
+
+    private static final byte[] PREAMBLE = "FTMSG/1.0".getBytes(StandardCharsets.US_ASCII);
+
+    private final ByteBuffer buffer;
+    private final int headersEnd;
+    private final MessageRecord record;
+    private Message message;
+
+    private MessagePayload(ByteBuffer buffer, int headersEnd, MessageRecord record) {
+        this.buffer = buffer;
+        this.headersEnd = headersEnd;
+        this.record = record;
+    }
+
+    /** @throws IllegalArgumentException if the value of <code>record</code> is not an FT message */
+    public static MessagePayload parse(MessageRecord record) {
+        return parse(record.getPayload(), record, true);
+    }
+
+    /** Parses a value that did not come from a record, so that its context is unknown.
+     *  @throws IllegalArgumentException if <code>buffer</code> does not hold an FT message
+     */
+    public static MessagePayload parse(ByteBuffer buffer) {
+        return parse(buffer, null, false);
+    }
+
+    /** @param owned whether <code>buffer</code> is a view of its own, as a record hands out, which needs no slice
+     *               if it starts at the beginning of the value
+     */
+    private static MessagePayload parse(ByteBuffer buffer, MessageRecord record, boolean owned) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Message is empty");
+        }
+        ByteBuffer view = owned && buffer.position() == 0 ? buffer : buffer.slice();
+        if (!startsWith(view, PREAMBLE)) {
+            throw new IllegalArgumentException("Message does not start with FTMSG/1.0");
+        }
+        int limit = view.limit();
+        for (int i = PREAMBLE.length; i + 3 < limit; i++) {
+            if (view.get(i) == '\r' && view.get(i + 1) == '\n' && view.get(i + 2) == '\r' && view.get(i + 3) == '\n') {
+                return new MessagePayload(view, i, record);
+            }
+        }
+        throw new IllegalArgumentException("Message has no end of headers");
+    }
+
+    /** @return the trimmed value of the first header called <code>name</code>, or <code>null</code> if there is none */
+    public String getHeader(String name) {
+        int lineStart = indexAfterLineBreak(0);
+        while (lineStart >= 0 && lineStart < headersEnd) {
+            int lineEnd = lineEnd(lineStart);
+            int colon = lineStart + name.length();
+            if (colon < lineEnd && buffer.get(colon) == ':' && regionMatches(lineStart, name)) {
+                return decodeTrimmed(colon + 1, lineEnd);
+            }
+            lineStart = indexAfterLineBreak(lineEnd);
+        }
+        return null;
+    }
+
+    public String getMessageId() {
+        return getHeader("Message-Id");
+    }
+
+    /** @return a read-only view of the header section, without the blank line that ends it */
+    public ByteBuffer getHeaders() {
+        return view(0, headersEnd);
+    }
+
+    /** @return a read-only view of the body */
+    public ByteBuffer getBody() {
+        return view(headersEnd + 4, buffer.limit());
+    }
+
+    public InputStream getBodyStream() {
+        final ByteBuffer body = getBody();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return body.hasRemaining() ? body.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!body.hasRemaining()) {
+                    return -1;
+                }
+                int count = Math.min(len, body.remaining());
+                body.get(b, off, count);
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return body.remaining();
+            }
+        };
+    }
+
+    @Override
+    public String getTopic() {
+        return record != null ? record.getTopic() : null;
+    }
+
+    @Override
+    public int getPartition() {
+        return record != null ? record.getPartition() : MessageRecord.UNKNOWN_PARTITION;
+    }
+
+    @Override
+    public long getOffset() {
+        return record != null ? record.getOffset() : MessageRecord.UNKNOWN_OFFSET;
+    }
+
+    @Override
+    public byte[] getKey() {
+        return record != null ? record.getKey() : null;
+    }
+
+    @Override
+    public long getTimestamp() {
+        return record != null ? record.getTimestamp() : MessageRecord.UNKNOWN_TIMESTAMP;
+    }
+
+    /** Parses the whole message, copying it; the result is kept, and stays valid after the payload has been released. */
+    public synchronized Message toMessage() {
+        if (message == null) {
+            ByteBuffer copy = buffer.duplicate();
+            copy.clear();
+            byte[] bytes = new byte[copy.remaining()];
+            copy.get(bytes);
+            message = Message.parse(bytes);
+        }
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return message != null ? message.toString() : "MessagePayload{Message-Id=" + getMessageId() + "}";
+    }
+
+    private ByteBuffer view(int from, int to) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(to).position(from);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    private int indexAfterLineBreak(int from) {
+        for (int i = from; i + 1 < buffer.limit(); i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n') {
+                return i + 2;
+            }
+        }
+        return -1;
+    }
+
+    private int lineEnd(int from) {
+        for (int i = from; i < headersEnd; i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n') {
+                return i;
+            }
+        }
+        return headersEnd;
+    }
+
+    /** Header names are ASCII, so they are compared char by char without being encoded. */
+    private boolean regionMatches(int from, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (buffer.get(from + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Trims on the bytes, as {@link String#trim()} would on the decoded value, so that only the value itself is decoded. */
+    private String decodeTrimmed(int from, int to) {
+        while (from < to && (buffer.get(from) & 0xff) <= ' ') {
+            from++;
+        }
+        while (to > from && (buffer.get(to - 1) & 0xff) <= ' ') {
+            to--;
+        }
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, byte[] prefix) {
+        if (buffer.limit() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
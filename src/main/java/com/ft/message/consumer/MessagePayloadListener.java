@@ -0,0 +1,8 @@
+package com.ft.message.consumer;
+
+/** Receives each message unparsed, as a view that is only valid until this call returns. */
+public interface MessagePayloadListener {
+
+    boolean onMessage(MessagePayload payload, String transactionId);
+
+}
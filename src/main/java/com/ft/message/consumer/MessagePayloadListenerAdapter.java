@@ -0,0 +1,40 @@
+package com.ft.message.consumer;
+
+import java.util.List;
+
+/** Delivers a batch to a single-message {@link MessagePayloadListener}, one message at a time and in order,
+ *  with the transaction id of each message set in the MDC. A message whose listener call throws is reported as failed,
+ *  as is every message left once the thread is interrupted. One the listener returns <code>false</code> for is reported
+ *  as rejected, which the consumer only counts as a failure when listener retries are configured.
+ */
+public class MessagePayloadListenerAdapter implements BatchPayloadListener {
+
+    private final MessagePayloadListener listener;
+
+    public MessagePayloadListenerAdapter(MessagePayloadListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public BatchResult onPayloads(List<MessagePayload> payloads, List<String> transactionIds) {
+        BatchResult result = BatchResult.success();
+        for (int i = 0; i < payloads.size(); i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                result.interrupted(i, payloads.size());
+                break;
+            }
+            String transactionId = transactionIds.get(i);
+            try {
+                TransactionIdMdc.put(transactionId);
+                if (!listener.onMessage(payloads.get(i), transactionId)) {
+                    result.rejected(i);
+                }
+            } catch (Throwable t) {
+                result.fail(i, t);
+            } finally {
+                TransactionIdMdc.remove();
+            }
+        }
+        return result;
+    }
+}
@@ -1,104 +1,811 @@
 package com.ft.message.consumer;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.ft.api.util.transactionid.TransactionIdUtils;
 import com.ft.message.consumer.proxy.MessageQueueProxyService;
 import com.ft.message.consumer.proxy.QueueProxyServiceException;
 import com.ft.message.consumer.proxy.model.MessageRecord;
-import com.ft.messaging.standards.message.v1.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 public class MessageQueueConsumer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MessageQueueConsumer.class);
-    private static final String TRANSACTION_ID = "transaction_id";
 
-    private final MessageListener listener;
+    private final BatchPayloadListener listener;
+    private final boolean parseMessages;
     private MessageQueueProxyService messageQueueProxyService;
     private int backoffPeriod;
+    private final BackoffStrategy emptyPollBackoff;
+    private final BackoffStrategy errorBackoff;
     private URI consumerInstance;
+    private boolean subscribed;
+    private final int maxRetries;
+    private int retries;
     private boolean autoCommit;
+    private int prefetchRecords;
+    private long prefetchBytes;
+    private RecordPrefetcher prefetcher;
+    private MessageDispatcher dispatcher;
+    private int batchMaxSize;
+    private long batchLinger;
+    private boolean streamingDecode;
+    private final MessageBatch batch = new MessageBatch();
+    private boolean uncommitted;
+    private ExecutorService commitExecutor;
+    private OffsetCommitter offsetCommitter;
+    private final ListenerRetries listenerRetries;
+    private final boolean retryRejections;
+    private final MessageBatch retryBatch = new MessageBatch();
+    private final DuplicateFilter duplicateFilter;
+    private final CountDownLatch draining = new CountDownLatch(1);
+    private final StreamLoad load = new StreamLoad();
+    private final StreamStatus status;
+    private long lastTimestamp = MessageRecord.UNKNOWN_TIMESTAMP;
+    private final Meter messagesMeter;
+    private final Meter listenerFailuresMeter;
+    private final Meter resetsMeter;
+    private final Meter retriesMeter;
+    private final Meter listenerRetriesMeter;
+    private final Meter deadLettersMeter;
+    private final Timer listenerTimer;
 
     public MessageQueueConsumer(MessageQueueProxyService messageQueueProxyService, MessageListener listener, int backoffPeriod, boolean autoCommit) {
-        this.listener = listener;
-        this.messageQueueProxyService = messageQueueProxyService;
-        this.backoffPeriod = backoffPeriod;
-        this.autoCommit = autoCommit;
+        this(new Builder(messageQueueProxyService, listener).withBackoffPeriod(backoffPeriod).withAutoCommit(autoCommit));
+    }
+
+    private MessageQueueConsumer(Builder builder) {
+        this.listener = builder.listener;
+        this.parseMessages = builder.listener instanceof BatchMessageListener;
+        this.messageQueueProxyService = builder.messageQueueProxyService;
+        this.backoffPeriod = builder.backoffPeriod;
+        if (builder.longPolling) {
+            this.emptyPollBackoff = ExponentialBackoff.fixed(0);
+        } else {
+            this.emptyPollBackoff = builder.emptyPollBackoff != null ? builder.emptyPollBackoff : ExponentialBackoff.fixed(backoffPeriod);
+        }
+        this.errorBackoff = builder.errorBackoff != null ? builder.errorBackoff : ExponentialBackoff.fixed(backoffPeriod);
+        this.maxRetries = builder.maxRetries;
+        this.autoCommit = builder.autoCommit;
+        this.prefetchRecords = builder.prefetchRecords;
+        this.prefetchBytes = builder.prefetchBytes;
+        if (builder.listenerExecutor != null) {
+            this.dispatcher = new ConcurrentDispatcher(builder.listenerExecutor, builder.listenerConcurrency);
+        } else if (builder.dispatchWorkers > 1) {
+            this.dispatcher = new KeyOrderedDispatcher(builder.dispatchWorkers,
+                    builder.keyExtractor != null ? builder.keyExtractor : new RecordKeyExtractor());
+        }
+        this.batchMaxSize = builder.batchMaxSize;
+        this.batchLinger = builder.batchLinger;
+        this.streamingDecode = builder.streamingDecode;
+        this.duplicateFilter = builder.duplicateFilter;
+        this.listenerRetries = builder.deadLetterSink != null ? new ListenerRetries(builder.listenerRetries,
+                builder.listenerRetryCapacity, builder.initialListenerRetryDelay, builder.maxListenerRetryDelay, builder.deadLetterSink) : null;
+        // a listener returning false used to skip the message, as it still does unless it is to be retried
+        this.retryRejections = listenerRetries != null && builder.listenerRetries > 0;
+        // commits have to stay below the records waiting for a retry, which only explicit offsets can
+        if (!autoCommit && (builder.commitMaxRecords > 0 || listenerRetries != null)) {
+            this.commitExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "message-queue-consumer-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.offsetCommitter = builder.commitMaxRecords > 0
+                    ? new OffsetCommitter(messageQueueProxyService, commitExecutor, builder.commitMaxRecords, builder.commitInterval, listenerRetries)
+                    : new OffsetCommitter(messageQueueProxyService, commitExecutor, 1, 0, listenerRetries);
+        }
+        MetricRegistry metrics = builder.metrics != null ? builder.metrics : new MetricRegistry();
+        String stream = builder.metricsName != null ? builder.metricsName : "stream";
+        this.status = new StreamStatus(stream);
+        String prefix = MetricRegistry.name(builder.metricsPrefix, MessageQueueConsumer.class.getName());
+        this.messagesMeter = metrics.meter(MetricRegistry.name(prefix, stream, "messages"));
+        this.listenerFailuresMeter = metrics.meter(MetricRegistry.name(prefix, stream, "listener-failures"));
+        this.resetsMeter = metrics.meter(MetricRegistry.name(prefix, stream, "resets"));
+        this.retriesMeter = metrics.meter(MetricRegistry.name(prefix, stream, "retries"));
+        this.listenerRetriesMeter = metrics.meter(MetricRegistry.name(prefix, stream, "listener-retries"));
+        this.deadLettersMeter = metrics.meter(MetricRegistry.name(prefix, stream, "dead-letters"));
+        this.listenerTimer = metrics.timer(MetricRegistry.name(prefix, stream, "listener"));
     }
 
     public void consume() {
         try {
             if (consumerInstance == null) {
                 consumerInstance = messageQueueProxyService.createConsumerInstance();
+                subscribed = false;
+            }
+            if (!subscribed) {
                 messageQueueProxyService.subscribeConsumerInstanceToTopic(consumerInstance);
+                subscribed = true;
             }
-            List<MessageRecord> messageRecords = messageQueueProxyService.consumeMessages(consumerInstance);
-            if (messageRecords == null || messageRecords.isEmpty()) {
-                backOff();
+            if (prefetchRecords > 0 && prefetcher == null) {
+                prefetcher = new RecordPrefetcher(messageQueueProxyService, consumerInstance, prefetchRecords, prefetchBytes, emptyPollBackoff);
+                prefetcher.start();
+            }
+            retryDue();
+            status.polling();
+            if (prefetcher != null) {
+                consumePrefetched();
+            } else if (streamingDecode) {
+                consumeStreamed();
             } else {
-                handleMessages(messageRecords);
-                if(!autoCommit) {
-                    messageQueueProxyService.commitOffsets(consumerInstance);
-                }
+                consumeDirectly();
             }
+            retries = 0;
             if(Thread.currentThread().isInterrupted()) {
               resetConsumer("Consumer thread has been interrupted.", null);
             }
         } catch (QueueProxyServiceException e) {
-          resetConsumer("Error while communicating with queue proxy.", e);
+          if (!retry(e)) {
+              resetConsumer("Error while communicating with queue proxy.", e);
+          }
         } catch (Throwable t) {
           resetConsumer(t.getMessage(), t);
         }
     }
-    
+
+    private void consumeDirectly() throws InterruptedException {
+        List<MessageRecord> messageRecords = messageQueueProxyService.consumeMessages(consumerInstance);
+        status.polled(messageRecords != null ? messageRecords.size() : 0);
+        if (messageRecords == null || messageRecords.isEmpty()) {
+            load.recordPoll(0, MessageRecord.UNKNOWN_TIMESTAMP);
+            flush();
+            commit();
+            backOff(emptyPollBackoff);
+        } else {
+            resetBackoff();
+            handleMessages(messageRecords);
+            commit();
+        }
+    }
+
+    /** Hands records over while the response is still being decoded: each micro-batch is flushed as soon as it
+     *  reaches <code>batchMaxSize</code> messages, or after every message if micro-batching is not configured.
+     */
+    private void consumeStreamed() throws InterruptedException {
+        int flushSize = batchMaxSize > 0 ? batchMaxSize : 1;
+        int count = messageQueueProxyService.consumeMessages(consumerInstance, record -> handleRecord(record, flushSize));
+        load.recordPoll(count, lastTimestamp);
+        status.polled(count);
+        if (count == 0) {
+            flush();
+            commit();
+            backOff(emptyPollBackoff);
+        } else {
+            resetBackoff();
+            completePoll();
+            commit();
+        }
+    }
+
+    private void consumePrefetched() throws InterruptedException {
+        // the prefetcher backs off on empty polls, so only wait for the next batch here, or the next retry
+        List<MessageRecord> messageRecords = prefetcher.poll(listenerRetries != null
+                ? Math.min(backoffPeriod, listenerRetries.nextDueIn(System.currentTimeMillis())) : backoffPeriod);
+        status.polled(messageRecords.size());
+        if (messageRecords.isEmpty()) {
+            load.recordPoll(0, MessageRecord.UNKNOWN_TIMESTAMP);
+            flush();
+        } else {
+            errorBackoff.reset();
+            handleMessages(messageRecords);
+        }
+        commit();
+    }
+
+    /** Commits the offsets of everything handed to the listener, unless messages are still waiting in a micro-batch. */
+    private void commit() throws InterruptedException {
+        if (offsetCommitter != null) {
+            if (batch.isEmpty()) {
+                offsetCommitter.markProcessed();
+                offsetCommitter.commitIfDue(consumerInstance);
+            }
+            return;
+        }
+        if (autoCommit || !uncommitted || !batch.isEmpty()) {
+            return;
+        }
+        if (prefetcher != null) {
+            final URI instance = consumerInstance;
+            uncommitted = !prefetcher.commit(() -> messageQueueProxyService.commitOffsets(instance));
+        } else {
+            messageQueueProxyService.commitOffsets(consumerInstance);
+            uncommitted = false;
+        }
+    }
+
+    /** Backs off and leaves the consumer instance in place after a retryable error, so that the next call to {@link #consume()}
+     *  makes the failed call again rather than recreating the instance, which would rebalance every consumer of the group.
+     *  A prefetcher is restarted: it only fails once every batch it fetched has been handed out.
+     *  @return <code>false</code> if the consumer has to be reset instead, as after <code>maxRetries</code> errors in a row
+     */
+    private boolean retry(QueueProxyServiceException e) {
+        if (!e.isRetryable() || consumerInstance == null || retries >= maxRetries || Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        retries++;
+        retriesMeter.mark();
+        status.failed(e);
+        LOGGER.warn(String.format("outcome=Exception message=\"Error while communicating with queue proxy; retry %d of %d with the same consumer instance.\"",
+                retries, maxRetries), e);
+        if (prefetcher != null) {
+            prefetcher.stop();
+            prefetcher = null;
+        }
+        backOff(errorBackoff);
+        return true;
+    }
+
     private void resetConsumer(String reason, Throwable t) {
       String msg = reason;
+      if (prefetcher != null) {
+          prefetcher.stop();
+          prefetcher = null;
+      }
+      flushBeforeReset();
+      commitBeforeReset();
       try {
           if (consumerInstance != null) {
-              messageQueueProxyService.destroyConsumerInstanceSubscription(consumerInstance);
-              messageQueueProxyService.destroyConsumerInstance(consumerInstance);
+              destroyConsumerInstance();
           }
       } catch (Throwable t1) {
         msg += "; Error while destroying consumer instance.";
       } finally {
         if (t != null) {
           LOGGER.error(String.format("outcome=Exception message=\"%s\"", msg), t);
+          resetsMeter.mark();
+          status.failed(t);
           consumerInstance = null;
-          backOff();
+          retries = 0;
+          uncommitted = false;
+          dropRetries();
+          backOff(errorBackoff);
         }
       }
     }
-    
-    private void backOff() {
+
+    /** The instance is destroyed even if its subscription could not be, so that the proxy service forgets its endpoints. */
+    private void destroyConsumerInstance() {
         try {
-            TimeUnit.MILLISECONDS.sleep(backoffPeriod);
+            messageQueueProxyService.destroyConsumerInstanceSubscription(consumerInstance);
+        } finally {
+            messageQueueProxyService.destroyConsumerInstance(consumerInstance);
+        }
+    }
+
+    /** Messages waiting for a retry go with the consumer instance: their offsets have not been committed, so whichever
+     *  instance is assigned their partitions next consumes them again. With auto commit they have been, so they are
+     *  kept and retried regardless.
+     */
+    private void dropRetries() {
+        if (listenerRetries == null || autoCommit) {
+            return;
+        }
+        int dropped = listenerRetries.clear();
+        if (dropped > 0) {
+            LOGGER.info(String.format("Dropped %d message(s) waiting for a retry with the consumer instance; they will be consumed again", dropped));
+        }
+    }
+
+    /** Messages already consumed but still waiting in a micro-batch are handed to the listener before the
+     *  consumer instance is destroyed, unless the thread has been interrupted.
+     */
+    private void flushBeforeReset() {
+        try {
+            if (!Thread.currentThread().isInterrupted()) {
+                flush();
+                if (offsetCommitter != null) {
+                    offsetCommitter.markProcessed();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            batch.clear();
+            if (offsetCommitter != null) {
+                offsetCommitter.discardUnprocessed();
+            }
+        }
+    }
+
+    /** With explicit commits, the offsets of everything processed are committed before the instance is destroyed,
+     *  so that whichever instance is assigned its partitions next does not process those messages again.
+     */
+    private void commitBeforeReset() {
+        if (offsetCommitter == null || consumerInstance == null) {
+            return;
+        }
+        try {
+            offsetCommitter.flush(consumerInstance);
+        } catch (Throwable t) {
+            LOGGER.warn("outcome=Exception message=\"Error while committing offsets before destroying consumer instance.\"", t);
+        }
+    }
+
+    private void resetBackoff() {
+        emptyPollBackoff.reset();
+        errorBackoff.reset();
+    }
+
+    /** Sleeps for the next delay of <code>backoff</code>, or until the next retry of a failed message is due; interrupting
+     *  the thread, as shutting down the stream executor does, or a {@link #drain()} ends the sleep at once.
+     */
+    private void backOff(BackoffStrategy backoff) {
+        long delay = backoff.nextDelay();
+        if (listenerRetries != null) {
+            delay = Math.min(delay, listenerRetries.nextDueIn(System.currentTimeMillis()));
+        }
+        try {
+            draining.await(delay, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
             LOGGER.warn("Interrupted while sleeping", e);
             Thread.currentThread().interrupt();
         }
     }
 
+    /** Asks the consumer to stop polling: a call to {@link #consume()} in progress completes the batch it is handling, without
+     *  backing off, and the thread running the consumer is then expected to call {@link #close()} rather than poll again.
+     *  May be called from any thread.
+     */
+    public void drain() {
+        draining.countDown();
+        status.draining();
+    }
+
+    public boolean isDraining() {
+        return draining.getCount() == 0;
+    }
+
+    /** Ends a {@link #drain()}: hands the messages still waiting in a micro-batch, or already prefetched, to the listener,
+     *  commits the offsets of everything processed, then destroys the subscription and the consumer instance, logging the
+     *  time each phase took. Offsets are not committed if the messages could not all be handed over.
+     */
+    public void close() {
+        if (consumerInstance == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean finished = finishBatches();
+        long batchesFinished = System.nanoTime();
+        if (finished) {
+            commitBeforeClose();
+        }
+        long committed = System.nanoTime();
+        try {
+            destroyConsumerInstance();
+        } catch (Throwable t) {
+            LOGGER.warn("outcome=Exception message=\"Error while destroying consumer instance.\"", t);
+        } finally {
+            consumerInstance = null;
+            if (listenerRetries != null && !listenerRetries.isEmpty()) {
+                LOGGER.warn(String.format("Dropped %d message(s) waiting for a retry on close%s", listenerRetries.clear(),
+                        autoCommit ? "" : "; they will be consumed again"));
+            }
+        }
+        long destroyed = System.nanoTime();
+        LOGGER.info(String.format("Drained consumer instance: batches finished in %d ms, offsets committed in %d ms, instance destroyed in %d ms",
+                TimeUnit.NANOSECONDS.toMillis(batchesFinished - start), TimeUnit.NANOSECONDS.toMillis(committed - batchesFinished),
+                TimeUnit.NANOSECONDS.toMillis(destroyed - committed)));
+    }
+
+    /** A prefetcher is paused, so that only the batches it already holds are handed out, and then stopped.
+     *  @return whether every message consumed from the instance has been handed to the listener
+     */
+    private boolean finishBatches() {
+        try {
+            if (prefetcher != null) {
+                prefetcher.pause();
+                List<MessageRecord> messageRecords;
+                while (!(messageRecords = prefetcher.poll(0)).isEmpty()) {
+                    handleMessages(messageRecords);
+                }
+            }
+            flush();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Throwable t) {
+            LOGGER.error("outcome=Exception message=\"Error while finishing batches before destroying consumer instance.\"", t);
+            return false;
+        } finally {
+            if (prefetcher != null) {
+                prefetcher.stop();
+                prefetcher = null;
+            }
+            batch.clear();
+            if (offsetCommitter != null) {
+                offsetCommitter.discardUnprocessed();
+            }
+        }
+    }
+
+    private void commitBeforeClose() {
+        if (offsetCommitter != null) {
+            commitBeforeReset();
+            return;
+        }
+        if (autoCommit || !uncommitted) {
+            return;
+        }
+        try {
+            messageQueueProxyService.commitOffsets(consumerInstance);
+            uncommitted = false;
+        } catch (Throwable t) {
+            LOGGER.warn("outcome=Exception message=\"Error while committing offsets before destroying consumer instance.\"", t);
+        }
+    }
+
+    /** @return the load of the stream, for {@link StreamAutoscaler} */
+    StreamLoad getLoad() {
+        return load;
+    }
+
+    public StreamStatus getStreamStatus() {
+        return status;
+    }
+
+    /** Releases the worker threads used for parallel dispatch and explicit commits. */
+    public void shutdown() {
+        status.stopped();
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+        if (commitExecutor != null) {
+            commitExecutor.shutdown();
+        }
+    }
+
     private void handleMessages(List<MessageRecord> messageRecords) throws InterruptedException{
         for (MessageRecord messageRecord : messageRecords) {
-            if(Thread.currentThread().isInterrupted()) {
-                throw new InterruptedException();
-            }
-            Message message = null;
-            try {
-                message = Message.parse(messageRecord.getValue());
-                String transactionId = message.getCustomMessageHeader(TransactionIdUtils.TRANSACTION_ID_HEADER);
-                MDC.put(TRANSACTION_ID, "transaction_id=" + transactionId);
-                listener.onMessage(message, transactionId);
-            } catch (Throwable t) {
-                LOGGER.error(String.format("outcome=Exception message=\"Error while processing message [%s].\"", message), t);
-            } finally {
-                MDC.remove(TRANSACTION_ID);
+            handleRecord(messageRecord, batchMaxSize);
+        }
+        load.recordPoll(messageRecords.size(), lastTimestamp);
+        completePoll();
+    }
+
+    private void handleRecord(MessageRecord messageRecord, int flushSize) throws InterruptedException {
+        if(Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+        uncommitted = true;
+        lastTimestamp = messageRecord.getTimestamp();
+        if (offsetCommitter != null) {
+            offsetCommitter.track(messageRecord);
+        }
+        MessagePayload payload = parse(messageRecord);
+        if (payload == null || isDuplicate(messageRecord, payload)) {
+            return;
+        }
+        batch.add(messageRecord, payload, payload.getHeader(TransactionIdUtils.TRANSACTION_ID_HEADER));
+        if (flushSize > 0 && batch.size() >= flushSize) {
+            flush();
+        }
+    }
+
+    private void completePoll() throws InterruptedException {
+        if (batchMaxSize == 0 || batch.age() >= batchLinger) {
+            flush();
+        }
+    }
+
+    /** Messages are only parsed up front for listeners that receive them parsed; payload listeners get a view of the record value. */
+    private MessagePayload parse(MessageRecord messageRecord) {
+        try {
+            MessagePayload payload = MessagePayload.parse(messageRecord);
+            if (parseMessages) {
+                payload.toMessage();
+            }
+            return payload;
+        } catch (Throwable t) {
+            LOGGER.error("outcome=Exception message=\"Error while parsing message.\"", t);
+            messageRecord.release();
+            return null;
+        }
+    }
+
+    /** Messages the listener fails are retried if retries are configured, before the batch gives their buffers back. */
+    private void flush() throws InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        status.processing();
+        try {
+            BatchResult result = deliver(batch);
+            for (int index : result.getFailedIndexes()) {
+                LOGGER.error("outcome=Exception message=\"Error while processing message [{}].\"", batch.getPayload(index),
+                        result.getFailureCause(index));
+                if (listenerRetries != null) {
+                    scheduleRetry(batch.getRecord(index), 1, result.getFailureCause(index));
+                }
             }
+        } finally {
+            batch.clear();
+        }
+        // an interrupted listener may have stopped short of some messages, whose offsets must not be committed
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+        if (offsetCommitter != null) {
+            offsetCommitter.markProcessed();
+        }
+    }
+
+    /** Hands the messages whose retry is due back to the listener, on the stream thread and ahead of the next poll.
+     *  Their offsets were tracked when they were first consumed, and are held back from commits until they are done with.
+     */
+    private void retryDue() throws InterruptedException {
+        if (listenerRetries == null) {
+            return;
+        }
+        List<ListenerRetries.Retry> due = listenerRetries.takeDue(System.currentTimeMillis());
+        if (due.isEmpty()) {
+            return;
+        }
+        status.processing();
+        List<ListenerRetries.Retry> retried = new ArrayList<>(due.size());
+        try {
+            for (ListenerRetries.Retry retry : due) {
+                MessagePayload payload = parse(retry.getRecord());
+                if (payload != null) {
+                    retryBatch.add(retry.getRecord(), payload, payload.getHeader(TransactionIdUtils.TRANSACTION_ID_HEADER));
+                    retried.add(retry);
+                }
+            }
+            listenerRetriesMeter.mark(retried.size());
+            BatchResult result = deliver(retryBatch);
+            for (int index : result.getFailedIndexes()) {
+                ListenerRetries.Retry retry = retried.get(index);
+                LOGGER.warn("outcome=Exception message=\"Error while retrying message [{}], attempt {}.\"",
+                        retryBatch.getPayload(index), retry.getAttempts() + 1, result.getFailureCause(index));
+                scheduleRetry(retry.getRecord(), retry.getAttempts() + 1, result.getFailureCause(index));
+            }
+        } finally {
+            retryBatch.clear();
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    private void scheduleRetry(MessageRecord record, int attempts, Throwable cause) {
+        if (!listenerRetries.failed(record, attempts, cause)) {
+            deadLettersMeter.mark();
+        }
+    }
+
+    private BatchResult deliver(MessageBatch messages) throws InterruptedException {
+        long start = System.nanoTime();
+        BatchResult result = dispatcher != null ? dispatcher.dispatch(messages, listener) : messages.deliverTo(listener);
+        if (!retryRejections) {
+            result.withoutRejections();
+        }
+        long elapsed = System.nanoTime() - start;
+        listenerTimer.update(elapsed, TimeUnit.NANOSECONDS);
+        load.recordListener(elapsed);
+        messagesMeter.mark(messages.size());
+        listenerFailuresMeter.mark(result.getFailedIndexes().size());
+        rememberHandled(messages, result);
+        return result;
+    }
+
+    /** A message handled already is skipped; its offset is still committed with the others. */
+    private boolean isDuplicate(MessageRecord messageRecord, MessagePayload payload) {
+        if (duplicateFilter == null || !duplicateFilter.isDuplicate(duplicateFilter.keyOf(messageRecord, payload))) {
+            return false;
+        }
+        messageRecord.release();
+        return true;
+    }
+
+    /** Only the messages the listener succeeded with are remembered, and none if it was interrupted, as it may have
+     *  stopped short of some.
+     */
+    private void rememberHandled(MessageBatch messages, BatchResult result) {
+        if (duplicateFilter == null || Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            if (!result.isFailed(i)) {
+                duplicateFilter.handled(duplicateFilter.keyOf(messages.getRecord(i), messages.getPayload(i)));
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private final MessageQueueProxyService messageQueueProxyService;
+        private final BatchPayloadListener listener;
+        private int backoffPeriod;
+        private BackoffStrategy emptyPollBackoff;
+        private BackoffStrategy errorBackoff;
+        private boolean longPolling;
+        private int maxRetries;
+        private boolean autoCommit;
+        private int prefetchRecords;
+        private long prefetchBytes;
+        private int dispatchWorkers;
+        private KeyExtractor keyExtractor;
+        private ExecutorService listenerExecutor;
+        private int listenerConcurrency;
+        private int batchMaxSize;
+        private long batchLinger;
+        private boolean streamingDecode;
+        private int commitMaxRecords;
+        private long commitInterval;
+        private int listenerRetries;
+        private int listenerRetryCapacity;
+        private long initialListenerRetryDelay;
+        private long maxListenerRetryDelay;
+        private DeadLetterSink deadLetterSink;
+        private DuplicateFilter duplicateFilter;
+        private MetricRegistry metrics;
+        private String metricsPrefix;
+        private String metricsName;
+
+        public Builder(MessageQueueProxyService messageQueueProxyService, MessageListener listener) {
+            this(messageQueueProxyService, new MessageListenerAdapter(listener));
+        }
+
+        /** Accepts a {@link BatchMessageListener}, which receives parsed messages, or any other
+         *  {@link BatchPayloadListener}, such as a {@link MessagePayloadListenerAdapter}, which receives unparsed payloads.
+         */
+        public Builder(MessageQueueProxyService messageQueueProxyService, BatchPayloadListener listener) {
+            this.messageQueueProxyService = messageQueueProxyService;
+            this.listener = listener;
+        }
+
+        public Builder withBackoffPeriod(int backoffPeriod) {
+            this.backoffPeriod = backoffPeriod;
+            return this;
+        }
+
+        /** Replaces the fixed <code>backoffPeriod</code> sleep after an empty poll and after an error.
+         *  Both strategies are reset once a poll returns messages.
+         */
+        public Builder withBackoff(BackoffStrategy emptyPollBackoff, BackoffStrategy errorBackoff) {
+            this.emptyPollBackoff = emptyPollBackoff;
+            this.errorBackoff = errorBackoff;
+            return this;
+        }
+
+        /** Set when the proxy service long-polls, i.e. the proxy itself waits for records before answering an empty poll:
+         *  empty polls are then followed by the next poll at once rather than by the empty poll backoff.
+         */
+        public Builder withLongPolling(boolean longPolling) {
+            this.longPolling = longPolling;
+            return this;
+        }
+
+        /** Retries a call that failed with a {@link QueueProxyServiceException#isRetryable() retryable} error against the
+         *  same consumer instance, after the error backoff, up to <code>maxRetries</code> times in a row; the instance is
+         *  only recreated after other errors, or once the retries are exhausted. 0, the default, recreates it after any error.
+         */
+        public Builder withRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public Builder withAutoCommit(boolean autoCommit) {
+            this.autoCommit = autoCommit;
+            return this;
+        }
+
+        /** Prefetches up to <code>records</code> records (and at most <code>bytes</code> of record values)
+         *  while the listener processes the current batch. A <code>records</code> of 0 disables prefetching.
+         */
+        public Builder withPrefetch(int records, long bytes) {
+            this.prefetchRecords = records;
+            this.prefetchBytes = bytes;
+            return this;
+        }
+
+        /** Hands each batch to <code>workers</code> worker threads, keeping the order of messages that share
+         *  the key supplied by <code>keyExtractor</code> (the Kafka record key if <code>null</code>).
+         *  A batch is only complete, and its offsets committed, once every worker has drained.
+         *  A <code>workers</code> of 0 or 1 delivers messages on the consuming thread.
+         */
+        public Builder withDispatchWorkers(int workers, KeyExtractor keyExtractor) {
+            this.dispatchWorkers = workers;
+            this.keyExtractor = keyExtractor;
+            return this;
+        }
+
+        /** Hands each message of a batch to the listener in a call of its own, submitted to <code>executor</code>,
+         *  with at most <code>maxConcurrency</code> calls in progress; the order of messages is not kept.
+         *  A batch is only complete, and its offsets committed, once every call has returned.
+         *  The executor, typically one starting a virtual thread per task, is not shut down with the consumer.
+         *  Takes precedence over {@link #withDispatchWorkers(int, KeyExtractor)}.
+         */
+        public Builder withConcurrentDispatch(ExecutorService executor, int maxConcurrency) {
+            this.listenerExecutor = executor;
+            this.listenerConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /** Accumulates messages across polls and hands them to the listener once <code>maxSize</code> messages
+         *  are waiting, or the oldest has waited <code>linger</code> milliseconds, or a poll returns nothing.
+         *  A <code>maxSize</code> of 0 hands each poll to the listener as it arrives.
+         */
+        public Builder withMicroBatching(int maxSize, long linger) {
+            this.batchMaxSize = maxSize;
+            this.batchLinger = linger;
+            return this;
+        }
+
+        /** Decodes each response record by record and hands messages over before the whole response has been read,
+         *  instead of binding the full list of records first. Ignored when prefetching is configured.
+         */
+        public Builder withStreamingDecode(boolean streamingDecode) {
+            this.streamingDecode = streamingDecode;
+            return this;
+        }
+
+        /** Commits the offset of the last processed record of each partition on a background thread, instead of
+         *  committing the instance's position after every poll. Commits are coalesced until <code>maxRecords</code>
+         *  records have been processed or <code>interval</code> milliseconds have passed, and whatever is left is
+         *  committed before the consumer instance is destroyed. A <code>maxRecords</code> of 0, or auto commit, disables them.
+         */
+        public Builder withExplicitCommits(int maxRecords, long interval) {
+            this.commitMaxRecords = maxRecords;
+            this.commitInterval = interval;
+            return this;
+        }
+
+        /** Hands each message the listener fails, by throwing or returning <code>false</code>, back to it up to
+         *  <code>maxRetries</code> more times, the first after <code>initialDelay</code> milliseconds and each following one
+         *  after twice as long, up to <code>maxDelay</code>, with up to <code>capacity</code> messages waiting at once.
+         *  Retries are handed over between polls, and commits do not pass a message waiting for one. Messages whose retries
+         *  are exhausted, or that find no room, go to <code>deadLetterSink</code>. A <code>null</code> sink disables retries;
+         *  with auto commit, offsets are committed regardless of the messages waiting.
+         */
+        public Builder withListenerRetries(int maxRetries, int capacity, long initialDelay, long maxDelay, DeadLetterSink deadLetterSink) {
+            this.listenerRetries = maxRetries;
+            this.listenerRetryCapacity = capacity;
+            this.initialListenerRetryDelay = initialDelay;
+            this.maxListenerRetryDelay = maxDelay;
+            this.deadLetterSink = deadLetterSink;
+            return this;
+        }
+
+        /** Skips the messages <code>duplicateFilter</code> remembers as handled, and has it remember each message the
+         *  listener handles successfully. The filter is typically shared by every stream. <code>null</code>, the default,
+         *  hands every message over.
+         */
+        public Builder withDuplicateFilter(DuplicateFilter duplicateFilter) {
+            this.duplicateFilter = duplicateFilter;
+            return this;
+        }
+
+        /** Reports, under <code>name</code>, the messages handed to the listener, the messages it failed,
+         *  the time each delivery to the listener took, the resets of the consumer instance after errors,
+         *  the calls retried with the same instance, and the messages retried and dead lettered.
+         */
+        public Builder withMetrics(MetricRegistry metrics, String name) {
+            return withMetrics(metrics, null, name);
+        }
+
+        /** As {@link #withMetrics(MetricRegistry, String)}, under names starting with <code>prefix</code>, such as
+         *  the topic and the group, so that the streams of several consumers can report to the same registry.
+         */
+        public Builder withMetrics(MetricRegistry metrics, String prefix, String name) {
+            this.metrics = metrics;
+            this.metricsPrefix = prefix;
+            this.metricsName = name;
+            return this;
+        }
+
+        public MessageQueueConsumer build() {
+            return new MessageQueueConsumer(this);
         }
     }
 }
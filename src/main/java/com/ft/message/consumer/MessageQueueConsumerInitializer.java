@@ -1,30 +1,66 @@
 package com.ft.message.consumer;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.ft.message.consumer.config.HealthcheckConfiguration;
 import com.ft.message.consumer.config.MessageQueueConsumerConfiguration;
+import com.ft.message.consumer.health.CanConnectToMessageQueueProxyHealthcheck;
+import com.ft.message.consumer.health.MessageQueueProxyConsumerLagHealthcheck;
 import com.ft.message.consumer.health.PassiveMessageQueueProxyConsumerHealthcheck;
-import com.ft.message.consumer.proxy.MessageQueueProxyService;
+import com.ft.message.consumer.proxy.AsyncMessageQueueProxyServiceImpl;
+import com.ft.message.consumer.proxy.ConsumerLagSampler;
+import com.ft.message.consumer.proxy.ConsumerPositions;
+import com.ft.message.consumer.proxy.EmbeddedFormat;
 import com.ft.message.consumer.proxy.MessageQueueProxyServiceImpl;
+import com.ft.message.consumer.proxy.ProxyDeadLetterSink;
+import com.ft.message.consumer.proxy.QueueProxyServiceException;
 import com.ft.platform.dropwizard.AdvancedHealthCheck;
+import com.google.common.base.Strings;
 import com.sun.jersey.api.client.Client;
 import io.dropwizard.lifecycle.Managed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class MessageQueueConsumerInitializer implements Managed {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MessageQueueConsumerInitializer.class);
 
     private final MessageQueueConsumerConfiguration messageQueueConsumerConfiguration;
-    private final MessageListener messageListener;
+    private final BatchPayloadListener messageListener;
     private final Client queueProxyClient;
-    private final MessageQueueProxyService messageQueueProxyService;
+    private final MessageQueueProxyServiceImpl messageQueueProxyService;
+    private final AsyncMessageQueueProxyServiceImpl asyncMessageQueueProxyService;
+    private final List<InfiniteStreamHandler> streams = new CopyOnWriteArrayList<>();
+    private final List<AsyncMessageQueueConsumer> asyncConsumers = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService asyncExecutor;
+    private ExecutorService asyncListenerExecutor;
+    private StreamAutoscaler autoscaler;
+    private ScheduledExecutorService autoscaleExecutor;
+    private int nextStreamId;
+    private int partitions;
+    private boolean stopped;
+    private final ConsumerLagSampler lagSampler;
+    private final List<CanConnectToMessageQueueProxyHealthcheck> connectivityChecks = new CopyOnWriteArrayList<>();
+    private boolean started;
+    private final KeyExtractor keyExtractor;
+    private final DeadLetterSink deadLetterSink;
+    private final DuplicateFilter duplicateFilter;
+    private final MetricRegistry metrics;
+    private final String metricsPrefix;
     final ExecutorService startupExecutor;
+    final ExecutorService listenerExecutor;
     
     public MessageQueueConsumerInitializer(MessageQueueConsumerConfiguration consumerConfiguration,
                                            MessageListener listener,
@@ -37,41 +73,433 @@ public class MessageQueueConsumerInitializer implements Managed {
                                            MessageListener listener,
                                            Client queueProxyClient,
                                            ExecutorService executorService) {
+
+        this(consumerConfiguration, listener, queueProxyClient, executorService, null);
+    }
+
+    /** @param keyExtractor supplies the ordering key when <code>dispatchWorkers</code> is configured;
+     *                     if <code>null</code>, the configured <code>dispatchKeyHeader</code> or else the Kafka record key is used
+     */
+    public MessageQueueConsumerInitializer(MessageQueueConsumerConfiguration consumerConfiguration,
+                                           MessageListener listener,
+                                           Client queueProxyClient,
+                                           ExecutorService executorService,
+                                           KeyExtractor keyExtractor) {
+
+        this(consumerConfiguration, new MessageListenerAdapter(listener), queueProxyClient, executorService, keyExtractor);
+    }
+
+    public MessageQueueConsumerInitializer(MessageQueueConsumerConfiguration consumerConfiguration,
+                                           BatchPayloadListener listener,
+                                           Client queueProxyClient) {
+
+        this(consumerConfiguration, listener, queueProxyClient, null, null);
+    }
+
+    public MessageQueueConsumerInitializer(MessageQueueConsumerConfiguration consumerConfiguration,
+                                           BatchPayloadListener listener,
+                                           Client queueProxyClient,
+                                           ExecutorService executorService,
+                                           KeyExtractor keyExtractor) {
+
+        this(consumerConfiguration, listener, queueProxyClient, executorService, keyExtractor, null);
+    }
+
+    /** @param metrics registry to which, per stream, proxy calls and message and listener metrics are reported, under names
+     *                 starting with the topic and the group; may be <code>null</code>
+     */
+    public MessageQueueConsumerInitializer(MessageQueueConsumerConfiguration consumerConfiguration,
+                                           BatchPayloadListener listener,
+                                           Client queueProxyClient,
+                                           ExecutorService executorService,
+                                           KeyExtractor keyExtractor,
+                                           MetricRegistry metrics) {
+
+        this(consumerConfiguration, listener, queueProxyClient, executorService, keyExtractor, metrics, null);
+    }
+
+    /** @param deadLetterSink receives the messages whose listener retries are exhausted; if <code>null</code>, the configured
+     *                       <code>deadLetterTopic</code> or <code>deadLetterFile</code>, or else the log, is used
+     *  @throws IllegalArgumentException if <code>asyncTransport</code> is set along with prefetching, parallel dispatch,
+     *                                   micro-batching, streaming decode, explicit commits, listener retries or dead letters,
+     *                                   which asynchronous streams do not support
+     */
+    public MessageQueueConsumerInitializer(MessageQueueConsumerConfiguration consumerConfiguration,
+                                           BatchPayloadListener listener,
+                                           Client queueProxyClient,
+                                           ExecutorService executorService,
+                                           KeyExtractor keyExtractor,
+                                           MetricRegistry metrics,
+                                           DeadLetterSink deadLetterSink) {
+
+        this(consumerConfiguration, listener, queueProxyClient, executorService, keyExtractor, metrics, deadLetterSink, null);
+    }
+
+    /** @param embeddedFormat the format of the records, e.g. one of their own; if <code>null</code>, the built-in format
+     *                       named by the configured <code>embeddedFormat</code>
+     */
+    public MessageQueueConsumerInitializer(MessageQueueConsumerConfiguration consumerConfiguration,
+                                           BatchPayloadListener listener,
+                                           Client queueProxyClient,
+                                           ExecutorService executorService,
+                                           KeyExtractor keyExtractor,
+                                           MetricRegistry metrics,
+                                           DeadLetterSink deadLetterSink,
+                                           EmbeddedFormat embeddedFormat) {
       
         this.queueProxyClient = queueProxyClient;
         this.messageQueueConsumerConfiguration = consumerConfiguration;
         this.messageListener = listener;
-        this.startupExecutor = executorService != null ?
-            executorService : Executors.newFixedThreadPool(consumerConfiguration.getStreamCount());
+        boolean virtualThreads = consumerConfiguration.isVirtualThreads() && VirtualThreads.isAvailable();
+        if (consumerConfiguration.isVirtualThreads() && !virtualThreads) {
+            LOGGER.warn("Virtual threads need Java 21 and the library built with the java21 profile; using platform threads");
+        }
+        if (executorService != null) {
+            this.startupExecutor = executorService;
+        } else if (virtualThreads) {
+            this.startupExecutor = VirtualThreads.newThreadPerTaskExecutor("message-queue-stream");
+        } else if (consumerConfiguration.isAutoscaling()) {
+            // a removed stream keeps its thread while it drains: in a fixed pool, the stream added next could be left queued
+            this.startupExecutor = Executors.newCachedThreadPool();
+        } else {
+            this.startupExecutor = Executors.newFixedThreadPool(consumerConfiguration.getStreamCount());
+        }
+        if (consumerConfiguration.getListenerConcurrency() <= 0) {
+            this.listenerExecutor = null;
+        } else if (virtualThreads) {
+            this.listenerExecutor = VirtualThreads.newThreadPerTaskExecutor("message-queue-listener");
+        } else {
+            this.listenerExecutor = Executors.newCachedThreadPool();
+        }
+        this.metrics = metrics;
+        this.metricsPrefix = MetricRegistry.name(consumerConfiguration.getTopicName(), consumerConfiguration.getGroupName());
+        ConsumerPositions positions = consumerConfiguration.getLagSampleInterval() > 0 ?
+            new ConsumerPositions(consumerConfiguration.isAutoCommit()) : null;
         this.messageQueueProxyService =
-            new MessageQueueProxyServiceImpl(messageQueueConsumerConfiguration, queueProxyClient);
+            new MessageQueueProxyServiceImpl(messageQueueConsumerConfiguration, queueProxyClient, metrics, positions, embeddedFormat);
+        this.asyncMessageQueueProxyService = consumerConfiguration.isAsyncTransport() ?
+            new AsyncMessageQueueProxyServiceImpl(messageQueueConsumerConfiguration, queueProxyClient, metrics, positions, embeddedFormat) : null;
+        this.lagSampler = positions != null ?
+            new ConsumerLagSampler(messageQueueConsumerConfiguration, queueProxyClient, positions, metrics) : null;
+        if (keyExtractor != null) {
+            this.keyExtractor = keyExtractor;
+        } else if (!Strings.isNullOrEmpty(consumerConfiguration.getDispatchKeyHeader())) {
+            this.keyExtractor = new MessageHeaderKeyExtractor(consumerConfiguration.getDispatchKeyHeader());
+        } else {
+            this.keyExtractor = new RecordKeyExtractor();
+        }
+        if (deadLetterSink != null) {
+            this.deadLetterSink = deadLetterSink;
+        } else if (!Strings.isNullOrEmpty(consumerConfiguration.getDeadLetterTopic())) {
+            this.deadLetterSink = new ProxyDeadLetterSink(consumerConfiguration, queueProxyClient);
+        } else if (!Strings.isNullOrEmpty(consumerConfiguration.getDeadLetterFile())) {
+            this.deadLetterSink = new FileDeadLetterSink(Paths.get(consumerConfiguration.getDeadLetterFile()));
+        } else if (consumerConfiguration.getListenerRetries() > 0) {
+            this.deadLetterSink = new LoggingDeadLetterSink();
+        } else {
+            this.deadLetterSink = null;
+        }
+        List<String> blockingOnly = blockingOnlySettings(consumerConfiguration);
+        if (!blockingOnly.isEmpty()) {
+            throw new IllegalArgumentException(String.format("%s only apply to blocking streams: unset them or asyncTransport",
+                    String.join(", ", blockingOnly)));
+        }
+        if (consumerConfiguration.isAsyncTransport() && this.deadLetterSink != null) {
+            throw new IllegalArgumentException("Listener retries and dead letters only apply to blocking streams: unset them or asyncTransport");
+        }
+        this.duplicateFilter = consumerConfiguration.getDedupCapacity() > 0 ? new DuplicateFilter(
+                "position".equalsIgnoreCase(consumerConfiguration.getDedupKey()) ? DuplicateFilter.Key.POSITION : DuplicateFilter.Key.MESSAGE_ID,
+                consumerConfiguration.getDedupCapacity(), consumerConfiguration.getDedupTtl(),
+                consumerConfiguration.isDedupBloomFilter(), metrics, metricsPrefix) : null;
+    }
+
+    /** @return the settings made that asynchronous streams would ignore, if <code>asyncTransport</code> is set */
+    private static List<String> blockingOnlySettings(MessageQueueConsumerConfiguration consumerConfiguration) {
+        List<String> settings = new ArrayList<>();
+        if (!consumerConfiguration.isAsyncTransport()) {
+            return settings;
+        }
+        if (consumerConfiguration.getPrefetchRecords() > 0) {
+            settings.add("prefetchRecords");
+        }
+        if (consumerConfiguration.getDispatchWorkers() > 1) {
+            settings.add("dispatchWorkers");
+        }
+        if (consumerConfiguration.getBatchMaxSize() > 0) {
+            settings.add("batchMaxSize");
+        }
+        if (consumerConfiguration.isStreamingDecode()) {
+            settings.add("streamingDecode");
+        }
+        if (consumerConfiguration.isExplicitCommit()) {
+            settings.add("explicitCommit");
+        }
+        return settings;
     }
 
     @Override
     public void start() throws Exception {
+        if (lagSampler != null) {
+            lagSampler.start();
+        }
+        synchronized (this) {
+            started = true;
+            for (CanConnectToMessageQueueProxyHealthcheck check : connectivityChecks) {
+                check.start();
+            }
+        }
+        if (asyncMessageQueueProxyService != null) {
+            if (messageQueueConsumerConfiguration.isAutoscaling()) {
+                LOGGER.warn("Autoscaling only applies to blocking streams; running streamCount asynchronous streams");
+            }
+            startAsync();
+            return;
+        }
+        int streamCount = messageQueueConsumerConfiguration.getStreamCount();
+        if (messageQueueConsumerConfiguration.isAutoscaling()) {
+            autoscaler = new StreamAutoscaler(messageQueueConsumerConfiguration.getAutoscaleMinStreams(),
+                    messageQueueConsumerConfiguration.getAutoscaleMaxStreams(),
+                    messageQueueConsumerConfiguration.getAutoscaleLagThreshold(),
+                    messageQueueConsumerConfiguration.getAutoscaleStableSamples());
+            readPartitionCount();
+            streamCount = autoscaler.bound(streamCount, partitions);
+        }
+        synchronized (this) {
+            for (int i = 0; i < streamCount; i++) {
+                addStream();
+            }
+        }
+        if (autoscaler != null) {
+            startAutoscaling();
+        }
+        LOGGER.info("Lazy start for ReceivedMessagesHandler executed");
+    }
+
+    /** Stream ids are never reused, so that a stream added after another was removed does not report to its metrics. */
+    private void addStream() {
+        int i = nextStreamId++;
+        InfiniteStreamHandler stream = new InfiniteStreamHandler(
+                new MessageQueueConsumer.Builder(messageQueueProxyService.forStream("stream-" + i), messageListener)
+                        .withBackoffPeriod(messageQueueConsumerConfiguration.getBackoffPeriod())
+                        .withBackoff(
+                                new ExponentialBackoff(messageQueueConsumerConfiguration.getInitialEmptyPollBackoff(),
+                                        messageQueueConsumerConfiguration.getBackoffPeriod(), false),
+                                new ExponentialBackoff(messageQueueConsumerConfiguration.getInitialErrorBackoff(),
+                                        messageQueueConsumerConfiguration.getBackoffPeriod(), true))
+                        .withLongPolling(messageQueueConsumerConfiguration.getFetchTimeout() > 0)
+                        .withRetries(messageQueueConsumerConfiguration.getMaxRetries())
+                        .withAutoCommit(messageQueueConsumerConfiguration.isAutoCommit())
+                        .withPrefetch(messageQueueConsumerConfiguration.getPrefetchRecords(),
+                                messageQueueConsumerConfiguration.getPrefetchBytes())
+                        .withDispatchWorkers(messageQueueConsumerConfiguration.getDispatchWorkers(), keyExtractor)
+                        .withConcurrentDispatch(listenerExecutor, messageQueueConsumerConfiguration.getListenerConcurrency())
+                        .withMicroBatching(messageQueueConsumerConfiguration.getBatchMaxSize(),
+                                messageQueueConsumerConfiguration.getBatchLinger())
+                        .withStreamingDecode(messageQueueConsumerConfiguration.isStreamingDecode())
+                        .withExplicitCommits(messageQueueConsumerConfiguration.isExplicitCommit() ?
+                                        messageQueueConsumerConfiguration.getCommitMaxRecords() : 0,
+                                messageQueueConsumerConfiguration.getCommitInterval())
+                        .withListenerRetries(messageQueueConsumerConfiguration.getListenerRetries(),
+                                messageQueueConsumerConfiguration.getListenerRetryCapacity(),
+                                messageQueueConsumerConfiguration.getInitialListenerRetryDelay(),
+                                messageQueueConsumerConfiguration.getMaxListenerRetryDelay(), deadLetterSink)
+                        .withDuplicateFilter(duplicateFilter)
+                        .withMetrics(metrics, metricsPrefix, "stream-" + i)
+                        .build());
+        streams.add(stream);
+        startupExecutor.submit(stream);
+    }
+
+    /** Samples the load of the streams every <code>autoscaleInterval</code> and adds or removes a stream as
+     *  {@link StreamAutoscaler} decides. A stream is removed by draining it, so that it commits what it has processed
+     *  and destroys its consumer instance before the group rebalances.
+     */
+    private void startAutoscaling() {
+        if (metrics != null) {
+            String name = MetricRegistry.name(metricsPrefix, MessageQueueConsumerInitializer.class.getName(), "streams");
+            try {
+                metrics.register(name, (Gauge<Integer>) streams::size);
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn(String.format("outcome=Exception message=\"%s is already reported by another consumer of the same topic and group.\"", name));
+            }
+        }
+        autoscaleExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-queue-autoscaler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = messageQueueConsumerConfiguration.getAutoscaleInterval();
+        autoscaleExecutor.scheduleWithFixedDelay(this::autoscale, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void autoscale() {
+        if (stopped) {
+            return;
+        }
+        try {
+            readPartitionCount();
+            long now = System.nanoTime();
+            List<StreamLoad.Sample> samples = new ArrayList<>(streams.size());
+            for (InfiniteStreamHandler stream : streams) {
+                samples.add(stream.getLoad().sample(now));
+            }
+            int target = autoscaler.decide(samples, streams.size(), partitions);
+            while (streams.size() < target) {
+                addStream();
+            }
+            while (streams.size() > target) {
+                streams.remove(streams.size() - 1).drain();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("outcome=Exception message=\"Error while autoscaling streams.\"", e);
+        }
+    }
+
+    /** Keeps the last partition count read if the proxy cannot be reached. */
+    private void readPartitionCount() {
+        try {
+            partitions = messageQueueProxyService.getPartitionCount();
+        } catch (QueueProxyServiceException e) {
+            LOGGER.warn("outcome=Exception message=\"Unable to read the partitions of the topic.\"", e);
+        }
+    }
+
+    int getStreamCount() {
+        return streams.size();
+    }
+
+    /** Runs every stream as an {@link AsyncMessageQueueConsumer}, all of them sharing <code>asyncThreads</code> threads
+     *  for listener calls and a thread for backoff delays. Micro-batching, prefetching, parallel dispatch, streaming decode,
+     *  explicit commits, listener retries and dead letters only apply to blocking streams, and are refused by the constructor.
+     */
+    private void startAsync() {
+        asyncExecutor = Executors.newSingleThreadScheduledExecutor();
+        asyncListenerExecutor = Executors.newFixedThreadPool(messageQueueConsumerConfiguration.getAsyncThreads());
         for (int i = 0; i < messageQueueConsumerConfiguration.getStreamCount(); i++) {
-            startupExecutor.submit(new InfiniteStreamHandler(new MessageQueueConsumer(
-                    messageQueueProxyService,
-                    messageListener,
-                    messageQueueConsumerConfiguration.getBackoffPeriod(),
-                    messageQueueConsumerConfiguration.isAutoCommit())));
+            AsyncMessageQueueConsumer consumer = new AsyncMessageQueueConsumer.Builder(
+                    asyncMessageQueueProxyService.forStream("stream-" + i), messageListener, asyncExecutor)
+                    .withListenerExecutor(asyncListenerExecutor)
+                    .withBackoffPeriod(messageQueueConsumerConfiguration.getBackoffPeriod())
+                    .withBackoff(
+                            new ExponentialBackoff(messageQueueConsumerConfiguration.getInitialEmptyPollBackoff(),
+                                    messageQueueConsumerConfiguration.getBackoffPeriod(), false),
+                            new ExponentialBackoff(messageQueueConsumerConfiguration.getInitialErrorBackoff(),
+                                    messageQueueConsumerConfiguration.getBackoffPeriod(), true))
+                    .withLongPolling(messageQueueConsumerConfiguration.getFetchTimeout() > 0)
+                    .withRetries(messageQueueConsumerConfiguration.getMaxRetries())
+                    .withAutoCommit(messageQueueConsumerConfiguration.isAutoCommit())
+                    .withDuplicateFilter(duplicateFilter)
+                    .withMetrics(metrics, metricsPrefix, "stream-" + i)
+                    .build();
+            asyncConsumers.add(consumer);
+            consumer.start();
         }
         LOGGER.info("Lazy start for ReceivedMessagesHandler executed");
     }
 
+    /** Drains the streams before the client is destroyed: they stop polling, finish the batches in progress, commit their
+     *  offsets and destroy their consumer instances. Streams still running after <code>drainTimeout</code> are interrupted.
+     */
     @Override
     public void stop() throws Exception {
         LOGGER.info("Gracefully shutting down");
+        long start = System.nanoTime();
+        if (autoscaleExecutor != null) {
+            autoscaleExecutor.shutdownNow();
+        }
+        if (lagSampler != null) {
+            lagSampler.stop();
+        }
+        for (CanConnectToMessageQueueProxyHealthcheck check : connectivityChecks) {
+            check.stop();
+        }
+        if (asyncExecutor != null) {
+            stopAsync();
+        } else {
+            drainStreams();
+        }
+        long drained = System.nanoTime();
         queueProxyClient.destroy();
-        startupExecutor.shutdownNow();
-        startupExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        if (listenerExecutor != null) {
+            listenerExecutor.shutdownNow();
+        }
+        LOGGER.info(String.format("Shut down: streams drained in %d ms, client closed in %d ms",
+                TimeUnit.NANOSECONDS.toMillis(drained - start), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - drained)));
+    }
+
+    private void drainStreams() throws InterruptedException {
+        synchronized (this) {
+            stopped = true;
+            for (InfiniteStreamHandler stream : streams) {
+                stream.drain();
+            }
+        }
+        long drainTimeout = messageQueueConsumerConfiguration.getDrainTimeout();
+        startupExecutor.shutdown();
+        if (!startupExecutor.awaitTermination(drainTimeout, TimeUnit.MILLISECONDS)) {
+            LOGGER.warn(String.format("outcome=Exception message=\"Streams did not drain within %d ms; interrupting them.\"", drainTimeout));
+            startupExecutor.shutdownNow();
+            startupExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        }
     }
     
+    /** Asynchronous streams are stopped before the client is destroyed, so that they can finish their batches and destroy their consumer instances. */
+    private void stopAsync() throws InterruptedException {
+        List<CompletableFuture<Void>> stopped = new ArrayList<>();
+        for (AsyncMessageQueueConsumer consumer : asyncConsumers) {
+            stopped.add(consumer.stop());
+        }
+        long drainTimeout = messageQueueConsumerConfiguration.getDrainTimeout();
+        try {
+            CompletableFuture.allOf(stopped.toArray(new CompletableFuture[stopped.size()])).get(drainTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            LOGGER.warn(String.format("outcome=Exception message=\"Streams did not drain within %d ms.\"", drainTimeout), e);
+        }
+        asyncExecutor.shutdownNow();
+        asyncListenerExecutor.shutdownNow();
+    }
+
+    /** The check evaluates the status of every stream running when it is called, streams added by autoscaling included. */
     public AdvancedHealthCheck buildPassiveConsumerHealthcheck(
         HealthcheckConfiguration healthcheckConfiguration, MetricRegistry metrics) {
       
-      return new PassiveMessageQueueProxyConsumerHealthcheck(
-          healthcheckConfiguration, messageQueueProxyService, metrics);
+      return new PassiveMessageQueueProxyConsumerHealthcheck(healthcheckConfiguration, this::getStreamStatuses,
+          messageQueueConsumerConfiguration.getStreamStaleAfter(), metrics);
+    }
+
+    List<StreamStatus> getStreamStatuses() {
+        List<StreamStatus> statuses = new ArrayList<>();
+        for (InfiniteStreamHandler stream : streams) {
+            statuses.add(stream.getStreamStatus());
+        }
+        for (AsyncMessageQueueConsumer consumer : asyncConsumers) {
+            statuses.add(consumer.getStreamStatus());
+        }
+        return statuses;
+    }
+
+    /** The check probes the proxy in the background while the initializer runs, and only reports the last result. */
+    public synchronized AdvancedHealthCheck buildConnectivityHealthcheck(HealthcheckConfiguration healthcheckConfiguration) {
+      CanConnectToMessageQueueProxyHealthcheck check = new CanConnectToMessageQueueProxyHealthcheck(
+          queueProxyClient, messageQueueConsumerConfiguration, healthcheckConfiguration);
+      connectivityChecks.add(check);
+      if (started) {
+        check.start();
+      }
+      return check;
+    }
+
+    /** @param maxLag the number of messages, across all partitions, the consumer may lag behind before the check fails
+     *  @throws IllegalStateException if the lag is not sampled, i.e. <code>lagSampleInterval</code> is not set
+     */
+    public AdvancedHealthCheck buildLagHealthcheck(
+        HealthcheckConfiguration healthcheckConfiguration, long maxLag, MetricRegistry metrics) {
+
+      if (lagSampler == null) {
+        throw new IllegalStateException("Consumer lag is not sampled: set lagSampleInterval to build a lag health check");
+      }
+      return new MessageQueueProxyConsumerLagHealthcheck(healthcheckConfiguration, lagSampler, maxLag,
+          messageQueueConsumerConfiguration.getLagSampleInterval(), metrics);
     }
     
     final static class InfiniteStreamHandler implements Runnable {
@@ -82,11 +510,28 @@ public class MessageQueueConsumerInitializer implements Managed {
             this.messageQueueConsumer = messageQueueConsumer;
         }
 
+        StreamLoad getLoad() {
+            return messageQueueConsumer.getLoad();
+        }
+
+        StreamStatus getStreamStatus() {
+            return messageQueueConsumer.getStreamStatus();
+        }
+
+        /** Stops polling: the stream closes its consumer once the call in progress is over. */
+        void drain() {
+            messageQueueConsumer.drain();
+        }
+
         @Override
         public void run() {
-            while (!Thread.currentThread().isInterrupted()) {
+            while (!Thread.currentThread().isInterrupted() && !messageQueueConsumer.isDraining()) {
                 messageQueueConsumer.consume();
             }
+            if (!Thread.currentThread().isInterrupted()) {
+                messageQueueConsumer.close();
+            }
+            messageQueueConsumer.shutdown();
             LOGGER.info("Exited gracefully;");
         }
     }
@@ -0,0 +1,287 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.MessageQueueProxyService;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.message.consumer.proxy.model.PartitionOffset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/** Commits the offsets of processed records explicitly, partition by partition, on a background thread.
+ *  Offsets are coalesced until <code>maxRecords</code> records are waiting or <code>interval</code> milliseconds
+ *  have passed since the last commit, and only one commit is in flight at a time.
+ *  <p>
+ *  Records are {@link #track(MessageRecord) tracked} as they are consumed and only become committable once
+ *  {@link #markProcessed()} is called, after everything consumed so far has been handed to the listener.
+ *  <p>
+ *  With {@link ListenerRetries}, each partition is only committed up to the record before the lowest offset still
+ *  waiting for a retry; the rest of its offset is held back until the retry is done with.
+ */
+class OffsetCommitter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OffsetCommitter.class);
+    private static final long FLUSH_TIMEOUT = 10;
+
+    private final MessageQueueProxyService messageQueueProxyService;
+    private final ExecutorService executor;
+    private final int maxRecords;
+    private final long interval;
+    private final ListenerRetries listenerRetries;
+
+    private final Map<String, Map<Integer, Position>> consumed = new HashMap<>();
+    private int consumedRecords;
+    private boolean consumedWithoutPosition;
+
+    private Map<String, Map<Integer, Position>> pending = new HashMap<>();
+    private int pendingRecords;
+    private boolean pendingWithoutPosition;
+    private boolean holding;
+    private long heldAt;
+
+    private Future<?> inFlight;
+    private long lastCommit = System.currentTimeMillis();
+
+    OffsetCommitter(MessageQueueProxyService messageQueueProxyService, ExecutorService executor, int maxRecords, long interval) {
+        this(messageQueueProxyService, executor, maxRecords, interval, null);
+    }
+
+    /** @param listenerRetries the retries whose records commits must stay below; may be <code>null</code> */
+    OffsetCommitter(MessageQueueProxyService messageQueueProxyService, ExecutorService executor, int maxRecords, long interval,
+                    ListenerRetries listenerRetries) {
+        this.messageQueueProxyService = messageQueueProxyService;
+        this.executor = executor;
+        this.maxRecords = maxRecords;
+        this.interval = interval;
+        this.listenerRetries = listenerRetries;
+    }
+
+    void track(MessageRecord record) {
+        consumedRecords++;
+        if (!record.hasPosition()) {
+            consumedWithoutPosition = true;
+            return;
+        }
+        Map<Integer, Position> partitions = consumed.get(record.getTopic());
+        if (partitions == null) {
+            partitions = new HashMap<>();
+            consumed.put(record.getTopic(), partitions);
+        }
+        Position position = partitions.get(record.getPartition());
+        if (position == null) {
+            partitions.put(record.getPartition(), new Position(record.getOffset()));
+        } else if (record.getOffset() > position.offset) {
+            position.offset = record.getOffset();
+        }
+    }
+
+    /** Everything tracked so far has been handed to the listener and may be committed. */
+    synchronized void markProcessed() {
+        if (consumedRecords == 0) {
+            return;
+        }
+        merge(consumed, pending);
+        pendingRecords += consumedRecords;
+        pendingWithoutPosition |= consumedWithoutPosition;
+        discardUnprocessed();
+    }
+
+    /** Forgets records tracked since the last {@link #markProcessed()}, which will not be handed to the listener. */
+    void discardUnprocessed() {
+        consumed.clear();
+        consumedRecords = 0;
+        consumedWithoutPosition = false;
+    }
+
+    /** Starts a background commit if enough records are waiting or the last commit is old enough. */
+    synchronized void commitIfDue(final URI consumerInstance) {
+        if (!hasPending() || (inFlight != null && !inFlight.isDone())) {
+            return;
+        }
+        if (pendingRecords < maxRecords && System.currentTimeMillis() - lastCommit < interval) {
+            return;
+        }
+        final Commit commit = takePending();
+        if (commit == null) {
+            return;
+        }
+        inFlight = executor.submit(() -> {
+            try {
+                commit.run(consumerInstance);
+            } catch (RuntimeException e) {
+                LOGGER.warn("outcome=Exception message=\"Error while committing offsets; they will be retried with the next commit.\"", e);
+                restore(commit);
+            }
+        });
+    }
+
+    /** Waits for the commit in flight, then commits everything processed on the calling thread. Offsets held back for
+     *  retries are then forgotten: this is the last commit for the consumer instance, and whichever instance is assigned
+     *  those partitions next consumes the records again.
+     */
+    void flush(URI consumerInstance) {
+        Future<?> current;
+        synchronized (this) {
+            current = inFlight;
+        }
+        if (current != null) {
+            awaitUninterruptibly(current);
+        }
+        Commit commit;
+        synchronized (this) {
+            if (pendingRecords == 0 && !holding) {
+                return;
+            }
+            commit = takePending();
+            pending = new HashMap<>();
+            pendingRecords = 0;
+            pendingWithoutPosition = false;
+            holding = false;
+        }
+        if (commit != null) {
+            commit.run(consumerInstance);
+        }
+    }
+
+    /** Offsets held back are only worth another commit once records have been processed, or retries done with, since. */
+    private boolean hasPending() {
+        return pendingRecords > 0 || (holding && listenerRetries.getDoneWith() != heldAt);
+    }
+
+    /** @return the commit of everything pending, or <code>null</code> if retries hold all of it back */
+    private Commit takePending() {
+        lastCommit = System.currentTimeMillis();
+        pendingRecords = 0;
+        holding = false;
+        if (listenerRetries == null || listenerRetries.isEmpty()) {
+            Commit commit = new Commit(pending, pendingWithoutPosition);
+            pending = new HashMap<>();
+            pendingWithoutPosition = false;
+            return commit;
+        }
+        holding = true;
+        heldAt = listenerRetries.getDoneWith();
+        // committing the instance's position would pass the retries, so wait until they are done with
+        if (pendingWithoutPosition || listenerRetries.isWaitingWithoutPosition()) {
+            return null;
+        }
+        Map<String, Map<Integer, Long>> lowestWaiting = listenerRetries.lowestWaitingOffsets();
+        Map<String, Map<Integer, Position>> committable = new HashMap<>();
+        Map<String, Map<Integer, Position>> held = new HashMap<>();
+        for (Map.Entry<String, Map<Integer, Position>> topic : pending.entrySet()) {
+            Map<Integer, Long> waiting = lowestWaiting.get(topic.getKey());
+            for (Map.Entry<Integer, Position> partition : topic.getValue().entrySet()) {
+                long offset = partition.getValue().offset;
+                Long lowest = waiting != null ? waiting.get(partition.getKey()) : null;
+                if (lowest == null || lowest > offset) {
+                    put(committable, topic.getKey(), partition.getKey(), offset);
+                    continue;
+                }
+                put(held, topic.getKey(), partition.getKey(), offset);
+                if (lowest > 0) {
+                    put(committable, topic.getKey(), partition.getKey(), lowest - 1);
+                }
+            }
+        }
+        pending = held;
+        holding = !held.isEmpty();
+        return committable.isEmpty() ? null : new Commit(committable, false);
+    }
+
+    private static void put(Map<String, Map<Integer, Position>> positions, String topic, int partition, long offset) {
+        Map<Integer, Position> partitions = positions.get(topic);
+        if (partitions == null) {
+            partitions = new HashMap<>();
+            positions.put(topic, partitions);
+        }
+        partitions.put(partition, new Position(offset));
+    }
+
+    private synchronized void restore(Commit commit) {
+        merge(commit.positions, pending);
+        pendingRecords++;
+        pendingWithoutPosition |= commit.withoutPosition;
+    }
+
+    private static void merge(Map<String, Map<Integer, Position>> from, Map<String, Map<Integer, Position>> to) {
+        for (Map.Entry<String, Map<Integer, Position>> topic : from.entrySet()) {
+            Map<Integer, Position> partitions = to.get(topic.getKey());
+            if (partitions == null) {
+                partitions = new HashMap<>();
+                to.put(topic.getKey(), partitions);
+            }
+            for (Map.Entry<Integer, Position> partition : topic.getValue().entrySet()) {
+                Position position = partitions.get(partition.getKey());
+                if (position == null) {
+                    partitions.put(partition.getKey(), new Position(partition.getValue().offset));
+                } else if (partition.getValue().offset > position.offset) {
+                    position.offset = partition.getValue().offset;
+                }
+            }
+        }
+    }
+
+    private static void awaitUninterruptibly(Future<?> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get(FLUSH_TIMEOUT, TimeUnit.SECONDS);
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | TimeoutException e) {
+                    return;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class Position {
+
+        private long offset;
+
+        Position(long offset) {
+            this.offset = offset;
+        }
+    }
+
+    private class Commit {
+
+        private final Map<String, Map<Integer, Position>> positions;
+        private final boolean withoutPosition;
+
+        Commit(Map<String, Map<Integer, Position>> positions, boolean withoutPosition) {
+            this.positions = positions;
+            this.withoutPosition = withoutPosition;
+        }
+
+        /** Records the proxy did not give a position for can only be covered by committing the instance's current position. */
+        void run(URI consumerInstance) {
+            if (withoutPosition) {
+                messageQueueProxyService.commitOffsets(consumerInstance);
+                return;
+            }
+            List<PartitionOffset> offsets = new ArrayList<>();
+            for (Map.Entry<String, Map<Integer, Position>> topic : positions.entrySet()) {
+                for (Map.Entry<Integer, Position> partition : topic.getValue().entrySet()) {
+                    offsets.add(new PartitionOffset(topic.getKey(), partition.getKey(), partition.getValue().offset));
+                }
+            }
+            messageQueueProxyService.commitOffsets(consumerInstance, offsets);
+        }
+    }
+}
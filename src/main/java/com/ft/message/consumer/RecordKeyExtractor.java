@@ -0,0 +1,15 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+
+import java.nio.charset.StandardCharsets;
+
+/** Uses the Kafka record key, read as UTF-8, as the ordering key. */
+public class RecordKeyExtractor implements KeyExtractor {
+
+    @Override
+    public String extractKey(MessageRecord record, MessagePayload payload) {
+        byte[] key = record.getKey();
+        return key == null ? null : new String(key, StandardCharsets.UTF_8);
+    }
+}
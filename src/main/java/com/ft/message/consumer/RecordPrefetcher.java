@@ -0,0 +1,239 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.MessageQueueProxyService;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Fetches record batches for a single consumer instance on a background thread,
+ *  so that the next proxy round-trip overlaps with the processing of the current batch.
+ *  Fetched batches are held in a buffer bounded by record count and by total value bytes;
+ *  the fetcher does not issue a new request while either bound is reached. The bounds are soft: they are
+ *  checked before each request, so the response to the last one may take the buffer past them, by up to
+ *  the <code>fetchMaxBytes</code> of a request.
+ *  <p>
+ *  Because the proxy commits the position of everything it has returned, offsets may only
+ *  be committed once every fetched batch has been handed to the listener. {@link #commit(Runnable)}
+ *  therefore pauses the fetcher and only commits when the buffer has been drained and no fetch is in flight.
+ */
+class RecordPrefetcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecordPrefetcher.class);
+
+    private final MessageQueueProxyService messageQueueProxyService;
+    private final URI consumerInstance;
+    private final int maxRecords;
+    private final long maxBytes;
+    private final BackoffStrategy emptyPollBackoff;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition fetchCompleted = lock.newCondition();
+    private final Deque<List<MessageRecord>> batches = new ArrayDeque<>();
+
+    private int bufferedRecords;
+    private long bufferedBytes;
+    private boolean fetching;
+    private boolean paused;
+    private boolean running;
+    private RuntimeException failure;
+    private Thread fetcher;
+
+    RecordPrefetcher(MessageQueueProxyService messageQueueProxyService, URI consumerInstance,
+                     int maxRecords, long maxBytes, BackoffStrategy emptyPollBackoff) {
+        this.messageQueueProxyService = messageQueueProxyService;
+        this.consumerInstance = consumerInstance;
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.emptyPollBackoff = emptyPollBackoff;
+    }
+
+    void start() {
+        lock.lock();
+        try {
+            running = true;
+            fetcher = new Thread(this::fetch, "message-queue-prefetcher-" + consumerInstance.getPath());
+            fetcher.setDaemon(true);
+            fetcher.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void stop() {
+        lock.lock();
+        try {
+            running = false;
+            batches.clear();
+            bufferedRecords = 0;
+            bufferedBytes = 0;
+            notFull.signalAll();
+            notEmpty.signalAll();
+            fetchCompleted.signalAll();
+            if (fetcher != null) {
+                fetcher.interrupt();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the next fetched batch, waiting up to <code>timeout</code> milliseconds for one to arrive.
+     *  An empty list is returned if nothing was fetched in time. A failure of the fetcher is rethrown
+     *  once the batches fetched before it have been returned.
+     */
+    List<MessageRecord> poll(long timeout) {
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (batches.isEmpty()) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (nanos <= 0 || !running) {
+                    return Collections.emptyList();
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            List<MessageRecord> batch = batches.poll();
+            bufferedRecords -= batch.size();
+            bufferedBytes -= sizeOf(batch);
+            notFull.signal();
+            return batch;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Stops fetching, waiting for a fetch in progress to complete, so that {@link #poll(long)} only hands out what has
+     *  already been fetched.
+     */
+    void pause() throws InterruptedException {
+        lock.lock();
+        try {
+            paused = true;
+            while (fetching && running) {
+                fetchCompleted.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Runs <code>commit</code> if every fetched record has been handed out by {@link #poll(long)} and no fetch is in flight.
+     *  Otherwise the fetcher is paused, without waiting for a fetch in flight, which may take as long as the fetch timeout,
+     *  and stays paused until a later call, after the next poll, finds the buffer drained.
+     *  @return whether the commit was run
+     */
+    boolean commit(Runnable commit) {
+        lock.lock();
+        try {
+            paused = true;
+            if (fetching || !batches.isEmpty()) {
+                return false;
+            }
+            commit.run();
+            paused = false;
+            notFull.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fetch() {
+        while (awaitCapacity()) {
+            List<MessageRecord> records;
+            try {
+                records = messageQueueProxyService.consumeMessages(consumerInstance);
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+
+            boolean empty = records == null || records.isEmpty();
+            lock.lock();
+            try {
+                fetching = false;
+                if (!empty && running) {
+                    batches.add(records);
+                    bufferedRecords += records.size();
+                    bufferedBytes += sizeOf(records);
+                    notEmpty.signal();
+                }
+                fetchCompleted.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            if (!empty) {
+                emptyPollBackoff.reset();
+            } else if (!backOff()) {
+                return;
+            }
+        }
+    }
+
+    private boolean awaitCapacity() {
+        lock.lock();
+        try {
+            while (running && (paused || bufferedRecords >= maxRecords || bufferedBytes >= maxBytes)) {
+                notFull.await();
+            }
+            fetching = running;
+            return running;
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fail(RuntimeException e) {
+        lock.lock();
+        try {
+            fetching = false;
+            if (running) {
+                failure = e;
+            } else {
+                LOGGER.debug("Ignoring fetch failure after prefetcher was stopped", e);
+            }
+            notEmpty.signalAll();
+            fetchCompleted.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean backOff() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(emptyPollBackoff.nextDelay());
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private static long sizeOf(List<MessageRecord> records) {
+        long size = 0;
+        for (MessageRecord record : records) {
+            if (record.getValue() != null) {
+                size += record.getValue().length;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,110 @@
+package com.ft.message.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/** Decides how many streams a service should run, from samples of the {@link StreamLoad} of its streams.
+ *  <p>
+ *  The streams are under pressure when the most lagging one is <code>lagThreshold</code> milliseconds behind or more,
+ *  when polls come back nearly full, or when listener calls keep the streams nearly always busy. They are idle when no
+ *  stream lags by more than half the threshold, polls come back nearly empty and the listener is mostly waiting.
+ *  A stream is added, or removed, only once <code>stableSamples</code> samples in a row agree, and one at a time,
+ *  since every change makes the proxy rebalance the partitions of the whole group. The number of streams is kept
+ *  between <code>minStreams</code> and <code>maxStreams</code>, and never exceeds the number of partitions:
+ *  a consumer instance beyond that receives no records.
+ *  <p>
+ *  Not thread safe: samples are taken and decisions made by a single scheduled task.
+ */
+class StreamAutoscaler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamAutoscaler.class);
+
+    static final double FULL_POLL = 0.8;
+    static final double EMPTY_POLL = 0.2;
+    static final double BUSY = 0.8;
+    static final double IDLE = 0.3;
+
+    private final int minStreams;
+    private final int maxStreams;
+    private final long lagThreshold;
+    private final int stableSamples;
+
+    private int pressured;
+    private int idle;
+
+    StreamAutoscaler(int minStreams, int maxStreams, long lagThreshold, int stableSamples) {
+        this.minStreams = minStreams;
+        this.maxStreams = Math.max(minStreams, maxStreams);
+        this.lagThreshold = lagThreshold;
+        this.stableSamples = Math.max(1, stableSamples);
+    }
+
+    /** @param partitions the number of partitions of the topic, or 0 if it is not known, in which case no stream is added
+     *  @return the number of streams to run
+     */
+    int decide(List<StreamLoad.Sample> samples, int streams, int partitions) {
+        int bounded = bound(streams, partitions);
+        if (bounded != streams) {
+            reset();
+            LOGGER.info(String.format("Scaling from %d to %d streams to stay within %d to %d streams and %d partitions",
+                    streams, bounded, minStreams, maxStreams, partitions));
+            return bounded;
+        }
+
+        long lag = StreamLoad.UNKNOWN_LAG;
+        double fill = 0;
+        double utilisation = 0;
+        for (StreamLoad.Sample sample : samples) {
+            lag = Math.max(lag, sample.getLag());
+            fill += sample.getPollFill();
+            utilisation += sample.getListenerUtilisation();
+        }
+        if (!samples.isEmpty()) {
+            fill /= samples.size();
+            utilisation /= samples.size();
+        }
+
+        if (lag >= lagThreshold || fill >= FULL_POLL || utilisation >= BUSY) {
+            pressured++;
+            idle = 0;
+        } else if (lag <= lagThreshold / 2 && fill <= EMPTY_POLL && utilisation <= IDLE) {
+            idle++;
+            pressured = 0;
+        } else {
+            reset();
+        }
+
+        int target = streams;
+        if (pressured >= stableSamples && streams < upper(streams, partitions)) {
+            target = streams + 1;
+        } else if (idle >= stableSamples && streams > lower(streams, partitions)) {
+            target = streams - 1;
+        }
+        if (target != streams) {
+            reset();
+            LOGGER.info(String.format("Scaling from %d to %d streams: lag %d ms, poll fill %.2f, listener utilisation %.2f",
+                    streams, target, lag, fill, utilisation));
+        }
+        return target;
+    }
+
+    /** @return <code>streams</code> brought within the minimum and maximum, and the number of partitions if known */
+    int bound(int streams, int partitions) {
+        return Math.max(lower(streams, partitions), Math.min(upper(streams, partitions), streams));
+    }
+
+    private int upper(int streams, int partitions) {
+        return partitions > 0 ? Math.max(1, Math.min(maxStreams, partitions)) : Math.max(minStreams, Math.min(maxStreams, streams));
+    }
+
+    private int lower(int streams, int partitions) {
+        return Math.min(minStreams, upper(streams, partitions));
+    }
+
+    private void reset() {
+        pressured = 0;
+        idle = 0;
+    }
+}
@@ -0,0 +1,90 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** The load of one stream, recorded by the thread consuming it and sampled by {@link StreamAutoscaler}: how full its
+ *  polls are, how much of its time goes into listener calls, and how far behind the head of the topic it is.
+ *  <p>
+ *  The proxy does not say how many records a poll may return, so the fill of a poll is measured against the largest
+ *  poll the stream has seen, which is reached once the stream has a backlog to work through. The lag is the age of the
+ *  last record consumed, as given by its Kafka timestamp, or 0 once a poll comes back empty.
+ */
+class StreamLoad {
+
+    static final long UNKNOWN_LAG = -1;
+
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder listenerNanos = new LongAdder();
+    private volatile int pollCapacity;
+    private volatile long lag = UNKNOWN_LAG;
+    private long sampledAt;
+
+    StreamLoad() {
+        this(System.nanoTime());
+    }
+
+    StreamLoad(long now) {
+        this.sampledAt = now;
+    }
+
+    /** @param lastTimestamp the timestamp of the last record of the poll, which may be {@link MessageRecord#UNKNOWN_TIMESTAMP} */
+    void recordPoll(int count, long lastTimestamp) {
+        polls.increment();
+        records.add(count);
+        if (count > pollCapacity) {
+            pollCapacity = count;
+        }
+        if (count == 0) {
+            lag = 0;
+        } else if (lastTimestamp != MessageRecord.UNKNOWN_TIMESTAMP) {
+            lag = Math.max(0, System.currentTimeMillis() - lastTimestamp);
+        }
+    }
+
+    void recordListener(long nanos) {
+        listenerNanos.add(nanos);
+    }
+
+    /** @return the load since the previous sample, which is only ever taken by one thread */
+    Sample sample(long now) {
+        long elapsed = Math.max(1, now - sampledAt);
+        sampledAt = now;
+        long pollCount = polls.sumThenReset();
+        long recordCount = records.sumThenReset();
+        long busy = listenerNanos.sumThenReset();
+        int capacity = pollCapacity;
+        double fill = pollCount == 0 || capacity == 0 ? 0 : (double) recordCount / (pollCount * capacity);
+        return new Sample(fill, Math.min(1, (double) busy / elapsed), lag);
+    }
+
+    static class Sample {
+
+        private final double pollFill;
+        private final double listenerUtilisation;
+        private final long lag;
+
+        Sample(double pollFill, double listenerUtilisation, long lag) {
+            this.pollFill = pollFill;
+            this.listenerUtilisation = listenerUtilisation;
+            this.lag = lag;
+        }
+
+        /** @return the records returned per poll, as a fraction of the largest poll seen, between 0 and 1 */
+        double getPollFill() {
+            return pollFill;
+        }
+
+        /** @return the fraction of the time spent in listener calls, between 0 and 1 */
+        double getListenerUtilisation() {
+            return listenerUtilisation;
+        }
+
+        /** @return the lag in milliseconds, or {@link #UNKNOWN_LAG} if no record carried a timestamp yet */
+        long getLag() {
+            return lag;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.ft.message.consumer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** The status of one stream, updated by the stream as it goes and read from any thread, as by the passive health check:
+ *  what the stream is doing and since when, when its last poll completed, the polls, records and errors of the last
+ *  {@value #WINDOW} milliseconds, and its last error.
+ *  <p>
+ *  Updates are plain volatile writes and atomic additions, without locks or allocation, and nothing is formatted until
+ *  the status is described. Each stream has a single writer at a time; the counts are rolled over in buckets of
+ *  {@value #BUCKET} milliseconds.
+ */
+public class StreamStatus {
+
+    public enum State {
+        /** No poll has been made yet. */
+        STARTING,
+        /** Waiting for the proxy to answer a poll. */
+        POLLING,
+        /** Handing the messages of a poll to the listener, or committing their offsets. */
+        PROCESSING,
+        /** Backing off after an empty poll. */
+        IDLE,
+        /** A call to the proxy, or the listener, has failed and no poll has succeeded since. */
+        FAILING,
+        /** Finishing the batch in progress before stopping. */
+        DRAINING,
+        STOPPED
+    }
+
+    static final long WINDOW = 60000;
+    static final long BUCKET = 5000;
+    private static final int BUCKETS = (int) (WINDOW / BUCKET);
+
+    private final String name;
+    private final long startedAt;
+    private volatile State state = State.STARTING;
+    private volatile long stateSince;
+    private volatile long lastPollAt;
+    private volatile Throwable lastError;
+    private volatile long lastErrorAt;
+    private final AtomicLongArray bucketStarts = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray polls = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray records = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray errors = new AtomicLongArray(BUCKETS);
+
+    public StreamStatus(String name) {
+        this.name = name;
+        this.startedAt = System.currentTimeMillis();
+        this.stateSince = startedAt;
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketStarts.set(i, -1);
+        }
+    }
+
+    /** A stream that is failing stays so until a poll succeeds. */
+    void polling() {
+        if (state != State.FAILING) {
+            enter(State.POLLING, System.currentTimeMillis());
+        }
+    }
+
+    void polled(int count) {
+        long now = System.currentTimeMillis();
+        lastPollAt = now;
+        int bucket = bucket(now);
+        polls.incrementAndGet(bucket);
+        records.addAndGet(bucket, count);
+        enter(count > 0 ? State.PROCESSING : State.IDLE, now);
+    }
+
+    void processing() {
+        if (state != State.FAILING) {
+            enter(State.PROCESSING, System.currentTimeMillis());
+        }
+    }
+
+    void failed(Throwable error) {
+        long now = System.currentTimeMillis();
+        lastError = error;
+        lastErrorAt = now;
+        errors.incrementAndGet(bucket(now));
+        if (state != State.FAILING) {
+            enter(State.FAILING, now);
+        }
+    }
+
+    void draining() {
+        enter(State.DRAINING, System.currentTimeMillis());
+    }
+
+    void stopped() {
+        enter(State.STOPPED, System.currentTimeMillis());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /** @return when the stream entered its current state, in epoch milliseconds */
+    public long getStateSince() {
+        return stateSince;
+    }
+
+    /** @return when the last poll completed, in epoch milliseconds, or 0 if none has */
+    public long getLastPollAt() {
+        return lastPollAt;
+    }
+
+    /** @return the last error of the stream, or <code>null</code> if there has been none */
+    public Throwable getLastError() {
+        return lastError;
+    }
+
+    public long getLastErrorAt() {
+        return lastErrorAt;
+    }
+
+    public long getPolls() {
+        return sum(polls, System.currentTimeMillis());
+    }
+
+    public long getRecords() {
+        return sum(records, System.currentTimeMillis());
+    }
+
+    public long getErrors() {
+        return sum(errors, System.currentTimeMillis());
+    }
+
+    /** @return whether the stream is running but has not completed a poll for longer than <code>staleAfter</code>
+     *          milliseconds, or since it started: stuck in a call to the proxy or the listener, or too slow to keep up
+     */
+    public boolean isStale(long now, long staleAfter) {
+        if (state == State.DRAINING || state == State.STOPPED) {
+            return false;
+        }
+        return now - Math.max(lastPollAt, startedAt) > staleAfter;
+    }
+
+    public String describe(long now) {
+        StringBuilder description = new StringBuilder(name).append(' ').append(state)
+                .append(" for ").append(now - stateSince).append(" ms: ")
+                .append(sum(polls, now)).append(" poll(s), ")
+                .append(sum(records, now)).append(" record(s), ")
+                .append(sum(errors, now)).append(" error(s) in the last ")
+                .append(TimeUnit.MILLISECONDS.toSeconds(WINDOW)).append(" s");
+        if (lastPollAt > 0) {
+            description.append(", last poll ").append(now - lastPollAt).append(" ms ago");
+        }
+        Throwable error = lastError;
+        if (state == State.FAILING && error != null) {
+            description.append(", last error: ").append(error.getMessage());
+        }
+        return description.toString();
+    }
+
+    @Override
+    public String toString() {
+        return describe(System.currentTimeMillis());
+    }
+
+    private void enter(State next, long now) {
+        if (state != next) {
+            stateSince = now;
+            state = next;
+        }
+    }
+
+    /** Claims the bucket of <code>now</code>, clearing the counts it held for an earlier period. */
+    private int bucket(long now) {
+        long start = now / BUCKET;
+        int index = (int) (start % BUCKETS);
+        long previous = bucketStarts.get(index);
+        if (previous != start && bucketStarts.compareAndSet(index, previous, start)) {
+            polls.set(index, 0);
+            records.set(index, 0);
+            errors.set(index, 0);
+        }
+        return index;
+    }
+
+    private long sum(AtomicLongArray counts, long now) {
+        long oldest = now / BUCKET - BUCKETS + 1;
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (bucketStarts.get(i) >= oldest) {
+                sum += counts.get(i);
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,20 @@
+package com.ft.message.consumer;
+
+import org.slf4j.MDC;
+
+/** Sets the transaction id of the message being handed to a listener in the MDC, as <code>transaction_id=&lt;id&gt;</code>. */
+final class TransactionIdMdc {
+
+    static final String KEY = "transaction_id";
+
+    private TransactionIdMdc() {
+    }
+
+    static void put(String transactionId) {
+        MDC.put(KEY, KEY + "=" + transactionId);
+    }
+
+    static void remove() {
+        MDC.remove(KEY);
+    }
+}
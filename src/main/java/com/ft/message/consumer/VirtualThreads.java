@@ -0,0 +1,22 @@
+package com.ft.message.consumer;
+
+import java.util.concurrent.ExecutorService;
+
+/** Virtual threads, where the runtime has them. This class is the Java 8 version, under which they never are:
+ *  the jar built with the <code>java21</code> profile also holds the Java 21 version from <code>src/main/java21</code>,
+ *  which Java 21 runtimes load instead.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static boolean isAvailable() {
+        return false;
+    }
+
+    /** @return <code>null</code>: there are no virtual threads to start, and callers fall back to platform threads */
+    static ExecutorService newThreadPerTaskExecutor(String name) {
+        return null;
+    }
+}
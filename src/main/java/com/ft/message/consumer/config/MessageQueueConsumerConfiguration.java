@@ -5,6 +5,28 @@ import com.google.common.base.Strings;
 
 public class MessageQueueConsumerConfiguration {
 
+    private static final long DEFAULT_PREFETCH_BYTES = 16L * 1024 * 1024;
+    private static final long DEFAULT_BATCH_LINGER = 1000;
+    private static final int DEFAULT_PAYLOAD_BUFFER_SIZE = 64 * 1024;
+    private static final long DEFAULT_INITIAL_EMPTY_POLL_BACKOFF = 100;
+    private static final long DEFAULT_INITIAL_ERROR_BACKOFF = 1000;
+    private static final int DEFAULT_COMMIT_MAX_RECORDS = 500;
+    private static final long DEFAULT_COMMIT_INTERVAL = 1000;
+    private static final int DEFAULT_ASYNC_THREADS = 2;
+    private static final String DEFAULT_EMBEDDED_FORMAT = "binary";
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final long DEFAULT_DRAIN_TIMEOUT = 10000;
+    private static final long DEFAULT_STREAM_STALE_AFTER = 60000;
+    private static final long DEFAULT_HEALTHCHECK_PROBE_INTERVAL = 30000;
+    private static final int DEFAULT_AUTOSCALE_MIN_STREAMS = 1;
+    private static final long DEFAULT_AUTOSCALE_INTERVAL = 30000;
+    private static final long DEFAULT_AUTOSCALE_LAG_THRESHOLD = 60000;
+    private static final int DEFAULT_AUTOSCALE_STABLE_SAMPLES = 3;
+    private static final int DEFAULT_LISTENER_RETRY_CAPACITY = 1000;
+    private static final long DEFAULT_INITIAL_LISTENER_RETRY_DELAY = 1000;
+    private static final long DEFAULT_MAX_LISTENER_RETRY_DELAY = 60000;
+    private static final String DEFAULT_DEDUP_KEY = "messageId";
+
     private final String topicName;
     private final String groupName;
     private final String queueProxyHost;
@@ -14,6 +36,129 @@ public class MessageQueueConsumerConfiguration {
     private final String offsetReset;
     private final boolean autoCommit;
 
+    @JsonProperty
+    private int prefetchRecords;
+
+    @JsonProperty
+    private long prefetchBytes;
+
+    @JsonProperty
+    private int dispatchWorkers;
+
+    @JsonProperty
+    private String dispatchKeyHeader;
+
+    @JsonProperty
+    private int batchMaxSize;
+
+    @JsonProperty
+    private long batchLinger;
+
+    @JsonProperty
+    private boolean streamingDecode;
+
+    @JsonProperty
+    private int payloadPoolSize;
+
+    @JsonProperty
+    private int payloadBufferSize;
+
+    @JsonProperty
+    private long initialEmptyPollBackoff;
+
+    @JsonProperty
+    private long initialErrorBackoff;
+
+    @JsonProperty
+    private boolean explicitCommit;
+
+    @JsonProperty
+    private int commitMaxRecords;
+
+    @JsonProperty
+    private long commitInterval;
+
+    @JsonProperty
+    private long fetchTimeout;
+
+    @JsonProperty
+    private long fetchMaxBytes;
+
+    @JsonProperty
+    private String embeddedFormat;
+
+    @JsonProperty
+    private int maxRetries;
+
+    @JsonProperty
+    private long drainTimeout;
+
+    @JsonProperty
+    private long lagSampleInterval;
+
+    @JsonProperty
+    private long streamStaleAfter;
+
+    @JsonProperty
+    private long healthcheckProbeInterval;
+
+    @JsonProperty
+    private int autoscaleMinStreams;
+
+    @JsonProperty
+    private int autoscaleMaxStreams;
+
+    @JsonProperty
+    private long autoscaleInterval;
+
+    @JsonProperty
+    private long autoscaleLagThreshold;
+
+    @JsonProperty
+    private int autoscaleStableSamples;
+
+    @JsonProperty
+    private int listenerRetries;
+
+    @JsonProperty
+    private int listenerRetryCapacity;
+
+    @JsonProperty
+    private long initialListenerRetryDelay;
+
+    @JsonProperty
+    private long maxListenerRetryDelay;
+
+    @JsonProperty
+    private String deadLetterTopic;
+
+    @JsonProperty
+    private String deadLetterFile;
+
+    @JsonProperty
+    private int dedupCapacity;
+
+    @JsonProperty
+    private String dedupKey;
+
+    @JsonProperty
+    private long dedupTtl;
+
+    @JsonProperty
+    private boolean dedupBloomFilter;
+
+    @JsonProperty
+    private boolean asyncTransport;
+
+    @JsonProperty
+    private boolean virtualThreads;
+
+    @JsonProperty
+    private int listenerConcurrency;
+
+    @JsonProperty
+    private int asyncThreads;
+
     public MessageQueueConsumerConfiguration(@JsonProperty("topicName") String topicName,
                                              @JsonProperty("groupName") String groupName,
                                              @JsonProperty("queueProxyHost") String queueProxyHost,
@@ -64,4 +209,192 @@ public class MessageQueueConsumerConfiguration {
     public boolean isAutoCommit() {
         return autoCommit;
     }
+
+    public int getPrefetchRecords() {
+        return prefetchRecords;
+    }
+
+    public long getPrefetchBytes() {
+        return prefetchBytes == 0 ? DEFAULT_PREFETCH_BYTES : prefetchBytes;
+    }
+
+    public int getDispatchWorkers() {
+        return dispatchWorkers;
+    }
+
+    public String getDispatchKeyHeader() {
+        return dispatchKeyHeader;
+    }
+
+    public int getBatchMaxSize() {
+        return batchMaxSize;
+    }
+
+    public long getBatchLinger() {
+        return batchLinger == 0 ? DEFAULT_BATCH_LINGER : batchLinger;
+    }
+
+    public boolean isStreamingDecode() {
+        return streamingDecode;
+    }
+
+    public int getPayloadPoolSize() {
+        return payloadPoolSize;
+    }
+
+    public int getPayloadBufferSize() {
+        return payloadBufferSize == 0 ? DEFAULT_PAYLOAD_BUFFER_SIZE : payloadBufferSize;
+    }
+
+    public long getInitialEmptyPollBackoff() {
+        return initialEmptyPollBackoff == 0 ? DEFAULT_INITIAL_EMPTY_POLL_BACKOFF : initialEmptyPollBackoff;
+    }
+
+    public long getInitialErrorBackoff() {
+        return initialErrorBackoff == 0 ? DEFAULT_INITIAL_ERROR_BACKOFF : initialErrorBackoff;
+    }
+
+    public boolean isExplicitCommit() {
+        return explicitCommit;
+    }
+
+    public int getCommitMaxRecords() {
+        return commitMaxRecords == 0 ? DEFAULT_COMMIT_MAX_RECORDS : commitMaxRecords;
+    }
+
+    public long getCommitInterval() {
+        return commitInterval == 0 ? DEFAULT_COMMIT_INTERVAL : commitInterval;
+    }
+
+    public long getFetchTimeout() {
+        return fetchTimeout;
+    }
+
+    public long getFetchMaxBytes() {
+        return fetchMaxBytes;
+    }
+
+    public String getEmbeddedFormat() {
+        return Strings.isNullOrEmpty(embeddedFormat) ? DEFAULT_EMBEDDED_FORMAT : embeddedFormat;
+    }
+
+    /** @return the number of retryable errors in a row retried with the same consumer instance; a negative value configured disables retries */
+    public int getMaxRetries() {
+        return maxRetries == 0 ? DEFAULT_MAX_RETRIES : Math.max(0, maxRetries);
+    }
+
+    /** @return the time in milliseconds streams are given on shutdown to finish their batches, commit and destroy their
+     *          consumer instances; a negative value configured interrupts them at once
+     */
+    public long getDrainTimeout() {
+        return drainTimeout == 0 ? DEFAULT_DRAIN_TIMEOUT : Math.max(0, drainTimeout);
+    }
+
+    /** @return the time in milliseconds after which a stream that has not completed a poll is reported as stale; by default
+     *          a minute, or three times the longest a healthy stream can wait between polls if that is longer
+     */
+    public long getStreamStaleAfter() {
+        if (streamStaleAfter > 0) {
+            return streamStaleAfter;
+        }
+        return Math.max(DEFAULT_STREAM_STALE_AFTER, 3 * (backoffPeriod + fetchTimeout));
+    }
+
+    /** @return the time in milliseconds between the background probes of a started connectivity health check */
+    public long getHealthcheckProbeInterval() {
+        return healthcheckProbeInterval == 0 ? DEFAULT_HEALTHCHECK_PROBE_INTERVAL : healthcheckProbeInterval;
+    }
+
+    /** @return the time in milliseconds between samples of the consumer lag, or 0 if it is not sampled */
+    public long getLagSampleInterval() {
+        return lagSampleInterval;
+    }
+
+    /** @return whether the number of streams is adjusted to the load, between the minimum and maximum configured */
+    public boolean isAutoscaling() {
+        return autoscaleMaxStreams > 0;
+    }
+
+    public int getAutoscaleMinStreams() {
+        return autoscaleMinStreams == 0 ? DEFAULT_AUTOSCALE_MIN_STREAMS : autoscaleMinStreams;
+    }
+
+    public int getAutoscaleMaxStreams() {
+        return autoscaleMaxStreams;
+    }
+
+    public long getAutoscaleInterval() {
+        return autoscaleInterval == 0 ? DEFAULT_AUTOSCALE_INTERVAL : autoscaleInterval;
+    }
+
+    public long getAutoscaleLagThreshold() {
+        return autoscaleLagThreshold == 0 ? DEFAULT_AUTOSCALE_LAG_THRESHOLD : autoscaleLagThreshold;
+    }
+
+    public int getAutoscaleStableSamples() {
+        return autoscaleStableSamples == 0 ? DEFAULT_AUTOSCALE_STABLE_SAMPLES : autoscaleStableSamples;
+    }
+
+    /** @return the number of times a message the listener failed is handed to it again, or 0 if it is not */
+    public int getListenerRetries() {
+        return Math.max(0, listenerRetries);
+    }
+
+    /** @return the number of failed messages a stream keeps waiting for a retry; any further failure is dead lettered */
+    public int getListenerRetryCapacity() {
+        return listenerRetryCapacity == 0 ? DEFAULT_LISTENER_RETRY_CAPACITY : listenerRetryCapacity;
+    }
+
+    public long getInitialListenerRetryDelay() {
+        return initialListenerRetryDelay == 0 ? DEFAULT_INITIAL_LISTENER_RETRY_DELAY : initialListenerRetryDelay;
+    }
+
+    public long getMaxListenerRetryDelay() {
+        return maxListenerRetryDelay == 0 ? DEFAULT_MAX_LISTENER_RETRY_DELAY : maxListenerRetryDelay;
+    }
+
+    /** @return the topic, produced to through the proxy, that messages go to once their retries are exhausted */
+    public String getDeadLetterTopic() {
+        return deadLetterTopic;
+    }
+
+    /** @return the local file, appended to as lines of JSON, that messages go to once their retries are exhausted */
+    public String getDeadLetterFile() {
+        return deadLetterFile;
+    }
+
+    /** @return the number of handled messages remembered to skip them if they are consumed again, or 0 if none are */
+    public int getDedupCapacity() {
+        return dedupCapacity;
+    }
+
+    /** @return what handled messages are remembered by: messageId or position */
+    public String getDedupKey() {
+        return Strings.isNullOrEmpty(dedupKey) ? DEFAULT_DEDUP_KEY : dedupKey;
+    }
+
+    /** @return the time in milliseconds a handled message is remembered for, or 0 if only until it is evicted */
+    public long getDedupTtl() {
+        return dedupTtl;
+    }
+
+    public boolean isDedupBloomFilter() {
+        return dedupBloomFilter;
+    }
+
+    public boolean isAsyncTransport() {
+        return asyncTransport;
+    }
+
+    public int getAsyncThreads() {
+        return asyncThreads == 0 ? DEFAULT_ASYNC_THREADS : asyncThreads;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getListenerConcurrency() {
+        return listenerConcurrency;
+    }
 }
@@ -9,13 +9,27 @@ import com.google.common.base.Strings;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
+import io.dropwizard.lifecycle.Managed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.core.UriBuilder;
 import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-public class CanConnectToMessageQueueProxyHealthcheck extends AdvancedHealthCheck {
+/** Checks that a consumer instance can be created in the <code>healthcheck</code> group and read from the topic.
+ *  <p>
+ *  Once {@link #start() started}, the proxy is probed on a background thread every <code>healthcheckProbeInterval</code>,
+ *  reusing one consumer instance for as long as the proxy keeps it, and the check only returns the result of the last
+ *  probe: it makes no request and never blocks. A result older than {@value #STALE_PROBES} intervals, as when a probe
+ *  hangs, is reported as an error. {@link #stop()} destroys the probe instance.
+ *  <p>
+ *  Unless started, each check creates a consumer instance, reads from the topic and destroys the instance, on the
+ *  calling thread.
+ */
+public class CanConnectToMessageQueueProxyHealthcheck extends AdvancedHealthCheck implements Managed {
 
     private static final Logger logger = LoggerFactory.getLogger(CanConnectToMessageQueueProxyHealthcheck.class);
     private static final String groupName = "healthcheck";
@@ -27,6 +41,14 @@ public class CanConnectToMessageQueueProxyHealthcheck extends AdvancedHealthChec
     private HealthcheckConfiguration healthcheckConfiguration;
     private Client proxyClient;
 
+    static final int STALE_PROBES = 3;
+    private static final int HTTP_RESPONSE_NOT_FOUND = 404;
+
+    private ScheduledExecutorService prober;
+    private URI probeInstance;
+    private volatile AdvancedResult lastResult;
+    private volatile long lastProbedAt;
+
     public CanConnectToMessageQueueProxyHealthcheck(final Client proxyClient, final MessageQueueConsumerConfiguration configuration,
                                                     final HealthcheckConfiguration healthcheckConfiguration) {
         super(healthcheckConfiguration.getName());
@@ -35,8 +57,119 @@ public class CanConnectToMessageQueueProxyHealthcheck extends AdvancedHealthChec
         this.healthcheckConfiguration = healthcheckConfiguration;
     }
 
+    @Override
+    public synchronized void start() {
+        if (prober != null) {
+            return;
+        }
+        prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-queue-healthcheck-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastProbedAt = System.currentTimeMillis();
+        long interval = configuration.getHealthcheckProbeInterval();
+        prober.scheduleWithFixedDelay(this::refresh, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /** Destroys the probe instance, unless a probe still in progress does not complete within an interval. */
+    @Override
+    public synchronized void stop() throws InterruptedException {
+        if (prober == null) {
+            return;
+        }
+        prober.shutdownNow();
+        if (prober.awaitTermination(configuration.getHealthcheckProbeInterval(), TimeUnit.MILLISECONDS)) {
+            discardProbeInstance();
+        }
+        prober = null;
+    }
+
     @Override
     protected AdvancedResult checkAdvanced() throws Exception {
+        if (prober == null) {
+            return checkOnce();
+        }
+        AdvancedResult result = lastResult;
+        long age = System.currentTimeMillis() - lastProbedAt;
+        if (age > STALE_PROBES * configuration.getHealthcheckProbeInterval()) {
+            return AdvancedResult.error(this, String.format("Queue proxy last probed %d ms ago.", age));
+        }
+        return result != null ? result : AdvancedResult.healthy("Queue proxy not probed yet.");
+    }
+
+    private void refresh() {
+        AdvancedResult result = probe();
+        lastResult = result;
+        lastProbedAt = System.currentTimeMillis();
+    }
+
+    /** Reads from the topic with the probe instance, creating it first if there is none. An instance the proxy no
+     *  longer knows, having expired or been lost in a restart, is replaced at once; after any other failure the instance
+     *  is destroyed, and the next probe creates another.
+     */
+    AdvancedResult probe() {
+        try {
+            AdvancedResult result = probeWithInstance();
+            if (result == null && probeInstance == null) {
+                result = probeWithInstance();
+            }
+            return result != null ? result : AdvancedResult.healthy("OK");
+        } catch (Throwable ex) {
+            discardProbeInstance();
+            return reportUnhealthy(getName() + ": " + "Exception during connecting to message queue proxy: " + ex.getLocalizedMessage());
+        }
+    }
+
+    /** @return an unhealthy result, or <code>null</code> if the topic could be read or the probe instance was not found */
+    private AdvancedResult probeWithInstance() {
+        if (probeInstance != null) {
+            return readWithProbeInstance(false);
+        }
+        ClientResponse clientResponseToCreateConsumer = getClientResponseForProxyConnection(buildConsumerUri());
+        try {
+            if (clientResponseToCreateConsumer.getStatus() != HTTP_RESPONSE_OK) {
+                return reportUnhealthy(String.format("Unable to connect to queue proxy. %d", clientResponseToCreateConsumer.getStatus()));
+            }
+            probeInstance = clientResponseToCreateConsumer.getEntity(ConsumerInstanceResponse.class).getBaseUri();
+        } finally {
+            closeClientResponse(clientResponseToCreateConsumer);
+        }
+        return readWithProbeInstance(true);
+    }
+
+    private AdvancedResult readWithProbeInstance(boolean created) {
+        ClientResponse clientResponseToCheckTopic = getClientResponseForMessageConsumer(buildMessageReaderUri(probeInstance));
+        try {
+            int status = clientResponseToCheckTopic.getStatus();
+            if (status == HTTP_RESPONSE_OK) {
+                return null;
+            }
+            if (status == HTTP_RESPONSE_NOT_FOUND && !created) {
+                probeInstance = null;
+                return null;
+            }
+            discardProbeInstance();
+            return reportUnhealthy(String.format("Unable to consume messages. Proxy returned %d", status));
+        } finally {
+            closeClientResponse(clientResponseToCheckTopic);
+        }
+    }
+
+    private void discardProbeInstance() {
+        URI instance = probeInstance;
+        probeInstance = null;
+        if (instance == null) {
+            return;
+        }
+        try {
+            closeClientResponse(deleteConsumerInstance(instance));
+        } catch (Throwable ex) {
+            logger.warn(getName() + ": Unable to destroy probe consumer instance.", ex);
+        }
+    }
+
+    private AdvancedResult checkOnce() {
         ClientResponse clientResponseToCreateConsumer = null;
         ClientResponse clientResponseToCheckTopic = null;
         ClientResponse clientResponseToCloseConsumer = null;
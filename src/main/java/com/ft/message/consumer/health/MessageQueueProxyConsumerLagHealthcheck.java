@@ -0,0 +1,92 @@
+package com.ft.message.consumer.health;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.ft.message.consumer.config.HealthcheckConfiguration;
+import com.ft.message.consumer.proxy.ConsumerLag;
+import com.ft.message.consumer.proxy.ConsumerLagSampler;
+import com.ft.platform.dropwizard.AdvancedHealthCheck;
+import com.ft.platform.dropwizard.AdvancedResult;
+
+/** Fails when the consumer has fallen more than <code>maxLag</code> messages behind the end of its partitions,
+ *  as last sampled in the background by a {@link ConsumerLagSampler}, when the lag has not been sampled for
+ *  {@value #STALE_SAMPLES} sample intervals, or when a partition assigned has had no known position for as long,
+ *  its lag being unknown. Like the passive check, it makes no request to the proxy.
+ */
+public class MessageQueueProxyConsumerLagHealthcheck
+    extends AdvancedHealthCheck {
+
+  static final int STALE_SAMPLES = 3;
+
+  private final HealthcheckConfiguration healthcheckConfiguration;
+  private final ConsumerLagSampler sampler;
+  private final long maxLag;
+  private final long sampleInterval;
+  private Timer timer;
+
+  public MessageQueueProxyConsumerLagHealthcheck(
+      final HealthcheckConfiguration healthcheckConfiguration,
+      final ConsumerLagSampler sampler,
+      final long maxLag,
+      final long sampleInterval,
+      final MetricRegistry metrics) {
+
+    super(healthcheckConfiguration.getName());
+    this.healthcheckConfiguration = healthcheckConfiguration;
+    this.sampler = sampler;
+    this.maxLag = maxLag;
+    this.sampleInterval = sampleInterval;
+
+    if (metrics != null) {
+      timer = metrics.timer(
+          MetricRegistry.name(MessageQueueProxyConsumerLagHealthcheck.class, "checkAdvanced"));
+    } else {
+      timer = new Timer();
+    }
+  }
+
+  @Override
+  protected AdvancedResult checkAdvanced() throws Exception {
+    try (Timer.Context ctx = timer.time()) {
+      ConsumerLag lag = sampler.getLag();
+      if (lag == null) {
+        return AdvancedResult.healthy("Consumer lag not sampled yet.");
+      }
+
+      long age = System.currentTimeMillis() - lag.getSampledAt();
+      if (age > STALE_SAMPLES * sampleInterval) {
+        return AdvancedResult.error(this, String.format("Consumer lag last sampled %d ms ago: %s", age, lag));
+      }
+      long unknownSince = lag.getUnknownSince();
+      if (unknownSince > 0 && lag.getSampledAt() - unknownSince > STALE_SAMPLES * sampleInterval) {
+        return AdvancedResult.error(this, String.format("Consumer lag unknown for %d ms: %s",
+            lag.getSampledAt() - unknownSince, lag));
+      }
+      if (lag.getTotalLag() > maxLag) {
+        return AdvancedResult.error(this, String.format("Consumer is %s, more than %d.", lag, maxLag));
+      }
+
+      return AdvancedResult.healthy(String.format("Consumer is %s.", lag));
+    }
+  }
+
+  @Override
+  protected int severity() {
+    return healthcheckConfiguration.getSeverity();
+  }
+
+  @Override
+  protected String businessImpact() {
+    return healthcheckConfiguration.getBusinessImpact();
+  }
+
+  @Override
+  protected String technicalSummary() {
+    return healthcheckConfiguration.getTechnicalSummary();
+  }
+
+  @Override
+  protected String panicGuideUrl() {
+    return healthcheckConfiguration.getPanicGuideUrl();
+  }
+}
@@ -1,9 +1,15 @@
 package com.ft.message.consumer.health;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Collections;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.ft.message.consumer.StreamStatus;
 import com.ft.message.consumer.config.HealthcheckConfiguration;
 import com.ft.message.consumer.proxy.MessageQueueProxyService;
 import com.ft.platform.dropwizard.AdvancedHealthCheck;
@@ -13,29 +19,43 @@ import com.ft.platform.dropwizard.AdvancedResult;
  *  many/large messages, a passive health check that simply monitors the most recent
  *  read operation is less disruptive and does not reduce significantly the accuracy
  *  of the health check result.
+ *  <p>
+ *  Every running stream is evaluated from its {@link StreamStatus}: the check fails if
+ *  any stream is failing, or is stale, having completed no poll for <code>staleAfter</code>
+ *  milliseconds, or if no stream is running at all.
  *  @author keith.hatton
  */
 public class PassiveMessageQueueProxyConsumerHealthcheck
     extends AdvancedHealthCheck {
 
-  private static final Pattern OK_STATUS = Pattern.compile(
-      MessageQueueProxyService.MESSAGES_CONSUMED.replace("(", "\\(")
-                                                .replace(")", "\\)")
-                                                .replace("%s", "\\d+")
-                                                .replace(".", "\\."));
-  
   private final HealthcheckConfiguration healthcheckConfiguration;
-  private final MessageQueueProxyService proxyService;
+  private final Supplier<? extends Collection<StreamStatus>> streams;
+  private final long staleAfter;
   private Timer timer;
   
+  /** @deprecated the proxy service's status is shared by every stream and only tells whether its last call
+   *  consumed messages; use the constructor taking the status of each stream
+   */
+  @Deprecated
   public PassiveMessageQueueProxyConsumerHealthcheck(
       final HealthcheckConfiguration healthcheckConfiguration,
       final MessageQueueProxyService proxyService,
       final MetricRegistry metrics) {
     
+    this(healthcheckConfiguration,
+        () -> Collections.singletonList(new ProxyServiceStatus(proxyService)), Long.MAX_VALUE, metrics);
+  }
+  
+  public PassiveMessageQueueProxyConsumerHealthcheck(
+      final HealthcheckConfiguration healthcheckConfiguration,
+      final Supplier<? extends Collection<StreamStatus>> streams,
+      final long staleAfter,
+      final MetricRegistry metrics) {
+    
     super(healthcheckConfiguration.getName());
     this.healthcheckConfiguration = healthcheckConfiguration;
-    this.proxyService = proxyService;
+    this.streams = streams;
+    this.staleAfter = staleAfter;
     
     if (metrics != null) {
       timer = metrics.timer(
@@ -48,13 +68,64 @@ public class PassiveMessageQueueProxyConsumerHealthcheck
   @Override
   protected AdvancedResult checkAdvanced() throws Exception {
     try (Timer.Context ctx = timer.time()) {
-      String status = proxyService.getStatus();
+      long now = System.currentTimeMillis();
+      List<String> running = new ArrayList<>();
+      List<String> unhealthy = new ArrayList<>();
+      for (StreamStatus stream : streams.get()) {
+        StreamStatus.State state = stream.getState();
+        if (state == StreamStatus.State.DRAINING || state == StreamStatus.State.STOPPED) {
+          continue;
+        }
+        String description = stream.describe(now);
+        running.add(description);
+        if (state == StreamStatus.State.FAILING) {
+          unhealthy.add(description);
+        } else if (stream.isStale(now, staleAfter)) {
+          unhealthy.add("stale, " + description);
+        }
+      }
       
-      if (OK_STATUS.matcher(status).matches()) {
-        return AdvancedResult.healthy(status);
+      if (running.isEmpty()) {
+        return AdvancedResult.error(this, "No stream is running.");
+      }
+      if (!unhealthy.isEmpty()) {
+        return AdvancedResult.error(this, String.format("%d of %d stream(s) unhealthy: %s",
+            unhealthy.size(), running.size(), String.join("; ", unhealthy)));
       }
       
-      return AdvancedResult.error(this, status);
+      return AdvancedResult.healthy(String.join("; ", running));
+    }
+  }
+
+  /** The proxy service's status seen as a single stream, failing unless the last call consumed messages. */
+  private static final class ProxyServiceStatus extends StreamStatus {
+    
+    private static final Pattern OK_STATUS = Pattern.compile(
+        MessageQueueProxyService.MESSAGES_CONSUMED.replace("(", "\\(")
+                                                  .replace(")", "\\)")
+                                                  .replace("%s", "\\d+")
+                                                  .replace(".", "\\."));
+    
+    private final String status;
+    
+    ProxyServiceStatus(MessageQueueProxyService proxyService) {
+      super("proxy");
+      this.status = proxyService.getStatus();
+    }
+    
+    @Override
+    public State getState() {
+      return OK_STATUS.matcher(status).matches() ? State.PROCESSING : State.FAILING;
+    }
+    
+    @Override
+    public boolean isStale(long now, long staleAfter) {
+      return false;
+    }
+    
+    @Override
+    public String describe(long now) {
+      return status;
     }
   }
 
@@ -0,0 +1,35 @@
+package com.ft.message.consumer.proxy;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.message.consumer.proxy.model.PartitionOffset;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/** The operations of {@link MessageQueueProxyService} without the caller waiting on each call: every method returns at once,
+ *  and its future completes when the proxy has answered, exceptionally with a {@link QueueProxyServiceException} if the call failed.
+ *  Whether a thread waits on the call meanwhile is up to the implementation.
+ */
+public interface AsyncMessageQueueProxyService {
+
+    CompletableFuture<URI> createConsumerInstance();
+
+    CompletableFuture<Void> destroyConsumerInstance(URI consumerInstance);
+
+    CompletableFuture<Void> subscribeConsumerInstanceToTopic(URI consumerInstance);
+
+    CompletableFuture<Void> destroyConsumerInstanceSubscription(URI consumerInstance);
+
+    CompletableFuture<List<MessageRecord>> consumeMessages(URI consumerInstance);
+
+    CompletableFuture<Void> commitOffsets(URI consumerInstance);
+
+    /** Commits exactly the given offsets, each being that of the last processed record of its partition. */
+    CompletableFuture<Void> commitOffsets(URI consumerInstance, List<PartitionOffset> offsets);
+
+    /** @return the outcome of the most recent call made by any stream; the health of each stream is in its
+     *          {@link com.ft.message.consumer.StreamStatus}
+     */
+    String getStatus();
+}
@@ -0,0 +1,249 @@
+package com.ft.message.consumer.proxy;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.ft.message.consumer.config.MessageQueueConsumerConfiguration;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.message.consumer.proxy.model.PartitionOffset;
+import com.sun.jersey.api.client.AsyncWebResource;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import com.sun.jersey.api.client.async.TypeListener;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static com.ft.message.consumer.proxy.ProxyCalls.COMMIT;
+import static com.ft.message.consumer.proxy.ProxyCalls.CONSUME;
+import static com.ft.message.consumer.proxy.ProxyCalls.CREATE;
+import static com.ft.message.consumer.proxy.ProxyCalls.DESTROY;
+import static com.ft.message.consumer.proxy.ProxyCalls.DESTROYED;
+import static com.ft.message.consumer.proxy.ProxyCalls.SC_NO_CONTENT;
+import static com.ft.message.consumer.proxy.ProxyCalls.SC_OK;
+
+/** Calls the proxy through the asynchronous interface of the Jersey client, so that streams do not wait on their calls.
+ *  The requests, responses, metrics and status are those of {@link MessageQueueProxyServiceImpl}.
+ *  <p>This saves no threads: the client still makes each call with its default, blocking <code>HttpURLConnection</code>
+ *  connector, so a call in flight occupies a thread of the client's executor service until the proxy answers. With
+ *  long polling, that is a thread per stream for as long as the fetch timeout. Connections are kept alive and reused
+ *  by the connector.
+ *  <p>Each future completes on the thread that read the response, so its dependent stages should be quick, or hand over
+ *  to an executor of their own.
+ */
+public class AsyncMessageQueueProxyServiceImpl implements AsyncMessageQueueProxyService {
+
+    private final MessageQueueConsumerConfiguration configuration;
+    private final Client proxyClient;
+    private final ProxyCalls calls;
+    private final ProxyCallMetrics callMetrics;
+    private final ConcurrentMap<URI, Endpoints> consumerInstances;
+
+    /** @param metrics registry to which the same metrics as those of {@link MessageQueueProxyServiceImpl} are reported;
+     *                 if <code>null</code> they are recorded but not reported
+     */
+    public AsyncMessageQueueProxyServiceImpl(MessageQueueConsumerConfiguration configuration, Client proxyClient, MetricRegistry metrics) {
+        this(configuration, proxyClient, metrics, null);
+    }
+
+    /** @param positions records the positions of the consumer instances, for a {@link ConsumerLagSampler}; may be <code>null</code> */
+    public AsyncMessageQueueProxyServiceImpl(MessageQueueConsumerConfiguration configuration, Client proxyClient, MetricRegistry metrics,
+                                             ConsumerPositions positions) {
+        this(configuration, proxyClient, metrics, positions, null);
+    }
+
+    /** @param format the format of the records, as for {@link MessageQueueProxyServiceImpl} */
+    public AsyncMessageQueueProxyServiceImpl(MessageQueueConsumerConfiguration configuration, Client proxyClient, MetricRegistry metrics,
+                                             ConsumerPositions positions, EmbeddedFormat format) {
+        this.configuration = configuration;
+        this.proxyClient = proxyClient;
+        this.calls = new ProxyCalls(configuration, metrics, positions, format);
+        this.callMetrics = calls.metricsOf(null);
+        this.consumerInstances = new ConcurrentHashMap<>();
+    }
+
+    private AsyncMessageQueueProxyServiceImpl(AsyncMessageQueueProxyServiceImpl service, String stream) {
+        this.configuration = service.configuration;
+        this.proxyClient = service.proxyClient;
+        this.calls = service.calls;
+        this.callMetrics = calls.metricsOf(stream);
+        this.consumerInstances = service.consumerInstances;
+    }
+
+    /** As {@link MessageQueueProxyServiceImpl#forStream(String)}. */
+    public AsyncMessageQueueProxyServiceImpl forStream(String stream) {
+        return new AsyncMessageQueueProxyServiceImpl(this, stream);
+    }
+
+    @Override
+    public CompletableFuture<URI> createConsumerInstance() {
+        return call(proxyClient.asyncResource(calls.consumersUri()), calls.contentTypeHeaders, "POST", calls.createEntity(), SC_OK,
+                CREATE, callMetrics.createTimers,
+                response -> {
+                    URI uri = calls.readConsumerInstance(response);
+                    consumerInstances.put(uri, new Endpoints(uri));
+                    return uri;
+                });
+    }
+
+    @Override
+    public CompletableFuture<Void> destroyConsumerInstance(URI consumerInstance) {
+        return this.<Void>call(endpoints(consumerInstance).instance, calls.acceptHeaders, "DELETE", null, SC_NO_CONTENT, DESTROY,
+                callMetrics.destroyTimers, response -> null)
+                .whenComplete((ignored, e) -> {
+                    consumerInstances.remove(consumerInstance);
+                    calls.destroyed(consumerInstance);
+                    if (e == null) {
+                        calls.updateUnhealthyStatus(DESTROYED);
+                    }
+                });
+    }
+
+    @Override
+    public CompletableFuture<Void> subscribeConsumerInstanceToTopic(URI consumerInstance) {
+        return this.<Void>call(endpoints(consumerInstance).subscription, calls.contentTypeHeaders, "POST", calls.subscribeEntity(),
+                SC_NO_CONTENT, CREATE, callMetrics.subscribeTimers, response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> destroyConsumerInstanceSubscription(URI consumerInstance) {
+        return this.<Void>call(endpoints(consumerInstance).subscription, calls.acceptHeaders, "DELETE", null, SC_NO_CONTENT, DESTROY,
+                callMetrics.unsubscribeTimers,
+                response -> {
+                    calls.updateUnhealthyStatus(DESTROYED);
+                    return null;
+                });
+    }
+
+    /** Only the wait for the response is timed, as for {@link MessageQueueProxyServiceImpl#consumeMessages(URI)}. */
+    @Override
+    public CompletableFuture<List<MessageRecord>> consumeMessages(URI consumerInstance) {
+        return call(endpoints(consumerInstance).records, calls.recordsHeaders, "GET", null, SC_OK, CONSUME, callMetrics.consumeTimers,
+                response -> {
+                    try {
+                        return calls.readRecords(consumerInstance, response, callMetrics);
+                    } catch (IOException e) {
+                        throw new ClientHandlerException(e);
+                    }
+                });
+    }
+
+    @Override
+    public CompletableFuture<Void> commitOffsets(URI consumerInstance) {
+        return this.<Void>call(endpoints(consumerInstance).offsets, calls.hostHeaders, "POST", null, SC_OK, COMMIT, callMetrics.commitTimers,
+                response -> {
+                    calls.committed(consumerInstance);
+                    return null;
+                });
+    }
+
+    /** The proxy commits the offset after each one given, i.e. the position of the next record to consume. */
+    @Override
+    public CompletableFuture<Void> commitOffsets(URI consumerInstance, List<PartitionOffset> offsets) {
+        String entity;
+        try {
+            entity = ProxyCalls.commitEntity(offsets);
+        } catch (JsonProcessingException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(calls.proxyException(e, COMMIT, false));
+            return failed;
+        }
+        return this.<Void>call(endpoints(consumerInstance).offsets, calls.contentTypeHeaders, "POST", entity, SC_OK, COMMIT, callMetrics.commitTimers,
+                response -> {
+                    calls.committed(consumerInstance, offsets);
+                    return null;
+                });
+    }
+
+    /** Sends a request and, once the proxy has answered with <code>expectedStatus</code>, completes with what
+     *  <code>reader</code> makes of the response, which is closed afterwards.
+     */
+    private <T> CompletableFuture<T> call(AsyncWebResource resource, String[] headers, String method, Object entity,
+                                          int expectedStatus, String action, ProxyCallTimers timers,
+                                          Function<ClientResponse, T> reader) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // as for the blocking service, a records request that may have reached the proxy is not retried
+        boolean retryable = !CONSUME.equals(action);
+        long start = System.nanoTime();
+        TypeListener<ClientResponse> listener = new TypeListener<ClientResponse>(ClientResponse.class) {
+            @Override
+            public void onComplete(Future<ClientResponse> future) {
+                ClientResponse response;
+                try {
+                    response = future.get();
+                } catch (ExecutionException e) {
+                    timers.update(0, start);
+                    result.completeExceptionally(proxyException(e.getCause(), action, retryable));
+                    return;
+                } catch (Throwable t) {
+                    timers.update(0, start);
+                    result.completeExceptionally(proxyException(t, action, retryable));
+                    return;
+                }
+                timers.update(response.getStatus(), start);
+                try {
+                    calls.checkStatus(response, expectedStatus, action);
+                    result.complete(reader.apply(response));
+                } catch (ClientHandlerException | UniformInterfaceException e) {
+                    result.completeExceptionally(proxyException(e, action, false));
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                } finally {
+                    response.close();
+                }
+            }
+        };
+        try {
+            AsyncWebResource.Builder builder = ProxyCalls.withHeaders(resource.getRequestBuilder(), headers);
+            if (entity != null) {
+                builder.method(method, listener, entity);
+            } else {
+                builder.method(method, listener);
+            }
+        } catch (ClientHandlerException | UniformInterfaceException e) {
+            timers.update(0, start);
+            result.completeExceptionally(proxyException(e, action, e instanceof ClientHandlerException));
+        }
+        return result;
+    }
+
+    private QueueProxyServiceException proxyException(Throwable e, String action, boolean retryable) {
+        return calls.proxyException(e, action, retryable || ProxyCalls.isNotSent(e));
+    }
+
+    /** Consumer instances created elsewhere, e.g. by a previous run, are resolved on first use. */
+    private Endpoints endpoints(URI consumerInstance) {
+        return consumerInstances.computeIfAbsent(consumerInstance, Endpoints::new);
+    }
+
+    @Override
+    public String getStatus() {
+        return calls.getStatus();
+    }
+
+    /** The asynchronous counterpart of {@link ConsumerInstanceEndpoints}. */
+    private class Endpoints {
+
+        private final AsyncWebResource instance;
+        private final AsyncWebResource records;
+        private final AsyncWebResource offsets;
+        private final AsyncWebResource subscription;
+
+        Endpoints(URI consumerInstance) {
+            URI proxyUri = calls.proxyUri();
+            this.instance = proxyClient.asyncResource(ConsumerInstanceEndpoints.resolve(consumerInstance, null, proxyUri));
+            this.records = proxyClient.asyncResource(ConsumerInstanceEndpoints.records(consumerInstance, proxyUri,
+                    configuration.getFetchTimeout(), configuration.getFetchMaxBytes()));
+            this.offsets = proxyClient.asyncResource(ConsumerInstanceEndpoints.resolve(consumerInstance, "offsets", proxyUri));
+            this.subscription = proxyClient.asyncResource(ConsumerInstanceEndpoints.resolve(consumerInstance, "subscription", proxyUri));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.ft.message.consumer.proxy;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/** Keys and values are base64 strings, decoded straight from the parser's buffer. */
+class BinaryEmbeddedFormat implements EmbeddedFormat {
+
+    private final String name;
+    private final String mediaType;
+
+    BinaryEmbeddedFormat(String name, String mediaType) {
+        this.name = name;
+        this.mediaType = mediaType;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    @Override
+    public byte[] readValue(JsonParser parser) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.VALUE_STRING) {
+            throw new JsonParseException("Expected a base64 string", parser.getCurrentLocation());
+        }
+        return parser.getBinaryValue();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,75 @@
+package com.ft.message.consumer.proxy;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.WebResource;
+
+import javax.ws.rs.core.UriBuilder;
+import java.net.URI;
+
+/** The resources of one proxy consumer instance, resolved once when the instance is created
+ *  instead of on every request. When requests go through a named queue, the URIs point at the
+ *  configured proxy host and port rather than at the host the proxy returned.
+ */
+class ConsumerInstanceEndpoints {
+
+    private final WebResource instance;
+    private final WebResource records;
+    private final WebResource offsets;
+    private final WebResource subscription;
+
+    /** @param proxyUri the proxy to send requests to, or <code>null</code> to use the instance URI as returned by the proxy */
+    ConsumerInstanceEndpoints(Client client, URI consumerInstance, URI proxyUri) {
+        this(client, consumerInstance, proxyUri, 0, 0);
+    }
+
+    /** @param fetchTimeout passed as the <code>timeout</code> of each records request, unless 0
+     *  @param fetchMaxBytes passed as the <code>max_bytes</code> of each records request, unless 0
+     */
+    ConsumerInstanceEndpoints(Client client, URI consumerInstance, URI proxyUri, long fetchTimeout, long fetchMaxBytes) {
+        this.instance = client.resource(resolve(consumerInstance, null, proxyUri));
+        this.records = client.resource(records(consumerInstance, proxyUri, fetchTimeout, fetchMaxBytes));
+        this.offsets = client.resource(resolve(consumerInstance, "offsets", proxyUri));
+        this.subscription = client.resource(resolve(consumerInstance, "subscription", proxyUri));
+    }
+
+    WebResource instance() {
+        return instance;
+    }
+
+    WebResource records() {
+        return records;
+    }
+
+    WebResource offsets() {
+        return offsets;
+    }
+
+    WebResource subscription() {
+        return subscription;
+    }
+
+    /** The records resource: the proxy waits up to <code>fetchTimeout</code> milliseconds for records to arrive
+     *  before answering, and answers with at most <code>fetchMaxBytes</code> of them.
+     */
+    static URI records(URI consumerInstance, URI proxyUri, long fetchTimeout, long fetchMaxBytes) {
+        UriBuilder uriBuilder = UriBuilder.fromUri(resolve(consumerInstance, "records", proxyUri));
+        if (fetchTimeout > 0) {
+            uriBuilder.queryParam("timeout", fetchTimeout);
+        }
+        if (fetchMaxBytes > 0) {
+            uriBuilder.queryParam("max_bytes", fetchMaxBytes);
+        }
+        return uriBuilder.build();
+    }
+
+    static URI resolve(URI consumerInstance, String path, URI proxyUri) {
+        UriBuilder uriBuilder = UriBuilder.fromUri(consumerInstance);
+        if (path != null) {
+            uriBuilder.path(path);
+        }
+        if (proxyUri != null) {
+            uriBuilder.host(proxyUri.getHost()).port(proxyUri.getPort());
+        }
+        return uriBuilder.build();
+    }
+}
@@ -0,0 +1,71 @@
+package com.ft.message.consumer.proxy;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** The lag of a service's consumer instances, as last sampled by {@link ConsumerLagSampler}: for each partition assigned
+ *  to one of them, the number of records between its position and the end of the partition. Partitions assigned but not
+ *  consumed from yet have no known position, so their lag is unknown rather than counted as none.
+ */
+public class ConsumerLag {
+
+    private final SortedMap<Integer, Long> partitionLags;
+    private final SortedMap<Integer, Long> unknownPartitions;
+    private final long totalLag;
+    private final long sampledAt;
+
+    public ConsumerLag(Map<Integer, Long> partitionLags, long sampledAt) {
+        this(partitionLags, Collections.<Integer, Long>emptyMap(), sampledAt);
+    }
+
+    /** @param unknownPartitions the partitions assigned without a known position, each with when it was first sampled
+     *                           as such, in epoch milliseconds
+     */
+    public ConsumerLag(Map<Integer, Long> partitionLags, Map<Integer, Long> unknownPartitions, long sampledAt) {
+        this.partitionLags = Collections.unmodifiableSortedMap(new TreeMap<>(partitionLags));
+        this.unknownPartitions = Collections.unmodifiableSortedMap(new TreeMap<>(unknownPartitions));
+        long total = 0;
+        for (long lag : partitionLags.values()) {
+            total += lag;
+        }
+        this.totalLag = total;
+        this.sampledAt = sampledAt;
+    }
+
+    /** @return the lag of each partition the consumer instances have been assigned and have consumed from */
+    public SortedMap<Integer, Long> getPartitionLags() {
+        return partitionLags;
+    }
+
+    /** @return the lag of the partitions whose position is known; see {@link #getUnknownPartitions()} for the others */
+    public long getTotalLag() {
+        return totalLag;
+    }
+
+    /** @return the partitions the consumer instances have been assigned but have no known position in, each with
+     *          when it was first sampled as such, in epoch milliseconds
+     */
+    public SortedMap<Integer, Long> getUnknownPartitions() {
+        return unknownPartitions;
+    }
+
+    /** @return when the partition that has been unknown the longest was first sampled as such, in epoch milliseconds,
+     *          or 0 if the lag of every partition is known
+     */
+    public long getUnknownSince() {
+        return unknownPartitions.isEmpty() ? 0 : Collections.min(unknownPartitions.values());
+    }
+
+    /** @return when the lag was sampled, in epoch milliseconds */
+    public long getSampledAt() {
+        return sampledAt;
+    }
+
+    @Override
+    public String toString() {
+        String known = String.format("%d message(s) behind across partitions %s", totalLag, partitionLags);
+        return unknownPartitions.isEmpty() ? known : String.format("%s, lag unknown on partitions %s", known, unknownPartitions.keySet());
+    }
+}
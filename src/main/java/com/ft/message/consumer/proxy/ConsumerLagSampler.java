@@ -0,0 +1,215 @@
+package com.ft.message.consumer.proxy;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ft.message.consumer.config.MessageQueueConsumerConfiguration;
+import com.google.common.base.Strings;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import com.sun.jersey.api.client.WebResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.UriBuilder;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/** Samples the lag of a service's consumer instances on a background thread, every <code>lagSampleInterval</code>:
+ *  the partitions assigned to each instance and the end offset of each of those partitions are read from the proxy,
+ *  and compared with the positions recorded in {@link ConsumerPositions}. Consuming streams make no request for it.
+ *  <p>
+ *  The last lag sampled is cached, and reported, if a registry is given, as the gauges <code>lag</code>, in total,
+ *  <code>lag.partition-N</code>, for each partition, and <code>lag.unknown-partitions</code>, the number of partitions
+ *  assigned whose position is not known yet, since they have not been consumed from nor committed. The names start
+ *  with the topic and the group. A sample that fails leaves the previous one in place.
+ */
+public class ConsumerLagSampler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConsumerLagSampler.class);
+    private static final String KAFKA_MESSAGE_CONTENT_TYPE = "application/vnd.kafka.v2+json";
+    private static final String PROXY_ERR = "Unable to %s. Proxy error.";
+    private static final String PROXY_STATUS_ERR = "Unable to %s. Proxy returned %d";
+    private static final String ASSIGNMENTS = "read consumer instance assignments";
+    private static final String END_OFFSETS = "read partition offsets";
+
+    private static final int SC_OK = ClientResponse.Status.OK.getStatusCode();
+    private static final int SC_NOT_FOUND = ClientResponse.Status.NOT_FOUND.getStatusCode();
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final MessageQueueConsumerConfiguration configuration;
+    private final Client proxyClient;
+    private final ConsumerPositions positions;
+    private final MetricRegistry metrics;
+    private final String metricsPrefix;
+    private final URI proxyUri;
+    private final String[] acceptHeaders;
+    private final Set<Integer> partitionGauges = ConcurrentHashMap.newKeySet();
+    private final Map<Integer, Long> unknownSince = new HashMap<>();
+
+    private volatile ConsumerLag lag;
+    private ScheduledExecutorService executor;
+
+    /** @param metrics registry to which the lag is reported; may be <code>null</code> */
+    public ConsumerLagSampler(MessageQueueConsumerConfiguration configuration, Client proxyClient,
+                              ConsumerPositions positions, MetricRegistry metrics) {
+        this.configuration = configuration;
+        this.proxyClient = proxyClient;
+        this.positions = positions;
+        this.metrics = metrics;
+        this.metricsPrefix = MetricRegistry.name(configuration.getTopicName(), configuration.getGroupName(),
+                ConsumerLagSampler.class.getName(), "lag");
+        if (Strings.isNullOrEmpty(configuration.getQueue())) {
+            this.proxyUri = null;
+            this.acceptHeaders = new String[] {"Accept", KAFKA_MESSAGE_CONTENT_TYPE};
+        } else {
+            this.proxyUri = UriBuilder.fromUri(configuration.getQueueProxyHost()).build();
+            this.acceptHeaders = new String[] {"Accept", KAFKA_MESSAGE_CONTENT_TYPE, "Host", configuration.getQueue()};
+        }
+        if (metrics != null) {
+            register(metricsPrefix, (Gauge<Long>) () -> {
+                ConsumerLag current = lag;
+                return current != null ? current.getTotalLag() : null;
+            });
+            register(MetricRegistry.name(metricsPrefix, "unknown-partitions"), (Gauge<Integer>) () -> {
+                ConsumerLag current = lag;
+                return current != null ? current.getUnknownPartitions().size() : null;
+            });
+        }
+    }
+
+    /** A gauge already registered, by another sampler of the same topic and group, is left to report for both. */
+    private void register(String name, Gauge<?> gauge) {
+        try {
+            metrics.register(name, gauge);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn(String.format("outcome=Exception message=\"%s is already reported by another consumer of the same topic and group.\"", name));
+        }
+    }
+
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-queue-lag-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = configuration.getLagSampleInterval();
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                sample();
+            } catch (RuntimeException e) {
+                LOGGER.warn("outcome=Exception message=\"Unable to sample consumer lag.\"", e);
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /** @return the lag last sampled, or <code>null</code> if none has been yet */
+    public ConsumerLag getLag() {
+        return lag;
+    }
+
+    /** Only the sampling thread calls it, so <code>unknownSince</code> needs no lock. */
+    void sample() {
+        long now = System.currentTimeMillis();
+        Map<Integer, Long> endOffsets = new HashMap<>();
+        Map<Integer, Long> partitionLags = new HashMap<>();
+        Map<Integer, Long> unknownPartitions = new HashMap<>();
+        for (URI consumerInstance : positions.getConsumerInstances()) {
+            for (int partition : assignments(consumerInstance)) {
+                Long position = positions.getPosition(consumerInstance, partition);
+                if (position == null) {
+                    Long since = unknownSince.get(partition);
+                    unknownPartitions.put(partition, since != null ? since : now);
+                    continue;
+                }
+                Long endOffset = endOffsets.get(partition);
+                if (endOffset == null) {
+                    endOffset = endOffset(partition);
+                    endOffsets.put(partition, endOffset);
+                }
+                partitionLags.put(partition, Math.max(0, endOffset - position));
+            }
+        }
+        // a partition whose position another instance knows is not unknown, whichever instance was asked first
+        unknownPartitions.keySet().removeAll(partitionLags.keySet());
+        unknownSince.keySet().retainAll(unknownPartitions.keySet());
+        unknownSince.putAll(unknownPartitions);
+        lag = new ConsumerLag(partitionLags, unknownPartitions, now);
+        if (metrics != null) {
+            for (int partition : partitionLags.keySet()) {
+                if (partitionGauges.add(partition)) {
+                    register(MetricRegistry.name(metricsPrefix, "partition-" + partition),
+                            (Gauge<Long>) () -> {
+                                ConsumerLag current = lag;
+                                return current != null ? current.getPartitionLags().get(partition) : null;
+                            });
+                }
+            }
+        }
+    }
+
+    /** An instance that no longer exists, having expired or been destroyed meanwhile, has no partitions. */
+    private List<Integer> assignments(URI consumerInstance) {
+        List<Integer> partitions = new ArrayList<>();
+        JsonNode assignments = get(ConsumerInstanceEndpoints.resolve(consumerInstance, "assignments", proxyUri), ASSIGNMENTS);
+        for (JsonNode assignment : assignments.path("partitions")) {
+            if (configuration.getTopicName().equals(assignment.path("topic").asText())) {
+                partitions.add(assignment.path("partition").asInt());
+            }
+        }
+        return partitions;
+    }
+
+    private long endOffset(int partition) {
+        URI uri = UriBuilder.fromUri(configuration.getQueueProxyHost())
+                .path("topics")
+                .path(configuration.getTopicName())
+                .path("partitions")
+                .path(String.valueOf(partition))
+                .path("offsets").build();
+        return get(uri, END_OFFSETS).path("end_offset").asLong();
+    }
+
+    private JsonNode get(URI uri, String action) {
+        ClientResponse clientResponse = null;
+        try {
+            WebResource.Builder builder = proxyClient.resource(uri).getRequestBuilder();
+            for (int i = 0; i < acceptHeaders.length; i += 2) {
+                builder.header(acceptHeaders[i], acceptHeaders[i + 1]);
+            }
+            clientResponse = builder.get(ClientResponse.class);
+            if (clientResponse.getStatus() == SC_NOT_FOUND && ASSIGNMENTS.equals(action)) {
+                return JSON.createObjectNode();
+            }
+            if (clientResponse.getStatus() != SC_OK) {
+                throw new QueueProxyServiceException(String.format(PROXY_STATUS_ERR, action, clientResponse.getStatus()), clientResponse.getStatus());
+            }
+            return JSON.readTree(clientResponse.getEntityInputStream());
+        } catch (ClientHandlerException | UniformInterfaceException | IOException e) {
+            throw new QueueProxyServiceException(String.format(PROXY_ERR, action), e);
+        } finally {
+            if (clientResponse != null) {
+                clientResponse.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.ft.message.consumer.proxy;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.message.consumer.proxy.model.PartitionOffset;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** The fetched and committed positions, per partition, of the consumer instances of a service, recorded by the proxy
+ *  service from the records the proxy hands out and the offsets it is asked to commit. The v2 proxy API has no request
+ *  returning an instance's positions, and reading its committed offsets takes a GET with a body, so they are recorded
+ *  as they go by rather than read back, at no extra request.
+ *  <p>
+ *  A position is the offset of the next record to consume. With auto commit, the proxy commits every record it has handed
+ *  out, so the committed positions follow the fetched ones.
+ */
+public class ConsumerPositions {
+
+    private final boolean autoCommit;
+    private final ConcurrentMap<URI, Positions> instances = new ConcurrentHashMap<>();
+
+    public ConsumerPositions(boolean autoCommit) {
+        this.autoCommit = autoCommit;
+    }
+
+    void created(URI consumerInstance) {
+        instances.put(consumerInstance, new Positions());
+    }
+
+    void destroyed(URI consumerInstance) {
+        instances.remove(consumerInstance);
+    }
+
+    void fetched(URI consumerInstance, MessageRecord record) {
+        if (record.getPartition() == MessageRecord.UNKNOWN_PARTITION || record.getOffset() == MessageRecord.UNKNOWN_OFFSET) {
+            return;
+        }
+        Positions positions = positions(consumerInstance);
+        positions.fetched.put(record.getPartition(), record.getOffset() + 1);
+        if (autoCommit) {
+            positions.committed.put(record.getPartition(), record.getOffset() + 1);
+        }
+    }
+
+    /** The proxy commits the position of every record it has handed out to the instance. */
+    void committed(URI consumerInstance) {
+        Positions positions = positions(consumerInstance);
+        positions.committed.putAll(positions.fetched);
+    }
+
+    void committed(URI consumerInstance, List<PartitionOffset> offsets) {
+        Positions positions = positions(consumerInstance);
+        for (PartitionOffset offset : offsets) {
+            positions.committed.put(offset.getPartition(), offset.getOffset() + 1);
+        }
+    }
+
+    Set<URI> getConsumerInstances() {
+        return instances.keySet();
+    }
+
+    /** @return the position the instance has committed in the partition, or else the one it has fetched up to, or
+     *          <code>null</code> if it has not consumed from the partition
+     */
+    Long getPosition(URI consumerInstance, int partition) {
+        Positions positions = instances.get(consumerInstance);
+        if (positions == null) {
+            return null;
+        }
+        Long committed = positions.committed.get(partition);
+        return committed != null ? committed : positions.fetched.get(partition);
+    }
+
+    /** Instances created elsewhere, e.g. by a previous run, are recorded on first use. */
+    private Positions positions(URI consumerInstance) {
+        return instances.computeIfAbsent(consumerInstance, instance -> new Positions());
+    }
+
+    private static class Positions {
+
+        private final ConcurrentMap<Integer, Long> fetched = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Integer, Long> committed = new ConcurrentHashMap<>();
+    }
+}
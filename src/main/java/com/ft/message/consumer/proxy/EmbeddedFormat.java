@@ -0,0 +1,43 @@
+package com.ft.message.consumer.proxy;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+/** How record keys and values are embedded in the JSON responses of the proxy, as chosen when a consumer instance is
+ *  created. <code>binary</code> records carry base64 strings; the other formats carry JSON values, which the proxy
+ *  renders from JSON, Avro or Protobuf data, so that nothing is inflated by base64 on the wire or in the proxy.
+ *  <p>
+ *  A format of one's own is passed to the proxy service or initializer; the <code>embeddedFormat</code> setting only
+ *  names the built-in ones. Implementations must be thread safe: one format is shared by all the streams of a service.
+ */
+public interface EmbeddedFormat {
+
+    /** Binary records, requested with the media type this library has always sent, which the proxy serves as binary. */
+    EmbeddedFormat BINARY = new BinaryEmbeddedFormat("binary", "application/vnd.kafka.v2+json");
+    EmbeddedFormat JSON = new JsonEmbeddedFormat("json", "application/vnd.kafka.json.v2+json");
+    EmbeddedFormat AVRO = new JsonEmbeddedFormat("avro", "application/vnd.kafka.avro.v2+json");
+    EmbeddedFormat PROTOBUF = new JsonEmbeddedFormat("protobuf", "application/vnd.kafka.protobuf.v2+json");
+    EmbeddedFormat JSONSCHEMA = new JsonEmbeddedFormat("jsonschema", "application/vnd.kafka.jsonschema.v2+json");
+
+    /** @return the <code>format</code> of the consumer instance, as given to the proxy when creating it */
+    String getName();
+
+    /** @return the <code>Accept</code> media type of records requests */
+    String getMediaType();
+
+    /** Reads the key or value the parser is positioned on, leaving the parser on its last token.
+     *  @return the bytes of the key or value, or <code>null</code> if it is a JSON <code>null</code>
+     */
+    byte[] readValue(JsonParser parser) throws IOException;
+
+    /** @throws IllegalArgumentException if <code>name</code> is not one of the built-in formats */
+    static EmbeddedFormat forName(String name) {
+        for (EmbeddedFormat format : new EmbeddedFormat[] {BINARY, JSON, AVRO, PROTOBUF, JSONSCHEMA}) {
+            if (format.getName().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown embedded format " + name);
+    }
+}
@@ -0,0 +1,57 @@
+package com.ft.message.consumer.proxy;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/** Keys and values are JSON values, as the proxy renders JSON, Avro and Protobuf data. A string, such as an FT message
+ *  produced as JSON, is read as its UTF-8 text; any other value is copied token by token into compact JSON text.
+ */
+class JsonEmbeddedFormat implements EmbeddedFormat {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final String name;
+    private final String mediaType;
+
+    JsonEmbeddedFormat(String name, String mediaType) {
+        this.name = name;
+        this.mediaType = mediaType;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    @Override
+    public byte[] readValue(JsonParser parser) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getText().getBytes(StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try (JsonGenerator generator = JSON.createGenerator(out)) {
+            generator.copyCurrentStructure(parser);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -1,6 +1,7 @@
 package com.ft.message.consumer.proxy;
 
 import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.message.consumer.proxy.model.PartitionOffset;
 
 import java.net.URI;
 import java.util.List;
@@ -18,7 +19,38 @@ public interface MessageQueueProxyService {
 
     List<MessageRecord> consumeMessages(URI consumerInstance);
 
+    /** Consumes messages, handing each record to <code>handler</code> as soon as it has been decoded.
+     *  @return the number of records consumed
+     */
+    default int consumeMessages(URI consumerInstance, MessageRecordHandler handler) throws InterruptedException {
+        List<MessageRecord> messageRecords = consumeMessages(consumerInstance);
+        if (messageRecords == null) {
+            return 0;
+        }
+        for (MessageRecord messageRecord : messageRecords) {
+            handler.onRecord(messageRecord);
+        }
+        return messageRecords.size();
+    }
+
     void commitOffsets(URI consumerInstance);
+
+    /** Commits exactly the given offsets, each being that of the last processed record of its partition.
+     *  @throws IllegalStateException unless implemented: explicit commits need a service that supports them
+     */
+    default void commitOffsets(URI consumerInstance, List<PartitionOffset> offsets) {
+        throw new IllegalStateException(getClass().getName() + " does not support explicit offset commits");
+    }
+
+    /** @return the number of partitions of the topic, beyond which further consumer instances of the group receive no records,
+     *          or 0 if it is not known, as unless implemented; autoscaling then adds no stream
+     */
+    default int getPartitionCount() {
+        return 0;
+    }
     
+    /** @return the outcome of the most recent call made by any stream; the health of each stream is in its
+     *          {@link com.ft.message.consumer.StreamStatus}
+     */
     String getStatus();
 }
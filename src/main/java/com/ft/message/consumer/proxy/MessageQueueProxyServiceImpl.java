@@ -1,76 +1,117 @@
 package com.ft.message.consumer.proxy;
 
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.ft.message.consumer.config.MessageQueueConsumerConfiguration;
-import com.ft.message.consumer.proxy.model.ConsumerInstanceResponse;
 import com.ft.message.consumer.proxy.model.MessageRecord;
-import com.google.common.base.Strings;
+import com.ft.message.consumer.proxy.model.PartitionOffset;
+import com.google.common.io.CountingInputStream;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientResponse;
-import com.sun.jersey.api.client.GenericType;
 import com.sun.jersey.api.client.UniformInterfaceException;
 import com.sun.jersey.api.client.WebResource;
 
-import javax.ws.rs.core.UriBuilder;
+import java.io.IOException;
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.ft.message.consumer.proxy.ProxyCalls.COMMIT;
+import static com.ft.message.consumer.proxy.ProxyCalls.CONSUME;
+import static com.ft.message.consumer.proxy.ProxyCalls.CREATE;
+import static com.ft.message.consumer.proxy.ProxyCalls.DESTROY;
+import static com.ft.message.consumer.proxy.ProxyCalls.DESTROYED;
+import static com.ft.message.consumer.proxy.ProxyCalls.PARTITIONS;
+import static com.ft.message.consumer.proxy.ProxyCalls.SC_NO_CONTENT;
+import static com.ft.message.consumer.proxy.ProxyCalls.SC_OK;
+import static com.ft.message.consumer.proxy.ProxyCalls.status;
+import static com.ft.message.consumer.proxy.ProxyCalls.withHeaders;
 
 public class MessageQueueProxyServiceImpl implements MessageQueueProxyService {
-    private static final String PROXY_ERR = "Unable to %s. Proxy error.";
-    private static final String PROXY_STATUS_ERR = "Unable to %s. Proxy returned %d";
-    private static final String CREATE = "create consumer instance";
-    private static final String CONSUME = "consume messages";
-    private static final String COMMIT = "commit offsets";
-    private static final String DESTROY = "destroy consumer instance";
-    private static final String KAFKA_MESSAGE_CONTENT_TYPE = "application/vnd.kafka.v2+json";
-
-    private static final int SC_NO_CONTENT = ClientResponse.Status.NO_CONTENT.getStatusCode();
-    private static final int SC_OK = ClientResponse.Status.OK.getStatusCode();
 
     private MessageQueueConsumerConfiguration configuration;
     private Client proxyClient;
-    private String status = String.format(MESSAGES_CONSUMED, 0);
+    private PayloadBufferPool payloadBufferPool;
+    private final ProxyCalls calls;
+    private final ProxyCallMetrics callMetrics;
+    private final ConcurrentMap<URI, ConsumerInstanceEndpoints> consumerInstances;
 
     public MessageQueueProxyServiceImpl(MessageQueueConsumerConfiguration configuration, Client proxyClient) {
+        this(configuration, proxyClient, null);
+    }
+
+    /** @param metrics registry to which the timings of proxy calls, the records per poll and the response sizes
+     *                 are reported, under names starting with the topic and the group; if <code>null</code> they are
+     *                 recorded but not reported
+     *  @throws IllegalArgumentException if the configured embedded format is unknown
+     */
+    public MessageQueueProxyServiceImpl(MessageQueueConsumerConfiguration configuration, Client proxyClient, MetricRegistry metrics) {
+        this(configuration, proxyClient, metrics, null);
+    }
+
+    /** @param positions records the positions of the consumer instances, for a {@link ConsumerLagSampler}; may be <code>null</code> */
+    public MessageQueueProxyServiceImpl(MessageQueueConsumerConfiguration configuration, Client proxyClient, MetricRegistry metrics,
+                                        ConsumerPositions positions) {
+        this(configuration, proxyClient, metrics, positions, null);
+    }
+
+    /** @param format the format of the records, e.g. one of their own; if <code>null</code>, the built-in format named by
+     *                the configured <code>embeddedFormat</code>
+     */
+    public MessageQueueProxyServiceImpl(MessageQueueConsumerConfiguration configuration, Client proxyClient, MetricRegistry metrics,
+                                        ConsumerPositions positions, EmbeddedFormat format) {
         this.configuration = configuration;
         this.proxyClient = proxyClient;
+        if (configuration.getPayloadPoolSize() > 0) {
+            this.payloadBufferPool = new PayloadBufferPool(configuration.getPayloadPoolSize(), configuration.getPayloadBufferSize());
+        }
+        this.calls = new ProxyCalls(configuration, metrics, positions, format);
+        this.callMetrics = calls.metricsOf(null);
+        this.consumerInstances = new ConcurrentHashMap<>();
     }
 
-    private void checkStatus(ClientResponse response, int expectedStatus, String action) {
-        if (response.getStatus() != expectedStatus) {
-            String msg = String.format(PROXY_STATUS_ERR, action, response.getStatus());
-            updateUnhealthyStatus(msg);
-            throw new QueueProxyServiceException(msg);
-        }
+    private MessageQueueProxyServiceImpl(MessageQueueProxyServiceImpl service, String stream) {
+        this.configuration = service.configuration;
+        this.proxyClient = service.proxyClient;
+        this.payloadBufferPool = service.payloadBufferPool;
+        this.calls = service.calls;
+        this.callMetrics = calls.metricsOf(stream);
+        this.consumerInstances = service.consumerInstances;
     }
 
+    /** @return a service that shares the client, the consumer instances and the status of this one, but reports
+     *          the metrics of its calls as those of <code>stream</code>
+     */
+    public MessageQueueProxyServiceImpl forStream(String stream) {
+        return new MessageQueueProxyServiceImpl(this, stream);
+    }
+
+    /** A call that got no answer, such as one that timed out, can be made again, since none but records requests
+     *  move the consumer instance on.
+     */
     private QueueProxyServiceException proxyException(Throwable e, String action) {
-        String msg = String.format(PROXY_ERR, action);
-        updateUnhealthyStatus(msg);
-        return new QueueProxyServiceException(msg, e);
+        return calls.proxyException(e, action, e instanceof ClientHandlerException);
     }
 
     @Override
     public URI createConsumerInstance() {
+        long start = System.nanoTime();
         ClientResponse clientResponse = null;
         try {
-            URI uri = UriBuilder.fromUri(configuration.getQueueProxyHost())
-                    .path("consumers")
-                    .path(configuration.getGroupName()).build();
-
-            WebResource.Builder builder = proxyClient.resource(uri).getRequestBuilder();
-            builder.header("Content-Type", KAFKA_MESSAGE_CONTENT_TYPE);
-            if (!Strings.isNullOrEmpty(configuration.getQueue())) {
-                builder.header("Host", configuration.getQueue());
-            }
+            WebResource.Builder builder = withHeaders(proxyClient.resource(calls.consumersUri()).getRequestBuilder(), calls.contentTypeHeaders);
 
-            clientResponse = builder.post(ClientResponse.class, String.format("{\"auto.offset.reset\": \"%s\", \"auto.commit.enable\": \"%b\"}", configuration.getOffsetReset(), configuration.isAutoCommit()));
-            checkStatus(clientResponse, SC_OK, CREATE);
-            uri = clientResponse.getEntity(ConsumerInstanceResponse.class).getBaseUri();
+            clientResponse = builder.post(ClientResponse.class, calls.createEntity());
+            calls.checkStatus(clientResponse, SC_OK, CREATE);
+            URI uri = calls.readConsumerInstance(clientResponse);
+            consumerInstances.put(uri, new ConsumerInstanceEndpoints(proxyClient, uri, calls.proxyUri(),
+                    configuration.getFetchTimeout(), configuration.getFetchMaxBytes()));
             return uri;
         } catch (ClientHandlerException | UniformInterfaceException e) {
             throw proxyException(e, CREATE);
         } finally {
+            callMetrics.createTimers.update(status(clientResponse), start);
             if (clientResponse != null) {
                 clientResponse.close();
             }
@@ -79,27 +120,20 @@ public class MessageQueueProxyServiceImpl implements MessageQueueProxyService {
 
     @Override
     public void destroyConsumerInstance(URI consumerInstance) {
+        long start = System.nanoTime();
         ClientResponse clientResponse = null;
         try {
-
-            UriBuilder uriBuilder = UriBuilder.fromUri(consumerInstance);
-            if (!Strings.isNullOrEmpty(configuration.getQueue())) {
-                addProxyPortAndHostInUri(uriBuilder);
-            }
-            URI uri = uriBuilder.build();
-
-            WebResource.Builder builder = proxyClient.resource(uri).getRequestBuilder();
-            builder.header("Accept", KAFKA_MESSAGE_CONTENT_TYPE);
-            if (!Strings.isNullOrEmpty(configuration.getQueue())) {
-                builder.header("Host", configuration.getQueue());
-            }
+            WebResource.Builder builder = withHeaders(endpoints(consumerInstance).instance().getRequestBuilder(), calls.acceptHeaders);
 
             clientResponse = builder.delete(ClientResponse.class);
-            checkStatus(clientResponse, SC_NO_CONTENT, DESTROY);
-            updateUnhealthyStatus("Consumer has been destroyed.");
+            calls.checkStatus(clientResponse, SC_NO_CONTENT, DESTROY);
+            calls.updateUnhealthyStatus(DESTROYED);
         } catch (ClientHandlerException | UniformInterfaceException e) {
             throw proxyException(e, DESTROY);
         } finally {
+            callMetrics.destroyTimers.update(status(clientResponse), start);
+            consumerInstances.remove(consumerInstance);
+            calls.destroyed(consumerInstance);
             if (clientResponse != null) {
                 clientResponse.close();
             }
@@ -108,25 +142,16 @@ public class MessageQueueProxyServiceImpl implements MessageQueueProxyService {
 
     @Override
     public void subscribeConsumerInstanceToTopic(URI consumerInstance) {
+        long start = System.nanoTime();
         ClientResponse clientResponse = null;
         try {
-            UriBuilder uriBuilder = UriBuilder.fromUri(consumerInstance)
-                    .path("subscription");
-            if (!Strings.isNullOrEmpty(configuration.getQueue())) {
-                addProxyPortAndHostInUri(uriBuilder);
-            }
-            URI uri = uriBuilder.build();
-
-            WebResource.Builder builder = proxyClient.resource(uri).getRequestBuilder();
-            builder.header("Content-Type", KAFKA_MESSAGE_CONTENT_TYPE);
-            if (!Strings.isNullOrEmpty(configuration.getQueue())) {
-                builder.header("Host", configuration.getQueue());
-            }
-            clientResponse = builder.post(ClientResponse.class, String.format("{\"topics\":[\"%s\"]}", configuration.getTopicName()));
-            checkStatus(clientResponse, SC_NO_CONTENT, CREATE);
+            WebResource.Builder builder = withHeaders(endpoints(consumerInstance).subscription().getRequestBuilder(), calls.contentTypeHeaders);
+            clientResponse = builder.post(ClientResponse.class, calls.subscribeEntity());
+            calls.checkStatus(clientResponse, SC_NO_CONTENT, CREATE);
         } catch (ClientHandlerException | UniformInterfaceException e) {
             throw proxyException(e, CREATE);
         } finally {
+            callMetrics.subscribeTimers.update(status(clientResponse), start);
             if (clientResponse != null) {
                 clientResponse.close();
             }
@@ -136,28 +161,18 @@ public class MessageQueueProxyServiceImpl implements MessageQueueProxyService {
 
     @Override
     public void destroyConsumerInstanceSubscription(URI consumerInstance) {
+        long start = System.nanoTime();
         ClientResponse clientResponse = null;
         try {
-
-            UriBuilder uriBuilder = UriBuilder.fromUri(consumerInstance)
-                    .path("subscription");
-            if (!Strings.isNullOrEmpty(configuration.getQueue())) {
-                addProxyPortAndHostInUri(uriBuilder);
-            }
-            URI uri = uriBuilder.build();
-
-            WebResource.Builder builder = proxyClient.resource(uri).getRequestBuilder();
-            builder.header("Accept", KAFKA_MESSAGE_CONTENT_TYPE);
-            if (!Strings.isNullOrEmpty(configuration.getQueue())) {
-                builder.header("Host", configuration.getQueue());
-            }
+            WebResource.Builder builder = withHeaders(endpoints(consumerInstance).subscription().getRequestBuilder(), calls.acceptHeaders);
 
             clientResponse = builder.delete(ClientResponse.class);
-            checkStatus(clientResponse, SC_NO_CONTENT, DESTROY);
-            updateUnhealthyStatus("Consumer has been destroyed.");
+            calls.checkStatus(clientResponse, SC_NO_CONTENT, DESTROY);
+            calls.updateUnhealthyStatus(DESTROYED);
         } catch (ClientHandlerException | UniformInterfaceException e) {
             throw proxyException(e, DESTROY);
         } finally {
+            callMetrics.unsubscribeTimers.update(status(clientResponse), start);
             if (clientResponse != null) {
                 clientResponse.close();
             }
@@ -168,28 +183,40 @@ public class MessageQueueProxyServiceImpl implements MessageQueueProxyService {
     public List<MessageRecord> consumeMessages(URI consumerInstance) {
         ClientResponse clientResponse = null;
         try {
-            UriBuilder uriBuilder = UriBuilder.fromUri(consumerInstance)
-                    .path("records");
-
-            if (!Strings.isNullOrEmpty(configuration.getQueue())) {
-                addProxyPortAndHostInUri(uriBuilder);
+            clientResponse = getRecords(consumerInstance);
+            return calls.readRecords(consumerInstance, clientResponse, callMetrics);
+        } catch (ClientHandlerException | UniformInterfaceException | IOException e) {
+            throw calls.proxyException(e, CONSUME, false);
+        } finally {
+            if (clientResponse != null) {
+                clientResponse.close();
             }
+        }
+    }
 
-            URI uri = uriBuilder.build();
-
-            WebResource.Builder builder = proxyClient.resource(uri).getRequestBuilder();
-            builder.header("Accept", KAFKA_MESSAGE_CONTENT_TYPE);
-            if (!Strings.isNullOrEmpty(configuration.getQueue())) {
-                builder.header("Host", configuration.getQueue());
+    @Override
+    public int consumeMessages(URI consumerInstance, MessageRecordHandler handler) throws InterruptedException {
+        ClientResponse clientResponse = null;
+        try {
+            clientResponse = getRecords(consumerInstance);
+
+            CountingInputStream body = ProxyCalls.countBody(clientResponse);
+
+            int count = 0;
+            try (MessageRecordReader reader = new MessageRecordReader(body != null ? body : clientResponse.getEntityInputStream(),
+                    payloadBufferPool, calls.getFormat())) {
+                while (reader.hasNext()) {
+                    MessageRecord record = reader.next();
+                    calls.fetched(consumerInstance, record);
+                    handler.onRecord(record);
+                    count++;
+                }
             }
-            clientResponse = builder.get(ClientResponse.class);
-            checkStatus(clientResponse, SC_OK, CONSUME);
-
-            List<MessageRecord> messages = clientResponse.getEntity(new GenericType<List<MessageRecord>>() {});
-            updateHealthyStatus(messages.size());
-            return messages;
-        } catch (ClientHandlerException | UniformInterfaceException e) {
-            throw proxyException(e, CONSUME);
+            callMetrics.polled(count, body);
+            calls.polled(count);
+            return count;
+        } catch (ClientHandlerException | UniformInterfaceException | IOException e) {
+            throw calls.proxyException(e, CONSUME, false);
         } finally {
             if (clientResponse != null) {
                 clientResponse.close();
@@ -197,52 +224,104 @@ public class MessageQueueProxyServiceImpl implements MessageQueueProxyService {
         }
     }
 
+    private ClientResponse getRecords(URI consumerInstance) {
+        WebResource.Builder builder = withHeaders(endpoints(consumerInstance).records().getRequestBuilder(), calls.recordsHeaders);
+        long start = System.nanoTime();
+        ClientResponse clientResponse = null;
+        try {
+            clientResponse = builder.get(ClientResponse.class);
+        } catch (ClientHandlerException e) {
+            throw calls.proxyException(e, CONSUME, ProxyCalls.isNotSent(e));
+        } finally {
+            // only the wait for the response is timed: reading the body overlaps with handing records over
+            callMetrics.consumeTimers.update(status(clientResponse), start);
+        }
+        try {
+            calls.checkStatus(clientResponse, SC_OK, CONSUME);
+        } catch (QueueProxyServiceException e) {
+            clientResponse.close();
+            throw e;
+        }
+        return clientResponse;
+    }
+
     @Override
     public void commitOffsets(URI consumerInstance) {
+        long start = System.nanoTime();
         ClientResponse clientResponse = null;
         try {
-
-            UriBuilder uriBuilder = UriBuilder.fromUri(consumerInstance).path("offsets");
-            if (!Strings.isNullOrEmpty(configuration.getQueue())) {
-                addProxyPortAndHostInUri(uriBuilder);
-            }
-            URI uri = uriBuilder.build();
-
-            WebResource.Builder builder = proxyClient.resource(uri).getRequestBuilder();
-            if (!Strings.isNullOrEmpty(configuration.getQueue())) {
-                builder.header("Host", configuration.getQueue());
-            }
+            WebResource.Builder builder = withHeaders(endpoints(consumerInstance).offsets().getRequestBuilder(), calls.hostHeaders);
 
             clientResponse = builder.post(ClientResponse.class);
-            checkStatus(clientResponse, SC_OK, COMMIT);
+            calls.checkStatus(clientResponse, SC_OK, COMMIT);
+            calls.committed(consumerInstance);
         } catch (ClientHandlerException | UniformInterfaceException e) {
             throw proxyException(e, COMMIT);
         } finally {
+            callMetrics.commitTimers.update(status(clientResponse), start);
             if (clientResponse != null) {
                 clientResponse.close();
             }
         }
     }
 
-    private void addProxyPortAndHostInUri(UriBuilder uriBuilder) {
-        URI proxyUri = UriBuilder.fromUri(configuration.getQueueProxyHost()).build();
-        uriBuilder.host(proxyUri.getHost()).port(proxyUri.getPort());
-    }
+    /** The proxy commits the offset after each one given, i.e. the position of the next record to consume. */
+    @Override
+    public void commitOffsets(URI consumerInstance, List<PartitionOffset> offsets) {
+        long start = System.nanoTime();
+        ClientResponse clientResponse = null;
+        try {
+            WebResource.Builder builder = withHeaders(endpoints(consumerInstance).offsets().getRequestBuilder(), calls.contentTypeHeaders);
 
-    private boolean queueIsNotEmpty() {
-        return configuration.getQueue() != null && !configuration.getQueue().isEmpty();
+            clientResponse = builder.post(ClientResponse.class, ProxyCalls.commitEntity(offsets));
+            calls.checkStatus(clientResponse, SC_OK, COMMIT);
+            calls.committed(consumerInstance, offsets);
+        } catch (ClientHandlerException | UniformInterfaceException | JsonProcessingException e) {
+            throw proxyException(e, COMMIT);
+        } finally {
+            callMetrics.commitTimers.update(status(clientResponse), start);
+            if (clientResponse != null) {
+                clientResponse.close();
+            }
+        }
     }
 
-    private void updateHealthyStatus(int messageCount) {
-        status = String.format(MESSAGES_CONSUMED, messageCount);
+    @Override
+    public int getPartitionCount() {
+        long start = System.nanoTime();
+        ClientResponse clientResponse = null;
+        try {
+            WebResource.Builder builder = withHeaders(proxyClient.resource(calls.partitionsUri()).getRequestBuilder(), calls.acceptHeaders);
+
+            clientResponse = builder.get(ClientResponse.class);
+            calls.checkStatus(clientResponse, SC_OK, PARTITIONS);
+            return calls.readPartitionCount(clientResponse);
+        } catch (ClientHandlerException | UniformInterfaceException | IOException e) {
+            throw proxyException(e, PARTITIONS);
+        } finally {
+            callMetrics.partitionsTimers.update(status(clientResponse), start);
+            if (clientResponse != null) {
+                clientResponse.close();
+            }
+        }
     }
 
-    private void updateUnhealthyStatus(String msg) {
-        status = msg;
+    /** Consumer instances created elsewhere, e.g. by a previous run, are resolved on first use. */
+    private ConsumerInstanceEndpoints endpoints(URI consumerInstance) {
+        ConsumerInstanceEndpoints endpoints = consumerInstances.get(consumerInstance);
+        if (endpoints == null) {
+            endpoints = new ConsumerInstanceEndpoints(proxyClient, consumerInstance, calls.proxyUri(),
+                    configuration.getFetchTimeout(), configuration.getFetchMaxBytes());
+            ConsumerInstanceEndpoints existing = consumerInstances.putIfAbsent(consumerInstance, endpoints);
+            if (existing != null) {
+                endpoints = existing;
+            }
+        }
+        return endpoints;
     }
 
     @Override
     public String getStatus() {
-        return status;
+        return calls.getStatus();
     }
 }
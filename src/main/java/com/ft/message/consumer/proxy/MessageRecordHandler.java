@@ -0,0 +1,10 @@
+package com.ft.message.consumer.proxy;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+
+/** Receives the records of a streamed consume request one at a time, as each is decoded. */
+public interface MessageRecordHandler {
+
+    void onRecord(MessageRecord record) throws InterruptedException;
+
+}
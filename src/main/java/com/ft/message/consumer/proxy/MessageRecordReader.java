@@ -0,0 +1,117 @@
+package com.ft.message.consumer.proxy;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+/** Decodes the JSON array returned by the proxy's <code>/records</code> endpoint one record at a time,
+ *  so that neither the whole response nor the records already read are held in memory.
+ *  Keys and values are read as the {@link EmbeddedFormat} of the consumer instance says, binary by default.
+ *  Given a {@link PayloadBufferPool}, binary record values are copied undecoded into pooled buffers and only
+ *  base64 decoded when first read; such records must be {@link MessageRecord#release() released}.
+ */
+public class MessageRecordReader implements Closeable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final JsonParser parser;
+    private final PayloadBufferPool pool;
+    private final EmbeddedFormat format;
+    private JsonToken nextToken;
+
+    public MessageRecordReader(InputStream in) throws IOException {
+        this(in, null);
+    }
+
+    public MessageRecordReader(InputStream in, PayloadBufferPool pool) throws IOException {
+        this(in, pool, EmbeddedFormat.BINARY);
+    }
+
+    /** @param pool only used for binary records; may be <code>null</code> */
+    public MessageRecordReader(InputStream in, PayloadBufferPool pool, EmbeddedFormat format) throws IOException {
+        this.pool = format == EmbeddedFormat.BINARY ? pool : null;
+        this.format = format;
+        this.parser = MAPPER.getFactory().createParser(in);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new JsonParseException("Expected an array of records", parser.getCurrentLocation());
+        }
+    }
+
+    public boolean hasNext() throws IOException {
+        if (nextToken == null) {
+            nextToken = parser.nextToken();
+        }
+        return nextToken == JsonToken.START_OBJECT;
+    }
+
+    public MessageRecord next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        nextToken = null;
+        return pool == null && format == EmbeddedFormat.BINARY ? MAPPER.readValue(parser, MessageRecord.class) : readFields();
+    }
+
+    private MessageRecord readFields() throws IOException {
+        String topic = null;
+        byte[] key = null;
+        byte[] decoded = null;
+        ByteBuffer value = null;
+        int length = 0;
+        int partition = MessageRecord.UNKNOWN_PARTITION;
+        long offset = MessageRecord.UNKNOWN_OFFSET;
+        long timestamp = MessageRecord.UNKNOWN_TIMESTAMP;
+        try {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.VALUE_NUMBER_INT && "partition".equals(field)) {
+                    partition = parser.getIntValue();
+                } else if (token == JsonToken.VALUE_NUMBER_INT && "offset".equals(field)) {
+                    offset = parser.getLongValue();
+                } else if (token == JsonToken.VALUE_NUMBER_INT && "timestamp".equals(field)) {
+                    timestamp = parser.getLongValue();
+                } else if ("key".equals(field)) {
+                    key = format.readValue(parser);
+                } else if ("value".equals(field) && pool != null && token == JsonToken.VALUE_STRING && value == null) {
+                    char[] text = parser.getTextCharacters();
+                    int textOffset = parser.getTextOffset();
+                    length = parser.getTextLength();
+                    value = pool.acquire(length);
+                    byte[] buffer = value.array();
+                    for (int i = 0; i < length; i++) {
+                        buffer[value.arrayOffset() + i] = (byte) text[textOffset + i];
+                    }
+                } else if ("value".equals(field) && pool == null) {
+                    decoded = format.readValue(parser);
+                } else if ("topic".equals(field) && token == JsonToken.VALUE_STRING) {
+                    topic = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (value != null) {
+                pool.release(value);
+            }
+            throw e;
+        }
+        return value == null
+                ? new MessageRecord(topic, key, decoded, partition, offset, timestamp)
+                : new PooledMessageRecord(topic, key, partition, offset, timestamp, value, length, pool);
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
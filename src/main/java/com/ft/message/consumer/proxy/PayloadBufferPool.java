@@ -0,0 +1,42 @@
+package com.ft.message.consumer.proxy;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/** A bounded pool of equally sized heap buffers holding record values while they are being processed.
+ *  Values larger than the pooled buffer size get a buffer of their own, which is not returned to the pool.
+ */
+public class PayloadBufferPool {
+
+    private final BlockingQueue<ByteBuffer> buffers;
+    private final int bufferSize;
+
+    public PayloadBufferPool(int maxBuffers, int bufferSize) {
+        this.buffers = new ArrayBlockingQueue<>(maxBuffers);
+        this.bufferSize = bufferSize;
+    }
+
+    /** @return a cleared buffer with room for at least <code>capacity</code> bytes */
+    public ByteBuffer acquire(int capacity) {
+        if (capacity > bufferSize) {
+            return ByteBuffer.allocate(capacity);
+        }
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocate(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+
+    int available() {
+        return buffers.size();
+    }
+}
@@ -0,0 +1,92 @@
+package com.ft.message.consumer.proxy;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** A record whose value is kept, still base64 encoded, in a buffer borrowed from a {@link PayloadBufferPool}.
+ *  The value is decoded in place the first time it is asked for, and the buffer goes back to the pool on {@link #release()}.
+ */
+class PooledMessageRecord extends MessageRecord {
+
+    private static final int[] BASE64 = new int[256];
+
+    static {
+        Arrays.fill(BASE64, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private final PayloadBufferPool pool;
+    private ByteBuffer buffer;
+    private int length;
+    private boolean decoded;
+
+    /** @param buffer holds the base64 encoded value in its first <code>length</code> bytes */
+    PooledMessageRecord(String topic, byte[] key, int partition, long offset, long timestamp,
+                        ByteBuffer buffer, int length, PayloadBufferPool pool) {
+        super(topic, key, null, partition, offset, timestamp);
+        this.buffer = buffer;
+        this.length = length;
+        this.pool = pool;
+    }
+
+    /** @return a copy of the decoded value; prefer {@link #getPayload()}, which does not copy */
+    @Override
+    public byte[] getValue() {
+        ByteBuffer payload = getPayload();
+        byte[] value = new byte[payload.remaining()];
+        payload.get(value);
+        return value;
+    }
+
+    @Override
+    public synchronized ByteBuffer getPayload() {
+        if (buffer == null) {
+            throw new IllegalStateException("Record has already been released");
+        }
+        if (!decoded) {
+            length = decodeInPlace(buffer.array(), buffer.arrayOffset(), length);
+            decoded = true;
+        }
+        ByteBuffer payload = buffer.duplicate();
+        payload.clear().limit(length);
+        return payload.asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized void release() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    /** Decodes base64 over itself: every 4 characters read produce at most 3 bytes written behind them. */
+    private static int decodeInPlace(byte[] data, int offset, int length) {
+        int out = offset;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int c = data[i] & 0xff;
+            if (c == '=') {
+                break;
+            }
+            int sextet = BASE64[c];
+            if (sextet < 0) {
+                throw new IllegalArgumentException("Illegal base64 character " + c);
+            }
+            bits = (bits << 6) | sextet;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                data[out++] = (byte) (bits >> bitCount);
+                bits &= (1 << bitCount) - 1;
+            }
+        }
+        return out - offset;
+    }
+}
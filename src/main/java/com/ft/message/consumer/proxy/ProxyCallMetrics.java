@@ -0,0 +1,45 @@
+package com.ft.message.consumer.proxy;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.io.CountingInputStream;
+
+/** The metrics of the proxy calls made for one stream, or for the consumer as a whole when no stream is given:
+ *  the timings of each action, and the records and bytes of each poll.
+ */
+final class ProxyCallMetrics {
+
+    final ProxyCallTimers createTimers;
+    final ProxyCallTimers subscribeTimers;
+    final ProxyCallTimers consumeTimers;
+    final ProxyCallTimers commitTimers;
+    final ProxyCallTimers unsubscribeTimers;
+    final ProxyCallTimers destroyTimers;
+    final ProxyCallTimers partitionsTimers;
+    private final Histogram recordsPerPoll;
+    private final Histogram responseBytes;
+
+    /** @param prefix the topic and group the names start with; may be <code>null</code>
+     *  @param stream the stream the calls are made for; may be <code>null</code>
+     */
+    ProxyCallMetrics(MetricRegistry metrics, String prefix, String stream) {
+        String name = MetricRegistry.name(prefix, MessageQueueProxyServiceImpl.class.getName(), stream);
+        this.createTimers = new ProxyCallTimers(metrics, name, "create");
+        this.subscribeTimers = new ProxyCallTimers(metrics, name, "subscribe");
+        this.consumeTimers = new ProxyCallTimers(metrics, name, "consume");
+        this.commitTimers = new ProxyCallTimers(metrics, name, "commit");
+        this.unsubscribeTimers = new ProxyCallTimers(metrics, name, "unsubscribe");
+        this.destroyTimers = new ProxyCallTimers(metrics, name, "destroy");
+        this.partitionsTimers = new ProxyCallTimers(metrics, name, "partitions");
+        this.recordsPerPoll = metrics.histogram(MetricRegistry.name(name, "consume", "records"));
+        this.responseBytes = metrics.histogram(MetricRegistry.name(name, "consume", "bytes"));
+    }
+
+    /** Records a poll whose <code>records</code> have all been read from <code>body</code>, which may be <code>null</code>. */
+    void polled(int records, CountingInputStream body) {
+        recordsPerPoll.update(records);
+        if (body != null) {
+            responseBytes.update(body.getCount());
+        }
+    }
+}
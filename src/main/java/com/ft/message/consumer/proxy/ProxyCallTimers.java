@@ -0,0 +1,29 @@
+package com.ft.message.consumer.proxy;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/** Timers of the proxy calls made for one action, split by the class of the HTTP status returned
+ *  (<code>2xx</code>, <code>4xx</code>...), with calls that got no response at all timed as <code>failed</code>.
+ */
+class ProxyCallTimers {
+
+    private final Timer[] byStatusClass = new Timer[6];
+
+    /** @param name what the names of the timers start with, followed by the action and the status class */
+    ProxyCallTimers(MetricRegistry metrics, String name, String action) {
+        byStatusClass[0] = metrics.timer(MetricRegistry.name(name, action, "failed"));
+        for (int statusClass = 1; statusClass < byStatusClass.length; statusClass++) {
+            byStatusClass[statusClass] = metrics.timer(MetricRegistry.name(name, action, statusClass + "xx"));
+        }
+    }
+
+    /** @param status the HTTP status returned, or 0 if the call failed without a response */
+    void update(int status, long startNanos) {
+        int statusClass = status / 100;
+        Timer timer = statusClass > 0 && statusClass < byStatusClass.length ? byStatusClass[statusClass] : byStatusClass[0];
+        timer.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
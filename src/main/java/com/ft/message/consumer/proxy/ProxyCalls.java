@@ -0,0 +1,281 @@
+package com.ft.message.consumer.proxy;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ft.message.consumer.config.MessageQueueConsumerConfiguration;
+import com.ft.message.consumer.proxy.model.ConsumerInstanceResponse;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.message.consumer.proxy.model.PartitionOffset;
+import com.google.common.base.Strings;
+import com.google.common.io.CountingInputStream;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.GenericType;
+import com.sun.jersey.api.client.PartialRequestBuilder;
+
+import javax.ws.rs.core.UriBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** What {@link MessageQueueProxyServiceImpl} and {@link AsyncMessageQueueProxyServiceImpl} share about calls to the proxy,
+ *  whichever interface of the client makes them: the URIs, headers and entities of the requests, how responses are
+ *  checked and read, the registry the metrics of the calls are reported to and the status reported to health checks.
+ */
+final class ProxyCalls {
+    static final String CREATE = "create consumer instance";
+    static final String CONSUME = "consume messages";
+    static final String COMMIT = "commit offsets";
+    static final String DESTROY = "destroy consumer instance";
+    static final String PARTITIONS = "read topic partitions";
+    static final String DESTROYED = "Consumer has been destroyed.";
+
+    static final int SC_NO_CONTENT = ClientResponse.Status.NO_CONTENT.getStatusCode();
+    static final int SC_OK = ClientResponse.Status.OK.getStatusCode();
+
+    private static final String PROXY_ERR = "Unable to %s. Proxy error.";
+    private static final String PROXY_STATUS_ERR = "Unable to %s. Proxy returned %d";
+    private static final String KAFKA_MESSAGE_CONTENT_TYPE = "application/vnd.kafka.v2+json";
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final GenericType<List<MessageRecord>> MESSAGE_RECORDS = new GenericType<List<MessageRecord>>() {};
+
+    private final MessageQueueConsumerConfiguration configuration;
+    private final ConsumerPositions positions;
+    private final boolean throughQueue;
+    private final EmbeddedFormat format;
+    // resolved on first use, from whichever thread gets there first; every thread resolves the same URIs
+    private volatile URI consumersUri;
+    private volatile URI partitionsUri;
+    private volatile URI proxyUri;
+    private volatile int lastMessageCount;
+    private volatile String failure;
+
+    final String[] acceptHeaders;
+    final String[] recordsHeaders;
+    final String[] contentTypeHeaders;
+    final String[] hostHeaders;
+
+    private final MetricRegistry metrics;
+    private final String metricsPrefix;
+
+    /** @param metrics registry to which the timings of proxy calls, the records per poll and the response sizes
+     *                 are reported; if <code>null</code> they are recorded but not reported
+     *  @param positions records the positions of the consumer instances, for a {@link ConsumerLagSampler}; may be <code>null</code>
+     *  @param format the format of the records; if <code>null</code>, the built-in format named by <code>embeddedFormat</code>
+     *  @throws IllegalArgumentException if no format is given and the configured one is unknown
+     */
+    ProxyCalls(MessageQueueConsumerConfiguration configuration, MetricRegistry metrics, ConsumerPositions positions, EmbeddedFormat format) {
+        this.configuration = configuration;
+        this.positions = positions;
+        this.format = format != null ? format : EmbeddedFormat.forName(configuration.getEmbeddedFormat());
+
+        this.throughQueue = !Strings.isNullOrEmpty(configuration.getQueue());
+        if (!throughQueue) {
+            this.acceptHeaders = new String[] {"Accept", KAFKA_MESSAGE_CONTENT_TYPE};
+            this.recordsHeaders = new String[] {"Accept", this.format.getMediaType()};
+            this.contentTypeHeaders = new String[] {"Content-Type", KAFKA_MESSAGE_CONTENT_TYPE};
+            this.hostHeaders = new String[0];
+        } else {
+            this.acceptHeaders = new String[] {"Accept", KAFKA_MESSAGE_CONTENT_TYPE, "Host", configuration.getQueue()};
+            this.recordsHeaders = new String[] {"Accept", this.format.getMediaType(), "Host", configuration.getQueue()};
+            this.contentTypeHeaders = new String[] {"Content-Type", KAFKA_MESSAGE_CONTENT_TYPE, "Host", configuration.getQueue()};
+            this.hostHeaders = new String[] {"Host", configuration.getQueue()};
+        }
+
+        this.metrics = metrics != null ? metrics : new MetricRegistry();
+        this.metricsPrefix = MetricRegistry.name(configuration.getTopicName(), configuration.getGroupName());
+    }
+
+    /** @param stream the stream the calls are made for, or <code>null</code> for those made for the consumer as a whole
+     *  @return the metrics of its calls, named after the topic, the group and the stream; asking again for the same
+     *          stream returns metrics reporting to the same timers and histograms
+     */
+    ProxyCallMetrics metricsOf(String stream) {
+        return new ProxyCallMetrics(metrics, metricsPrefix, stream);
+    }
+
+    EmbeddedFormat getFormat() {
+        return format;
+    }
+
+    /** Sets the headers of a request, whether it is made through the blocking or the asynchronous interface of the client. */
+    static <T extends PartialRequestBuilder<T>> T withHeaders(T builder, String[] headers) {
+        for (int i = 0; i < headers.length; i += 2) {
+            builder.header(headers[i], headers[i + 1]);
+        }
+        return builder;
+    }
+
+    URI consumersUri() {
+        URI uri = consumersUri;
+        if (uri == null) {
+            uri = UriBuilder.fromUri(configuration.getQueueProxyHost())
+                    .path("consumers")
+                    .path(configuration.getGroupName()).build();
+            consumersUri = uri;
+        }
+        return uri;
+    }
+
+    URI partitionsUri() {
+        URI uri = partitionsUri;
+        if (uri == null) {
+            uri = UriBuilder.fromUri(configuration.getQueueProxyHost())
+                    .path("topics")
+                    .path(configuration.getTopicName())
+                    .path("partitions").build();
+            partitionsUri = uri;
+        }
+        return uri;
+    }
+
+    /** @return the proxy to send requests to when they go through a named queue, otherwise <code>null</code> */
+    URI proxyUri() {
+        URI uri = proxyUri;
+        if (throughQueue && uri == null) {
+            uri = UriBuilder.fromUri(configuration.getQueueProxyHost()).build();
+            proxyUri = uri;
+        }
+        return uri;
+    }
+
+    /** The format is left out for binary records, the proxy's default, so that proxies predating formats accept the request. */
+    String createEntity() {
+        String entity = String.format("{\"auto.offset.reset\": \"%s\", \"auto.commit.enable\": \"%b\"}",
+                configuration.getOffsetReset(), configuration.isAutoCommit());
+        return format == EmbeddedFormat.BINARY ? entity : String.format("{\"format\": \"%s\", %s", format.getName(), entity.substring(1));
+    }
+
+    String subscribeEntity() {
+        return String.format("{\"topics\":[\"%s\"]}", configuration.getTopicName());
+    }
+
+    /** The proxy commits the offset after each one given, i.e. the position of the next record to consume. */
+    static String commitEntity(List<PartitionOffset> offsets) throws JsonProcessingException {
+        return JSON.writeValueAsString(Collections.singletonMap("offsets", offsets));
+    }
+
+    void checkStatus(ClientResponse response, int expectedStatus, String action) {
+        if (response.getStatus() != expectedStatus) {
+            String msg = String.format(PROXY_STATUS_ERR, action, response.getStatus());
+            updateUnhealthyStatus(msg);
+            throw new QueueProxyServiceException(msg, response.getStatus());
+        }
+    }
+
+    QueueProxyServiceException proxyException(Throwable e, String action, boolean retryable) {
+        String msg = String.format(PROXY_ERR, action);
+        updateUnhealthyStatus(msg);
+        return new QueueProxyServiceException(msg, e, retryable);
+    }
+
+    /** A records request that may have reached the proxy is not retryable: the records the proxy handed out for it
+     *  would be skipped, and their offsets committed with the next position. Only one that was never sent is.
+     */
+    static boolean isNotSent(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return the HTTP status returned, or 0 if the call failed without a response */
+    static int status(ClientResponse response) {
+        return response != null ? response.getStatus() : 0;
+    }
+
+    URI readConsumerInstance(ClientResponse response) {
+        URI uri = response.getEntity(ConsumerInstanceResponse.class).getBaseUri();
+        if (positions != null) {
+            positions.created(uri);
+        }
+        return uri;
+    }
+
+    void destroyed(URI consumerInstance) {
+        if (positions != null) {
+            positions.destroyed(consumerInstance);
+        }
+    }
+
+    void committed(URI consumerInstance) {
+        if (positions != null) {
+            positions.committed(consumerInstance);
+        }
+    }
+
+    void committed(URI consumerInstance, List<PartitionOffset> offsets) {
+        if (positions != null) {
+            positions.committed(consumerInstance, offsets);
+        }
+    }
+
+    /** Reads every record of a response at once; only binary records can be bound by the client's entity provider,
+     *  records of other formats are decoded by a reader.
+     */
+    List<MessageRecord> readRecords(URI consumerInstance, ClientResponse response, ProxyCallMetrics callMetrics) throws IOException {
+        CountingInputStream body = countBody(response);
+        List<MessageRecord> messages;
+        if (format == EmbeddedFormat.BINARY) {
+            messages = response.getEntity(MESSAGE_RECORDS);
+        } else {
+            messages = new ArrayList<>();
+            try (MessageRecordReader reader = new MessageRecordReader(response.getEntityInputStream(), null, format)) {
+                while (reader.hasNext()) {
+                    messages.add(reader.next());
+                }
+            }
+        }
+        for (MessageRecord message : messages) {
+            fetched(consumerInstance, message);
+        }
+        callMetrics.polled(messages.size(), body);
+        polled(messages.size());
+        return messages;
+    }
+
+    /** Counts the bytes of the response body as it is read, so that its size is known even when it is chunked. */
+    static CountingInputStream countBody(ClientResponse response) {
+        InputStream entity = response.getEntityInputStream();
+        if (entity == null) {
+            return null;
+        }
+        CountingInputStream body = new CountingInputStream(entity);
+        response.setEntityInputStream(body);
+        return body;
+    }
+
+    void fetched(URI consumerInstance, MessageRecord record) {
+        if (positions != null) {
+            positions.fetched(consumerInstance, record);
+        }
+    }
+
+    /** Records in the status a poll whose <code>records</code> have all been read. */
+    void polled(int records) {
+        lastMessageCount = records;
+        failure = null;
+    }
+
+    int readPartitionCount(ClientResponse response) throws IOException {
+        return JSON.readTree(response.getEntityInputStream()).size();
+    }
+
+    void updateUnhealthyStatus(String msg) {
+        failure = msg;
+    }
+
+    /** Formatted on demand rather than on every poll. */
+    String getStatus() {
+        String msg = failure;
+        return msg != null ? msg : String.format(MessageQueueProxyService.MESSAGES_CONSUMED, lastMessageCount);
+    }
+}
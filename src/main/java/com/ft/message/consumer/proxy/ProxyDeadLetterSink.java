@@ -0,0 +1,79 @@
+package com.ft.message.consumer.proxy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ft.message.consumer.DeadLetterSink;
+import com.ft.message.consumer.config.MessageQueueConsumerConfiguration;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.google.common.base.Strings;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import com.sun.jersey.api.client.WebResource;
+
+import javax.ws.rs.core.UriBuilder;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Produces each dead letter, with its original key and value, to the configured <code>deadLetterTopic</code> through
+ *  the proxy, as binary embedded data.
+ */
+public class ProxyDeadLetterSink implements DeadLetterSink {
+
+    private static final String PROXY_ERR = "Unable to %s. Proxy error.";
+    private static final String PROXY_STATUS_ERR = "Unable to %s. Proxy returned %d";
+    private static final String PRODUCE = "produce dead letter";
+    private static final String PRODUCE_CONTENT_TYPE = "application/vnd.kafka.binary.v2+json";
+    private static final String KAFKA_MESSAGE_CONTENT_TYPE = "application/vnd.kafka.v2+json";
+
+    private static final int SC_OK = ClientResponse.Status.OK.getStatusCode();
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final Client proxyClient;
+    private final URI topicUri;
+    private final String queue;
+
+    public ProxyDeadLetterSink(MessageQueueConsumerConfiguration configuration, Client proxyClient) {
+        this.proxyClient = proxyClient;
+        this.topicUri = UriBuilder.fromUri(configuration.getQueueProxyHost())
+                .path("topics")
+                .path(configuration.getDeadLetterTopic()).build();
+        this.queue = configuration.getQueue();
+    }
+
+    @Override
+    public void send(MessageRecord record, int attempts, Throwable cause) {
+        ClientResponse clientResponse = null;
+        try {
+            Map<String, Object> deadLetter = new LinkedHashMap<>();
+            deadLetter.put("key", record.getKey());
+            deadLetter.put("value", record.getValue());
+            WebResource.Builder builder = proxyClient.resource(topicUri)
+                    .header("Content-Type", PRODUCE_CONTENT_TYPE)
+                    .header("Accept", KAFKA_MESSAGE_CONTENT_TYPE);
+            if (!Strings.isNullOrEmpty(queue)) {
+                builder.header("Host", queue);
+            }
+            clientResponse = builder.post(ClientResponse.class,
+                    JSON.writeValueAsString(Collections.singletonMap("records", Collections.singletonList(deadLetter))));
+            if (clientResponse.getStatus() != SC_OK) {
+                throw new QueueProxyServiceException(String.format(PROXY_STATUS_ERR, PRODUCE, clientResponse.getStatus()), clientResponse.getStatus());
+            }
+            JsonNode offset = JSON.readTree(clientResponse.getEntityInputStream()).path("offsets").path(0);
+            if (!offset.path("error_code").isMissingNode() && !offset.path("error_code").isNull()) {
+                throw new QueueProxyServiceException(String.format("Unable to %s. %s", PRODUCE, offset.path("error").asText()));
+            }
+        } catch (ClientHandlerException | UniformInterfaceException | IOException e) {
+            throw new QueueProxyServiceException(String.format(PROXY_ERR, PRODUCE), e);
+        } finally {
+            if (clientResponse != null) {
+                clientResponse.close();
+            }
+        }
+    }
+}
@@ -1,12 +1,52 @@
 package com.ft.message.consumer.proxy;
 
 
+/** A failed call to the proxy, saying whether the consumer can recover from it without recreating its consumer instance. */
 public class QueueProxyServiceException extends RuntimeException {
+
+    /** The status of a failure that happened before the proxy answered, or while reading its answer. */
+    public static final int NO_RESPONSE = 0;
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private final int status;
+    private final boolean retryable;
+
     public QueueProxyServiceException(String message) {
-        super(message);
+        this(message, null, NO_RESPONSE, false);
     }
-    
+
     public QueueProxyServiceException(String message, Throwable cause) {
-      super(message, cause);
-  }
+        this(message, cause, NO_RESPONSE, false);
+    }
+
+    /** For an answer of the proxy with an unexpected <code>status</code>: a <code>5xx</code> or a <code>429</code> is retryable,
+     *  while a <code>404</code>, for a consumer instance that expired or was lost in a proxy restart, is not.
+     */
+    public QueueProxyServiceException(String message, int status) {
+        this(message, null, status, status >= 500 || status == SC_TOO_MANY_REQUESTS);
+    }
+
+    /** For a failure before the proxy answered, which the caller knows to be safe to retry or not. */
+    public QueueProxyServiceException(String message, Throwable cause, boolean retryable) {
+        this(message, cause, NO_RESPONSE, retryable);
+    }
+
+    private QueueProxyServiceException(String message, Throwable cause, int status, boolean retryable) {
+        super(message, cause);
+        this.status = status;
+        this.retryable = retryable;
+    }
+
+    /** @return the HTTP status the proxy answered with, or {@link #NO_RESPONSE} */
+    public int getStatus() {
+        return status;
+    }
+
+    /** @return whether the same call may succeed if made again with the same consumer instance: the proxy, or one of
+     *          its nodes, could not be reached or was unavailable, and no records were handed out by the failed call
+     */
+    public boolean isRetryable() {
+        return retryable;
+    }
 }
@@ -1,18 +1,96 @@
 package com.ft.message.consumer.proxy.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.nio.ByteBuffer;
+
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class MessageRecord {
 
+    public static final int UNKNOWN_PARTITION = -1;
+    public static final long UNKNOWN_OFFSET = -1;
+    public static final long UNKNOWN_TIMESTAMP = -1;
+
+    private final String topic;
+    private final byte[] key;
     private final byte[] value;
+    private final int partition;
+    private final long offset;
+    private final long timestamp;
+
+    public MessageRecord(byte[] value) {
+        this(null, value);
+    }
 
-    public MessageRecord(@JsonProperty("value") byte[] value) {
+    public MessageRecord(byte[] key, byte[] value) {
+        this(null, key, value, UNKNOWN_PARTITION, UNKNOWN_OFFSET);
+    }
+
+    public MessageRecord(String topic, byte[] key, byte[] value, int partition, long offset) {
+        this(topic, key, value, partition, offset, UNKNOWN_TIMESTAMP);
+    }
+
+    /** @param timestamp the record's Kafka timestamp in epoch milliseconds, which only some proxy versions return */
+    public MessageRecord(String topic, byte[] key, byte[] value, int partition, long offset, long timestamp) {
+        this.topic = topic;
+        this.key = key;
         this.value = value;
+        this.partition = partition;
+        this.offset = offset;
+        this.timestamp = timestamp;
+    }
+
+    @JsonCreator
+    private static MessageRecord fromJson(@JsonProperty("topic") String topic,
+                                          @JsonProperty("key") byte[] key,
+                                          @JsonProperty("value") byte[] value,
+                                          @JsonProperty("partition") Integer partition,
+                                          @JsonProperty("offset") Long offset,
+                                          @JsonProperty("timestamp") Long timestamp) {
+        return new MessageRecord(topic, key, value,
+                partition != null ? partition : UNKNOWN_PARTITION,
+                offset != null ? offset : UNKNOWN_OFFSET,
+                timestamp != null ? timestamp : UNKNOWN_TIMESTAMP);
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public byte[] getKey() {
+        return key;
     }
 
     public byte[] getValue() {
         return value;
     }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /** @return the record's timestamp in epoch milliseconds, or {@link #UNKNOWN_TIMESTAMP} if the proxy did not return one */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /** @return whether the proxy said which topic, partition and offset the record was read from */
+    public boolean hasPosition() {
+        return topic != null && partition != UNKNOWN_PARTITION && offset != UNKNOWN_OFFSET;
+    }
+
+    /** @return a read-only view of the decoded value, or <code>null</code> if the record has no value */
+    public ByteBuffer getPayload() {
+        return value == null ? null : ByteBuffer.wrap(value).asReadOnlyBuffer();
+    }
+
+    /** Returns any pooled buffer backing the value; the record must not be used afterwards. Plain records hold no pooled buffer. */
+    public void release() {
+    }
 }
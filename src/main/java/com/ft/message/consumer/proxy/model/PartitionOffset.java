@@ -0,0 +1,56 @@
+package com.ft.message.consumer.proxy.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/** The offset of the last processed record of a partition, as sent to the proxy's <code>/offsets</code> endpoint. */
+@JsonPropertyOrder({"topic", "partition", "offset"})
+public class PartitionOffset {
+
+    private final String topic;
+    private final int partition;
+    private final long offset;
+
+    public PartitionOffset(String topic, int partition, long offset) {
+        this.topic = topic;
+        this.partition = partition;
+        this.offset = offset;
+    }
+
+    @JsonProperty
+    public String getTopic() {
+        return topic;
+    }
+
+    @JsonProperty
+    public int getPartition() {
+        return partition;
+    }
+
+    @JsonProperty
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PartitionOffset)) {
+            return false;
+        }
+        PartitionOffset that = (PartitionOffset) o;
+        return partition == that.partition && offset == that.offset && topic.equals(that.topic);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * topic.hashCode() + partition) + (int) (offset ^ (offset >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return topic + "-" + partition + "@" + offset;
+    }
+}
@@ -0,0 +1,22 @@
+package com.ft.message.consumer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Virtual threads, where the runtime has them: the Java 21 version of the class, loaded from the multi-release jar. */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static boolean isAvailable() {
+        return true;
+    }
+
+    /** @return an executor starting a new virtual thread, named <code>name</code> and a sequence number, for each task;
+     *          never <code>null</code>, unlike under Java 8
+     */
+    static ExecutorService newThreadPerTaskExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+}
@@ -0,0 +1,220 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.AsyncMessageQueueProxyService;
+import com.ft.message.consumer.proxy.QueueProxyServiceException;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.messaging.standards.message.v1.Message;
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.ws.rs.core.UriBuilder;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncMessageQueueConsumerTest {
+
+    private static final String MESSAGE = "FTMSG/1.0\r\n" +
+            "Message-Id: 557b0772-da28-47a4-8b4f-fc46cc5f8c32\r\n" +
+            "Message-Timestamp: 2015-11-20T13:44:45.305Z\r\n" +
+            "Message-Type: cms-content-published\r\n" +
+            "Origin-System-Id: http://cmdb.ft.com/systems/methode-web-pub\r\n" +
+            "Content-Type: application/json\r\n" +
+            "X-Request-Id: SYNTHETIC-REQ-MON_b47A5AvpIr\r\n\r\n" +
+            "{\"contentUri\":\"http://methode-image-model-transformer-iw-uk-p.svc.ft.com/image/model/30921224-0c0d-4522-9990-1ff0290d7908\"}";
+
+    @Mock
+    private AsyncMessageQueueProxyService messageQueueProxyService;
+    @Mock
+    private AsyncMessageQueueProxyService idleMessageQueueProxyService;
+    @Mock
+    private MessageListener messageListener;
+
+    private final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+    private ScheduledExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newScheduledThreadPool(1);
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(CompletableFuture.completedFuture(consumerInstance));
+        when(messageQueueProxyService.subscribeConsumerInstanceToTopic(consumerInstance)).thenReturn(done());
+        when(messageQueueProxyService.commitOffsets(consumerInstance)).thenReturn(done());
+        when(messageQueueProxyService.destroyConsumerInstanceSubscription(consumerInstance)).thenReturn(done());
+        when(messageQueueProxyService.destroyConsumerInstance(consumerInstance)).thenReturn(done());
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testDeliversAndCommitsEachPollBeforeTheNext() throws Exception {
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(
+                CompletableFuture.completedFuture(ImmutableList.of(new MessageRecord(MESSAGE.getBytes()))),
+                CompletableFuture.completedFuture(Collections.<MessageRecord>emptyList()));
+        when(messageListener.onMessage(Message.parse(MESSAGE.getBytes()), "SYNTHETIC-REQ-MON_b47A5AvpIr")).thenReturn(true);
+
+        AsyncMessageQueueConsumer consumer = consumer(false);
+        consumer.start();
+
+        verify(messageQueueProxyService, timeout(1000).atLeast(2)).consumeMessages(consumerInstance);
+        consumer.stop().get(1, TimeUnit.SECONDS);
+
+        InOrder inOrder = inOrder(messageQueueProxyService, messageListener);
+        inOrder.verify(messageQueueProxyService).subscribeConsumerInstanceToTopic(consumerInstance);
+        inOrder.verify(messageQueueProxyService).consumeMessages(consumerInstance);
+        inOrder.verify(messageListener).onMessage(Message.parse(MESSAGE.getBytes()), "SYNTHETIC-REQ-MON_b47A5AvpIr");
+        inOrder.verify(messageQueueProxyService).commitOffsets(consumerInstance);
+        inOrder.verify(messageQueueProxyService, atLeast(1)).consumeMessages(consumerInstance);
+    }
+
+    @Test
+    public void testRecreatesConsumerInstanceAfterProxyError() throws Exception {
+        CompletableFuture<List<MessageRecord>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new QueueProxyServiceException("Unable to consume messages. Proxy returned 500"));
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(failed);
+
+        AsyncMessageQueueConsumer consumer = consumer(false);
+        consumer.start();
+
+        verify(messageQueueProxyService, timeout(1000).atLeast(2)).createConsumerInstance();
+        consumer.stop().get(1, TimeUnit.SECONDS);
+
+        InOrder inOrder = inOrder(messageQueueProxyService);
+        inOrder.verify(messageQueueProxyService).consumeMessages(consumerInstance);
+        inOrder.verify(messageQueueProxyService).destroyConsumerInstanceSubscription(consumerInstance);
+        inOrder.verify(messageQueueProxyService).destroyConsumerInstance(consumerInstance);
+        inOrder.verify(messageQueueProxyService).createConsumerInstance();
+    }
+
+    @Test
+    public void testRetriesRetryableErrorsWithSameConsumerInstance() throws Exception {
+        CompletableFuture<List<MessageRecord>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new QueueProxyServiceException("Unable to consume messages. Proxy returned 503", 503));
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(failed, failed,
+                CompletableFuture.completedFuture(ImmutableList.of(new MessageRecord(MESSAGE.getBytes()))),
+                CompletableFuture.completedFuture(Collections.<MessageRecord>emptyList()));
+        when(messageListener.onMessage(any(Message.class), any(String.class))).thenReturn(true);
+
+        AsyncMessageQueueConsumer consumer = new AsyncMessageQueueConsumer.Builder(messageQueueProxyService, messageListener, executor)
+                .withBackoffPeriod(1)
+                .withRetries(2)
+                .build();
+        consumer.start();
+
+        verify(messageListener, timeout(1000)).onMessage(any(Message.class), any(String.class));
+        consumer.stop().get(1, TimeUnit.SECONDS);
+
+        verify(messageQueueProxyService).createConsumerInstance();
+        verify(messageQueueProxyService).destroyConsumerInstance(consumerInstance);
+    }
+
+    @Test
+    public void testStopEndsBackoffAndDestroysConsumerInstance() throws Exception {
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenReturn(CompletableFuture.completedFuture(Collections.<MessageRecord>emptyList()));
+
+        AsyncMessageQueueConsumer consumer = new AsyncMessageQueueConsumer.Builder(messageQueueProxyService, messageListener, executor)
+                .withBackoffPeriod(60000)
+                .build();
+        consumer.start();
+        verify(messageQueueProxyService, timeout(1000)).consumeMessages(consumerInstance);
+
+        consumer.stop().get(1, TimeUnit.SECONDS);
+
+        assertThat(consumer.getState(), is(AsyncMessageQueueConsumer.State.STOPPED));
+        verify(messageQueueProxyService).destroyConsumerInstanceSubscription(consumerInstance);
+        verify(messageQueueProxyService).destroyConsumerInstance(consumerInstance);
+    }
+
+    @Test
+    public void testManyConsumersShareOneThread() throws Exception {
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(
+                CompletableFuture.completedFuture(ImmutableList.of(new MessageRecord(MESSAGE.getBytes()))));
+        when(messageListener.onMessage(any(Message.class), any(String.class))).thenReturn(true);
+
+        List<AsyncMessageQueueConsumer> consumers = ImmutableList.of(consumer(true), consumer(true), consumer(true), consumer(true));
+        for (AsyncMessageQueueConsumer consumer : consumers) {
+            consumer.start();
+        }
+        verify(messageListener, timeout(1000).atLeast(100)).onMessage(any(Message.class), any(String.class));
+        for (AsyncMessageQueueConsumer consumer : consumers) {
+            consumer.stop().get(1, TimeUnit.SECONDS);
+        }
+        verify(messageQueueProxyService, atLeast(4)).destroyConsumerInstance(consumerInstance);
+    }
+
+    @Test
+    public void testSlowListenerDoesNotHoldUpOtherConsumers() throws Exception {
+        CountDownLatch listenerReleased = new CountDownLatch(1);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(
+                CompletableFuture.completedFuture(ImmutableList.of(new MessageRecord(MESSAGE.getBytes()))),
+                CompletableFuture.completedFuture(Collections.<MessageRecord>emptyList()));
+        when(messageListener.onMessage(any(Message.class), any(String.class))).thenAnswer(invocation -> {
+            listenerReleased.await();
+            return true;
+        });
+        when(idleMessageQueueProxyService.createConsumerInstance()).thenReturn(CompletableFuture.completedFuture(consumerInstance));
+        when(idleMessageQueueProxyService.subscribeConsumerInstanceToTopic(consumerInstance)).thenReturn(done());
+        when(idleMessageQueueProxyService.consumeMessages(consumerInstance))
+                .thenReturn(CompletableFuture.completedFuture(Collections.<MessageRecord>emptyList()));
+        when(idleMessageQueueProxyService.destroyConsumerInstanceSubscription(consumerInstance)).thenReturn(done());
+        when(idleMessageQueueProxyService.destroyConsumerInstance(consumerInstance)).thenReturn(done());
+        ExecutorService listenerExecutor = Executors.newFixedThreadPool(1);
+        try {
+            AsyncMessageQueueConsumer slow = new AsyncMessageQueueConsumer.Builder(messageQueueProxyService, messageListener, executor)
+                    .withListenerExecutor(listenerExecutor)
+                    .withBackoffPeriod(1)
+                    .build();
+            AsyncMessageQueueConsumer idle = new AsyncMessageQueueConsumer.Builder(idleMessageQueueProxyService, messageListener, executor)
+                    .withListenerExecutor(listenerExecutor)
+                    .withBackoffPeriod(1)
+                    .build();
+            slow.start();
+            verify(messageListener, timeout(1000)).onMessage(any(Message.class), any(String.class));
+            idle.start();
+
+            verify(idleMessageQueueProxyService, timeout(1000).atLeast(10)).consumeMessages(consumerInstance);
+            listenerReleased.countDown();
+            slow.stop().get(1, TimeUnit.SECONDS);
+            idle.stop().get(1, TimeUnit.SECONDS);
+        } finally {
+            listenerReleased.countDown();
+            listenerExecutor.shutdownNow();
+        }
+    }
+
+    private AsyncMessageQueueConsumer consumer(boolean autoCommit) {
+        return new AsyncMessageQueueConsumer.Builder(messageQueueProxyService, messageListener, executor)
+                .withBackoffPeriod(1)
+                .withAutoCommit(autoCommit)
+                .build();
+    }
+
+    private static CompletableFuture<Void> done() {
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -0,0 +1,104 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class ConcurrentDispatcherTest {
+
+    private static final String MESSAGE = "FTMSG/1.0\r\n" +
+            "Message-Id: 557b0772-da28-47a4-8b4f-fc46cc5f8c32\r\n" +
+            "Message-Timestamp: 2015-11-20T13:44:45.305Z\r\n" +
+            "Message-Type: cms-content-published\r\n" +
+            "Origin-System-Id: http://cmdb.ft.com/systems/methode-web-pub\r\n" +
+            "Content-Type: application/json\r\n" +
+            "X-Request-Id: %s\r\n\r\n" +
+            "{}";
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        MDC.clear();
+    }
+
+    @Test
+    public void testNoMoreThanMaxConcurrencyCallsAreInProgress() throws Exception {
+        AtomicInteger inProgress = new AtomicInteger();
+        AtomicInteger maxInProgress = new AtomicInteger();
+        Set<String> delivered = ConcurrentHashMap.newKeySet();
+        MessageListenerAdapter listener = new MessageListenerAdapter((message, transactionId) -> {
+            maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+            try {
+                TimeUnit.MILLISECONDS.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.add(transactionId);
+            inProgress.decrementAndGet();
+            return true;
+        });
+
+        BatchResult result = new ConcurrentDispatcher(executor, 4).dispatch(batch(40), listener);
+
+        assertThat(result.isSuccess(), is(true));
+        assertThat(delivered.size(), is(40));
+        assertThat(maxInProgress.get(), is(lessThanOrEqualTo(4)));
+    }
+
+    @Test
+    public void testFailuresAreReportedAtTheirPositionInTheBatch() throws Exception {
+        MessageListenerAdapter listener = new MessageListenerAdapter((message, transactionId) -> {
+            if (transactionId.equals("tid_4")) {
+                throw new IllegalStateException("test failure");
+            }
+            return true;
+        });
+
+        BatchResult result = new ConcurrentDispatcher(executor, 3).dispatch(batch(6), listener);
+
+        assertThat(result.getFailedIndexes(), is(equalTo(Collections.singleton(4))));
+        assertThat(result.getFailureCause(4).getMessage(), is("test failure"));
+    }
+
+    @Test
+    public void testMdcOfConsumingThreadIsCopiedToEachCall() throws Exception {
+        Set<String> streams = ConcurrentHashMap.newKeySet();
+        Set<String> transactionIds = ConcurrentHashMap.newKeySet();
+        MessageListenerAdapter listener = new MessageListenerAdapter((message, transactionId) -> {
+            streams.add(String.valueOf(MDC.get("stream")));
+            transactionIds.add(MDC.get("transaction_id"));
+            return true;
+        });
+
+        MDC.put("stream", "stream-0");
+        new ConcurrentDispatcher(executor, 2).dispatch(batch(5), listener);
+
+        assertThat(streams, is(equalTo(Collections.singleton("stream-0"))));
+        assertThat(transactionIds.size(), is(5));
+    }
+
+    private static MessageBatch batch(int size) {
+        MessageBatch batch = new MessageBatch();
+        for (int i = 0; i < size; i++) {
+            batch.add(new MessageRecord(null), MessagePayload.parse(ByteBuffer.wrap(String.format(MESSAGE, "tid_" + i).getBytes())), "tid_" + i);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,128 @@
+package com.ft.message.consumer;
+
+import com.codahale.metrics.MetricRegistry;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DuplicateFilterTest {
+
+    private static final String MESSAGE = "FTMSG/1.0\r\n" +
+            "Message-Id: %s\r\n" +
+            "Message-Timestamp: 2015-11-20T13:44:45.305Z\r\n" +
+            "Message-Type: cms-content-published\r\n" +
+            "X-Request-Id: SYNTHETIC-REQ-MON_b47A5AvpIr\r\n\r\n" +
+            "{}";
+
+    @Test
+    public void testMessagesAreDuplicatesOnceHandled() {
+        MetricRegistry metrics = new MetricRegistry();
+        DuplicateFilter filter = new DuplicateFilter(DuplicateFilter.Key.MESSAGE_ID, 1000, 0, false, metrics);
+        long key = filter.keyOf(record(0, 5, "557b0772-da28-47a4-8b4f-fc46cc5f8c32"), payload(0, 5, "557b0772-da28-47a4-8b4f-fc46cc5f8c32"));
+
+        assertThat(filter.isDuplicate(key), is(false));
+        filter.handled(key);
+        assertThat(filter.isDuplicate(key), is(true));
+
+        assertThat(metrics.meter(MetricRegistry.name(DuplicateFilter.class, "hits")).getCount(), is(1L));
+        assertThat(metrics.meter(MetricRegistry.name(DuplicateFilter.class, "misses")).getCount(), is(1L));
+    }
+
+    @Test
+    public void testMessageIdKeyIgnoresPositionAndPositionKeyIgnoresMessageId() {
+        DuplicateFilter byMessageId = new DuplicateFilter(DuplicateFilter.Key.MESSAGE_ID, 1000, 0, false, null);
+        DuplicateFilter byPosition = new DuplicateFilter(DuplicateFilter.Key.POSITION, 1000, 0, false, null);
+        String id = "557b0772-da28-47a4-8b4f-fc46cc5f8c32";
+
+        assertThat(byMessageId.keyOf(record(0, 5, id), payload(0, 5, id)), is(byMessageId.keyOf(record(3, 9, id), payload(3, 9, id))));
+        assertThat(byMessageId.keyOf(record(0, 5, id), payload(0, 5, id)), is(not(byMessageId.keyOf(record(0, 5, "other"), payload(0, 5, "other")))));
+        assertThat(byPosition.keyOf(record(0, 5, id), payload(0, 5, id)), is(byPosition.keyOf(record(0, 5, "other"), payload(0, 5, "other"))));
+        assertThat(byPosition.keyOf(record(0, 5, id), payload(0, 5, id)), is(not(byPosition.keyOf(record(0, 6, id), payload(0, 6, id)))));
+        assertThat(byPosition.keyOf(record(0, 5, id), payload(0, 5, id)), is(not(byPosition.keyOf(record(1, 5, id), payload(1, 5, id)))));
+    }
+
+    @Test
+    public void testMessagesWithoutIdOrPositionAreNeverDuplicates() {
+        DuplicateFilter filter = new DuplicateFilter(DuplicateFilter.Key.MESSAGE_ID, 1000, 0, false, null);
+        MessageRecord record = new MessageRecord("FTMSG/1.0\r\n\r\n{}".getBytes(StandardCharsets.UTF_8));
+        long key = filter.keyOf(record, MessagePayload.parse(record));
+
+        assertThat(key, is(DuplicateFilter.NO_KEY));
+        filter.handled(key);
+        assertThat(filter.isDuplicate(key), is(false));
+    }
+
+    @Test
+    public void testFullBucketEvictsItsLeastRecentlySeenMessage() throws Exception {
+        DuplicateFilter filter = new DuplicateFilter(DuplicateFilter.Key.POSITION, DuplicateFilter.WAYS, 0, false, null);
+        // even keys all fall in the same bucket
+        for (long key = 2; key <= 2 * DuplicateFilter.WAYS; key += 2) {
+            filter.handled(key);
+            Thread.sleep(2);
+        }
+        assertThat(filter.isDuplicate(2), is(true));
+        Thread.sleep(2);
+
+        filter.handled(100);
+
+        assertThat(filter.isDuplicate(100), is(true));
+        assertThat(filter.isDuplicate(2), is(true));
+        assertThat(filter.isDuplicate(4), is(false));
+        assertThat(filter.isDuplicate(6), is(true));
+    }
+
+    @Test
+    public void testMessagesAreForgottenOnceTtlHasPassed() throws Exception {
+        DuplicateFilter filter = new DuplicateFilter(DuplicateFilter.Key.POSITION, 1000, 5, false, null);
+        filter.handled(42);
+
+        assertThat(filter.isDuplicate(42), is(true));
+        Thread.sleep(20);
+        assertThat(filter.isDuplicate(42), is(false));
+    }
+
+    @Test
+    public void testBloomFilterForgetsNoMessageTheTableRemembers() {
+        DuplicateFilter withBloomFilter = new DuplicateFilter(DuplicateFilter.Key.MESSAGE_ID, 1024, 0, true, null);
+        DuplicateFilter withoutBloomFilter = new DuplicateFilter(DuplicateFilter.Key.MESSAGE_ID, 1024, 0, false, null);
+        long[] keys = new long[3000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = withBloomFilter.keyOf(record(0, i, "message-" + i), payload(0, i, "message-" + i));
+            withBloomFilter.handled(keys[i]);
+            withoutBloomFilter.handled(keys[i]);
+        }
+
+        // the Bloom filter covers at least the last capacity messages; older ones may be gone from the table too
+        for (int i = keys.length - 1024; i < keys.length; i++) {
+            assertThat(withBloomFilter.isDuplicate(keys[i]), is(withoutBloomFilter.isDuplicate(keys[i])));
+        }
+        assertThat(withBloomFilter.isDuplicate(keys[keys.length - 1]), is(true));
+        assertThat(withBloomFilter.isDuplicate(withBloomFilter.keyOf(record(0, 0, "never-handled"), payload(0, 0, "never-handled"))), is(false));
+    }
+
+    @Test
+    public void testBloomFilterKeepsMessagesThatKeepComingBack() {
+        DuplicateFilter filter = new DuplicateFilter(DuplicateFilter.Key.POSITION, 64, 0, true, null);
+        filter.handled(1);
+        // multiples of 8 all fall in another bucket, so they never evict 1 from the table, but rotate the Bloom filter
+        for (int round = 0; round < 4; round++) {
+            for (int i = 1; i <= 64; i++) {
+                filter.handled(8L * (round * 64 + i));
+            }
+            assertThat(filter.isDuplicate(1), is(true));
+        }
+    }
+
+    private static MessageRecord record(int partition, long offset, String messageId) {
+        return new MessageRecord("CmsPublicationEvent", null, String.format(MESSAGE, messageId).getBytes(StandardCharsets.UTF_8), partition, offset);
+    }
+
+    private static MessagePayload payload(int partition, long offset, String messageId) {
+        return MessagePayload.parse(record(partition, offset, messageId));
+    }
+}
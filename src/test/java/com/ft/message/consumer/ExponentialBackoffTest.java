@@ -0,0 +1,51 @@
+package com.ft.message.consumer;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class ExponentialBackoffTest {
+
+    @Test
+    public void testDelayDoublesUpToMaxDelay() {
+        ExponentialBackoff backoff = new ExponentialBackoff(100, 500, false);
+
+        assertThat(backoff.nextDelay(), is(100L));
+        assertThat(backoff.nextDelay(), is(200L));
+        assertThat(backoff.nextDelay(), is(400L));
+        assertThat(backoff.nextDelay(), is(500L));
+        assertThat(backoff.nextDelay(), is(500L));
+    }
+
+    @Test
+    public void testResetStartsFromInitialDelay() {
+        ExponentialBackoff backoff = new ExponentialBackoff(100, 500, false);
+        backoff.nextDelay();
+        backoff.nextDelay();
+
+        backoff.reset();
+
+        assertThat(backoff.nextDelay(), is(100L));
+    }
+
+    @Test
+    public void testFullJitterStaysWithinBound() {
+        ExponentialBackoff backoff = new ExponentialBackoff(100, 400, true);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(backoff.nextDelay(), is(lessThanOrEqualTo(400L)));
+        }
+        backoff.reset();
+        assertThat(backoff.nextDelay(), is(lessThanOrEqualTo(100L)));
+    }
+
+    @Test
+    public void testFixedDelay() {
+        ExponentialBackoff backoff = ExponentialBackoff.fixed(8000);
+
+        assertThat(backoff.nextDelay(), is(8000L));
+        assertThat(backoff.nextDelay(), is(8000L));
+    }
+}
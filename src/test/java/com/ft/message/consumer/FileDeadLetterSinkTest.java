@@ -0,0 +1,45 @@
+package com.ft.message.consumer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FileDeadLetterSinkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAppendsEachDeadLetterAsALineOfJson() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("dead-letters.jsonl");
+        FileDeadLetterSink sink = new FileDeadLetterSink(file);
+
+        sink.send(new MessageRecord("CmsPublicationEvent", "key".getBytes(StandardCharsets.UTF_8),
+                "value".getBytes(StandardCharsets.UTF_8), 2, 17, 1500000000000L), 4, new IllegalStateException("test failure"));
+        sink.send(new MessageRecord("value".getBytes(StandardCharsets.UTF_8)), 1, null);
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertThat(lines.size(), is(2));
+        JsonNode deadLetter = new ObjectMapper().readTree(lines.get(0));
+        assertThat(deadLetter.path("topic").asText(), is("CmsPublicationEvent"));
+        assertThat(deadLetter.path("partition").asInt(), is(2));
+        assertThat(deadLetter.path("offset").asLong(), is(17L));
+        assertThat(deadLetter.path("timestamp").asLong(), is(1500000000000L));
+        assertThat(new String(deadLetter.path("key").binaryValue(), StandardCharsets.UTF_8), is("key"));
+        assertThat(new String(deadLetter.path("value").binaryValue(), StandardCharsets.UTF_8), is("value"));
+        assertThat(deadLetter.path("attempts").asInt(), is(4));
+        assertThat(deadLetter.path("error").asText(), is("java.lang.IllegalStateException: test failure"));
+        assertThat(new ObjectMapper().readTree(lines.get(1)).path("error").isNull(), is(true));
+    }
+}
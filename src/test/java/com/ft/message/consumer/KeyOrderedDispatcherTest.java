@@ -0,0 +1,117 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class KeyOrderedDispatcherTest {
+
+    private static final String MESSAGE = "FTMSG/1.0\r\n" +
+            "Message-Id: 557b0772-da28-47a4-8b4f-fc46cc5f8c32\r\n" +
+            "Message-Timestamp: 2015-11-20T13:44:45.305Z\r\n" +
+            "Message-Type: cms-content-published\r\n" +
+            "Origin-System-Id: http://cmdb.ft.com/systems/methode-web-pub\r\n" +
+            "Content-Type: application/json\r\n" +
+            "X-Key: %s\r\n" +
+            "X-Request-Id: %s\r\n\r\n" +
+            "{}";
+
+    private KeyOrderedDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testMessagesWithSameKeyAreDeliveredInOrderOnSameThread() throws Exception {
+        final Map<String, List<String>> deliveredByKey = new ConcurrentHashMap<>();
+        final Map<String, String> threadByKey = new ConcurrentHashMap<>();
+        final List<String> threadMismatches = new CopyOnWriteArrayList<>();
+
+        dispatcher = new KeyOrderedDispatcher(4, new MessageHeaderKeyExtractor("X-Key"));
+        MessageListenerAdapter listener = new MessageListenerAdapter((message, transactionId) -> {
+            String key = message.getCustomMessageHeader("X-Key");
+            String previous = threadByKey.putIfAbsent(key, Thread.currentThread().getName());
+            if (previous != null && !previous.equals(Thread.currentThread().getName())) {
+                threadMismatches.add(key);
+            }
+            deliveredByKey.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>())).add(transactionId);
+            return true;
+        });
+
+        MessageBatch batch = new MessageBatch();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String key = "key-" + (i % 7);
+            batch.add(new MessageRecord(null), MessagePayload.parse(ByteBuffer.wrap(String.format(MESSAGE, key, "tid_" + i).getBytes())), "tid_" + i);
+            if (key.equals("key-3")) {
+                expected.add("tid_" + i);
+            }
+        }
+        BatchResult result = dispatcher.dispatch(batch, listener);
+
+        assertThat(result.isSuccess(), is(true));
+        assertThat(deliveredByKey.get("key-3"), is(equalTo(expected)));
+        assertThat(threadMismatches.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testDispatchWaitsForEveryLane() throws Exception {
+        final AtomicInteger delivered = new AtomicInteger();
+        dispatcher = new KeyOrderedDispatcher(4, new RecordKeyExtractor());
+        MessageListenerAdapter listener = new MessageListenerAdapter((message, transactionId) -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.incrementAndGet();
+            return true;
+        });
+
+        MessageBatch batch = new MessageBatch();
+        for (int i = 0; i < 8; i++) {
+            batch.add(new MessageRecord(("key-" + i).getBytes(), null), MessagePayload.parse(ByteBuffer.wrap(String.format(MESSAGE, "any", "tid_" + i).getBytes())), "tid_" + i);
+        }
+        dispatcher.dispatch(batch, listener);
+
+        assertThat(delivered.get(), is(8));
+    }
+
+    @Test
+    public void testFailuresAreReportedAtTheirPositionInTheBatch() throws Exception {
+        dispatcher = new KeyOrderedDispatcher(3, new MessageHeaderKeyExtractor("X-Key"));
+        MessageListenerAdapter listener = new MessageListenerAdapter((message, transactionId) -> {
+            if (transactionId.equals("tid_4")) {
+                throw new IllegalStateException("test failure");
+            }
+            return true;
+        });
+
+        MessageBatch batch = new MessageBatch();
+        for (int i = 0; i < 6; i++) {
+            batch.add(new MessageRecord(null), MessagePayload.parse(ByteBuffer.wrap(String.format(MESSAGE, "key-" + i, "tid_" + i).getBytes())), "tid_" + i);
+        }
+        BatchResult result = dispatcher.dispatch(batch, listener);
+
+        assertThat(result.getFailedIndexes(), is(equalTo(Collections.singleton(4))));
+        assertThat(result.getFailureCause(4).getMessage(), is("test failure"));
+    }
+}
@@ -0,0 +1,120 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ListenerRetriesTest {
+
+    private static final String TOPIC = "CmsPublicationEvent";
+
+    private final DeadLetterSink deadLetterSink = mock(DeadLetterSink.class);
+
+    @Test
+    public void testDelaysDoubleWithEachAttemptUpToMaxDelay() {
+        ListenerRetries retries = new ListenerRetries(10, 10, 100, 1000, deadLetterSink);
+
+        assertThat(retries.delay(1), is(100L));
+        assertThat(retries.delay(2), is(200L));
+        assertThat(retries.delay(4), is(800L));
+        assertThat(retries.delay(5), is(1000L));
+        assertThat(retries.delay(64), is(1000L));
+    }
+
+    @Test
+    public void testDueRetriesAreTakenInTheOrderTheyFellDue() throws Exception {
+        ListenerRetries retries = new ListenerRetries(3, 10, 0, 0, deadLetterSink);
+        retries.failed(record(0, 7), 1, null);
+        retries.failed(record(0, 3), 1, null);
+
+        assertThat(retries.nextDueIn(System.currentTimeMillis()), is(0L));
+        List<ListenerRetries.Retry> due = retries.takeDue(System.currentTimeMillis());
+
+        assertThat(due.size(), is(2));
+        assertThat(due.get(0).getRecord().getOffset(), is(7L));
+        assertThat(due.get(1).getRecord().getOffset(), is(3L));
+        assertThat(due.get(1).getAttempts(), is(1));
+        assertThat(retries.isEmpty(), is(true));
+        assertThat(retries.nextDueIn(System.currentTimeMillis()), is(Long.MAX_VALUE));
+        verify(deadLetterSink, never()).send(any(MessageRecord.class), eq(1), any(Throwable.class));
+    }
+
+    @Test
+    public void testRetriesNotYetDueAreLeftWaiting() {
+        ListenerRetries retries = new ListenerRetries(3, 10, 60000, 60000, deadLetterSink);
+        retries.failed(record(0, 3), 1, null);
+
+        assertThat(retries.takeDue(System.currentTimeMillis()).isEmpty(), is(true));
+        assertThat(retries.nextDueIn(System.currentTimeMillis()) > 59000, is(true));
+        assertThat(retries.size(), is(1));
+    }
+
+    @Test
+    public void testRecordsGoToDeadLetterSinkOnceRetriesAreExhaustedOrCapacityIsReached() throws Exception {
+        ListenerRetries retries = new ListenerRetries(2, 1, 0, 0, deadLetterSink);
+        RuntimeException cause = new RuntimeException("test failure");
+        MessageRecord exhausted = record(0, 1);
+        MessageRecord overflowing = record(0, 3);
+
+        assertThat(retries.failed(exhausted, 3, cause), is(false));
+        assertThat(retries.failed(record(0, 2), 1, cause), is(true));
+        assertThat(retries.failed(overflowing, 1, null), is(false));
+
+        verify(deadLetterSink).send(exhausted, 3, cause);
+        verify(deadLetterSink).send(overflowing, 1, null);
+        assertThat(retries.size(), is(1));
+    }
+
+    @Test
+    public void testMessageTheDeadLetterSinkFailsToTakeKeepsWaitingUntilItDoes() throws Exception {
+        ListenerRetries retries = new ListenerRetries(0, 10, 0, 0, deadLetterSink);
+        MessageRecord record = record(0, 1);
+        doThrow(new IllegalStateException("sink unavailable")).doNothing()
+                .when(deadLetterSink).send(any(MessageRecord.class), eq(1), any(Throwable.class));
+
+        assertThat(retries.failed(record, 1, null), is(false));
+        assertThat(retries.size(), is(1));
+        assertThat(retries.lowestWaitingOffsets().get(TOPIC).get(0), is(1L));
+
+        long doneWith = retries.getDoneWith();
+        assertThat(retries.takeDue(System.currentTimeMillis()).isEmpty(), is(true));
+
+        verify(deadLetterSink, times(2)).send(any(MessageRecord.class), eq(1), any(Throwable.class));
+        assertThat(retries.isEmpty(), is(true));
+        assertThat(retries.getDoneWith(), is(doneWith + 1));
+    }
+
+    @Test
+    public void testLowestWaitingOffsetIsKeptPerPartition() {
+        ListenerRetries retries = new ListenerRetries(3, 10, 60000, 60000, deadLetterSink);
+        retries.failed(record(0, 9), 1, null);
+        retries.failed(record(0, 4), 1, null);
+        retries.failed(record(1, 2), 1, null);
+
+        assertThat(retries.lowestWaitingOffsets().get(TOPIC).get(0), is(4L));
+        assertThat(retries.lowestWaitingOffsets().get(TOPIC).get(1), is(2L));
+        assertThat(retries.lowestWaitingOffsets().get(TOPIC).get(2), is(nullValue()));
+        assertThat(retries.isWaitingWithoutPosition(), is(false));
+
+        long doneWith = retries.getDoneWith();
+        assertThat(retries.clear(), is(3));
+        assertThat(retries.getDoneWith(), is(doneWith + 3));
+        assertThat(retries.lowestWaitingOffsets().isEmpty(), is(true));
+    }
+
+    private static MessageRecord record(int partition, long offset) {
+        return new MessageRecord(TOPIC, null, new byte[0], partition, offset);
+    }
+}
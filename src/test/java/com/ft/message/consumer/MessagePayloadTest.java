@@ -0,0 +1,110 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.messaging.standards.message.v1.Message;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MessagePayloadTest {
+
+    private static final String HEADERS = "FTMSG/1.0\r\n" +
+            "Message-Id: 557b0772-da28-47a4-8b4f-fc46cc5f8c32\r\n" +
+            "Message-Timestamp: 2015-11-20T13:44:45.305Z\r\n" +
+            "Message-Type: cms-content-published\r\n" +
+            "Origin-System-Id: http://cmdb.ft.com/systems/methode-web-pub\r\n" +
+            "Content-Type: application/json\r\n" +
+            "X-Request-Id: SYNTHETIC-REQ-MON_b47A5AvpIr";
+    private static final String BODY = "{\"contentUri\":\"http://methode-image-model-transformer-iw-uk-p.svc.ft.com/image/model/30921224\"}";
+    private static final String MESSAGE = HEADERS + "\r\n\r\n" + BODY;
+
+    @Test
+    public void testGetHeader() {
+        MessagePayload payload = MessagePayload.parse(ByteBuffer.wrap(MESSAGE.getBytes(UTF_8)));
+
+        assertThat(payload.getHeader("X-Request-Id"), is(equalTo("SYNTHETIC-REQ-MON_b47A5AvpIr")));
+        assertThat(payload.getHeader("Message-Type"), is(equalTo("cms-content-published")));
+        assertThat(payload.getMessageId(), is(equalTo("557b0772-da28-47a4-8b4f-fc46cc5f8c32")));
+        assertThat(payload.getHeader("Message"), is(nullValue()));
+        assertThat(payload.getHeader("X-Missing"), is(nullValue()));
+    }
+
+    @Test
+    public void testHeaderValuesAreTrimmedAndDecodedAsUtf8() {
+        String message = "FTMSG/1.0\r\nX-Padded: \t value \t\r\nX-Blank:   \r\nX-Title: caf\u00e9\r\n\r\n{}";
+        MessagePayload payload = MessagePayload.parse(ByteBuffer.wrap(message.getBytes(UTF_8)));
+
+        assertThat(payload.getHeader("X-Padded"), is(equalTo("value")));
+        assertThat(payload.getHeader("X-Blank"), is(equalTo("")));
+        assertThat(payload.getHeader("X-Title"), is(equalTo("caf\u00e9")));
+    }
+
+    @Test
+    public void testHeadersAndBodyAreViewsOfTheirSections() throws Exception {
+        ByteBuffer value = ByteBuffer.allocate(MESSAGE.length() + 10);
+        value.position(5);
+        value.put(MESSAGE.getBytes(UTF_8)).flip().position(5);
+
+        MessagePayload payload = MessagePayload.parse(value);
+
+        assertThat(UTF_8.decode(payload.getHeaders()).toString(), is(equalTo(HEADERS)));
+        assertThat(UTF_8.decode(payload.getBody()).toString(), is(equalTo(BODY)));
+        assertThat(payload.getBody().isReadOnly(), is(true));
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = payload.getBodyStream()) {
+            byte[] chunk = new byte[16];
+            int read;
+            while ((read = in.read(chunk)) >= 0) {
+                body.write(chunk, 0, read);
+            }
+        }
+        assertThat(new String(body.toByteArray(), UTF_8), is(equalTo(BODY)));
+    }
+
+    @Test
+    public void testToMessageParsesOnceAndCopies() {
+        byte[] bytes = MESSAGE.getBytes(UTF_8);
+        MessagePayload payload = MessagePayload.parse(ByteBuffer.wrap(bytes));
+
+        Message message = payload.toMessage();
+        bytes[bytes.length - 2] = 'X';
+
+        assertThat(message, is(equalTo(Message.parse(MESSAGE.getBytes(UTF_8)))));
+        assertThat(payload.toMessage() == message, is(true));
+    }
+
+    @Test
+    public void testContextComesFromRecord() {
+        MessageRecord record = new MessageRecord("CmsPublicationEvent", "key".getBytes(UTF_8), MESSAGE.getBytes(UTF_8), 2, 41L, 1448026885305L);
+        MessagePayload payload = MessagePayload.parse(record);
+
+        assertThat(payload.getTopic(), is(equalTo("CmsPublicationEvent")));
+        assertThat(payload.getPartition(), is(2));
+        assertThat(payload.getOffset(), is(41L));
+        assertThat(payload.getKey(), is(equalTo("key".getBytes(UTF_8))));
+        assertThat(payload.getTimestamp(), is(1448026885305L));
+
+        MessagePayload unknown = MessagePayload.parse(ByteBuffer.wrap(MESSAGE.getBytes(UTF_8)));
+        assertThat(unknown.getTopic(), is(nullValue()));
+        assertThat(unknown.getOffset(), is(MessageRecord.UNKNOWN_OFFSET));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsValueWithoutPreamble() {
+        MessagePayload.parse(ByteBuffer.wrap("invalid".getBytes(UTF_8)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsValueWithoutEndOfHeaders() {
+        MessagePayload.parse(ByteBuffer.wrap(HEADERS.getBytes(UTF_8)));
+    }
+}
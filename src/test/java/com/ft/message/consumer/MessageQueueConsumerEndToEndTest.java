@@ -0,0 +1,236 @@
+package com.ft.message.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.ft.message.consumer.config.MessageQueueConsumerConfiguration;
+import com.ft.message.consumer.proxy.FakeKafkaRestProxy;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.config.DefaultClientConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/** Runs the whole library, streams included, against a {@link FakeKafkaRestProxy} over real HTTP. */
+public class MessageQueueConsumerEndToEndTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageQueueConsumerEndToEndTest.class);
+    private static final String TOPIC = "CmsPublicationEvent";
+    private static final String GROUP = "endToEnd";
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private FakeKafkaRestProxy proxy;
+    private Client client;
+    private final Set<String> received = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void setUp() throws Exception {
+        proxy = new FakeKafkaRestProxy().withTopic(TOPIC, 4).withMaxRecordsPerFetch(50).start();
+        ClientConfig clientConfig = new DefaultClientConfig();
+        clientConfig.getSingletons().add(new JacksonJsonProvider());
+        client = Client.create(clientConfig);
+    }
+
+    @After
+    public void tearDown() {
+        proxy.close();
+    }
+
+    @Test
+    public void testConsumesAndCommitsEveryMessageWithOneStream() throws Exception {
+        assertConsumesEveryMessage(1, proxy.produceMessages(TOPIC, 500, 2048));
+    }
+
+    @Test
+    public void testConsumesAndCommitsEveryMessageWithSeveralStreams() throws Exception {
+        assertConsumesEveryMessage(3, proxy.produceMessages(TOPIC, 500, 2048));
+    }
+
+    @Test
+    public void testRecoversFromProxyErrorsAndLatency() throws Exception {
+        // a failed destroy leaves the instance behind holding its partitions until it expires, as on a real proxy
+        proxy.withErrorRate(0.2).withLatency(0, 20).withInstanceExpiry(1000);
+        assertConsumesEveryMessage(2, proxy.produceMessages(TOPIC, 300, 16 * 1024));
+    }
+
+    @Test
+    public void testConsumesAndCommitsEveryMessageWithAsyncTransport() throws Exception {
+        assertConsumesEveryMessage(asyncInitializer(8), proxy.produceMessages(TOPIC, 500, 2048));
+    }
+
+    @Test
+    public void testRecoversFromProxyErrorsWithAsyncTransport() throws Exception {
+        proxy.withErrorRate(0.2).withLatency(0, 20).withInstanceExpiry(1000);
+        assertConsumesEveryMessage(asyncInitializer(3), proxy.produceMessages(TOPIC, 300, 16 * 1024));
+    }
+
+    @Test
+    public void testConsumesAndCommitsEveryMessageEmbeddedAsJson() throws Exception {
+        assertConsumesEveryMessage(initializer(new ObjectMapper().readValue(String.format(
+                "{\"topicName\": \"%s\", \"groupName\": \"%s\", \"queueProxyHost\": \"%s\", \"backoffPeriod\": 100, "
+                        + "\"streamCount\": 2, \"offsetReset\": \"earliest\", \"embeddedFormat\": \"json\", "
+                        + "\"streamingDecode\": true, \"payloadPoolSize\": 4}",
+                TOPIC, GROUP, proxy.getUri()), MessageQueueConsumerConfiguration.class)), proxy.produceMessages(TOPIC, 300, 4096));
+    }
+
+    @Test
+    public void testConsumesAndCommitsEveryMessageEmbeddedAsJsonWithAsyncTransport() throws Exception {
+        assertConsumesEveryMessage(initializer(new ObjectMapper().readValue(String.format(
+                "{\"topicName\": \"%s\", \"groupName\": \"%s\", \"queueProxyHost\": \"%s\", \"backoffPeriod\": 100, "
+                        + "\"streamCount\": 2, \"offsetReset\": \"earliest\", \"embeddedFormat\": \"json\", \"asyncTransport\": true}",
+                TOPIC, GROUP, proxy.getUri()), MessageQueueConsumerConfiguration.class)), proxy.produceMessages(TOPIC, 300, 4096));
+    }
+
+    @Test
+    public void testIdleConsumerLongPollsAndWakesOnNewMessage() throws Exception {
+        MessageQueueConsumerInitializer initializer = initializer(new ObjectMapper().readValue(String.format(
+                "{\"topicName\": \"%s\", \"groupName\": \"%s\", \"queueProxyHost\": \"%s\", \"backoffPeriod\": 8000, "
+                        + "\"offsetReset\": \"earliest\", \"fetchTimeout\": 1000, \"fetchMaxBytes\": 65536}",
+                TOPIC, GROUP, proxy.getUri()), MessageQueueConsumerConfiguration.class));
+        initializer.start();
+        try {
+            awaitReceived(proxy.produceMessages(TOPIC, 50, 4096));
+            // idle long enough for the empty poll backoff to have grown past a second without long polling
+            TimeUnit.MILLISECONDS.sleep(2500);
+            long idleRequests = proxy.getRequestCount();
+            long start = System.nanoTime();
+            List<String> more = proxy.produceMessages(TOPIC, 1, 1024);
+            awaitReceived(more);
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOGGER.info("Woke {} ms after a message was produced to an idle topic ({} requests)", latency, idleRequests);
+            assertThat("latency " + latency, latency < 500, is(true));
+        } finally {
+            initializer.stop();
+        }
+    }
+
+    @Test
+    public void testRecreatesExpiredConsumerInstances() throws Exception {
+        List<String> messageIds = proxy.produceMessages(TOPIC, 100, 1024);
+        proxy.withInstanceExpiry(200);
+        MessageQueueConsumerInitializer initializer = initializer(1);
+        initializer.start();
+        try {
+            awaitReceived(messageIds);
+            // idle polls keep the instance alive; only a silent instance expires
+            proxy.withLatency(400, 400);
+            TimeUnit.MILLISECONDS.sleep(1000);
+            proxy.withLatency(0, 0);
+            List<String> more = proxy.produceMessages(TOPIC, 100, 1024);
+            awaitReceived(more);
+        } finally {
+            initializer.stop();
+        }
+    }
+
+    @Test
+    public void testAutoscalesStreamsWithinPartitionsAndBackWhenIdle() throws Exception {
+        MessageQueueConsumerConfiguration configuration = new ObjectMapper().readValue(String.format(
+                "{\"topicName\": \"%s\", \"groupName\": \"%s\", \"queueProxyHost\": \"%s\", \"backoffPeriod\": 100, "
+                        + "\"streamCount\": 1, \"offsetReset\": \"earliest\", \"autoscaleMaxStreams\": 8, "
+                        + "\"autoscaleInterval\": 100, \"autoscaleStableSamples\": 1}",
+                TOPIC, GROUP, proxy.getUri()), MessageQueueConsumerConfiguration.class);
+        MessageListener slowListener = (message, transactionId) -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(message.getMessageId().toString());
+            return true;
+        };
+        MessageQueueConsumerInitializer initializer = new MessageQueueConsumerInitializer(configuration, slowListener, client);
+        List<String> messageIds = proxy.produceMessages(TOPIC, 2000, 1024);
+        int mostStreams = 0;
+        int mostInstances = 0;
+        initializer.start();
+        try {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (!received.containsAll(messageIds) && System.currentTimeMillis() < deadline) {
+                mostStreams = Math.max(mostStreams, initializer.getStreamCount());
+                mostInstances = Math.max(mostInstances, proxy.getInstanceCount(GROUP));
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            awaitReceived(messageIds);
+            while (initializer.getStreamCount() > 1 && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(20);
+            }
+            LOGGER.info("Scaled up to {} streams for a backlog, then back to {}", mostStreams, initializer.getStreamCount());
+            assertThat(initializer.getStreamCount(), is(1));
+            awaitCommitted(messageIds.size());
+        } finally {
+            initializer.stop();
+        }
+        assertThat(mostStreams, is(4));
+        assertThat(mostInstances <= 4, is(true));
+        assertThat(proxy.getCommittedRecords(GROUP, TOPIC), is((long) messageIds.size()));
+    }
+
+    private void assertConsumesEveryMessage(int streamCount, List<String> messageIds) throws Exception {
+        assertConsumesEveryMessage(initializer(streamCount), messageIds);
+    }
+
+    private void assertConsumesEveryMessage(MessageQueueConsumerInitializer initializer, List<String> messageIds) throws Exception {
+        long start = System.nanoTime();
+        initializer.start();
+        try {
+            awaitReceived(messageIds);
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOGGER.info("Consumed {} messages in {} ms ({} requests)",
+                    messageIds.size(), elapsed, proxy.getRequestCount());
+            awaitCommitted(messageIds.size());
+        } finally {
+            initializer.stop();
+        }
+        assertThat(received.containsAll(messageIds), is(true));
+        assertThat(proxy.getCommittedRecords(GROUP, TOPIC), is((long) messageIds.size()));
+    }
+
+    private MessageQueueConsumerInitializer initializer(int streamCount) {
+        return initializer(new MessageQueueConsumerConfiguration(
+                TOPIC, GROUP, proxy.getUri().toString(), null, 100, streamCount, "earliest", false));
+    }
+
+    private MessageQueueConsumerInitializer asyncInitializer(int streamCount) throws Exception {
+        return initializer(new ObjectMapper().readValue(String.format(
+                "{\"topicName\": \"%s\", \"groupName\": \"%s\", \"queueProxyHost\": \"%s\", \"backoffPeriod\": 100, "
+                        + "\"streamCount\": %d, \"offsetReset\": \"earliest\", \"asyncTransport\": true}",
+                TOPIC, GROUP, proxy.getUri(), streamCount), MessageQueueConsumerConfiguration.class));
+    }
+
+    private MessageQueueConsumerInitializer initializer(MessageQueueConsumerConfiguration configuration) {
+        MessageListener listener = (message, transactionId) -> {
+            received.add(message.getMessageId().toString());
+            return true;
+        };
+        return new MessageQueueConsumerInitializer(configuration, listener, client);
+    }
+
+    private void awaitReceived(List<String> messageIds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!received.containsAll(messageIds) && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        Set<String> missing = new HashSet<>(messageIds);
+        missing.removeAll(received);
+        assertThat("missing messages: " + missing.size(), missing.isEmpty(), is(true));
+    }
+
+    private void awaitCommitted(long records) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (proxy.getCommittedRecords(GROUP, TOPIC) < records && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+    }
+}
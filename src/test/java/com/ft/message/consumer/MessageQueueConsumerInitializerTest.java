@@ -5,20 +5,29 @@ import com.ft.message.consumer.config.MessageQueueConsumerConfiguration;
 import com.ft.message.consumer.proxy.MessageQueueProxyService;
 import com.ft.platform.dropwizard.AdvancedHealthCheck;
 import com.sun.jersey.api.client.Client;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -42,6 +51,11 @@ public class MessageQueueConsumerInitializerTest {
     @Mock
     private HealthcheckConfiguration healthcheckConfiguration;
 
+    @Before
+    public void setUp() {
+        when(messageQueueConsumerConfiguration.getEmbeddedFormat()).thenReturn("binary");
+    }
+
     @Test
     public void testStop() throws Exception {
         new MessageQueueConsumerInitializer(messageQueueConsumerConfiguration, messageListener, client, executorService).stop();
@@ -51,6 +65,81 @@ public class MessageQueueConsumerInitializerTest {
         verify(executorService).awaitTermination(10, TimeUnit.SECONDS);
     }
 
+    @Test
+    public void testStopLetsStreamsDrainBeforeDestroyingClient() throws Exception {
+        when(messageQueueConsumerConfiguration.getDrainTimeout()).thenReturn(5000L);
+        when(executorService.awaitTermination(5000, TimeUnit.MILLISECONDS)).thenReturn(true);
+
+        new MessageQueueConsumerInitializer(messageQueueConsumerConfiguration, messageListener, client, executorService).stop();
+
+        InOrder inOrder = inOrder(executorService, client);
+        inOrder.verify(executorService).shutdown();
+        inOrder.verify(executorService).awaitTermination(5000, TimeUnit.MILLISECONDS);
+        inOrder.verify(client).destroy();
+        verify(executorService, never()).shutdownNow();
+    }
+
+    @Test
+    public void testStopShutsDownListenerExecutor() throws Exception {
+        when(messageQueueConsumerConfiguration.getListenerConcurrency()).thenReturn(8);
+        MessageQueueConsumerInitializer initializer = new MessageQueueConsumerInitializer(messageQueueConsumerConfiguration, messageListener, client, executorService);
+
+        initializer.stop();
+
+        assertThat(initializer.listenerExecutor.isShutdown(), is(true));
+    }
+
+    @Test
+    public void testVirtualThreadsFallBackToPlatformThreadsWithoutJava21Classes() throws Exception {
+        when(messageQueueConsumerConfiguration.isVirtualThreads()).thenReturn(true);
+        when(messageQueueConsumerConfiguration.getStreamCount()).thenReturn(2);
+        MessageQueueConsumerInitializer initializer = new MessageQueueConsumerInitializer(messageQueueConsumerConfiguration, messageListener, client);
+
+        assertThat(initializer.startupExecutor, is(notNullValue()));
+        initializer.stop();
+    }
+
+    @Test
+    public void testAutoscalingStreamsDoNotWaitForThreadsOfDrainingStreams() throws Exception {
+        when(messageQueueConsumerConfiguration.getStreamCount()).thenReturn(2);
+        when(messageQueueConsumerConfiguration.getAutoscaleMaxStreams()).thenReturn(4);
+        when(messageQueueConsumerConfiguration.isAutoscaling()).thenReturn(true);
+        MessageQueueConsumerInitializer initializer = new MessageQueueConsumerInitializer(messageQueueConsumerConfiguration, messageListener, client);
+
+        assertThat(((ThreadPoolExecutor) initializer.startupExecutor).getMaximumPoolSize(), is(greaterThan(4)));
+        initializer.stop();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAsyncTransportRefusesListenerRetries() throws Exception {
+        when(messageQueueConsumerConfiguration.isAsyncTransport()).thenReturn(true);
+        when(messageQueueConsumerConfiguration.getListenerRetries()).thenReturn(3);
+        new MessageQueueConsumerInitializer(messageQueueConsumerConfiguration, messageListener, client);
+    }
+
+    @Test
+    public void testAsyncTransportRefusesSettingsOfBlockingStreams() throws Exception {
+        when(messageQueueConsumerConfiguration.getStreamCount()).thenReturn(1);
+        when(messageQueueConsumerConfiguration.isAsyncTransport()).thenReturn(true);
+        when(messageQueueConsumerConfiguration.getPrefetchRecords()).thenReturn(100);
+        when(messageQueueConsumerConfiguration.getBatchMaxSize()).thenReturn(50);
+        when(messageQueueConsumerConfiguration.isExplicitCommit()).thenReturn(true);
+        try {
+            new MessageQueueConsumerInitializer(messageQueueConsumerConfiguration, messageListener, client);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), startsWith("prefetchRecords, batchMaxSize, explicitCommit only apply to blocking streams"));
+        }
+    }
+
+    @Test
+    public void testAsyncTransportAcceptsASingleDispatchWorker() throws Exception {
+        when(messageQueueConsumerConfiguration.getStreamCount()).thenReturn(1);
+        when(messageQueueConsumerConfiguration.isAsyncTransport()).thenReturn(true);
+        when(messageQueueConsumerConfiguration.getDispatchWorkers()).thenReturn(1);
+        new MessageQueueConsumerInitializer(messageQueueConsumerConfiguration, messageListener, client).stop();
+    }
+
     @Test
     public void testStart() throws Exception {
         when(messageQueueConsumerConfiguration.getStreamCount()).thenReturn(5);
@@ -67,6 +156,22 @@ public class MessageQueueConsumerInitializerTest {
         executor.shutdownNow();
 
         assertThat(executor.awaitTermination(1, TimeUnit.SECONDS), is(true));
+        verify(messageQueueConsumer, never()).close();
+        verify(messageQueueConsumer).shutdown();
+    }
+
+    @Test
+    public void testInfiniteStreamHandlerShouldCloseConsumerWhenDrained() throws Exception {
+        when(messageQueueConsumer.isDraining()).thenReturn(false, false, true);
+        Thread stream = new Thread(new MessageQueueConsumerInitializer.InfiniteStreamHandler(messageQueueConsumer));
+        stream.start();
+        stream.join(1000);
+
+        assertThat(stream.isAlive(), is(false));
+        InOrder inOrder = inOrder(messageQueueConsumer);
+        inOrder.verify(messageQueueConsumer, times(2)).consume();
+        inOrder.verify(messageQueueConsumer).close();
+        inOrder.verify(messageQueueConsumer).shutdown();
     }
     
     @Test
@@ -1,8 +1,11 @@
 package com.ft.message.consumer;
 
+import com.codahale.metrics.MetricRegistry;
 import com.ft.message.consumer.proxy.MessageQueueProxyService;
+import com.ft.message.consumer.proxy.MessageRecordHandler;
 import com.ft.message.consumer.proxy.QueueProxyServiceException;
 import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.message.consumer.proxy.model.PartitionOffset;
 import com.ft.messaging.standards.message.v1.Message;
 import com.google.common.collect.ImmutableList;
 
@@ -10,6 +13,8 @@ import ch.qos.logback.classic.Logger;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -17,6 +22,7 @@ import javax.ws.rs.core.UriBuilder;
 import java.net.URI;
 import java.time.LocalTime;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -28,10 +34,17 @@ import static com.ft.message.consumer.LoggingTestHelper.resetLoggingFor;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyListOf;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -50,6 +63,12 @@ public class MessageQueueConsumerTest {
     private MessageListener messageListener;
     @Mock
     private MessageQueueProxyService messageQueueProxyService;
+    @Mock
+    private BatchMessageListener batchMessageListener;
+    @Mock
+    private MessagePayloadListener payloadListener;
+    @Mock
+    private ContextualMessageListener contextualListener;
 
     @Test
     public void testConsume() throws Exception {
@@ -69,6 +88,555 @@ public class MessageQueueConsumerTest {
         verify(messageQueueProxyService, never()).destroyConsumerInstance(consumerInstance);
     }
 
+    @Test
+    public void testStreamStatusFailsUntilAPollSucceeds() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withMetrics(null, "stream-3").build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+        QueueProxyServiceException error = new QueueProxyServiceException("Could not reach the proxy");
+
+        when(messageQueueProxyService.createConsumerInstance()).thenThrow(error).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(ImmutableList.of(new MessageRecord(MESSAGE.getBytes())));
+
+        StreamStatus status = messageQueueConsumer.getStreamStatus();
+        assertThat(status.getName(), is("stream-3"));
+        assertThat(status.getState(), is(StreamStatus.State.STARTING));
+
+        messageQueueConsumer.consume();
+
+        assertThat(status.getState(), is(StreamStatus.State.FAILING));
+        assertThat(status.getLastError(), is((Throwable) error));
+        assertThat(status.getErrors(), is(1L));
+
+        messageQueueConsumer.consume();
+
+        assertThat(status.getState(), is(StreamStatus.State.PROCESSING));
+        assertThat(status.getPolls(), is(1L));
+        assertThat(status.getRecords(), is(1L));
+        assertThat(status.getLastPollAt() > 0, is(true));
+
+        messageQueueConsumer.drain();
+        assertThat(status.getState(), is(StreamStatus.State.DRAINING));
+        messageQueueConsumer.shutdown();
+        assertThat(status.getState(), is(StreamStatus.State.STOPPED));
+    }
+
+    @Test
+    public void testConsumeWithPrefetchCommitsOnceBufferIsDrained() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1000).withPrefetch(10, 1024).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(ImmutableList.of(new MessageRecord(MESSAGE.getBytes())), ImmutableList.<MessageRecord>of());
+
+        messageQueueConsumer.consume();
+
+        verify(messageListener).onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"));
+        verify(messageQueueProxyService).commitOffsets(consumerInstance);
+        verify(messageQueueProxyService, never()).destroyConsumerInstance(consumerInstance);
+    }
+
+    @Test
+    public void testConsumeWithPrefetchShouldDestroyConsumerInstanceWhenFetchFails() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1000).withPrefetch(10, 1024).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenThrow(new QueueProxyServiceException("Could not reach the proxy"));
+
+        messageQueueConsumer.consume();
+
+        verify(messageListener, never()).onMessage(any(Message.class), any(String.class));
+        verify(messageQueueProxyService, never()).commitOffsets(consumerInstance);
+        verify(messageQueueProxyService).destroyConsumerInstance(consumerInstance);
+    }
+
+    @Test
+    public void testConsumeWithParallelDispatchCommitsAfterEveryLaneHasDrained() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withDispatchWorkers(4, null).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(ImmutableList.of(
+                new MessageRecord("a".getBytes(), MESSAGE.getBytes()),
+                new MessageRecord("b".getBytes(), MESSAGE.getBytes()),
+                new MessageRecord("c".getBytes(), MESSAGE.getBytes())));
+
+        try {
+            messageQueueConsumer.consume();
+        } finally {
+            messageQueueConsumer.shutdown();
+        }
+
+        verify(messageListener, times(3)).onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"));
+        verify(messageQueueProxyService).commitOffsets(consumerInstance);
+        verify(messageQueueProxyService, never()).destroyConsumerInstance(consumerInstance);
+    }
+
+    @Test
+    public void testConsumeWithBatchListenerDeliversWholePoll() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, batchMessageListener)
+                .withBackoffPeriod(1).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(ImmutableList.of(
+                new MessageRecord(MESSAGE.getBytes()), new MessageRecord("Invalid Message".getBytes()), new MessageRecord(MESSAGE.getBytes())));
+
+        messageQueueConsumer.consume();
+
+        verify(batchMessageListener).onMessages(
+                eq(ImmutableList.of(Message.parse(MESSAGE.getBytes()), Message.parse(MESSAGE.getBytes()))),
+                eq(ImmutableList.of("SYNTHETIC-REQ-MON_b47A5AvpIr", "SYNTHETIC-REQ-MON_b47A5AvpIr")));
+        verify(messageQueueProxyService).commitOffsets(consumerInstance);
+    }
+
+    @Test
+    public void testConsumeWithMicroBatchingHoldsMessagesUntilMaxSizeReached() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, batchMessageListener)
+                .withBackoffPeriod(1).withMicroBatching(3, 60000).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(ImmutableList.of(
+                new MessageRecord(MESSAGE.getBytes()), new MessageRecord(MESSAGE.getBytes())));
+
+        messageQueueConsumer.consume();
+
+        verify(batchMessageListener, never()).onMessages(anyListOf(Message.class), anyListOf(String.class));
+        verify(messageQueueProxyService, never()).commitOffsets(consumerInstance);
+
+        messageQueueConsumer.consume();
+
+        verify(batchMessageListener).onMessages(anyListOf(Message.class), anyListOf(String.class));
+        verify(messageQueueProxyService, never()).commitOffsets(consumerInstance);
+
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(ImmutableList.<MessageRecord>of());
+        messageQueueConsumer.consume();
+
+        ArgumentCaptor<List> messages = ArgumentCaptor.forClass(List.class);
+        verify(batchMessageListener, times(2)).onMessages(messages.capture(), anyListOf(String.class));
+        assertThat(messages.getAllValues().get(0).size(), is(3));
+        assertThat(messages.getAllValues().get(1).size(), is(1));
+        verify(messageQueueProxyService).commitOffsets(consumerInstance);
+    }
+
+    @Test
+    public void testConsumeWithStreamingDecodeHandsOverEachRecordAsItIsDecoded() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, batchMessageListener)
+                .withBackoffPeriod(1).withStreamingDecode(true).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(eq(consumerInstance), any(MessageRecordHandler.class))).thenAnswer(invocation -> {
+            MessageRecordHandler handler = (MessageRecordHandler) invocation.getArguments()[1];
+            handler.onRecord(new MessageRecord(MESSAGE.getBytes()));
+            verify(batchMessageListener).onMessages(anyListOf(Message.class), anyListOf(String.class));
+            handler.onRecord(new MessageRecord(MESSAGE.getBytes()));
+            return 2;
+        });
+
+        messageQueueConsumer.consume();
+
+        verify(batchMessageListener, times(2)).onMessages(anyListOf(Message.class), anyListOf(String.class));
+        verify(messageQueueProxyService, never()).consumeMessages(consumerInstance);
+        verify(messageQueueProxyService).commitOffsets(consumerInstance);
+    }
+
+    @Test
+    public void testConsumeWithPayloadListenerReleasesRecordsOnceListenerReturns() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService,
+                new MessagePayloadListenerAdapter(payloadListener)).withBackoffPeriod(1).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+        final MessageRecord record = spy(new MessageRecord(MESSAGE.getBytes()));
+        final MessageRecord invalidRecord = spy(new MessageRecord("invalid".getBytes()));
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(ImmutableList.of(invalidRecord, record));
+        when(payloadListener.onMessage(any(MessagePayload.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"))).thenAnswer(invocation -> {
+            MessagePayload payload = (MessagePayload) invocation.getArguments()[0];
+            assertThat(payload.getHeader("Message-Type"), is("cms-content-published"));
+            verify(record, never()).release();
+            return true;
+        });
+
+        messageQueueConsumer.consume();
+
+        verify(payloadListener).onMessage(any(MessagePayload.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"));
+        verify(invalidRecord).release();
+        verify(record).release();
+        verify(messageQueueProxyService).commitOffsets(consumerInstance);
+    }
+
+    @Test
+    public void testConsumeWithContextualListenerPassesRecordMetadata() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService,
+                new ContextualMessageListenerAdapter(contextualListener)).withBackoffPeriod(1).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(ImmutableList.of(
+                new MessageRecord("CmsPublicationEvent", "key".getBytes(), MESSAGE.getBytes(), 3, 42L, 1448026885305L)));
+        ArgumentCaptor<MessageContext> context = ArgumentCaptor.forClass(MessageContext.class);
+        when(contextualListener.onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"), context.capture())).thenReturn(true);
+
+        messageQueueConsumer.consume();
+
+        verify(contextualListener).onMessage(eq(Message.parse(MESSAGE.getBytes())), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"), any(MessageContext.class));
+        assertThat(context.getValue().getTopic(), is("CmsPublicationEvent"));
+        assertThat(context.getValue().getPartition(), is(3));
+        assertThat(context.getValue().getOffset(), is(42L));
+        assertThat(new String(context.getValue().getKey()), is("key"));
+        assertThat(context.getValue().getTimestamp(), is(1448026885305L));
+        verify(messageQueueProxyService).commitOffsets(consumerInstance);
+    }
+
+    @Test
+    public void testConsumersOfDifferentTopicsReportToTheSameRegistrySeparately() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withMetrics(metrics, "CmsPublicationEvent.binaryIngester", "stream-0").build();
+        new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withMetrics(metrics, "NativeCmsPublicationEvent.binaryIngester", "stream-0").build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenReturn(ImmutableList.of(new MessageRecord(MESSAGE.getBytes())));
+        when(messageListener.onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"))).thenReturn(true);
+
+        messageQueueConsumer.consume();
+
+        assertThat(metrics.meter(MetricRegistry.name("CmsPublicationEvent.binaryIngester",
+                MessageQueueConsumer.class.getName(), "stream-0", "messages")).getCount(), is(1L));
+        assertThat(metrics.meter(MetricRegistry.name("NativeCmsPublicationEvent.binaryIngester",
+                MessageQueueConsumer.class.getName(), "stream-0", "messages")).getCount(), is(0L));
+    }
+
+    @Test
+    public void testConsumeTakesMessagesTheListenerReturnsFalseForAsSkippedWithoutRetries() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withMetrics(metrics, "stream-0").build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenReturn(ImmutableList.of(new MessageRecord(MESSAGE.getBytes())));
+        when(messageListener.onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"))).thenReturn(false);
+
+        messageQueueConsumer.consume();
+
+        assertThat(metrics.meter(MetricRegistry.name(MessageQueueConsumer.class, "stream-0", "messages")).getCount(), is(1L));
+        assertThat(metrics.meter(MetricRegistry.name(MessageQueueConsumer.class, "stream-0", "listener-failures")).getCount(), is(0L));
+        verify(messageQueueProxyService).commitOffsets(consumerInstance);
+    }
+
+    @Test
+    public void testConsumeReportsMessagesFailuresAndResetsPerStream() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withMetrics(metrics, "stream-0").build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenReturn(ImmutableList.of(new MessageRecord(MESSAGE.getBytes()), new MessageRecord(MESSAGE.getBytes())))
+                .thenThrow(new QueueProxyServiceException("Could not reach the proxy"));
+        when(messageListener.onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr")))
+                .thenReturn(true)
+                .thenThrow(new RuntimeException("test application exception"));
+
+        messageQueueConsumer.consume();
+        messageQueueConsumer.consume();
+
+        assertThat(metrics.meter(MetricRegistry.name(MessageQueueConsumer.class, "stream-0", "messages")).getCount(), is(2L));
+        assertThat(metrics.meter(MetricRegistry.name(MessageQueueConsumer.class, "stream-0", "listener-failures")).getCount(), is(1L));
+        assertThat(metrics.timer(MetricRegistry.name(MessageQueueConsumer.class, "stream-0", "listener")).getCount(), is(1L));
+        assertThat(metrics.meter(MetricRegistry.name(MessageQueueConsumer.class, "stream-0", "resets")).getCount(), is(1L));
+    }
+
+    @Test
+    public void testConsumeRetriesRetryableErrorsWithSameConsumerInstance() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withRetries(3).withMetrics(metrics, "stream-0").build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        doThrow(new QueueProxyServiceException("Unable to create consumer instance. Proxy returned 503", 503))
+                .doNothing()
+                .when(messageQueueProxyService).subscribeConsumerInstanceToTopic(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenThrow(new QueueProxyServiceException("Unable to consume messages. Proxy returned 502", 502))
+                .thenThrow(new QueueProxyServiceException("Unable to consume messages. Proxy error.", new RuntimeException("Connection refused"), true))
+                .thenReturn(ImmutableList.of(new MessageRecord(MESSAGE.getBytes())));
+
+        for (int i = 0; i < 4; i++) {
+            messageQueueConsumer.consume();
+        }
+
+        verify(messageQueueProxyService).createConsumerInstance();
+        verify(messageQueueProxyService, times(2)).subscribeConsumerInstanceToTopic(consumerInstance);
+        verify(messageListener).onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"));
+        verify(messageQueueProxyService).commitOffsets(consumerInstance);
+        verify(messageQueueProxyService, never()).destroyConsumerInstance(consumerInstance);
+        assertThat(metrics.meter(MetricRegistry.name(MessageQueueConsumer.class, "stream-0", "retries")).getCount(), is(3L));
+        assertThat(metrics.meter(MetricRegistry.name(MessageQueueConsumer.class, "stream-0", "resets")).getCount(), is(0L));
+    }
+
+    @Test
+    public void testConsumeRecreatesConsumerInstanceOnceRetriesAreExhausted() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withRetries(2).withMetrics(metrics, "stream-0").build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenThrow(new QueueProxyServiceException("Unable to consume messages. Proxy returned 500", 500));
+
+        for (int i = 0; i < 4; i++) {
+            messageQueueConsumer.consume();
+        }
+
+        verify(messageQueueProxyService, times(2)).createConsumerInstance();
+        verify(messageQueueProxyService).destroyConsumerInstance(consumerInstance);
+        assertThat(metrics.meter(MetricRegistry.name(MessageQueueConsumer.class, "stream-0", "retries")).getCount(), is(3L));
+        assertThat(metrics.meter(MetricRegistry.name(MessageQueueConsumer.class, "stream-0", "resets")).getCount(), is(1L));
+    }
+
+    @Test
+    public void testConsumeRecreatesConsumerInstanceAfterErrorsThatAreNotRetryable() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withRetries(3).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenThrow(new QueueProxyServiceException("Unable to consume messages. Proxy returned 404", 404))
+                .thenThrow(new QueueProxyServiceException("Unable to consume messages. Proxy error.", new RuntimeException("Read timed out"), false));
+
+        messageQueueConsumer.consume();
+        messageQueueConsumer.consume();
+
+        verify(messageQueueProxyService, times(2)).createConsumerInstance();
+        verify(messageQueueProxyService, times(2)).destroyConsumerInstance(consumerInstance);
+    }
+
+    @Test
+    public void testConsumeWithPrefetchRestartsPrefetcherAfterRetryableError() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1000).withRetries(1).withBackoff(ExponentialBackoff.fixed(1), ExponentialBackoff.fixed(1))
+                .withPrefetch(10, 1024).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenThrow(new QueueProxyServiceException("Unable to consume messages. Proxy returned 503", 503))
+                .thenReturn(ImmutableList.of(new MessageRecord(MESSAGE.getBytes())), ImmutableList.<MessageRecord>of());
+
+        messageQueueConsumer.consume();
+        messageQueueConsumer.consume();
+
+        verify(messageListener).onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"));
+        verify(messageQueueProxyService).createConsumerInstance();
+        verify(messageQueueProxyService, never()).destroyConsumerInstance(consumerInstance);
+    }
+
+    @Test
+    public void testConsumeWithExplicitCommitsCoalescesOffsetsAndCommitsInBackground() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withExplicitCommits(3, 60000).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenReturn(ImmutableList.of(record(0, 5), record(1, 2)))
+                .thenReturn(ImmutableList.of(record(0, 6)));
+        when(messageListener.onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"))).thenReturn(true);
+
+        messageQueueConsumer.consume();
+        verify(messageQueueProxyService, never()).commitOffsets(eq(consumerInstance), anyListOf(PartitionOffset.class));
+
+        messageQueueConsumer.consume();
+        verify(messageQueueProxyService, timeout(1000)).commitOffsets(consumerInstance,
+                ImmutableList.of(new PartitionOffset("CmsPublicationEvent", 0, 6L), new PartitionOffset("CmsPublicationEvent", 1, 2L)));
+        verify(messageQueueProxyService, never()).commitOffsets(consumerInstance);
+        messageQueueConsumer.shutdown();
+    }
+
+    @Test
+    public void testConsumeWithExplicitCommitsCommitsProcessedOffsetsBeforeDestroyingConsumerInstance() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withExplicitCommits(100, 60000).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenReturn(ImmutableList.of(record(0, 5)))
+                .thenThrow(new QueueProxyServiceException("Could not reach the proxy"));
+        when(messageListener.onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"))).thenReturn(true);
+
+        messageQueueConsumer.consume();
+        messageQueueConsumer.consume();
+
+        InOrder inOrder = inOrder(messageQueueProxyService);
+        inOrder.verify(messageQueueProxyService).commitOffsets(consumerInstance, ImmutableList.of(new PartitionOffset("CmsPublicationEvent", 0, 5L)));
+        inOrder.verify(messageQueueProxyService).destroyConsumerInstance(consumerInstance);
+        messageQueueConsumer.shutdown();
+    }
+
+    @Test
+    public void testConsumeWithExplicitCommitsDoesNotCommitMessagesLeftByAnInterruptedListener() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withExplicitCommits(100, 60000).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenReturn(ImmutableList.of(record(0, 5)))
+                .thenReturn(ImmutableList.of(record(0, 6), record(0, 7), record(0, 8)));
+        when(messageListener.onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr")))
+                .thenReturn(true)
+                .thenAnswer(invocation -> {
+                    Thread.currentThread().interrupt();
+                    return true;
+                });
+
+        try {
+            messageQueueConsumer.consume();
+            messageQueueConsumer.consume();
+        } finally {
+            Thread.interrupted();
+        }
+
+        verify(messageListener, times(2)).onMessage(any(Message.class), any(String.class));
+        InOrder inOrder = inOrder(messageQueueProxyService);
+        inOrder.verify(messageQueueProxyService).commitOffsets(consumerInstance, ImmutableList.of(new PartitionOffset("CmsPublicationEvent", 0, 5L)));
+        inOrder.verify(messageQueueProxyService).destroyConsumerInstance(consumerInstance);
+        verify(messageQueueProxyService, times(1)).commitOffsets(eq(consumerInstance), anyListOf(PartitionOffset.class));
+        messageQueueConsumer.shutdown();
+    }
+
+    @Test
+    public void testConsumeRetriesMessagesTheListenerFailsThenDeadLettersThem() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        DeadLetterSink deadLetterSink = mock(DeadLetterSink.class);
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withListenerRetries(1, 10, 1, 1, deadLetterSink).withMetrics(metrics, "stream-0").build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenReturn(ImmutableList.of(record(0, 5), record(0, 6)))
+                .thenReturn(ImmutableList.<MessageRecord>of());
+        when(messageListener.onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr")))
+                .thenReturn(false)
+                .thenReturn(true)
+                .thenThrow(new RuntimeException("test application exception"));
+
+        messageQueueConsumer.consume();
+        verify(messageQueueProxyService, timeout(1000)).commitOffsets(consumerInstance,
+                ImmutableList.of(new PartitionOffset("CmsPublicationEvent", 0, 4L)));
+
+        Thread.sleep(5);
+        messageQueueConsumer.consume();
+
+        verify(messageListener, times(3)).onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"));
+        ArgumentCaptor<MessageRecord> deadLetter = ArgumentCaptor.forClass(MessageRecord.class);
+        verify(deadLetterSink).send(deadLetter.capture(), eq(2), any(RuntimeException.class));
+        assertThat(deadLetter.getValue().getOffset(), is(5L));
+        verify(messageQueueProxyService, timeout(1000)).commitOffsets(consumerInstance,
+                ImmutableList.of(new PartitionOffset("CmsPublicationEvent", 0, 6L)));
+        verify(messageQueueProxyService, never()).commitOffsets(consumerInstance);
+        assertThat(metrics.meter(MetricRegistry.name(MessageQueueConsumer.class, "stream-0", "listener-retries")).getCount(), is(1L));
+        assertThat(metrics.meter(MetricRegistry.name(MessageQueueConsumer.class, "stream-0", "dead-letters")).getCount(), is(1L));
+        messageQueueConsumer.shutdown();
+    }
+
+    @Test
+    public void testConsumeCommitsPastARetriedMessageOnceTheListenerAcceptsIt() throws Exception {
+        DeadLetterSink deadLetterSink = mock(DeadLetterSink.class);
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, new MessagePayloadListenerAdapter(payloadListener))
+                .withBackoffPeriod(1).withListenerRetries(3, 10, 1, 1, deadLetterSink).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenReturn(ImmutableList.of(record(1, 0)))
+                .thenReturn(ImmutableList.<MessageRecord>of());
+        when(payloadListener.onMessage(any(MessagePayload.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr")))
+                .thenReturn(false)
+                .thenReturn(true);
+
+        messageQueueConsumer.consume();
+        Thread.sleep(5);
+        messageQueueConsumer.consume();
+
+        verify(payloadListener, times(2)).onMessage(any(MessagePayload.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"));
+        verify(messageQueueProxyService, timeout(1000)).commitOffsets(consumerInstance,
+                ImmutableList.of(new PartitionOffset("CmsPublicationEvent", 1, 0L)));
+        verify(deadLetterSink, never()).send(any(MessageRecord.class), anyInt(), any(Throwable.class));
+        messageQueueConsumer.shutdown();
+    }
+
+    @Test
+    public void testConsumeSkipsMessagesHandledAlreadyButCommitsThem() throws Exception {
+        DuplicateFilter duplicateFilter = new DuplicateFilter(DuplicateFilter.Key.POSITION, 1000, 0, false, null);
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withDuplicateFilter(duplicateFilter).withExplicitCommits(1, 0).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenReturn(ImmutableList.of(record(0, 5), record(0, 6)))
+                .thenReturn(ImmutableList.of(record(0, 5), record(0, 6), record(0, 7)));
+        when(messageListener.onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr")))
+                .thenReturn(true)
+                .thenThrow(new RuntimeException("Listener failure"))
+                .thenReturn(true);
+
+        messageQueueConsumer.consume();
+        verify(messageQueueProxyService, timeout(1000)).commitOffsets(consumerInstance,
+                ImmutableList.of(new PartitionOffset("CmsPublicationEvent", 0, 6L)));
+        messageQueueConsumer.consume();
+
+        // offset 5 was handled, offset 6 failed and is handed over again
+        verify(messageListener, times(4)).onMessage(any(Message.class), eq("SYNTHETIC-REQ-MON_b47A5AvpIr"));
+        verify(messageQueueProxyService, timeout(1000)).commitOffsets(consumerInstance,
+                ImmutableList.of(new PartitionOffset("CmsPublicationEvent", 0, 7L)));
+        messageQueueConsumer.shutdown();
+    }
+
+    @Test
+    public void testConsumeShouldLogEachFailedMessageOfBatch() throws Exception {
+      try {
+        Logger logger = configureMockAppenderFor(MessageQueueConsumer.class);
+
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, batchMessageListener)
+                .withBackoffPeriod(1).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(ImmutableList.of(
+                new MessageRecord(MESSAGE.getBytes()), new MessageRecord(MESSAGE.getBytes())));
+        when(batchMessageListener.onMessages(anyListOf(Message.class), anyListOf(String.class)))
+                .thenReturn(BatchResult.success().fail(1, new IllegalStateException("test failure")));
+
+        messageQueueConsumer.consume();
+
+        assertLogEvent(logger, "IllegalStateException");
+        verify(messageQueueProxyService).commitOffsets(consumerInstance);
+        verify(messageQueueProxyService, never()).destroyConsumerInstance(consumerInstance);
+      } finally {
+        resetLoggingFor(MessageQueueConsumer.class);
+      }
+    }
+
     @Test
     public void testConsumeShouldNotCommitOffsetsForAutocommit() throws Exception {
         MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer(messageQueueProxyService, messageListener, 1, true);
@@ -209,6 +777,21 @@ public class MessageQueueConsumerTest {
         verify(messageQueueProxyService).destroyConsumerInstance(consumerInstance);
     }
 
+    @Test
+    public void testConsumeShouldDestroyConsumerInstanceWhenUnableToDestroySubscription() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer(messageQueueProxyService, messageListener, 1, false);
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenThrow(new QueueProxyServiceException("Could not reach the proxy"));
+        doThrow(new QueueProxyServiceException("Could not reach the proxy")).when(messageQueueProxyService).destroyConsumerInstanceSubscription(consumerInstance);
+
+        messageQueueConsumer.consume();
+
+        verify(messageQueueProxyService).destroyConsumerInstanceSubscription(consumerInstance);
+        verify(messageQueueProxyService).destroyConsumerInstance(consumerInstance);
+    }
+
     @Test
     public void testConsumeShouldDestroyConsumerInstanceWhenThreadInterruptedAndQueueNotEmpty() throws Exception {
         final MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer(messageQueueProxyService, messageListener, 1000, false);
@@ -255,4 +838,135 @@ public class MessageQueueConsumerTest {
         verify(messageListener, never()).onMessage(any(Message.class), any(String.class));
         verify(messageQueueProxyService).destroyConsumerInstance(consumerInstance);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConsumeUsesBackoffStrategiesAndResetsThemOnMessages() throws Exception {
+        BackoffStrategy emptyPollBackoff = mock(BackoffStrategy.class);
+        BackoffStrategy errorBackoff = mock(BackoffStrategy.class);
+        when(emptyPollBackoff.nextDelay()).thenReturn(1L);
+        when(errorBackoff.nextDelay()).thenReturn(1L);
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(60000).withBackoff(emptyPollBackoff, errorBackoff).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance))
+                .thenReturn(ImmutableList.<MessageRecord>of())
+                .thenThrow(new QueueProxyServiceException("Unable to consume messages. Proxy error."))
+                .thenReturn(ImmutableList.of(new MessageRecord(MESSAGE.getBytes())));
+
+        messageQueueConsumer.consume();
+        verify(emptyPollBackoff).nextDelay();
+        verify(errorBackoff, never()).nextDelay();
+
+        messageQueueConsumer.consume();
+        verify(errorBackoff).nextDelay();
+
+        messageQueueConsumer.consume();
+        verify(emptyPollBackoff).reset();
+        verify(errorBackoff).reset();
+        verify(emptyPollBackoff).nextDelay();
+        verify(errorBackoff).nextDelay();
+    }
+
+    @Test
+    public void testInterruptEndsBackoffImmediately() throws Exception {
+        final MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoff(ExponentialBackoff.fixed(60000), ExponentialBackoff.fixed(60000)).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenThrow(new QueueProxyServiceException("Unable to consume messages. Proxy error."));
+
+        Thread consumerThread = new Thread(messageQueueConsumer::consume);
+        consumerThread.start();
+        verify(messageQueueProxyService, timeout(1000)).destroyConsumerInstance(consumerInstance);
+        Thread.sleep(50);
+
+        consumerThread.interrupt();
+        consumerThread.join(1000);
+
+        assertThat(consumerThread.isAlive(), is(false));
+    }
+
+    @Test
+    public void testDrainEndsBackoffImmediately() throws Exception {
+        final MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoff(ExponentialBackoff.fixed(60000), ExponentialBackoff.fixed(60000)).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(ImmutableList.<MessageRecord>of());
+
+        Thread consumerThread = new Thread(messageQueueConsumer::consume);
+        consumerThread.start();
+        verify(messageQueueProxyService, timeout(1000)).consumeMessages(consumerInstance);
+        Thread.sleep(50);
+
+        messageQueueConsumer.drain();
+        consumerThread.join(1000);
+
+        assertThat(consumerThread.isAlive(), is(false));
+        assertThat(messageQueueConsumer.isDraining(), is(true));
+        verify(messageQueueProxyService, never()).destroyConsumerInstance(consumerInstance);
+    }
+
+    @Test
+    public void testCloseHandsOverMicroBatchAndCommitsBeforeDestroyingConsumerInstance() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, batchMessageListener)
+                .withBackoffPeriod(1).withMicroBatching(3, 60000).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(ImmutableList.of(
+                new MessageRecord(MESSAGE.getBytes()), new MessageRecord(MESSAGE.getBytes())));
+
+        messageQueueConsumer.consume();
+        messageQueueConsumer.drain();
+        messageQueueConsumer.close();
+
+        ArgumentCaptor<List> messages = ArgumentCaptor.forClass(List.class);
+        InOrder inOrder = inOrder(batchMessageListener, messageQueueProxyService);
+        inOrder.verify(batchMessageListener).onMessages(messages.capture(), anyListOf(String.class));
+        inOrder.verify(messageQueueProxyService).commitOffsets(consumerInstance);
+        inOrder.verify(messageQueueProxyService).destroyConsumerInstanceSubscription(consumerInstance);
+        inOrder.verify(messageQueueProxyService).destroyConsumerInstance(consumerInstance);
+        assertThat(messages.getValue().size(), is(2));
+    }
+
+    @Test
+    public void testCloseWithExplicitCommitsCommitsProcessedOffsetsBeforeDestroyingConsumerInstance() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer.Builder(messageQueueProxyService, messageListener)
+                .withBackoffPeriod(1).withExplicitCommits(100, 60000).build();
+        final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        when(messageQueueProxyService.createConsumerInstance()).thenReturn(consumerInstance);
+        when(messageQueueProxyService.consumeMessages(consumerInstance)).thenReturn(ImmutableList.of(record(0, 41), record(1, 7)));
+
+        messageQueueConsumer.consume();
+        messageQueueConsumer.drain();
+        messageQueueConsumer.close();
+
+        ArgumentCaptor<List> offsets = ArgumentCaptor.forClass(List.class);
+        InOrder inOrder = inOrder(messageQueueProxyService);
+        inOrder.verify(messageQueueProxyService).commitOffsets(eq(consumerInstance), offsets.capture());
+        inOrder.verify(messageQueueProxyService).destroyConsumerInstance(consumerInstance);
+        assertThat(offsets.getValue().size(), is(2));
+        messageQueueConsumer.shutdown();
+    }
+
+    @Test
+    public void testCloseWithoutConsumerInstanceDoesNothing() throws Exception {
+        MessageQueueConsumer messageQueueConsumer = new MessageQueueConsumer(messageQueueProxyService, messageListener, 1, false);
+
+        messageQueueConsumer.drain();
+        messageQueueConsumer.close();
+
+        verify(messageQueueProxyService, never()).commitOffsets(any(URI.class));
+        verify(messageQueueProxyService, never()).destroyConsumerInstance(any(URI.class));
+    }
+
+    private static MessageRecord record(int partition, long offset) {
+        return new MessageRecord("CmsPublicationEvent", null, MESSAGE.getBytes(), partition, offset);
+    }
+}
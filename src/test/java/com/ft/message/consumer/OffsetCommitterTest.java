@@ -0,0 +1,159 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.MessageQueueProxyService;
+import com.ft.message.consumer.proxy.QueueProxyServiceException;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.message.consumer.proxy.model.PartitionOffset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.ws.rs.core.UriBuilder;
+import java.net.URI;
+
+import static org.mockito.Mockito.anyListOf;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OffsetCommitterTest {
+
+    private static final String TOPIC = "CmsPublicationEvent";
+
+    @Mock
+    private MessageQueueProxyService messageQueueProxyService;
+
+    private final URI consumerInstance = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+    private OffsetCommitter offsetCommitter;
+
+    @Before
+    public void setUp() {
+        offsetCommitter = new OffsetCommitter(messageQueueProxyService, MoreExecutors.sameThreadExecutor(), 2, 60000);
+    }
+
+    @Test
+    public void testCommitsHighestProcessedOffsetOfEachPartitionOnceMaxRecordsReached() {
+        offsetCommitter.track(record(0, 3));
+        offsetCommitter.markProcessed();
+        offsetCommitter.commitIfDue(consumerInstance);
+        verify(messageQueueProxyService, never()).commitOffsets(eq(consumerInstance), anyListOf(PartitionOffset.class));
+
+        offsetCommitter.track(record(0, 4));
+        offsetCommitter.track(record(1, 9));
+        offsetCommitter.commitIfDue(consumerInstance);
+        verify(messageQueueProxyService, never()).commitOffsets(eq(consumerInstance), anyListOf(PartitionOffset.class));
+
+        offsetCommitter.markProcessed();
+        offsetCommitter.commitIfDue(consumerInstance);
+        verify(messageQueueProxyService).commitOffsets(consumerInstance,
+                ImmutableList.of(new PartitionOffset(TOPIC, 0, 4L), new PartitionOffset(TOPIC, 1, 9L)));
+    }
+
+    @Test
+    public void testCommitsOnceIntervalHasPassed() {
+        offsetCommitter = new OffsetCommitter(messageQueueProxyService, MoreExecutors.sameThreadExecutor(), 100, 0);
+
+        offsetCommitter.track(record(0, 3));
+        offsetCommitter.markProcessed();
+        offsetCommitter.commitIfDue(consumerInstance);
+
+        verify(messageQueueProxyService).commitOffsets(consumerInstance, ImmutableList.of(new PartitionOffset(TOPIC, 0, 3L)));
+    }
+
+    @Test
+    public void testFailedCommitIsRetriedWithLaterOffsets() {
+        doThrow(new QueueProxyServiceException("Could not reach the proxy")).when(messageQueueProxyService)
+                .commitOffsets(consumerInstance, ImmutableList.of(new PartitionOffset(TOPIC, 0, 4L)));
+
+        offsetCommitter.track(record(0, 3));
+        offsetCommitter.track(record(0, 4));
+        offsetCommitter.markProcessed();
+        offsetCommitter.commitIfDue(consumerInstance);
+
+        offsetCommitter.track(record(1, 1));
+        offsetCommitter.markProcessed();
+        offsetCommitter.commitIfDue(consumerInstance);
+
+        verify(messageQueueProxyService).commitOffsets(consumerInstance,
+                ImmutableList.of(new PartitionOffset(TOPIC, 0, 4L), new PartitionOffset(TOPIC, 1, 1L)));
+    }
+
+    @Test
+    public void testFlushCommitsProcessedButNotDiscardedOffsets() {
+        offsetCommitter.track(record(0, 3));
+        offsetCommitter.markProcessed();
+        offsetCommitter.track(record(0, 4));
+        offsetCommitter.discardUnprocessed();
+
+        offsetCommitter.flush(consumerInstance);
+        offsetCommitter.flush(consumerInstance);
+
+        verify(messageQueueProxyService, times(1)).commitOffsets(eq(consumerInstance), anyListOf(PartitionOffset.class));
+        verify(messageQueueProxyService).commitOffsets(consumerInstance, ImmutableList.of(new PartitionOffset(TOPIC, 0, 3L)));
+    }
+
+    @Test
+    public void testRecordsWithoutPositionAreCommittedByInstancePosition() {
+        offsetCommitter.track(record(0, 3));
+        offsetCommitter.track(new MessageRecord(new byte[0]));
+        offsetCommitter.markProcessed();
+        offsetCommitter.commitIfDue(consumerInstance);
+
+        verify(messageQueueProxyService).commitOffsets(consumerInstance);
+        verify(messageQueueProxyService, never()).commitOffsets(eq(consumerInstance), anyListOf(PartitionOffset.class));
+    }
+
+    @Test
+    public void testCommitsStayBelowRecordsWaitingForRetryUntilTheyAreDoneWith() {
+        ListenerRetries listenerRetries = new ListenerRetries(3, 10, 0, 0, mock(DeadLetterSink.class));
+        offsetCommitter = new OffsetCommitter(messageQueueProxyService, MoreExecutors.sameThreadExecutor(), 1, 0, listenerRetries);
+
+        offsetCommitter.track(record(0, 3));
+        offsetCommitter.track(record(0, 4));
+        offsetCommitter.track(record(0, 5));
+        offsetCommitter.track(record(1, 0));
+        offsetCommitter.track(record(2, 8));
+        offsetCommitter.markProcessed();
+        listenerRetries.failed(record(0, 4), 1, null);
+        listenerRetries.failed(record(1, 0), 1, null);
+        offsetCommitter.commitIfDue(consumerInstance);
+
+        verify(messageQueueProxyService).commitOffsets(consumerInstance,
+                ImmutableList.of(new PartitionOffset(TOPIC, 0, 3L), new PartitionOffset(TOPIC, 2, 8L)));
+
+        offsetCommitter.commitIfDue(consumerInstance);
+        verify(messageQueueProxyService, times(1)).commitOffsets(eq(consumerInstance), anyListOf(PartitionOffset.class));
+
+        listenerRetries.takeDue(System.currentTimeMillis());
+        offsetCommitter.commitIfDue(consumerInstance);
+
+        verify(messageQueueProxyService).commitOffsets(consumerInstance,
+                ImmutableList.of(new PartitionOffset(TOPIC, 0, 5L), new PartitionOffset(TOPIC, 1, 0L)));
+    }
+
+    @Test
+    public void testRecordsWithoutPositionAreNotCommittedWhileRetriesWait() {
+        ListenerRetries listenerRetries = new ListenerRetries(3, 10, 60000, 60000, mock(DeadLetterSink.class));
+        offsetCommitter = new OffsetCommitter(messageQueueProxyService, MoreExecutors.sameThreadExecutor(), 1, 0, listenerRetries);
+
+        offsetCommitter.track(new MessageRecord(new byte[0]));
+        offsetCommitter.markProcessed();
+        listenerRetries.failed(record(0, 4), 1, null);
+        offsetCommitter.commitIfDue(consumerInstance);
+        offsetCommitter.flush(consumerInstance);
+
+        verify(messageQueueProxyService, never()).commitOffsets(consumerInstance);
+    }
+
+    private static MessageRecord record(int partition, long offset) {
+        return new MessageRecord(TOPIC, null, new byte[0], partition, offset);
+    }
+}
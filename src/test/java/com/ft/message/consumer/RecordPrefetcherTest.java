@@ -0,0 +1,141 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.MessageQueueProxyService;
+import com.ft.message.consumer.proxy.QueueProxyServiceException;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.ws.rs.core.UriBuilder;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RecordPrefetcherTest {
+
+    private static final URI CONSUMER_INSTANCE = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+    private static final List<MessageRecord> BATCH = ImmutableList.of(new MessageRecord("first".getBytes()), new MessageRecord("second".getBytes()));
+
+    @Mock
+    private MessageQueueProxyService messageQueueProxyService;
+
+    private RecordPrefetcher prefetcher;
+
+    @After
+    public void tearDown() {
+        if (prefetcher != null) {
+            prefetcher.stop();
+        }
+    }
+
+    @Test
+    public void testPollReturnsFetchedBatch() throws Exception {
+        when(messageQueueProxyService.consumeMessages(CONSUMER_INSTANCE)).thenReturn(BATCH);
+        prefetcher = new RecordPrefetcher(messageQueueProxyService, CONSUMER_INSTANCE, 10, 1024, ExponentialBackoff.fixed(1000));
+        prefetcher.start();
+
+        assertThat(prefetcher.poll(1000), is(BATCH));
+    }
+
+    @Test
+    public void testFetcherStopsWhenRecordLimitReached() throws Exception {
+        when(messageQueueProxyService.consumeMessages(CONSUMER_INSTANCE)).thenReturn(BATCH);
+        prefetcher = new RecordPrefetcher(messageQueueProxyService, CONSUMER_INSTANCE, 4, 1024, ExponentialBackoff.fixed(1000));
+        prefetcher.start();
+
+        verify(messageQueueProxyService, timeout(1000).times(2)).consumeMessages(CONSUMER_INSTANCE);
+        Thread.sleep(100);
+        verify(messageQueueProxyService, times(2)).consumeMessages(CONSUMER_INSTANCE);
+
+        prefetcher.poll(1000);
+        verify(messageQueueProxyService, timeout(1000).times(3)).consumeMessages(CONSUMER_INSTANCE);
+    }
+
+    @Test
+    public void testFetcherStopsWhenByteLimitReached() throws Exception {
+        when(messageQueueProxyService.consumeMessages(CONSUMER_INSTANCE)).thenReturn(BATCH);
+        prefetcher = new RecordPrefetcher(messageQueueProxyService, CONSUMER_INSTANCE, 100, 11, ExponentialBackoff.fixed(1000));
+        prefetcher.start();
+
+        verify(messageQueueProxyService, timeout(1000)).consumeMessages(CONSUMER_INSTANCE);
+        Thread.sleep(100);
+        verify(messageQueueProxyService, times(1)).consumeMessages(CONSUMER_INSTANCE);
+    }
+
+    @Test
+    public void testPollReturnsEmptyListWhenNothingFetchedInTime() throws Exception {
+        when(messageQueueProxyService.consumeMessages(CONSUMER_INSTANCE)).thenReturn(ImmutableList.<MessageRecord>of());
+        prefetcher = new RecordPrefetcher(messageQueueProxyService, CONSUMER_INSTANCE, 10, 1024, ExponentialBackoff.fixed(1000));
+        prefetcher.start();
+
+        assertThat(prefetcher.poll(50).isEmpty(), is(true));
+    }
+
+    @Test(expected = QueueProxyServiceException.class)
+    public void testPollRethrowsFetchFailure() throws Exception {
+        when(messageQueueProxyService.consumeMessages(CONSUMER_INSTANCE)).thenThrow(new QueueProxyServiceException("Could not reach the proxy"));
+        prefetcher = new RecordPrefetcher(messageQueueProxyService, CONSUMER_INSTANCE, 10, 1024, ExponentialBackoff.fixed(1000));
+        prefetcher.start();
+
+        prefetcher.poll(1000);
+    }
+
+    @Test
+    public void testCommitOnlyRunsWhenBufferIsDrained() throws Exception {
+        when(messageQueueProxyService.consumeMessages(CONSUMER_INSTANCE)).thenReturn(BATCH);
+        prefetcher = new RecordPrefetcher(messageQueueProxyService, CONSUMER_INSTANCE, 4, 1024, ExponentialBackoff.fixed(1000));
+        prefetcher.start();
+
+        prefetcher.poll(1000);
+        verify(messageQueueProxyService, timeout(1000).times(3)).consumeMessages(CONSUMER_INSTANCE);
+
+        final AtomicBoolean committed = new AtomicBoolean();
+        assertThat(prefetcher.commit(() -> committed.set(true)), is(false));
+        assertThat(committed.get(), is(false));
+
+        prefetcher.poll(1000);
+        prefetcher.poll(1000);
+        verify(messageQueueProxyService, atMost(3)).consumeMessages(CONSUMER_INSTANCE);
+        assertThat(prefetcher.commit(() -> committed.set(true)), is(true));
+        assertThat(committed.get(), is(true));
+    }
+
+    @Test
+    public void testCommitDoesNotWaitForFetchInFlight() throws Exception {
+        final CountDownLatch fetchStarted = new CountDownLatch(1);
+        final CountDownLatch fetchReleased = new CountDownLatch(1);
+        when(messageQueueProxyService.consumeMessages(CONSUMER_INSTANCE)).thenAnswer(invocation -> {
+            fetchStarted.countDown();
+            fetchReleased.await();
+            return BATCH;
+        });
+        prefetcher = new RecordPrefetcher(messageQueueProxyService, CONSUMER_INSTANCE, 10, 1024, ExponentialBackoff.fixed(1000));
+        prefetcher.start();
+        fetchStarted.await(1, TimeUnit.SECONDS);
+
+        final AtomicBoolean committed = new AtomicBoolean();
+        assertThat(prefetcher.commit(() -> committed.set(true)), is(false));
+        assertThat(committed.get(), is(false));
+
+        fetchReleased.countDown();
+        assertThat(prefetcher.poll(1000), is(BATCH));
+        verify(messageQueueProxyService, times(1)).consumeMessages(CONSUMER_INSTANCE);
+        assertThat(prefetcher.commit(() -> committed.set(true)), is(true));
+        assertThat(committed.get(), is(true));
+    }
+}
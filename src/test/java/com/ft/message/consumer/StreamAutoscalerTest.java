@@ -0,0 +1,103 @@
+package com.ft.message.consumer;
+
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+
+public class StreamAutoscalerTest {
+
+    private static final StreamLoad.Sample LAGGING = new StreamLoad.Sample(0.5, 0.5, 120000);
+    private static final StreamLoad.Sample FULL = new StreamLoad.Sample(1, 0.5, StreamLoad.UNKNOWN_LAG);
+    private static final StreamLoad.Sample BUSY = new StreamLoad.Sample(0.5, 0.9, StreamLoad.UNKNOWN_LAG);
+    private static final StreamLoad.Sample STEADY = new StreamLoad.Sample(0.5, 0.5, 1000);
+    private static final StreamLoad.Sample IDLE = new StreamLoad.Sample(0, 0.1, 0);
+
+    private final StreamAutoscaler autoscaler = new StreamAutoscaler(1, 6, 60000, 3);
+
+    @Test
+    public void testAddsOneStreamOnceUnderPressureForStableSamples() {
+        assertThat(autoscaler.decide(samples(LAGGING, 2), 2, 8), is(2));
+        assertThat(autoscaler.decide(samples(FULL, 2), 2, 8), is(2));
+        assertThat(autoscaler.decide(samples(BUSY, 2), 2, 8), is(3));
+        assertThat(autoscaler.decide(samples(LAGGING, 3), 3, 8), is(3));
+    }
+
+    @Test
+    public void testRemovesOneStreamOnceIdleForStableSamples() {
+        assertThat(autoscaler.decide(samples(IDLE, 3), 3, 8), is(3));
+        assertThat(autoscaler.decide(samples(IDLE, 3), 3, 8), is(3));
+        assertThat(autoscaler.decide(samples(IDLE, 3), 3, 8), is(2));
+    }
+
+    @Test
+    public void testMixedSamplesDoNotChangeStreams() {
+        for (int i = 0; i < 5; i++) {
+            assertThat(autoscaler.decide(samples(i % 2 == 0 ? LAGGING : IDLE, 2), 2, 8), is(2));
+            assertThat(autoscaler.decide(samples(STEADY, 2), 2, 8), is(2));
+        }
+    }
+
+    @Test
+    public void testNeverExceedsPartitionsOrMaxStreams() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(autoscaler.decide(samples(LAGGING, 4), 4, 4), is(4));
+        }
+        assertThat(autoscaler.decide(samples(LAGGING, 6), 6, 12), is(6));
+        assertThat(autoscaler.decide(samples(LAGGING, 6), 6, 12), is(6));
+        assertThat(autoscaler.decide(samples(LAGGING, 6), 6, 12), is(6));
+    }
+
+    @Test
+    public void testNeverGoesBelowMinStreams() {
+        StreamAutoscaler autoscaler = new StreamAutoscaler(2, 6, 60000, 1);
+
+        assertThat(autoscaler.decide(samples(IDLE, 2), 2, 8), is(2));
+    }
+
+    @Test
+    public void testBringsStreamsWithinBoundsAtOnce() {
+        assertThat(autoscaler.decide(samples(STEADY, 5), 5, 3), is(3));
+        assertThat(autoscaler.bound(10, 0), is(6));
+        assertThat(autoscaler.bound(0, 8), is(1));
+    }
+
+    @Test
+    public void testDoesNotAddStreamsWhilePartitionsAreUnknown() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(autoscaler.decide(samples(LAGGING, 2), 2, 0), is(2));
+        }
+    }
+
+    @Test
+    public void testStreamLoadSamplesFillUtilisationAndLag() {
+        long start = System.nanoTime();
+        StreamLoad load = new StreamLoad(start);
+        load.recordPoll(100, MessageRecord.UNKNOWN_TIMESTAMP);
+        load.recordPoll(50, System.currentTimeMillis() - 30000);
+        load.recordListener(TimeUnit.MILLISECONDS.toNanos(250));
+
+        StreamLoad.Sample sample = load.sample(start + TimeUnit.SECONDS.toNanos(1));
+
+        assertThat(sample.getPollFill(), closeTo(0.75, 0.001));
+        assertThat(sample.getListenerUtilisation(), closeTo(0.25, 0.001));
+        assertThat(sample.getLag() >= 30000, is(true));
+
+        load.recordPoll(0, MessageRecord.UNKNOWN_TIMESTAMP);
+        sample = load.sample(start + TimeUnit.SECONDS.toNanos(2));
+
+        assertThat(sample.getPollFill(), closeTo(0, 0.001));
+        assertThat(sample.getListenerUtilisation(), closeTo(0, 0.001));
+        assertThat(sample.getLag(), is(0L));
+    }
+
+    private static List<StreamLoad.Sample> samples(StreamLoad.Sample sample, int streams) {
+        return Collections.nCopies(streams, sample);
+    }
+}
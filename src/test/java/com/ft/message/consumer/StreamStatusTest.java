@@ -0,0 +1,62 @@
+package com.ft.message.consumer;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class StreamStatusTest {
+
+    private final StreamStatus status = new StreamStatus("stream-0");
+
+    @Test
+    public void testPollsMoveStreamBetweenPollingProcessingAndIdle() {
+        status.polling();
+        assertThat(status.getState(), is(StreamStatus.State.POLLING));
+
+        status.polled(3);
+        assertThat(status.getState(), is(StreamStatus.State.PROCESSING));
+
+        status.polling();
+        status.polled(0);
+        assertThat(status.getState(), is(StreamStatus.State.IDLE));
+        assertThat(status.getPolls(), is(2L));
+        assertThat(status.getRecords(), is(3L));
+    }
+
+    @Test
+    public void testFailingStreamStaysFailingUntilAPollSucceeds() {
+        status.failed(new IllegalStateException("proxy unreachable"));
+        status.polling();
+        status.processing();
+        assertThat(status.getState(), is(StreamStatus.State.FAILING));
+        assertThat(status.describe(System.currentTimeMillis()), containsString("last error: proxy unreachable"));
+
+        status.polled(1);
+        assertThat(status.getState(), is(StreamStatus.State.PROCESSING));
+        assertThat(status.getErrors(), is(1L));
+    }
+
+    @Test
+    public void testStreamIsStaleWithoutACompletedPoll() {
+        long now = System.currentTimeMillis();
+        assertThat(status.isStale(now, 1000), is(false));
+        assertThat(status.isStale(now + 2000, 1000), is(true));
+
+        status.polled(1);
+        assertThat(status.isStale(status.getLastPollAt() + 500, 1000), is(false));
+        assertThat(status.isStale(status.getLastPollAt() + 2000, 1000), is(true));
+
+        status.draining();
+        assertThat(status.isStale(now + 60000, 1000), is(false));
+    }
+
+    @Test
+    public void testCountsOnlyCoverTheWindow() {
+        status.polled(5);
+        String described = status.describe(System.currentTimeMillis() + StreamStatus.WINDOW + StreamStatus.BUCKET);
+        assertThat(described, containsString("0 poll(s), 0 record(s), 0 error(s) in the last 60 s"));
+        assertThat(status.describe(System.currentTimeMillis()), containsString("1 poll(s), 5 record(s)"));
+    }
+}
@@ -1,8 +1,10 @@
 package com.ft.message.consumer.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Test;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 
@@ -49,4 +51,275 @@ public class MessageQueueConsumerConfigurationTest {
         MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", true);
         assertThat(messageQueueConsumerConfiguration.isAutoCommit(), is(equalTo(true)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPrefetchDisabledIfNotConfigured() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false);
+        assertThat(messageQueueConsumerConfiguration.getPrefetchRecords(), is(equalTo(0)));
+        assertThat(messageQueueConsumerConfiguration.getPrefetchBytes(), is(equalTo(16L * 1024 * 1024)));
+    }
+
+    @Test
+    public void testShouldUseConfiguredPrefetchLimits() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"prefetchRecords\": 500, \"prefetchBytes\": 1048576}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.getPrefetchRecords(), is(equalTo(500)));
+        assertThat(messageQueueConsumerConfiguration.getPrefetchBytes(), is(equalTo(1048576L)));
+    }
+
+    @Test
+    public void testShouldUseConfiguredDispatchSettings() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"dispatchWorkers\": 8, \"dispatchKeyHeader\": \"X-Content-Id\"}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.getDispatchWorkers(), is(equalTo(8)));
+        assertThat(messageQueueConsumerConfiguration.getDispatchKeyHeader(), is(equalTo("X-Content-Id")));
+    }
+
+    @Test
+    public void testShouldUseConfiguredMicroBatching() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"batchMaxSize\": 200, \"batchLinger\": 250}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.getBatchMaxSize(), is(equalTo(200)));
+        assertThat(messageQueueConsumerConfiguration.getBatchLinger(), is(equalTo(250L)));
+    }
+
+    @Test
+    public void testDefaultTo1sIfBatchLingerNotConfigured() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false);
+        assertThat(messageQueueConsumerConfiguration.getBatchMaxSize(), is(equalTo(0)));
+        assertThat(messageQueueConsumerConfiguration.getBatchLinger(), is(equalTo(1000L)));
+    }
+
+    @Test
+    public void testShouldUseConfiguredStreamingDecode() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"streamingDecode\": true}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.isStreamingDecode(), is(equalTo(true)));
+    }
+
+    @Test
+    public void testShouldUseConfiguredPayloadPool() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"payloadPoolSize\": 32, \"payloadBufferSize\": 4096}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.getPayloadPoolSize(), is(equalTo(32)));
+        assertThat(messageQueueConsumerConfiguration.getPayloadBufferSize(), is(equalTo(4096)));
+    }
+
+    @Test
+    public void testDefaultTo64KiBIfPayloadBufferSizeNotConfigured() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false);
+        assertThat(messageQueueConsumerConfiguration.getPayloadPoolSize(), is(equalTo(0)));
+        assertThat(messageQueueConsumerConfiguration.getPayloadBufferSize(), is(equalTo(65536)));
+    }
+
+    @Test
+    public void testShouldUseConfiguredInitialBackoffs() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"initialEmptyPollBackoff\": 50, \"initialErrorBackoff\": 2000}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.getInitialEmptyPollBackoff(), is(equalTo(50L)));
+        assertThat(messageQueueConsumerConfiguration.getInitialErrorBackoff(), is(equalTo(2000L)));
+    }
+
+    @Test
+    public void testDefaultInitialBackoffsIfNotConfigured() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false);
+        assertThat(messageQueueConsumerConfiguration.getInitialEmptyPollBackoff(), is(equalTo(100L)));
+        assertThat(messageQueueConsumerConfiguration.getInitialErrorBackoff(), is(equalTo(1000L)));
+    }
+
+    @Test
+    public void testShouldUseConfiguredExplicitCommits() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"explicitCommit\": true, \"commitMaxRecords\": 100, \"commitInterval\": 5000}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.isExplicitCommit(), is(equalTo(true)));
+        assertThat(messageQueueConsumerConfiguration.getCommitMaxRecords(), is(equalTo(100)));
+        assertThat(messageQueueConsumerConfiguration.getCommitInterval(), is(equalTo(5000L)));
+    }
+
+    @Test
+    public void testDefaultExplicitCommitSettingsIfNotConfigured() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false);
+        assertThat(messageQueueConsumerConfiguration.isExplicitCommit(), is(equalTo(false)));
+        assertThat(messageQueueConsumerConfiguration.getCommitMaxRecords(), is(equalTo(500)));
+        assertThat(messageQueueConsumerConfiguration.getCommitInterval(), is(equalTo(1000L)));
+    }
+
+    @Test
+    public void testShouldUseConfiguredAsyncTransport() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"asyncTransport\": true, \"asyncThreads\": 4}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.isAsyncTransport(), is(equalTo(true)));
+        assertThat(messageQueueConsumerConfiguration.getAsyncThreads(), is(equalTo(4)));
+    }
+
+    @Test
+    public void testDefaultAsyncTransportSettingsIfNotConfigured() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false);
+        assertThat(messageQueueConsumerConfiguration.isAsyncTransport(), is(equalTo(false)));
+        assertThat(messageQueueConsumerConfiguration.getAsyncThreads(), is(equalTo(2)));
+    }
+
+    @Test
+    public void testShouldUseConfiguredVirtualThreads() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"virtualThreads\": true, \"listenerConcurrency\": 32}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.isVirtualThreads(), is(equalTo(true)));
+        assertThat(messageQueueConsumerConfiguration.getListenerConcurrency(), is(equalTo(32)));
+    }
+
+    @Test
+    public void testShouldUseConfiguredFetchTimeoutAndMaxBytes() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"fetchTimeout\": 5000, \"fetchMaxBytes\": 1048576}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.getFetchTimeout(), is(equalTo(5000L)));
+        assertThat(messageQueueConsumerConfiguration.getFetchMaxBytes(), is(equalTo(1048576L)));
+    }
+
+    @Test
+    public void testLongPollingIsDisabledIfNotConfigured() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false);
+        assertThat(messageQueueConsumerConfiguration.getFetchTimeout(), is(equalTo(0L)));
+        assertThat(messageQueueConsumerConfiguration.getFetchMaxBytes(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void testShouldUseConfiguredEmbeddedFormat() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"embeddedFormat\": \"json\"}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.getEmbeddedFormat(), is(equalTo("json")));
+    }
+
+    @Test
+    public void testDefaultToBinaryIfEmbeddedFormatNotConfigured() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false);
+        assertThat(messageQueueConsumerConfiguration.getEmbeddedFormat(), is(equalTo("binary")));
+    }
+
+    @Test
+    public void testShouldUseConfiguredMaxRetries() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"maxRetries\": 5}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.getMaxRetries(), is(equalTo(5)));
+    }
+
+    @Test
+    public void testDefaultTo3IfMaxRetriesNotConfiguredAnd0IfNegative() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false);
+        assertThat(messageQueueConsumerConfiguration.getMaxRetries(), is(equalTo(3)));
+        MessageQueueConsumerConfiguration disabled = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"maxRetries\": -1}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(disabled.getMaxRetries(), is(equalTo(0)));
+    }
+
+    @Test
+    public void testShouldUseConfiguredAutoscaling() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"autoscaleMinStreams\": 2, \"autoscaleMaxStreams\": 8, "
+                        + "\"autoscaleInterval\": 10000, \"autoscaleLagThreshold\": 5000, \"autoscaleStableSamples\": 5}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.isAutoscaling(), is(true));
+        assertThat(messageQueueConsumerConfiguration.getAutoscaleMinStreams(), is(equalTo(2)));
+        assertThat(messageQueueConsumerConfiguration.getAutoscaleMaxStreams(), is(equalTo(8)));
+        assertThat(messageQueueConsumerConfiguration.getAutoscaleInterval(), is(equalTo(10000L)));
+        assertThat(messageQueueConsumerConfiguration.getAutoscaleLagThreshold(), is(equalTo(5000L)));
+        assertThat(messageQueueConsumerConfiguration.getAutoscaleStableSamples(), is(equalTo(5)));
+    }
+
+    @Test
+    public void testAutoscalingDisabledByDefault() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false);
+        assertThat(messageQueueConsumerConfiguration.isAutoscaling(), is(false));
+        assertThat(messageQueueConsumerConfiguration.getAutoscaleMinStreams(), is(equalTo(1)));
+        assertThat(messageQueueConsumerConfiguration.getAutoscaleInterval(), is(equalTo(30000L)));
+        assertThat(messageQueueConsumerConfiguration.getAutoscaleLagThreshold(), is(equalTo(60000L)));
+        assertThat(messageQueueConsumerConfiguration.getAutoscaleStableSamples(), is(equalTo(3)));
+    }
+
+    @Test
+    public void testLagSampleInterval() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"queueProxyHost\": \"http://localhost:8082\", "
+                        + "\"lagSampleInterval\": 15000}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.getLagSampleInterval(), is(equalTo(15000L)));
+        assertThat(new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false)
+                .getLagSampleInterval(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void testStreamStaleAfter() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"queueProxyHost\": \"http://localhost:8082\", "
+                        + "\"streamStaleAfter\": 15000}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.getStreamStaleAfter(), is(equalTo(15000L)));
+        assertThat(new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false)
+                .getStreamStaleAfter(), is(equalTo(60000L)));
+        assertThat(new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 30000, 1, "earliest", false)
+                .getStreamStaleAfter(), is(equalTo(90000L)));
+    }
+
+    @Test
+    public void testListenerRetries() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"queueProxyHost\": \"http://localhost:8082\", "
+                        + "\"listenerRetries\": 5, \"listenerRetryCapacity\": 200, \"initialListenerRetryDelay\": 500, "
+                        + "\"maxListenerRetryDelay\": 30000, \"deadLetterTopic\": \"CmsPublicationEventDeadLetters\"}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.getListenerRetries(), is(equalTo(5)));
+        assertThat(messageQueueConsumerConfiguration.getListenerRetryCapacity(), is(equalTo(200)));
+        assertThat(messageQueueConsumerConfiguration.getInitialListenerRetryDelay(), is(equalTo(500L)));
+        assertThat(messageQueueConsumerConfiguration.getMaxListenerRetryDelay(), is(equalTo(30000L)));
+        assertThat(messageQueueConsumerConfiguration.getDeadLetterTopic(), is(equalTo("CmsPublicationEventDeadLetters")));
+
+        MessageQueueConsumerConfiguration defaults =
+                new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false);
+        assertThat(defaults.getListenerRetries(), is(equalTo(0)));
+        assertThat(defaults.getListenerRetryCapacity(), is(equalTo(1000)));
+        assertThat(defaults.getInitialListenerRetryDelay(), is(equalTo(1000L)));
+        assertThat(defaults.getMaxListenerRetryDelay(), is(equalTo(60000L)));
+        assertThat(defaults.getDeadLetterFile(), is(nullValue()));
+    }
+
+    @Test
+    public void testDedup() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"queueProxyHost\": \"http://localhost:8082\", "
+                        + "\"dedupCapacity\": 1000000, \"dedupKey\": \"position\", \"dedupTtl\": 3600000, \"dedupBloomFilter\": true}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.getDedupCapacity(), is(equalTo(1000000)));
+        assertThat(messageQueueConsumerConfiguration.getDedupKey(), is(equalTo("position")));
+        assertThat(messageQueueConsumerConfiguration.getDedupTtl(), is(equalTo(3600000L)));
+        assertThat(messageQueueConsumerConfiguration.isDedupBloomFilter(), is(true));
+
+        MessageQueueConsumerConfiguration defaults =
+                new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false);
+        assertThat(defaults.getDedupCapacity(), is(equalTo(0)));
+        assertThat(defaults.getDedupKey(), is(equalTo("messageId")));
+        assertThat(defaults.isDedupBloomFilter(), is(false));
+    }
+
+    @Test
+    public void testHealthcheckProbeInterval() throws Exception {
+        MessageQueueConsumerConfiguration messageQueueConsumerConfiguration = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"group1\", \"queueProxyHost\": \"http://localhost:8082\", "
+                        + "\"healthcheckProbeInterval\": 10000}",
+                MessageQueueConsumerConfiguration.class);
+        assertThat(messageQueueConsumerConfiguration.getHealthcheckProbeInterval(), is(equalTo(10000L)));
+        assertThat(new MessageQueueConsumerConfiguration("CmsPublicationEvent", "group1", "http://localhost:8082", "kafka", 2000, 1, "earliest", false)
+                .getHealthcheckProbeInterval(), is(equalTo(30000L)));
+    }
+}
@@ -24,7 +24,11 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -36,6 +40,7 @@ public class CanConnectToMessageQueueProxyHealthcheckTest {
 
     private static final int HTTP_RESPONSE_OK = 200;
     private static final int HTTP_RESPONSE_NO_CONTENT = 204;
+    private static final int HTTP_RESPONSE_NOT_FOUND = 404;
     private static final int HTTP_RESPONSE_INTERNAL_SERVER_ERROR = 500;
 
     private HealthcheckConfiguration healtcheckConfiguration;
@@ -103,6 +108,74 @@ public class CanConnectToMessageQueueProxyHealthcheckTest {
         assertThat(actualHealthCheckResult.checkOutput(), containsString(expectedHealthCheckResult.checkOutput()));
     }
 
+    @Test
+    public void shouldReuseProbeInstanceBetweenProbes() throws Exception {
+        CanConnectToMessageQueueProxyHealthcheck healthCheck = spy(healthcheck);
+
+        mockClientResponseForProxyConnection(healthCheck, HTTP_RESPONSE_OK);
+        mockClientResponseForMessageConsuming(healthCheck, HTTP_RESPONSE_OK);
+
+        assertThat(healthCheck.probe().status(), is(equalTo(AdvancedResult.Status.OK)));
+        assertThat(healthCheck.probe().status(), is(equalTo(AdvancedResult.Status.OK)));
+
+        verify(healthCheck, times(1)).getClientResponseForProxyConnection((URI) any());
+        verify(healthCheck, times(2)).getClientResponseForMessageConsumer((URI) any());
+        verify(healthCheck, never()).deleteConsumerInstance((URI) any());
+    }
+
+    @Test
+    public void shouldReplaceProbeInstanceTheProxyNoLongerKnows() throws Exception {
+        CanConnectToMessageQueueProxyHealthcheck healthCheck = spy(healthcheck);
+
+        mockClientResponseForProxyConnection(healthCheck, HTTP_RESPONSE_OK);
+        ClientResponse mockClientResponseForMessageConsuming = mockClientResponseForMessageConsuming(healthCheck, HTTP_RESPONSE_OK);
+        healthCheck.probe();
+        when(mockClientResponseForMessageConsuming.getStatus()).thenReturn(HTTP_RESPONSE_NOT_FOUND, HTTP_RESPONSE_OK);
+
+        assertThat(healthCheck.probe().status(), is(equalTo(AdvancedResult.Status.OK)));
+        verify(healthCheck, times(2)).getClientResponseForProxyConnection((URI) any());
+    }
+
+    @Test
+    public void shouldDestroyProbeInstanceWhenTopicCannotBeRead() throws Exception {
+        CanConnectToMessageQueueProxyHealthcheck healthCheck = spy(healthcheck);
+
+        mockClientResponseForProxyConnection(healthCheck, HTTP_RESPONSE_OK);
+        mockClientResponseForMessageConsuming(healthCheck, HTTP_RESPONSE_INTERNAL_SERVER_ERROR);
+        mockClientResponseAtConsumerDestroy(healthCheck, HTTP_RESPONSE_NO_CONTENT);
+
+        AdvancedResult actualHealthCheckResult = healthCheck.probe();
+
+        assertThat(actualHealthCheckResult.status(), is(equalTo(AdvancedResult.Status.ERROR)));
+        assertThat(actualHealthCheckResult.checkOutput(), containsString("Unable to consume messages. Proxy returned 500"));
+        verify(healthCheck).deleteConsumerInstance((URI) any());
+    }
+
+    @Test
+    public void shouldReportLastProbeOnceStartedAndDestroyProbeInstanceWhenStopped() throws Exception {
+        CanConnectToMessageQueueProxyHealthcheck healthCheck = spy(healthcheck);
+
+        mockClientResponseForProxyConnection(healthCheck, HTTP_RESPONSE_OK);
+        mockClientResponseForMessageConsuming(healthCheck, HTTP_RESPONSE_OK);
+        mockClientResponseAtConsumerDestroy(healthCheck, HTTP_RESPONSE_NO_CONTENT);
+
+        healthCheck.start();
+        try {
+            verify(healthCheck, timeout(1000)).getClientResponseForMessageConsumer((URI) any());
+            Thread.sleep(50);
+
+            for (int i = 0; i < 3; i++) {
+                AdvancedResult actualHealthCheckResult = healthCheck.checkAdvanced();
+                assertThat(actualHealthCheckResult.status(), is(equalTo(AdvancedResult.Status.OK)));
+                assertThat(actualHealthCheckResult.checkOutput(), is("OK"));
+            }
+            verify(healthCheck, times(1)).getClientResponseForProxyConnection((URI) any());
+        } finally {
+            healthCheck.stop();
+        }
+        verify(healthCheck).deleteConsumerInstance((URI) any());
+    }
+
     private void mockClientResponseAtConsumerDestroy(CanConnectToMessageQueueProxyHealthcheck healthCheck, int statusCode) {
         ClientResponse mockClientResponse = mock(ClientResponse.class);
         doReturn(mockClientResponse).when(healthCheck).deleteConsumerInstance((URI) any());
@@ -0,0 +1,108 @@
+package com.ft.message.consumer.health;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.ft.message.consumer.config.HealthcheckConfiguration;
+import com.ft.message.consumer.proxy.ConsumerLag;
+import com.ft.message.consumer.proxy.ConsumerLagSampler;
+import com.ft.platform.dropwizard.AdvancedResult;
+import com.ft.platform.dropwizard.AdvancedResult.Status;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MessageQueueProxyConsumerLagHealthcheckTest {
+  private static final String NAME = "Test Healthcheck";
+  private static final int SEVERITY = 2;
+  private static final String BUSINESS_IMPACT = "Test Business Impact";
+  private static final String TECH_SUMMARY = "Test Tech Summary";
+  private static final String PANIC_GUIDE = "http://panic-guide.example.org/";
+  private static final long MAX_LAG = 100;
+  private static final long SAMPLE_INTERVAL = 1000;
+
+  private MessageQueueProxyConsumerLagHealthcheck healthcheck;
+  private HealthcheckConfiguration config = new HealthcheckConfiguration(
+      NAME, SEVERITY, BUSINESS_IMPACT, TECH_SUMMARY, PANIC_GUIDE);
+
+  @Mock
+  private ConsumerLagSampler sampler;
+
+  @Before
+  public void setUp() {
+    healthcheck = new MessageQueueProxyConsumerLagHealthcheck(config, sampler, MAX_LAG, SAMPLE_INTERVAL, null);
+  }
+
+  @Test
+  public void thatHealthcheckConfigurationIsUsed() {
+    assertThat(healthcheck.severity(), equalTo(SEVERITY));
+    assertThat(healthcheck.businessImpact(), equalTo(BUSINESS_IMPACT));
+    assertThat(healthcheck.technicalSummary(), equalTo(TECH_SUMMARY));
+    assertThat(healthcheck.panicGuideUrl(), equalTo(PANIC_GUIDE));
+  }
+
+  @Test
+  public void thatHealthcheckIsHealthyBeforeTheFirstSample() {
+    AdvancedResult actual = healthcheck.executeAdvanced();
+    assertThat(actual.status(), equalTo(Status.OK));
+  }
+
+  @Test
+  public void thatHealthcheckIsHealthyWithinMaxLag() {
+    when(sampler.getLag()).thenReturn(new ConsumerLag(Collections.singletonMap(0, MAX_LAG), System.currentTimeMillis()));
+
+    AdvancedResult actual = healthcheck.executeAdvanced();
+    assertThat(actual.status(), equalTo(Status.OK));
+    assertThat(actual.checkOutput(), containsString("100 message(s) behind"));
+  }
+
+  @Test
+  public void thatHealthcheckIsUnhealthyBeyondMaxLag() {
+    when(sampler.getLag()).thenReturn(new ConsumerLag(Collections.singletonMap(3, MAX_LAG + 1), System.currentTimeMillis()));
+
+    AdvancedResult actual = healthcheck.executeAdvanced();
+    assertThat(actual.status(), equalTo(Status.ERROR));
+    assertThat(actual.checkOutput(), containsString("{3=101}"));
+  }
+
+  @Test
+  public void thatHealthcheckIsUnhealthyWhenSampleIsStale() {
+    long sampledAt = System.currentTimeMillis() - (MessageQueueProxyConsumerLagHealthcheck.STALE_SAMPLES + 1) * SAMPLE_INTERVAL;
+    when(sampler.getLag()).thenReturn(new ConsumerLag(Collections.singletonMap(0, 0L), sampledAt));
+
+    AdvancedResult actual = healthcheck.executeAdvanced();
+    assertThat(actual.status(), equalTo(Status.ERROR));
+    assertThat(actual.checkOutput(), containsString("last sampled"));
+  }
+
+  @Test
+  public void thatHealthcheckIsHealthyWhilePartitionsAreBrieflyUnknown() {
+    long now = System.currentTimeMillis();
+    when(sampler.getLag()).thenReturn(new ConsumerLag(Collections.singletonMap(0, 0L),
+        Collections.singletonMap(1, now - SAMPLE_INTERVAL), now));
+
+    AdvancedResult actual = healthcheck.executeAdvanced();
+    assertThat(actual.status(), equalTo(Status.OK));
+    assertThat(actual.checkOutput(), containsString("lag unknown on partitions [1]"));
+  }
+
+  @Test
+  public void thatHealthcheckIsUnhealthyWhenPartitionsStayUnknown() {
+    long now = System.currentTimeMillis();
+    long unknownSince = now - (MessageQueueProxyConsumerLagHealthcheck.STALE_SAMPLES + 1) * SAMPLE_INTERVAL;
+    when(sampler.getLag()).thenReturn(new ConsumerLag(Collections.<Integer, Long>emptyMap(),
+        Collections.singletonMap(1, unknownSince), now));
+
+    AdvancedResult actual = healthcheck.executeAdvanced();
+    assertThat(actual.status(), equalTo(Status.ERROR));
+    assertThat(actual.checkOutput(), containsString("Consumer lag unknown"));
+  }
+}
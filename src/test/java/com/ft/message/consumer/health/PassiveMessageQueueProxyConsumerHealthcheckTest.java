@@ -1,38 +1,40 @@
 package com.ft.message.consumer.health;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.mockito.Mock;
-import org.mockito.runners.MockitoJUnitRunner;
 
+import com.ft.message.consumer.StreamStatus;
 import com.ft.message.consumer.config.HealthcheckConfiguration;
 import com.ft.message.consumer.proxy.MessageQueueProxyService;
 import com.ft.platform.dropwizard.AdvancedResult;
 import com.ft.platform.dropwizard.AdvancedResult.Status;
 
-@RunWith(MockitoJUnitRunner.class)
 public class PassiveMessageQueueProxyConsumerHealthcheckTest {
   private static final String NAME = "Test Healthcheck";
   private static final int SEVERITY = 2;
   private static final String BUSINESS_IMPACT = "Test Business Impact";
   private static final String TECH_SUMMARY = "Test Tech Summary";
   private static final String PANIC_GUIDE = "http://panic-guide.example.org/";
+  private static final long STALE_AFTER = 60000;
   
   private PassiveMessageQueueProxyConsumerHealthcheck healthcheck;
   private HealthcheckConfiguration config = new HealthcheckConfiguration(
       NAME, SEVERITY, BUSINESS_IMPACT, TECH_SUMMARY, PANIC_GUIDE);
-  
-  @Mock
-  private MessageQueueProxyService service;
+  private final List<StreamStatus> streams = new ArrayList<>();
   
   @Before
   public void setUp() {
-    healthcheck = new PassiveMessageQueueProxyConsumerHealthcheck(config, service, null);
+    healthcheck = new PassiveMessageQueueProxyConsumerHealthcheck(config, () -> streams, STALE_AFTER, null);
   }
   
   @Test
@@ -44,32 +46,76 @@ public class PassiveMessageQueueProxyConsumerHealthcheckTest {
   }
   
   @Test
-  public void thatHealthcheckIsHealthyWhenMessagesHaveBeenRead() {
-    String message = String.format(MessageQueueProxyService.MESSAGES_CONSUMED, 42);
-    when(service.getStatus()).thenReturn(message);
+  public void thatHealthcheckIsHealthyWhenEveryStreamIsPolling() {
+    streams.add(stream("stream-0", StreamStatus.State.PROCESSING, false));
+    streams.add(stream("stream-1", StreamStatus.State.IDLE, false));
     
     AdvancedResult actual = healthcheck.executeAdvanced();
     assertThat(actual.status(), equalTo(Status.OK));
-    assertThat(actual.checkOutput(), equalTo(message));
+    assertThat(actual.checkOutput(), equalTo("stream-0 PROCESSING; stream-1 IDLE"));
+  }
+  
+  @Test
+  public void thatHealthcheckIsUnhealthyWhenOneStreamIsFailing() {
+    streams.add(stream("stream-0", StreamStatus.State.PROCESSING, false));
+    streams.add(stream("stream-1", StreamStatus.State.FAILING, false));
+    
+    AdvancedResult actual = healthcheck.executeAdvanced();
+    assertThat(actual.status(), equalTo(Status.ERROR));
+    assertThat(actual.checkOutput(), equalTo("1 of 2 stream(s) unhealthy: stream-1 FAILING"));
+  }
+  
+  @Test
+  public void thatHealthcheckIsUnhealthyWhenOneStreamIsStale() {
+    streams.add(stream("stream-0", StreamStatus.State.PROCESSING, true));
+    streams.add(stream("stream-1", StreamStatus.State.IDLE, false));
+    
+    AdvancedResult actual = healthcheck.executeAdvanced();
+    assertThat(actual.status(), equalTo(Status.ERROR));
+    assertThat(actual.checkOutput(), containsString("stale, stream-0 PROCESSING"));
   }
   
   @Test
-  public void thatHealthcheckIsHealthyWhenNoMessagesHaveBeenRead() {
-    String message = String.format(MessageQueueProxyService.MESSAGES_CONSUMED, 0);
-    when(service.getStatus()).thenReturn(message);
+  public void thatStoppedStreamsAreIgnored() {
+    streams.add(stream("stream-0", StreamStatus.State.DRAINING, true));
+    streams.add(stream("stream-1", StreamStatus.State.IDLE, false));
     
     AdvancedResult actual = healthcheck.executeAdvanced();
     assertThat(actual.status(), equalTo(Status.OK));
-    assertThat(actual.checkOutput(), equalTo(message));
+    assertThat(actual.checkOutput(), equalTo("stream-1 IDLE"));
+  }
+  
+  @Test
+  public void thatHealthcheckIsUnhealthyWhenNoStreamIsRunning() {
+    streams.add(stream("stream-0", StreamStatus.State.STOPPED, false));
+    
+    AdvancedResult actual = healthcheck.executeAdvanced();
+    assertThat(actual.status(), equalTo(Status.ERROR));
+    assertThat(actual.checkOutput(), equalTo("No stream is running."));
   }
   
   @Test
-  public void thatHealthcheckIsUnhealthyWhenServiceHasAnErrorCondition() {
-    String message = "Something is wrong";
-    when(service.getStatus()).thenReturn(message);
+  @SuppressWarnings("deprecation")
+  public void thatProxyServiceStatusIsCheckedAsASingleStream() {
+    MessageQueueProxyService proxyService = mock(MessageQueueProxyService.class);
+    healthcheck = new PassiveMessageQueueProxyConsumerHealthcheck(config, proxyService, null);
     
+    when(proxyService.getStatus()).thenReturn("Most recent read consumed 3 message(s).");
     AdvancedResult actual = healthcheck.executeAdvanced();
+    assertThat(actual.status(), equalTo(Status.OK));
+    assertThat(actual.checkOutput(), equalTo("Most recent read consumed 3 message(s)."));
+    
+    when(proxyService.getStatus()).thenReturn("Unable to consume messages. Proxy error.");
+    actual = healthcheck.executeAdvanced();
     assertThat(actual.status(), equalTo(Status.ERROR));
-    assertThat(actual.checkOutput(), equalTo(message));
+    assertThat(actual.checkOutput(), containsString("Unable to consume messages. Proxy error."));
+  }
+  
+  private static StreamStatus stream(String name, StreamStatus.State state, boolean stale) {
+    StreamStatus stream = mock(StreamStatus.class);
+    when(stream.getState()).thenReturn(state);
+    when(stream.isStale(anyLong(), anyLong())).thenReturn(stale);
+    when(stream.describe(anyLong())).thenReturn(name + " " + state);
+    return stream;
   }
 }
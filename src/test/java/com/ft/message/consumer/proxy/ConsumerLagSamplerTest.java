@@ -0,0 +1,149 @@
+package com.ft.message.consumer.proxy;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.ft.message.consumer.config.MessageQueueConsumerConfiguration;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.message.consumer.proxy.model.PartitionOffset;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.config.DefaultClientConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+public class ConsumerLagSamplerTest {
+
+    private static final String TOPIC = "CmsPublicationEvent";
+    private static final String GROUP = "lag";
+    private static final String LAG = MetricRegistry.name(TOPIC, GROUP, ConsumerLagSampler.class.getName(), "lag");
+
+    private FakeKafkaRestProxy proxy;
+    private MessageQueueProxyService service;
+    private ConsumerPositions positions;
+    private ConsumerLagSampler sampler;
+    private MetricRegistry metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        proxy = new FakeKafkaRestProxy().withTopic(TOPIC, 2).withMaxRecordsPerFetch(10).start();
+        ClientConfig clientConfig = new DefaultClientConfig();
+        clientConfig.getSingletons().add(new JacksonJsonProvider());
+        Client client = Client.create(clientConfig);
+        MessageQueueConsumerConfiguration configuration = new MessageQueueConsumerConfiguration(
+                TOPIC, GROUP, proxy.getUri().toString(), null, 100, 1, "earliest", false);
+        positions = new ConsumerPositions(false);
+        metrics = new MetricRegistry();
+        service = new MessageQueueProxyServiceImpl(configuration, client, null, positions);
+        sampler = new ConsumerLagSampler(configuration, client, positions, metrics);
+    }
+
+    @After
+    public void tearDown() {
+        proxy.close();
+    }
+
+    @Test
+    public void testLagIsEndOffsetLessConsumedPosition() throws Exception {
+        proxy.produceMessages(TOPIC, 50, 256);
+        URI consumerInstance = service.createConsumerInstance();
+        service.subscribeConsumerInstanceToTopic(consumerInstance);
+        List<MessageRecord> records = service.consumeMessages(consumerInstance);
+
+        sampler.sample();
+
+        assertThat(sampler.getLag().getTotalLag(), is(40L));
+        assertThat(metrics.getGauges().get(LAG).getValue(), is((Object) 40L));
+        int partition = records.get(0).getPartition();
+        Gauge<?> partitionLag = metrics.getGauges().get(MetricRegistry.name(LAG, "partition-" + partition));
+        assertThat(partitionLag.getValue(), is(sampler.getLag().getPartitionLags().get(partition)));
+
+        service.commitOffsets(consumerInstance);
+        sampler.sample();
+
+        assertThat(sampler.getLag().getTotalLag(), is(40L));
+    }
+
+    @Test
+    public void testCommittedPositionTakesPrecedenceOverFetched() throws Exception {
+        proxy.produceMessages(TOPIC, 50, 256);
+        URI consumerInstance = service.createConsumerInstance();
+        service.subscribeConsumerInstanceToTopic(consumerInstance);
+        List<MessageRecord> records = service.consumeMessages(consumerInstance);
+        MessageRecord first = records.get(0);
+        long lastOffset = first.getOffset();
+        for (MessageRecord record : records) {
+            if (record.getPartition() == first.getPartition()) {
+                lastOffset = Math.max(lastOffset, record.getOffset());
+            }
+        }
+        sampler.sample();
+        long fetchedLag = sampler.getLag().getPartitionLags().get(first.getPartition());
+
+        service.commitOffsets(consumerInstance,
+                Collections.singletonList(new PartitionOffset(TOPIC, first.getPartition(), first.getOffset())));
+        sampler.sample();
+
+        assertThat(sampler.getLag().getPartitionLags().get(first.getPartition()), is(fetchedLag + lastOffset - first.getOffset()));
+    }
+
+    @Test
+    public void testDestroyedInstancesAreNoLongerSampled() throws Exception {
+        proxy.produceMessages(TOPIC, 20, 256);
+        URI consumerInstance = service.createConsumerInstance();
+        service.subscribeConsumerInstanceToTopic(consumerInstance);
+        service.consumeMessages(consumerInstance);
+        service.destroyConsumerInstance(consumerInstance);
+
+        sampler.sample();
+
+        assertThat(sampler.getLag().getTotalLag(), is(0L));
+        assertThat(sampler.getLag().getPartitionLags().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testPartitionsAssignedButNotConsumedFromAreUnknownUntilTheyAre() throws Exception {
+        URI consumerInstance = service.createConsumerInstance();
+        service.subscribeConsumerInstanceToTopic(consumerInstance);
+        service.consumeMessages(consumerInstance);
+
+        sampler.sample();
+        long unknownSince = sampler.getLag().getUnknownSince();
+        sampler.sample();
+
+        assertThat(sampler.getLag().getUnknownPartitions().keySet(), contains(0, 1));
+        assertThat(sampler.getLag().getUnknownSince(), is(unknownSince));
+        assertThat(metrics.getGauges().get(MetricRegistry.name(LAG, "unknown-partitions")).getValue(), is((Object) 2));
+
+        proxy.produceMessages(TOPIC, 20, 256);
+        service.consumeMessages(consumerInstance);
+        sampler.sample();
+
+        assertThat(sampler.getLag().getUnknownPartitions().isEmpty(), is(true));
+        assertThat(sampler.getLag().getUnknownSince(), is(0L));
+    }
+
+    @Test
+    public void testSamplersOfTheSameTopicAndGroupShareTheRegistry() {
+        new ConsumerLagSampler(new MessageQueueConsumerConfiguration(TOPIC, GROUP, proxy.getUri().toString(), null, 100, 1, "earliest", false),
+                Client.create(), positions, metrics);
+
+        assertThat(metrics.getGauges().get(LAG).getValue(), is(nullValue()));
+    }
+
+    @Test
+    public void testNoLagBeforeFirstSample() {
+        assertThat(sampler.getLag(), is(nullValue()));
+        assertThat(metrics.getGauges().get(LAG).getValue(), is(nullValue()));
+    }
+}
@@ -0,0 +1,621 @@
+package com.ft.message.consumer.proxy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** An in-process stand-in for the Kafka REST proxy v2, serving the endpoints this library uses over real HTTP:
+ *  creating and deleting consumer instances, subscribing, fetching records, committing offsets, listing the
+ *  partitions assigned to an instance, and listing the partitions of a topic and their offsets.
+ *  <p>
+ *  Topics are kept as in-memory partitioned logs. The partitions of a topic are spread round-robin over the
+ *  instances of a group subscribed to it, and are reassigned whenever an instance subscribes, unsubscribes,
+ *  is deleted or expires. Newly assigned partitions start from the group's committed offset, or else
+ *  from the beginning or the end of the log as <code>auto.offset.reset</code> says.
+ *  <p>
+ *  Records requests wait up to their <code>timeout</code> for records to arrive and answer with at most <code>max_bytes</code> of them.
+ *  Instances created with a <code>format</code> other than <code>binary</code> only answer records requests accepting that
+ *  format, and embed values that are JSON text as JSON, and any other value as a JSON string.
+ *  Latency, error rate and instance expiry can be changed while the proxy is running.
+ */
+public class FakeKafkaRestProxy implements Closeable {
+
+    private static final String CONTENT_TYPE = "application/vnd.kafka.v2+json";
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final Map<String, List<Partition>> topics = new HashMap<>();
+    private final Map<String, Group> groups = new HashMap<>();
+    private final AtomicLong recordsServed = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private HttpServer server;
+    private ExecutorService executor;
+    private URI uri;
+
+    private volatile long minLatency;
+    private volatile long maxLatency;
+    private volatile double errorRate;
+    private volatile long instanceExpiry;
+    private volatile int maxRecordsPerFetch = 500;
+
+    public synchronized FakeKafkaRestProxy withTopic(String topic, int partitions) {
+        List<Partition> log = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            log.add(new Partition(topic, i));
+        }
+        topics.put(topic, log);
+        return this;
+    }
+
+    /** Delays every response by a random time between <code>min</code> and <code>max</code> milliseconds. */
+    public FakeKafkaRestProxy withLatency(long min, long max) {
+        this.minLatency = min;
+        this.maxLatency = max;
+        return this;
+    }
+
+    /** Fails the given fraction of requests, at random, with a <code>500</code>. */
+    public FakeKafkaRestProxy withErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /** Deletes consumer instances that have not been used for <code>expiry</code> milliseconds; 0 never does. */
+    public FakeKafkaRestProxy withInstanceExpiry(long expiry) {
+        this.instanceExpiry = expiry;
+        return this;
+    }
+
+    public FakeKafkaRestProxy withMaxRecordsPerFetch(int maxRecords) {
+        this.maxRecordsPerFetch = maxRecords;
+        return this;
+    }
+
+    public FakeKafkaRestProxy start() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+        return this;
+    }
+
+    /** @return the address to configure as <code>queueProxyHost</code> */
+    public URI getUri() {
+        return uri;
+    }
+
+    /** Appends a record to the partition its key hashes to, or to a random partition if it has no key.
+     *  @return the offset of the record
+     */
+    public synchronized long produce(String topic, byte[] key, byte[] value) {
+        List<Partition> partitions = topic(topic);
+        int index = key != null
+                ? (Arrays.hashCode(key) & Integer.MAX_VALUE) % partitions.size()
+                : ThreadLocalRandom.current().nextInt(partitions.size());
+        List<StoredRecord> records = partitions.get(index).records;
+        records.add(new StoredRecord(key, value));
+        notifyAll();
+        return records.size() - 1;
+    }
+
+    /** Produces <code>count</code> FT messages, each of roughly <code>size</code> bytes and with its own key.
+     *  @return the ids of the messages produced
+     */
+    public List<String> produceMessages(String topic, int count, int size) {
+        List<String> messageIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String messageId = UUID.randomUUID().toString();
+            produce(topic, ("key-" + i).getBytes(StandardCharsets.UTF_8), message(messageId, size));
+            messageIds.add(messageId);
+        }
+        return messageIds;
+    }
+
+    /** @return the offset of the next record the group will consume from the partition, or -1 if it has committed none */
+    public synchronized long getCommittedOffset(String group, String topic, int partition) {
+        Group consumerGroup = groups.get(group);
+        Long offset = consumerGroup != null ? consumerGroup.committed.get(topic(topic).get(partition)) : null;
+        return offset != null ? offset : -1;
+    }
+
+    /** @return the number of records the group has committed across all partitions of the topic */
+    public synchronized long getCommittedRecords(String group, String topic) {
+        long committed = 0;
+        for (int partition = 0; partition < topic(topic).size(); partition++) {
+            committed += Math.max(0, getCommittedOffset(group, topic, partition));
+        }
+        return committed;
+    }
+
+    public synchronized int getInstanceCount(String group) {
+        Group consumerGroup = groups.get(group);
+        return consumerGroup != null ? consumerGroup.instances.size() : 0;
+    }
+
+    public long getRecordsServed() {
+        return recordsServed.get();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            JsonNode body = read(exchange.getRequestBody());
+            delay();
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                respond(exchange, 500, error(50002, "Kafka error."));
+                return;
+            }
+            Response response;
+            synchronized (this) {
+                expireInstances();
+                response = route(exchange.getRequestMethod(), exchange.getRequestURI(),
+                        exchange.getRequestHeaders().getFirst("Accept"), body);
+            }
+            respond(exchange, response.status, response.body);
+        } catch (RuntimeException e) {
+            respond(exchange, 500, error(500, String.valueOf(e.getMessage())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Response route(String method, URI requestUri, String accept, JsonNode body) {
+        List<String> path = new ArrayList<>();
+        for (String segment : requestUri.getPath().split("/")) {
+            if (!segment.isEmpty()) {
+                path.add(segment);
+            }
+        }
+        if (path.size() == 3 && "topics".equals(path.get(0)) && "partitions".equals(path.get(2)) && "GET".equals(method)) {
+            return partitions(path.get(1));
+        }
+        if (path.size() == 5 && "topics".equals(path.get(0)) && "partitions".equals(path.get(2))
+                && "offsets".equals(path.get(4)) && "GET".equals(method)) {
+            return offsets(path.get(1), Integer.parseInt(path.get(3)));
+        }
+        if (path.size() < 2 || !"consumers".equals(path.get(0))) {
+            return new Response(404, error(404, "HTTP 404 Not Found"));
+        }
+        if (path.size() == 2 && "POST".equals(method)) {
+            return createInstance(path.get(1), body);
+        }
+        if (path.size() < 4 || !"instances".equals(path.get(2))) {
+            return new Response(404, error(404, "HTTP 404 Not Found"));
+        }
+        Group group = groups.get(path.get(1));
+        Instance instance = group != null ? group.instances.get(path.get(3)) : null;
+        if (instance == null) {
+            return new Response(404, error(40403, "Consumer instance not found."));
+        }
+        instance.lastUsed = System.currentTimeMillis();
+        String resource = path.size() > 4 ? path.get(4) : "";
+        switch (method + " " + resource) {
+            case "DELETE ":
+                group.instances.remove(instance.id);
+                rebalance(group);
+                return new Response(204, null);
+            case "POST subscription":
+                instance.topics.clear();
+                for (JsonNode topic : body.path("topics")) {
+                    if (!topics.containsKey(topic.asText())) {
+                        return new Response(404, error(40401, "Topic not found."));
+                    }
+                    instance.topics.add(topic.asText());
+                }
+                rebalance(group);
+                return new Response(204, null);
+            case "DELETE subscription":
+                instance.topics.clear();
+                rebalance(group);
+                return new Response(204, null);
+            case "GET records":
+                if (!instance.accepts(accept)) {
+                    return new Response(406, error(40601, "The requested embedded data format does not match the deserializer for this consumer instance"));
+                }
+                return fetch(instance, queryParameter(requestUri, "max_bytes"), queryParameter(requestUri, "timeout"));
+            case "POST offsets":
+                commit(instance, body);
+                return new Response(200, null);
+            case "GET assignments":
+                return assignments(instance);
+            default:
+                return new Response(405, error(405, "HTTP 405 Method Not Allowed"));
+        }
+    }
+
+    private Response partitions(String topic) {
+        List<Partition> log = topics.get(topic);
+        if (log == null) {
+            return new Response(404, error(40401, "Topic not found."));
+        }
+        List<Map<String, Object>> partitions = new ArrayList<>(log.size());
+        for (Partition partition : log) {
+            Map<String, Object> description = new LinkedHashMap<>();
+            description.put("partition", partition.index);
+            description.put("leader", 1);
+            description.put("replicas", Collections.singletonList(Collections.singletonMap("broker", 1)));
+            partitions.add(description);
+        }
+        return new Response(200, partitions);
+    }
+
+    private Response offsets(String topic, int index) {
+        List<Partition> log = topics.get(topic);
+        if (log == null || index >= log.size()) {
+            return new Response(404, error(40402, "Partition not found."));
+        }
+        Map<String, Long> offsets = new LinkedHashMap<>();
+        offsets.put("beginning_offset", 0L);
+        offsets.put("end_offset", (long) log.get(index).records.size());
+        return new Response(200, offsets);
+    }
+
+    private Response assignments(Instance instance) {
+        List<Map<String, Object>> partitions = new ArrayList<>();
+        for (Map.Entry<String, List<Partition>> topic : topics.entrySet()) {
+            for (Partition partition : topic.getValue()) {
+                if (instance.assignments.containsKey(partition)) {
+                    Map<String, Object> assignment = new LinkedHashMap<>();
+                    assignment.put("topic", topic.getKey());
+                    assignment.put("partition", partition.index);
+                    partitions.add(assignment);
+                }
+            }
+        }
+        return new Response(200, Collections.singletonMap("partitions", partitions));
+    }
+
+    private Response createInstance(String groupName, JsonNode body) {
+        Group group = groups.get(groupName);
+        if (group == null) {
+            group = new Group();
+            groups.put(groupName, group);
+        }
+        JsonNode config = body != null ? body : JSON.createObjectNode();
+        Instance instance = new Instance("rest-consumer-" + UUID.randomUUID(), group,
+                config.path("auto.commit.enable").asBoolean(true),
+                config.has("auto.offset.reset") ? config.path("auto.offset.reset").asText() : "latest",
+                config.has("format") ? config.path("format").asText() : "binary");
+        group.instances.put(instance.id, instance);
+        Map<String, String> created = new LinkedHashMap<>();
+        created.put("instance_id", instance.id);
+        created.put("base_uri", uri + "/consumers/" + groupName + "/instances/" + instance.id);
+        return new Response(200, created);
+    }
+
+    /** Answers at once if there are records to take; otherwise waits up to <code>timeout</code> milliseconds for some
+     *  to be produced, as long as the instance is still a member of its group.
+     */
+    private Response fetch(Instance instance, String maxBytes, String timeout) {
+        long byteLimit = maxBytes != null ? Long.parseLong(maxBytes) : Long.MAX_VALUE;
+        long deadline = System.currentTimeMillis() + (timeout != null ? Long.parseLong(timeout) : 0);
+        List<Map<String, Object>> records = take(instance, byteLimit);
+        long remaining;
+        while (records.isEmpty() && instance.group.instances.get(instance.id) == instance
+                && (remaining = deadline - System.currentTimeMillis()) > 0) {
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            records = take(instance, byteLimit);
+        }
+        if (instance.autoCommit) {
+            commitPositions(instance);
+        }
+        recordsServed.addAndGet(records.size());
+        return new Response(200, records);
+    }
+
+    /** Takes records from the assigned partitions in turn, up to the fetch limit or, once one record has been
+     *  taken, <code>max_bytes</code> of values.
+     */
+    private List<Map<String, Object>> take(Instance instance, long byteLimit) {
+        List<Map<String, Object>> records = new ArrayList<>();
+        long bytes = 0;
+        boolean more = true;
+        while (more && records.size() < maxRecordsPerFetch) {
+            more = false;
+            for (Map.Entry<Partition, Assignment> entry : instance.assignments.entrySet()) {
+                Partition partition = entry.getKey();
+                Assignment assignment = entry.getValue();
+                if (assignment.position >= partition.records.size() || records.size() >= maxRecordsPerFetch) {
+                    continue;
+                }
+                StoredRecord stored = partition.records.get((int) assignment.position);
+                if (!records.isEmpty() && bytes + stored.value.length > byteLimit) {
+                    more = false;
+                    break;
+                }
+                Map<String, Object> record = new LinkedHashMap<>();
+                record.put("topic", partition.topic);
+                record.put("key", instance.embed(stored.key));
+                record.put("value", instance.embed(stored.value));
+                record.put("partition", partition.index);
+                record.put("offset", assignment.position);
+                records.add(record);
+                bytes += stored.value.length;
+                assignment.position++;
+                more = true;
+            }
+        }
+        return records;
+    }
+
+    /** An empty body commits the instance's positions; otherwise the offset after each one given is committed. */
+    private void commit(Instance instance, JsonNode body) {
+        if (body == null || !body.has("offsets")) {
+            commitPositions(instance);
+            return;
+        }
+        for (JsonNode offset : body.path("offsets")) {
+            Partition partition = topic(offset.path("topic").asText()).get(offset.path("partition").asInt());
+            instance.group.committed.put(partition, offset.path("offset").asLong() + 1);
+        }
+    }
+
+    private void commitPositions(Instance instance) {
+        for (Map.Entry<Partition, Assignment> entry : instance.assignments.entrySet()) {
+            instance.group.committed.put(entry.getKey(), entry.getValue().position);
+        }
+    }
+
+    /** Partitions an instance keeps are fetched from where it got to; others start from the committed offset. */
+    private void rebalance(Group group) {
+        Map<Instance, Map<Partition, Assignment>> assignments = new HashMap<>();
+        for (Instance member : group.instances.values()) {
+            assignments.put(member, new LinkedHashMap<>());
+        }
+        for (Map.Entry<String, List<Partition>> topic : topics.entrySet()) {
+            List<Instance> subscribers = new ArrayList<>();
+            for (Instance member : group.instances.values()) {
+                if (member.topics.contains(topic.getKey())) {
+                    subscribers.add(member);
+                }
+            }
+            if (subscribers.isEmpty()) {
+                continue;
+            }
+            for (Partition partition : topic.getValue()) {
+                Instance owner = subscribers.get(partition.index % subscribers.size());
+                Assignment current = owner.assignments.get(partition);
+                assignments.get(owner).put(partition, current != null ? current : new Assignment(start(owner, partition)));
+            }
+        }
+        for (Instance member : group.instances.values()) {
+            member.assignments = assignments.get(member);
+        }
+    }
+
+    private long start(Instance instance, Partition partition) {
+        Long committed = instance.group.committed.get(partition);
+        if (committed != null) {
+            return committed;
+        }
+        return "earliest".equals(instance.offsetReset) ? 0 : partition.records.size();
+    }
+
+    private void expireInstances() {
+        if (instanceExpiry <= 0) {
+            return;
+        }
+        long expiredBefore = System.currentTimeMillis() - instanceExpiry;
+        for (Group group : groups.values()) {
+            boolean expired = false;
+            for (Iterator<Instance> instances = group.instances.values().iterator(); instances.hasNext(); ) {
+                if (instances.next().lastUsed < expiredBefore) {
+                    instances.remove();
+                    expired = true;
+                }
+            }
+            if (expired) {
+                rebalance(group);
+            }
+        }
+    }
+
+    private List<Partition> topic(String topic) {
+        List<Partition> partitions = topics.get(topic);
+        if (partitions == null) {
+            throw new IllegalArgumentException("Unknown topic " + topic);
+        }
+        return partitions;
+    }
+
+    private void delay() {
+        long max = maxLatency;
+        if (max <= 0) {
+            return;
+        }
+        long min = Math.min(minLatency, max);
+        try {
+            TimeUnit.MILLISECONDS.sleep(min == max ? max : ThreadLocalRandom.current().nextLong(min, max + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String queryParameter(URI requestUri, String name) {
+        String query = requestUri.getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                return parameter.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    private static JsonNode read(InputStream body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = body.read(chunk)) >= 0) {
+            out.write(chunk, 0, read);
+        }
+        return out.size() == 0 ? null : JSON.readTree(out.toByteArray());
+    }
+
+    private static void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = JSON.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, Object> error(int code, String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error_code", code);
+        error.put("message", message);
+        return error;
+    }
+
+    /** An FT message whose body pads the whole message out to roughly <code>size</code> bytes. */
+    static byte[] message(String messageId, int size) {
+        String headers = "FTMSG/1.0\r\n" +
+                "Message-Id: " + messageId + "\r\n" +
+                "Message-Timestamp: 2015-11-20T13:44:45.305Z\r\n" +
+                "Message-Type: cms-content-published\r\n" +
+                "Origin-System-Id: http://cmdb.ft.com/systems/methode-web-pub\r\n" +
+                "Content-Type: application/json\r\n" +
+                "X-Request-Id: tid_" + messageId + "\r\n\r\n";
+        char[] padding = new char[Math.max(0, size - headers.length() - 12)];
+        Arrays.fill(padding, 'x');
+        return (headers + "{\"body\":\"" + new String(padding) + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Compared by identity, so that it can key assignments and committed offsets while records are appended. */
+    private static class Partition {
+
+        private final String topic;
+        private final int index;
+        private final List<StoredRecord> records = new ArrayList<>();
+
+        Partition(String topic, int index) {
+            this.topic = topic;
+            this.index = index;
+        }
+    }
+
+    private static class StoredRecord {
+
+        private final byte[] key;
+        private final byte[] value;
+
+        StoredRecord(byte[] key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static class Assignment {
+
+        private long position;
+
+        Assignment(long position) {
+            this.position = position;
+        }
+    }
+
+    private static class Group {
+
+        private final Map<String, Instance> instances = new LinkedHashMap<>();
+        private final Map<Partition, Long> committed = new HashMap<>();
+    }
+
+    private static class Instance {
+
+        private final String id;
+        private final Group group;
+        private final boolean autoCommit;
+        private final String offsetReset;
+        private final String format;
+        private final Set<String> topics = new LinkedHashSet<>();
+        private Map<Partition, Assignment> assignments = Collections.emptyMap();
+        private long lastUsed = System.currentTimeMillis();
+
+        Instance(String id, Group group, boolean autoCommit, String offsetReset, String format) {
+            this.id = id;
+            this.group = group;
+            this.autoCommit = autoCommit;
+            this.offsetReset = offsetReset;
+            this.format = format;
+        }
+
+        /** Binary instances also answer the generic v2 media type, which is what the library asks binary records with. */
+        boolean accepts(String accept) {
+            return accept != null && (accept.contains("application/vnd.kafka." + format + ".v2+json")
+                    || "binary".equals(format) && accept.contains(CONTENT_TYPE));
+        }
+
+        Object embed(byte[] bytes) {
+            if (bytes == null || "binary".equals(format)) {
+                return bytes;
+            }
+            try {
+                return JSON.readTree(bytes);
+            } catch (IOException e) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    private static class Response {
+
+        private final int status;
+        private final Object body;
+
+        Response(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package com.ft.message.consumer.proxy;
 
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ft.message.consumer.config.MessageQueueConsumerConfiguration;
 import com.ft.message.consumer.proxy.model.ConsumerInstanceResponse;
 import com.ft.message.consumer.proxy.model.MessageRecord;
+import com.ft.message.consumer.proxy.model.PartitionOffset;
 import com.google.common.collect.ImmutableList;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientHandlerException;
@@ -18,9 +22,15 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import javax.ws.rs.core.UriBuilder;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
@@ -328,6 +338,169 @@ public class MessageQueueProxyServiceImplTest {
         assertThat(messageQueueProxyService.getStatus(), equalTo(ONE_MSG));
     }
 
+    @Test
+    public void testConsumeMessagesLongPollsWithConfiguredTimeoutAndMaxBytes() throws Exception {
+        MessageQueueConsumerConfiguration longPolling = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"binaryIngester\", \"queueProxyHost\": \"http://localhost:8082\", "
+                        + "\"fetchTimeout\": 5000, \"fetchMaxBytes\": 1048576}",
+                MessageQueueConsumerConfiguration.class);
+        messageQueueProxyService = new MessageQueueProxyServiceImpl(longPolling, client);
+        final URI consumerUri = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+        final URI recordsUri = UriBuilder.fromUri(consumerUri).path("records")
+                .queryParam("timeout", 5000).queryParam("max_bytes", 1048576).build();
+
+        final WebResource mockedWebResource = mock(WebResource.class);
+        when(client.resource(recordsUri)).thenReturn(mockedWebResource);
+        final WebResource.Builder mockedBuilder = mock(WebResource.Builder.class);
+        when(mockedWebResource.getRequestBuilder()).thenReturn(mockedBuilder);
+        final ClientResponse mockedResponse = mock(ClientResponse.class);
+        when(mockedBuilder.get(ClientResponse.class)).thenReturn(mockedResponse);
+        when(mockedResponse.getStatus()).thenReturn(200);
+        when(mockedResponse.getEntity(any(GenericType.class))).thenReturn(ImmutableList.of(new MessageRecord("myrecord".getBytes())));
+
+        List<MessageRecord> actualMessageRecords = messageQueueProxyService.consumeMessages(consumerUri);
+
+        assertThat(actualMessageRecords.get(0).getValue(), is(equalTo("myrecord".getBytes())));
+        verify(client).resource(recordsUri);
+    }
+
+    @Test
+    public void testFormatOfTheirOwnIsRequestedAndDecodedInsteadOfTheConfiguredOne() throws Exception {
+        EmbeddedFormat upperCase = new EmbeddedFormat() {
+            @Override
+            public String getName() {
+                return "uppercase";
+            }
+
+            @Override
+            public String getMediaType() {
+                return "application/vnd.kafka.uppercase.v2+json";
+            }
+
+            @Override
+            public byte[] readValue(JsonParser parser) throws IOException {
+                return parser.getText().toUpperCase().getBytes(UTF_8);
+            }
+        };
+        messageQueueProxyService = new MessageQueueProxyServiceImpl(configuration, client, null, null, upperCase);
+        final URI consumerUri = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        final WebResource mockedConsumersResource = mock(WebResource.class);
+        when(client.resource(UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester").build())).thenReturn(mockedConsumersResource);
+        final WebResource.Builder mockedCreateBuilder = mock(WebResource.Builder.class);
+        when(mockedConsumersResource.getRequestBuilder()).thenReturn(mockedCreateBuilder);
+        final ClientResponse mockedCreateResponse = mock(ClientResponse.class);
+        when(mockedCreateBuilder.post(eq(ClientResponse.class), anyString())).thenReturn(mockedCreateResponse);
+        when(mockedCreateResponse.getStatus()).thenReturn(200);
+        when(mockedCreateResponse.getEntity(ConsumerInstanceResponse.class)).thenReturn(new ConsumerInstanceResponse(consumerUri));
+
+        final WebResource mockedRecordsResource = mock(WebResource.class);
+        when(client.resource(UriBuilder.fromUri(consumerUri).path("records").build())).thenReturn(mockedRecordsResource);
+        final WebResource.Builder mockedRecordsBuilder = mock(WebResource.Builder.class);
+        when(mockedRecordsResource.getRequestBuilder()).thenReturn(mockedRecordsBuilder);
+        final ClientResponse mockedRecordsResponse = mock(ClientResponse.class);
+        when(mockedRecordsBuilder.get(ClientResponse.class)).thenReturn(mockedRecordsResponse);
+        when(mockedRecordsResponse.getStatus()).thenReturn(200);
+        when(mockedRecordsResponse.getEntityInputStream()).thenReturn(new ByteArrayInputStream(
+                "[{\"key\":\"k\",\"value\":\"myrecord\",\"partition\":0,\"offset\":3}]".getBytes(UTF_8)));
+
+        messageQueueProxyService.createConsumerInstance();
+        List<MessageRecord> actualMessageRecords = messageQueueProxyService.consumeMessages(consumerUri);
+
+        verify(mockedCreateBuilder).post(ClientResponse.class,
+                "{\"format\": \"uppercase\", \"auto.offset.reset\": \"earliest\", \"auto.commit.enable\": \"false\"}");
+        verify(mockedRecordsBuilder).header("Accept", "application/vnd.kafka.uppercase.v2+json");
+        assertThat(actualMessageRecords.size(), is(1));
+        assertThat(new String(actualMessageRecords.get(0).getValue(), UTF_8), is(equalTo("MYRECORD")));
+    }
+
+    @Test
+    public void testJsonFormatIsRequestedAndDecodedWithoutBase64() throws Exception {
+        MessageQueueConsumerConfiguration json = new ObjectMapper().readValue(
+                "{\"topicName\": \"CmsPublicationEvent\", \"groupName\": \"jsonIngester\", \"queueProxyHost\": \"http://localhost:8082\", "
+                        + "\"offsetReset\": \"earliest\", \"embeddedFormat\": \"json\"}",
+                MessageQueueConsumerConfiguration.class);
+        messageQueueProxyService = new MessageQueueProxyServiceImpl(json, client);
+        final URI consumerUri = UriBuilder.fromUri("http://localhost:8082/consumers/jsonIngester/instances/rest-consumer-1-1").build();
+
+        final WebResource mockedConsumersResource = mock(WebResource.class);
+        when(client.resource(UriBuilder.fromUri("http://localhost:8082/consumers/jsonIngester").build())).thenReturn(mockedConsumersResource);
+        final WebResource.Builder mockedCreateBuilder = mock(WebResource.Builder.class);
+        when(mockedConsumersResource.getRequestBuilder()).thenReturn(mockedCreateBuilder);
+        final ClientResponse mockedCreateResponse = mock(ClientResponse.class);
+        when(mockedCreateBuilder.post(eq(ClientResponse.class), anyString())).thenReturn(mockedCreateResponse);
+        when(mockedCreateResponse.getStatus()).thenReturn(200);
+        when(mockedCreateResponse.getEntity(ConsumerInstanceResponse.class)).thenReturn(new ConsumerInstanceResponse(consumerUri));
+
+        final WebResource mockedRecordsResource = mock(WebResource.class);
+        when(client.resource(UriBuilder.fromUri(consumerUri).path("records").build())).thenReturn(mockedRecordsResource);
+        final WebResource.Builder mockedRecordsBuilder = mock(WebResource.Builder.class);
+        when(mockedRecordsResource.getRequestBuilder()).thenReturn(mockedRecordsBuilder);
+        final ClientResponse mockedRecordsResponse = mock(ClientResponse.class);
+        when(mockedRecordsBuilder.get(ClientResponse.class)).thenReturn(mockedRecordsResponse);
+        when(mockedRecordsResponse.getStatus()).thenReturn(200);
+        when(mockedRecordsResponse.getEntityInputStream()).thenReturn(new ByteArrayInputStream(
+                "[{\"key\":\"k\",\"value\":{\"id\":1,\"tags\":[\"a\"]},\"partition\":0,\"offset\":3}]".getBytes(UTF_8)));
+
+        messageQueueProxyService.createConsumerInstance();
+        List<MessageRecord> actualMessageRecords = messageQueueProxyService.consumeMessages(consumerUri);
+
+        verify(mockedCreateBuilder).post(ClientResponse.class,
+                "{\"format\": \"json\", \"auto.offset.reset\": \"earliest\", \"auto.commit.enable\": \"false\"}");
+        verify(mockedRecordsBuilder).header("Accept", "application/vnd.kafka.json.v2+json");
+        assertThat(actualMessageRecords.size(), is(1));
+        assertThat(actualMessageRecords.get(0).getKey(), is(equalTo("k".getBytes(UTF_8))));
+        assertThat(new String(actualMessageRecords.get(0).getValue(), UTF_8), is(equalTo("{\"id\":1,\"tags\":[\"a\"]}")));
+        assertThat(actualMessageRecords.get(0).getOffset(), is(3L));
+    }
+
+    @Test
+    public void testErrorsAreRetryableOnlyIfTheSameCallCanBeMadeAgain() throws Exception {
+        final URI consumerUri = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+        final WebResource mockedRecordsResource = mock(WebResource.class);
+        when(client.resource(UriBuilder.fromUri(consumerUri).path("records").build())).thenReturn(mockedRecordsResource);
+        final WebResource.Builder mockedRecordsBuilder = mock(WebResource.Builder.class);
+        when(mockedRecordsResource.getRequestBuilder()).thenReturn(mockedRecordsBuilder);
+        final ClientResponse unavailable = mock(ClientResponse.class);
+        when(unavailable.getStatus()).thenReturn(503);
+        final ClientResponse notFound = mock(ClientResponse.class);
+        when(notFound.getStatus()).thenReturn(404);
+        when(mockedRecordsBuilder.get(ClientResponse.class))
+                .thenReturn(unavailable, notFound)
+                .thenThrow(new ClientHandlerException(new ConnectException("Connection refused")))
+                .thenThrow(new ClientHandlerException(new SocketTimeoutException("Read timed out")));
+        final WebResource mockedOffsetsResource = mock(WebResource.class);
+        when(client.resource(UriBuilder.fromUri(consumerUri).path("offsets").build())).thenReturn(mockedOffsetsResource);
+        final WebResource.Builder mockedOffsetsBuilder = mock(WebResource.Builder.class);
+        when(mockedOffsetsResource.getRequestBuilder()).thenReturn(mockedOffsetsBuilder);
+        when(mockedOffsetsBuilder.post(ClientResponse.class)).thenThrow(new ClientHandlerException(new SocketTimeoutException("Read timed out")));
+
+        QueueProxyServiceException error = consumeError(consumerUri);
+        assertThat(error.getStatus(), is(503));
+        assertThat(error.isRetryable(), is(true));
+        error = consumeError(consumerUri);
+        assertThat(error.getStatus(), is(404));
+        assertThat(error.isRetryable(), is(false));
+        // a records request that was sent may have moved the consumer instance on, unless the proxy answered with an error
+        assertThat(consumeError(consumerUri).isRetryable(), is(true));
+        assertThat(consumeError(consumerUri).isRetryable(), is(false));
+        try {
+            messageQueueProxyService.commitOffsets(consumerUri);
+            throw new AssertionError("Expected commitOffsets to fail");
+        } catch (QueueProxyServiceException e) {
+            assertThat(e.isRetryable(), is(true));
+        }
+    }
+
+    private QueueProxyServiceException consumeError(URI consumerUri) {
+        try {
+            messageQueueProxyService.consumeMessages(consumerUri);
+        } catch (QueueProxyServiceException e) {
+            return e;
+        }
+        throw new AssertionError("Expected consumeMessages to fail");
+    }
+
     @Test
     public void testConsumeMessagesShouldOverrideConsumerInstanceUri() throws Exception {
         final URI consumerUri = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
@@ -402,6 +575,129 @@ public class MessageQueueProxyServiceImplTest {
         }
     }
 
+    @Test
+    public void testConsumerInstanceResourcesAreResolvedOnceUntilDestroyed() throws Exception {
+        final URI consumerUri = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+        final URI recordsUri = UriBuilder.fromUri(consumerUri).path("records").build();
+
+        final WebResource mockedWebResource = mock(WebResource.class);
+        when(client.resource(recordsUri)).thenReturn(mockedWebResource);
+        final WebResource.Builder mockedBuilder = mock(WebResource.Builder.class);
+        when(mockedWebResource.getRequestBuilder()).thenReturn(mockedBuilder);
+        final ClientResponse mockedResponse = mock(ClientResponse.class);
+        when(mockedBuilder.get(ClientResponse.class)).thenReturn(mockedResponse);
+        when(mockedResponse.getStatus()).thenReturn(200);
+        when(mockedResponse.getEntity(any(GenericType.class))).thenReturn(ImmutableList.of(new MessageRecord("myrecord".getBytes())));
+
+        final WebResource mockedInstanceResource = mock(WebResource.class);
+        when(client.resource(consumerUri)).thenReturn(mockedInstanceResource);
+        final WebResource.Builder mockedInstanceBuilder = mock(WebResource.Builder.class);
+        when(mockedInstanceResource.getRequestBuilder()).thenReturn(mockedInstanceBuilder);
+        final ClientResponse mockedDeleteResponse = mock(ClientResponse.class);
+        when(mockedInstanceBuilder.delete(ClientResponse.class)).thenReturn(mockedDeleteResponse);
+        when(mockedDeleteResponse.getStatus()).thenReturn(204);
+
+        messageQueueProxyService.consumeMessages(consumerUri);
+        messageQueueProxyService.consumeMessages(consumerUri);
+
+        verify(client, times(1)).resource(recordsUri);
+        verify(mockedBuilder, times(2)).header(eq("Host"), eq("kafka"));
+        verify(mockedBuilder, times(2)).header(eq("Accept"), eq(KAFKA_MESSAGE_CONTENT_TYPE));
+
+        messageQueueProxyService.destroyConsumerInstance(consumerUri);
+        messageQueueProxyService.consumeMessages(consumerUri);
+
+        verify(client, times(2)).resource(recordsUri);
+    }
+
+    @Test
+    public void testConsumeMessagesStreamed() throws Exception {
+        final URI consumerUri = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        final WebResource mockedWebResource = mock(WebResource.class);
+        when(client.resource(UriBuilder.fromUri(consumerUri).path("records").build())).thenReturn(mockedWebResource);
+        final WebResource.Builder mockedBuilder = mock(WebResource.Builder.class);
+        when(mockedWebResource.getRequestBuilder()).thenReturn(mockedBuilder);
+        final ClientResponse mockedResponse = mock(ClientResponse.class);
+        when(mockedBuilder.get(ClientResponse.class)).thenReturn(mockedResponse);
+        when(mockedResponse.getStatus()).thenReturn(200);
+        when(mockedResponse.getEntityInputStream()).thenReturn(
+                new ByteArrayInputStream("[{\"topic\":\"CmsPublicationEvent\",\"key\":null,\"value\":\"bXlyZWNvcmQ=\",\"partition\":0,\"offset\":5}]".getBytes(UTF_8)));
+
+        final List<MessageRecord> actualMessageRecords = new ArrayList<>();
+        int count = messageQueueProxyService.consumeMessages(consumerUri, actualMessageRecords::add);
+
+        assertThat(count, is(1));
+        assertThat(actualMessageRecords.get(0).getValue(), is(equalTo("myrecord".getBytes())));
+        verify(mockedBuilder).header(eq("Host"), eq("kafka"));
+        verify(mockedBuilder).header(eq("Accept"), eq(KAFKA_MESSAGE_CONTENT_TYPE));
+        verify(mockedResponse, times(1)).close();
+
+        assertThat(messageQueueProxyService.getStatus(), equalTo(ONE_MSG));
+    }
+
+    @Test
+    public void testProxyCallsAreTimedByStatusClassAndPollsMeasuredPerStream() throws Exception {
+        final MetricRegistry metrics = new MetricRegistry();
+        final MessageQueueProxyServiceImpl service = new MessageQueueProxyServiceImpl(configuration, client, metrics);
+        messageQueueProxyService = service.forStream("stream-0");
+        final URI consumerUri = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+        final String body = "[{\"topic\":\"CmsPublicationEvent\",\"key\":null,\"value\":\"bXlyZWNvcmQ=\",\"partition\":0,\"offset\":5}]";
+
+        final WebResource mockedWebResource = mock(WebResource.class);
+        when(client.resource(UriBuilder.fromUri(consumerUri).path("records").build())).thenReturn(mockedWebResource);
+        final WebResource.Builder mockedBuilder = mock(WebResource.Builder.class);
+        when(mockedWebResource.getRequestBuilder()).thenReturn(mockedBuilder);
+        final ClientResponse mockedResponse = mock(ClientResponse.class);
+        when(mockedBuilder.get(ClientResponse.class)).thenReturn(mockedResponse);
+        when(mockedResponse.getStatus()).thenReturn(200).thenReturn(200).thenReturn(503);
+        when(mockedResponse.getEntityInputStream()).thenReturn(new ByteArrayInputStream(body.getBytes(UTF_8)));
+
+        messageQueueProxyService.consumeMessages(consumerUri, record -> {});
+        try {
+            messageQueueProxyService.consumeMessages(consumerUri, record -> {});
+        } catch (QueueProxyServiceException e) {
+            // expected
+        }
+
+        final String stream = MetricRegistry.name(configuration.getTopicName(), configuration.getGroupName(),
+                MessageQueueProxyServiceImpl.class.getName(), "stream-0");
+        assertThat(metrics.timer(MetricRegistry.name(stream, "consume", "2xx")).getCount(), is(1L));
+        assertThat(metrics.timer(MetricRegistry.name(stream, "consume", "5xx")).getCount(), is(1L));
+        assertThat(metrics.histogram(MetricRegistry.name(stream, "consume", "records")).getSnapshot().getMax(), is(1L));
+        assertThat(metrics.histogram(MetricRegistry.name(stream, "consume", "bytes")).getSnapshot().getMax(), is((long) body.length()));
+        final String otherStream = MetricRegistry.name(configuration.getTopicName(), configuration.getGroupName(),
+                MessageQueueProxyServiceImpl.class.getName(), "stream-1");
+        service.forStream("stream-1");
+        assertThat(metrics.timer(MetricRegistry.name(otherStream, "consume", "2xx")).getCount(), is(0L));
+        assertThat(service.getStatus(), equalTo(messageQueueProxyService.getStatus()));
+    }
+
+    @Test
+    public void testConsumeMessagesStreamedWhenResponseIsMalformed() throws Exception {
+        final URI consumerUri = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+        final String errorMessage = "Unable to consume messages. Proxy error.";
+        expectedException.expect(QueueProxyServiceException.class);
+        expectedException.expectMessage(errorMessage);
+
+        final WebResource mockedWebResource = mock(WebResource.class);
+        when(client.resource(UriBuilder.fromUri(consumerUri).path("records").build())).thenReturn(mockedWebResource);
+        final WebResource.Builder mockedBuilder = mock(WebResource.Builder.class);
+        when(mockedWebResource.getRequestBuilder()).thenReturn(mockedBuilder);
+        final ClientResponse mockedResponse = mock(ClientResponse.class);
+        when(mockedBuilder.get(ClientResponse.class)).thenReturn(mockedResponse);
+        when(mockedResponse.getStatus()).thenReturn(200);
+        when(mockedResponse.getEntityInputStream()).thenReturn(new ByteArrayInputStream("{\"error_code\":50002}".getBytes(UTF_8)));
+
+        try {
+          messageQueueProxyService.consumeMessages(consumerUri, record -> {});
+        } finally {
+          verify(mockedResponse, times(1)).close();
+
+          assertThat(messageQueueProxyService.getStatus(), equalTo(errorMessage));
+        }
+    }
+
     @Test
     public void testCommitOffsets() throws Exception {
         final URI consumerUri = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
@@ -423,6 +719,29 @@ public class MessageQueueProxyServiceImplTest {
         assertThat(messageQueueProxyService.getStatus(), equalTo(NO_MSG));
     }
 
+    @Test
+    public void testCommitGivenOffsets() throws Exception {
+        final URI consumerUri = UriBuilder.fromUri("http://localhost:8082/consumers/binaryIngester/instances/rest-consumer-1-1").build();
+
+        final WebResource mockedWebResource = mock(WebResource.class);
+        when(client.resource(UriBuilder.fromUri(consumerUri).path("offsets").build())).thenReturn(mockedWebResource);
+        final WebResource.Builder mockedBuilder = mock(WebResource.Builder.class);
+        when(mockedWebResource.getRequestBuilder()).thenReturn(mockedBuilder);
+        final ClientResponse mockedResponse = mock(ClientResponse.class);
+        when(mockedBuilder.post(eq(ClientResponse.class), anyString())).thenReturn(mockedResponse);
+        when(mockedResponse.getStatus()).thenReturn(200);
+
+        messageQueueProxyService.commitOffsets(consumerUri, ImmutableList.of(
+                new PartitionOffset("CmsPublicationEvent", 0, 41L), new PartitionOffset("CmsPublicationEvent", 2, 7L)));
+
+        verify(mockedBuilder).post(ClientResponse.class, "{\"offsets\":["
+                + "{\"topic\":\"CmsPublicationEvent\",\"partition\":0,\"offset\":41},"
+                + "{\"topic\":\"CmsPublicationEvent\",\"partition\":2,\"offset\":7}]}");
+        verify(mockedBuilder).header(eq("Content-Type"), eq(KAFKA_MESSAGE_CONTENT_TYPE));
+        verify(mockedBuilder).header(eq("Host"), eq("kafka"));
+        verify(mockedResponse, times(1)).close();
+    }
+
     @Test
     public void testCommitOffsetsShouldOverrideConsumerInstanceUri() throws Exception {
         final URI consumerUri = UriBuilder.fromUri("http://kafka/consumers/binaryIngester/instances/rest-consumer-1-1").build();
@@ -494,4 +813,21 @@ public class MessageQueueProxyServiceImplTest {
           assertThat(messageQueueProxyService.getStatus(), equalTo(errorMessage));
         }
     }
+
+    @Test
+    public void testGetPartitionCount() throws Exception {
+        final WebResource mockedWebResource = mock(WebResource.class);
+        when(client.resource(UriBuilder.fromUri("http://localhost:8082/topics/CmsPublicationEvent/partitions").build())).thenReturn(mockedWebResource);
+        final WebResource.Builder mockedBuilder = mock(WebResource.Builder.class);
+        when(mockedWebResource.getRequestBuilder()).thenReturn(mockedBuilder);
+        final ClientResponse mockedResponse = mock(ClientResponse.class);
+        when(mockedBuilder.get(ClientResponse.class)).thenReturn(mockedResponse);
+        when(mockedResponse.getStatus()).thenReturn(200);
+        when(mockedResponse.getEntityInputStream()).thenReturn(new ByteArrayInputStream(
+                "[{\"partition\":0,\"leader\":1},{\"partition\":1,\"leader\":2},{\"partition\":2,\"leader\":1}]".getBytes(UTF_8)));
+
+        assertThat(messageQueueProxyService.getPartitionCount(), is(3));
+        verify(mockedBuilder).header(eq("Host"), eq("kafka"));
+        verify(mockedResponse, times(1)).close();
+    }
 }
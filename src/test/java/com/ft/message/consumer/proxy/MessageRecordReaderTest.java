@@ -0,0 +1,143 @@
+package com.ft.message.consumer.proxy;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.ft.message.consumer.proxy.model.MessageRecord;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MessageRecordReaderTest {
+
+    @Test
+    public void testReadsRecordsInOrder() throws Exception {
+        try (MessageRecordReader reader = reader("[{\"key\":\"a2V5\",\"value\":\"Zmlyc3Q=\"},{\"key\":null,\"value\":\"c2Vjb25k\",\"offset\":7}]")) {
+            assertThat(reader.hasNext(), is(true));
+            MessageRecord first = reader.next();
+            assertThat(first.getKey(), is(equalTo("key".getBytes(UTF_8))));
+            assertThat(first.getValue(), is(equalTo("first".getBytes(UTF_8))));
+
+            assertThat(reader.hasNext(), is(true));
+            MessageRecord second = reader.next();
+            assertThat(second.getKey(), is(nullValue()));
+            assertThat(second.getValue(), is(equalTo("second".getBytes(UTF_8))));
+            assertThat(second.getOffset(), is(7L));
+
+            assertThat(reader.hasNext(), is(false));
+        }
+    }
+
+    @Test
+    public void testBindsRecordMetadata() throws Exception {
+        try (MessageRecordReader reader = reader("[{\"topic\":\"t\",\"key\":\"a2V5\",\"value\":\"Zmlyc3Q=\",\"partition\":3,\"offset\":42,\"timestamp\":1448026885305}]")) {
+            MessageRecord record = reader.next();
+            assertThat(record.getTopic(), is(equalTo("t")));
+            assertThat(record.getPartition(), is(3));
+            assertThat(record.getOffset(), is(42L));
+            assertThat(record.getTimestamp(), is(1448026885305L));
+            assertThat(record.hasPosition(), is(true));
+        }
+        try (MessageRecordReader reader = reader("[{\"value\":\"Zmlyc3Q=\"}]")) {
+            MessageRecord record = reader.next();
+            assertThat(record.getTopic(), is(nullValue()));
+            assertThat(record.getPartition(), is(MessageRecord.UNKNOWN_PARTITION));
+            assertThat(record.getOffset(), is(MessageRecord.UNKNOWN_OFFSET));
+            assertThat(record.getTimestamp(), is(MessageRecord.UNKNOWN_TIMESTAMP));
+            assertThat(record.hasPosition(), is(false));
+        }
+    }
+
+    @Test
+    public void testEmptyArrayHasNoRecords() throws Exception {
+        try (MessageRecordReader reader = reader("[]")) {
+            assertThat(reader.hasNext(), is(false));
+        }
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void testRejectsResponseThatIsNotAnArray() throws Exception {
+        reader("{\"error_code\":40403,\"message\":\"Consumer instance not found.\"}");
+    }
+
+    @Test
+    public void testPooledRecordsDecodeValueOnDemandAndReturnBuffer() throws Exception {
+        PayloadBufferPool pool = new PayloadBufferPool(1, 64);
+        try (MessageRecordReader reader = new MessageRecordReader(new ByteArrayInputStream(
+                "[{\"topic\":\"t\",\"key\":\"a2V5\",\"value\":\"Zmlyc3Q=\",\"partition\":0,\"timestamp\":17},{\"value\":\"c2Vjb25kIQ==\"}]".getBytes(UTF_8)), pool)) {
+            MessageRecord first = reader.next();
+            assertThat(first.getTopic(), is(equalTo("t")));
+            assertThat(first.getPartition(), is(0));
+            assertThat(first.hasPosition(), is(false));
+            assertThat(first.getTimestamp(), is(17L));
+            assertThat(first.getKey(), is(equalTo("key".getBytes(UTF_8))));
+            assertThat(UTF_8.decode(first.getPayload()).toString(), is(equalTo("first")));
+            assertThat(first.getValue(), is(equalTo("first".getBytes(UTF_8))));
+
+            first.release();
+
+            MessageRecord second = reader.next();
+            assertThat(pool.available(), is(0));
+            assertThat(UTF_8.decode(second.getPayload()).toString(), is(equalTo("second!")));
+            assertThat(reader.hasNext(), is(false));
+
+            second.release();
+            second.release();
+        }
+    }
+
+    @Test
+    public void testOversizedValuesAreNotPooled() throws Exception {
+        PayloadBufferPool pool = new PayloadBufferPool(1, 4);
+        try (MessageRecordReader reader = new MessageRecordReader(new ByteArrayInputStream("[{\"value\":\"Zmlyc3Q=\"}]".getBytes(UTF_8)), pool)) {
+            MessageRecord record = reader.next();
+            assertThat(UTF_8.decode(record.getPayload()).toString(), is(equalTo("first")));
+
+            record.release();
+            assertThat(pool.available(), is(0));
+        }
+    }
+
+    private static MessageRecordReader reader(String json) throws IOException {
+        return new MessageRecordReader(new ByteArrayInputStream(json.getBytes(UTF_8)));
+    }
+
+    @Test
+    public void testJsonFormatReadsStringsAsTextAndOtherValuesAsJson() throws Exception {
+        PayloadBufferPool pool = new PayloadBufferPool(1, 64);
+        try (MessageRecordReader reader = new MessageRecordReader(new ByteArrayInputStream(
+                ("[{\"key\":{\"id\":7},\"value\":\"FTMSG/1.0\\r\\nMessage-Id: 1\\r\\n\\r\\n{}\",\"offset\":1},"
+                        + "{\"key\":null,\"value\":{\"a\": [1, 2.5, true, null]},\"offset\":2},"
+                        + "{\"value\":null}]").getBytes(UTF_8)), pool, EmbeddedFormat.JSON)) {
+            MessageRecord first = reader.next();
+            assertThat(first.getKey(), is(equalTo("{\"id\":7}".getBytes(UTF_8))));
+            assertThat(first.getValue(), is(equalTo("FTMSG/1.0\r\nMessage-Id: 1\r\n\r\n{}".getBytes(UTF_8))));
+            assertThat(first.getOffset(), is(1L));
+
+            MessageRecord second = reader.next();
+            assertThat(second.getKey(), is(nullValue()));
+            assertThat(new String(second.getValue(), UTF_8), is(equalTo("{\"a\":[1,2.5,true,null]}")));
+            assertThat(second.getOffset(), is(2L));
+
+            assertThat(reader.next().getValue(), is(nullValue()));
+            assertThat(reader.hasNext(), is(false));
+        }
+    }
+
+    @Test
+    public void testFormatsAreFoundByName() {
+        assertThat(EmbeddedFormat.forName("binary"), is(EmbeddedFormat.BINARY));
+        assertThat(EmbeddedFormat.forName("AVRO").getMediaType(), is(equalTo("application/vnd.kafka.avro.v2+json")));
+        assertThat(EmbeddedFormat.forName("protobuf").getMediaType(), is(equalTo("application/vnd.kafka.protobuf.v2+json")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsUnknownFormat() {
+        EmbeddedFormat.forName("xml");
+    }
+}